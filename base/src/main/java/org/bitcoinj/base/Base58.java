@@ -17,8 +17,10 @@
 
 package org.bitcoinj.base;
 
+import org.bitcoinj.base.BatchAddressParser.ErrorCode;
 import org.bitcoinj.base.exceptions.AddressFormatException;
 import org.bitcoinj.base.internal.ByteUtils;
+import org.jspecify.annotations.Nullable;
 
 import java.math.BigInteger;
 import java.util.Arrays;
@@ -123,39 +125,67 @@ public class Base58 {
      * @throws AddressFormatException if the given string is not a valid base58 string
      */
     public static byte[] decode(String input) throws AddressFormatException {
-        if (input.isEmpty()) {
-            return new byte[0];
-        }
-        // Convert the base58-encoded ASCII chars to a base58 byte sequence (base58 digits).
-        byte[] input58 = new byte[input.length()];
+        byte[] decoded = decodeOrNull(input);
+        if (decoded == null)
+            throw invalidCharacter(input);
+        return decoded;
+    }
+
+    // Creates the exception for the first character of the input that isn't base58.
+    private static AddressFormatException.InvalidCharacter invalidCharacter(String input) {
         for (int i = 0; i < input.length(); ++i) {
             char c = input.charAt(i);
-            int digit = c < 128 ? INDEXES[c] : -1;
-            if (digit < 0) {
-                throw new AddressFormatException.InvalidCharacter(c, i);
-            }
-            input58[i] = (byte) digit;
+            if (c >= 128 || INDEXES[c] < 0)
+                return new AddressFormatException.InvalidCharacter(c, i);
         }
+        throw new IllegalStateException(); // cannot happen
+    }
+
+    /**
+     * Decodes the given base58 string like {@link #decode(String)}, but returns null rather than throwing if it
+     * contains a character that isn't base58.
+     * <p>
+     * Rather than dividing the digits repeatedly, this accumulates the number in 32-bit words, taking up to five
+     * digits at once as 58<sup>5</sup> still fits a word.
+     */
+    static byte @Nullable [] decodeOrNull(String input) {
+        int length = input.length();
         // Count leading zeros.
         int zeros = 0;
-        while (zeros < input58.length && input58[zeros] == 0) {
+        while (zeros < length && input.charAt(zeros) == ENCODED_ZERO) {
             ++zeros;
         }
-        // Convert base-58 digits to base-256 digits.
-        byte[] decoded = new byte[input.length()];
-        int outputStart = decoded.length;
-        for (int inputStart = zeros; inputStart < input58.length; ) {
-            decoded[--outputStart] = divmod(input58, inputStart, 58, 256);
-            if (input58[inputStart] == 0) {
-                ++inputStart; // optimization - skip leading zeros
+        // Each base58 digit is log(58) / log(256) = 0.732... bytes.
+        int[] words = new int[((length - zeros) * 733 / 1000 + 1 + 3) / 4];
+        int numWords = 0;
+        for (int i = zeros; i < length; ) {
+            // Take up to five digits as one number.
+            int group = 0;
+            int multiplier = 1;
+            for (int end = Math.min(i + 5, length); i < end; ++i) {
+                char c = input.charAt(i);
+                int digit = c < 128 ? INDEXES[c] : -1;
+                if (digit < 0)
+                    return null;
+                group = group * 58 + digit;
+                multiplier *= 58;
             }
-        }
-        // Ignore extra leading zeroes that were added during the calculation.
-        while (outputStart < decoded.length && decoded[outputStart] == 0) {
-            ++outputStart;
+            // words = words * multiplier + group, least significant word first
+            long carry = group;
+            for (int j = 0; j < numWords; ++j) {
+                carry += (words[j] & 0xFFFFFFFFL) * multiplier;
+                words[j] = (int) carry;
+                carry >>>= 32;
+            }
+            if (carry != 0)
+                words[numWords++] = (int) carry;
         }
         // Return decoded data (including original number of leading zeros).
-        return Arrays.copyOfRange(decoded, outputStart - zeros, decoded.length);
+        int topBytes = numWords == 0 ? 0 : 4 - Integer.numberOfLeadingZeros(words[numWords - 1]) / 8;
+        byte[] decoded = new byte[zeros + (numWords == 0 ? 0 : (numWords - 1) * 4 + topBytes)];
+        for (int i = decoded.length - 1, j = 0; i >= zeros; --i, ++j)
+            decoded[i] = (byte) (words[j / 4] >>> (8 * (j % 4)));
+        return decoded;
     }
     
     public static BigInteger decodeToBigInteger(String input) throws AddressFormatException {
@@ -171,15 +201,33 @@ public class Base58 {
      * @throws AddressFormatException if the input is not base 58 or the checksum does not validate.
      */
     public static byte[] decodeChecked(String input) throws AddressFormatException {
-        byte[] decoded  = decode(input);
+        return tryDecodeChecked(input).getOrThrow();
+    }
+
+    /**
+     * Decodes the given base58 string like {@link #decodeChecked(String)}, but returns the reason it was rejected
+     * rather than throwing.
+     */
+    static DecodeResult<byte[]> tryDecodeChecked(String input) {
+        byte[] decoded = decodeOrNull(input);
+        if (decoded == null)
+            return DecodeResult.failure(ErrorCode.INVALID_CHARACTER, () -> invalidCharacter(input));
         if (decoded.length < 4)
-            throw new AddressFormatException.InvalidDataLength("Input too short: " + decoded.length);
-        byte[] data = Arrays.copyOfRange(decoded, 0, decoded.length - 4);
-        byte[] checksum = Arrays.copyOfRange(decoded, decoded.length - 4, decoded.length);
-        byte[] actualChecksum = Arrays.copyOfRange(Sha256Hash.hashTwice(data), 0, 4);
-        if (!Arrays.equals(checksum, actualChecksum))
-            throw new AddressFormatException.InvalidChecksum();
-        return data;
+            return DecodeResult.failure(ErrorCode.INVALID_DATA_LENGTH,
+                    () -> new AddressFormatException.InvalidDataLength("Input too short: " + decoded.length));
+        if (!hasValidChecksum(decoded))
+            return DecodeResult.failure(ErrorCode.INVALID_CHECKSUM, AddressFormatException.InvalidChecksum::new);
+        return DecodeResult.of(Arrays.copyOfRange(decoded, 0, decoded.length - 4));
+    }
+
+    // Checks the checksum in the last 4 bytes of the given decoded data, which must be at least 4 bytes long.
+    private static boolean hasValidChecksum(byte[] decoded) {
+        int dataLength = decoded.length - 4;
+        byte[] actualChecksum = Sha256Hash.hashTwice(decoded, 0, dataLength);
+        for (int i = 0; i < 4; i++)
+            if (decoded[dataLength + i] != actualChecksum[i])
+                return false;
+        return true;
     }
 
     /**
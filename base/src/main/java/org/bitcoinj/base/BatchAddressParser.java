@@ -0,0 +1,183 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.base;
+
+import org.bitcoinj.base.exceptions.AddressFormatException;
+import org.bitcoinj.base.internal.StreamUtils;
+import org.jspecify.annotations.Nullable;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Parses many address strings at once, for example to validate addresses supplied by customers. Rather than throwing
+ * an {@link AddressFormatException}, the parser returns a {@link Result} for each string, which holds either the
+ * address or an {@link ErrorCode}. Invalid strings are detected without creating exceptions, and
+ * {@link #parse(List)} parses the strings in parallel.
+ * <p>
+ * The parser runs the same decoding as the default {@link AddressParser} for the same networks, so it accepts exactly
+ * the same strings, and the error code of a rejected string corresponds to the exception that
+ * {@link AddressParser#parseAddress(String)} would throw for it.
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ */
+public final class BatchAddressParser {
+    /**
+     * Reasons for an address string to be rejected. Each corresponds to a type of {@link AddressFormatException}.
+     */
+    public enum ErrorCode {
+        /** See {@link AddressFormatException.InvalidCharacter} */
+        INVALID_CHARACTER,
+        /** See {@link AddressFormatException.InvalidDataLength} */
+        INVALID_DATA_LENGTH,
+        /** See {@link AddressFormatException.InvalidChecksum} */
+        INVALID_CHECKSUM,
+        /** See {@link AddressFormatException.UnexpectedWitnessVersion} */
+        UNEXPECTED_WITNESS_VERSION,
+        /** See {@link AddressFormatException.InvalidPrefix} */
+        INVALID_PREFIX,
+        /** See {@link AddressFormatException.WrongNetwork} */
+        WRONG_NETWORK,
+        /** Any other problem, see {@link AddressFormatException} */
+        INVALID
+    }
+
+    /**
+     * The outcome of parsing one address string: either an address, or the reason the string was rejected.
+     */
+    public static final class Result {
+        private final String input;
+        @Nullable
+        private final Address address;
+        @Nullable
+        private final ErrorCode error;
+
+        private Result(String input, @Nullable Address address, @Nullable ErrorCode error) {
+            this.input = input;
+            this.address = address;
+            this.error = error;
+        }
+
+        /** @return the string that was parsed */
+        public String input() {
+            return input;
+        }
+
+        /** @return true if the string is a valid address */
+        public boolean isValid() {
+            return address != null;
+        }
+
+        /** @return the parsed address, or null if the string was rejected */
+        @Nullable
+        public Address address() {
+            return address;
+        }
+
+        /** @return the reason the string was rejected, or null if it is a valid address */
+        @Nullable
+        public ErrorCode error() {
+            return error;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Result other = (Result) o;
+            return input.equals(other.input) && Objects.equals(address, other.address) && error == other.error;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(input, address, error);
+        }
+
+        @Override
+        public String toString() {
+            return input + (address != null ? " -> " + address : ": " + error);
+        }
+    }
+
+    // Shares the non-throwing parsing of the default address parser
+    private final DefaultAddressParserProvider parser;
+    // The network to parse for, or null to search all networks of the parser
+    @Nullable
+    private final Network network;
+
+    private BatchAddressParser(DefaultAddressParserProvider parser, @Nullable Network network) {
+        this.parser = parser;
+        this.network = network;
+    }
+
+    /**
+     * Returns a parser for addresses of all networks known to bitcoinj, like {@link AddressParser#getDefault()}.
+     *
+     * @return parser for all known networks
+     */
+    public static BatchAddressParser forKnownNetworks() {
+        return new BatchAddressParser(new DefaultAddressParserProvider(), null);
+    }
+
+    /**
+     * Returns a parser for addresses of the given network, like {@link AddressParser#getDefault(Network)}.
+     *
+     * @param network network to parse addresses for
+     * @return parser for the network
+     */
+    public static BatchAddressParser forNetwork(Network network) {
+        Objects.requireNonNull(network);
+        return new BatchAddressParser(new DefaultAddressParserProvider(), network);
+    }
+
+    /**
+     * Parses the given address strings in parallel.
+     *
+     * @param addressStrings strings to parse
+     * @return unmodifiable list of results, in the order of the strings
+     */
+    public List<Result> parse(List<String> addressStrings) {
+        return addressStrings.parallelStream()
+                .map(this::parse)
+                .collect(StreamUtils.toUnmodifiableList());
+    }
+
+    /**
+     * Parses the given stream of address strings. The strings are parsed in parallel if the stream is parallel.
+     *
+     * @param addressStrings strings to parse
+     * @return stream of results
+     */
+    public Stream<Result> parse(Stream<String> addressStrings) {
+        return addressStrings.map(this::parse);
+    }
+
+    /**
+     * Parses a single address string.
+     *
+     * @param addressString string to parse
+     * @return result
+     */
+    public Result parse(String addressString) {
+        Objects.requireNonNull(addressString);
+        DecodeResult<? extends Address> result = network != null
+                ? parser.tryParseAddress(addressString, network)
+                : parser.tryParseAddress(addressString);
+        return new Result(addressString, result.value(), result.error());
+    }
+}
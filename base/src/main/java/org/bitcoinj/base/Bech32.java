@@ -16,9 +16,11 @@
 
 package org.bitcoinj.base;
 
+import org.bitcoinj.base.BatchAddressParser.ErrorCode;
 import org.bitcoinj.base.exceptions.AddressFormatException;
 import org.bitcoinj.base.internal.ByteArray;
 import org.bitcoinj.base.internal.ByteUtils;
+import org.jspecify.annotations.Nullable;
 
 import java.io.ByteArrayOutputStream;
 import java.util.Arrays;
@@ -120,7 +122,10 @@ public class Bech32 {
          * @return The data, fully-decoded as a byte array.
          */
         public byte[] decode5to8() {
-            return convertBits(bytes, 0, bytes.length, 5, 8, false);
+            byte[] decoded = convertBits(bytes, 0, bytes.length, 5, 8, false);
+            if (decoded == null)
+                throw new AddressFormatException("Could not convert bits, invalid padding");
+            return decoded;
         }
 
         /**
@@ -130,19 +135,12 @@ public class Bech32 {
             return bytes[0];
         }
 
-        // Trim the version byte and return the witness program only
-        private Bech32Bytes stripFirst() {
-            byte[] program = new byte[bytes.length - 1];
-            System.arraycopy(bytes, 1, program, 0, program.length);
-            return new Bech32Bytes(program);
-        }
-
         /**
          * Assuming this instance contains a Segwit address, return the witness program portion of the data.
-         * @return The witness program as a byte array
+         * @return The witness program as a byte array, or null if its padding is invalid
          */
-        byte[] witnessProgram() {
-            return stripFirst().decode5to8();
+        byte @Nullable [] witnessProgram() {
+            return convertBits(bytes, 1, bytes.length - 1, 5, 8, false);
         }
     }
 
@@ -193,9 +191,9 @@ public class Bech32 {
      * Verify a checksum.
      * @param hrp human-readable part
      * @param values data in 5-bit byte format
-     * @return Encoding.BECH32 or Encoding.BECH32M if valid
-     * @throws AddressFormatException.InvalidChecksum if invalid
+     * @return Encoding.BECH32 or Encoding.BECH32M if valid, null if invalid
      */
+    @Nullable
     private static Encoding verifyChecksum(final String hrp, final byte[] values) {
         byte[] hrpExpanded = expandHrp(hrp);
         byte[] combined = ByteUtils.concat(hrpExpanded, values);
@@ -205,7 +203,7 @@ public class Bech32 {
         else if (check == BECH32M_CONST)
             return Encoding.BECH32M;
         else
-            throw new AddressFormatException.InvalidChecksum();
+            return null;
     }
 
     /** Create a checksum. */
@@ -291,44 +289,68 @@ public class Bech32 {
      * @throws AddressFormatException if the string is invalid
      */
     public static Bech32Data decode(final String str) throws AddressFormatException {
+        return tryDecode(str).getOrThrow();
+    }
+
+    /**
+     * Decode a Bech32 string like {@link #decode(String)}, but return the reason it was rejected rather than
+     * throwing.
+     * @param str A string containing Bech32-encoded data
+     * @return The decoded data, or the reason the string is invalid
+     */
+    static DecodeResult<Bech32Data> tryDecode(final String str) {
         boolean lower = false, upper = false;
         if (str.length() < 8)
-            throw new AddressFormatException.InvalidDataLength("Input too short: " + str.length());
+            return DecodeResult.failure(ErrorCode.INVALID_DATA_LENGTH,
+                    () -> new AddressFormatException.InvalidDataLength("Input too short: " + str.length()));
         if (str.length() > 90)
-            throw new AddressFormatException.InvalidDataLength("Input too long: " + str.length());
+            return DecodeResult.failure(ErrorCode.INVALID_DATA_LENGTH,
+                    () -> new AddressFormatException.InvalidDataLength("Input too long: " + str.length()));
         for (int i = 0; i < str.length(); ++i) {
             char c = str.charAt(i);
-            if (c < 33 || c > 126) throw new AddressFormatException.InvalidCharacter(c, i);
+            if (c < 33 || c > 126) return invalidCharacter(c, i);
             if (c >= 'a' && c <= 'z') {
                 if (upper)
-                    throw new AddressFormatException.InvalidCharacter(c, i);
+                    return invalidCharacter(c, i);
                 lower = true;
             }
             if (c >= 'A' && c <= 'Z') {
                 if (lower)
-                    throw new AddressFormatException.InvalidCharacter(c, i);
+                    return invalidCharacter(c, i);
                 upper = true;
             }
         }
         final int pos = str.lastIndexOf('1');
-        if (pos < 1) throw new AddressFormatException.InvalidPrefix("Missing human-readable part");
+        if (pos < 1)
+            return DecodeResult.failure(ErrorCode.INVALID_PREFIX,
+                    () -> new AddressFormatException.InvalidPrefix("Missing human-readable part"));
         final int dataPartLength = str.length() - 1 - pos;
-        if (dataPartLength < 6) throw new AddressFormatException.InvalidDataLength("Data part too short: " + dataPartLength);
+        if (dataPartLength < 6)
+            return DecodeResult.failure(ErrorCode.INVALID_DATA_LENGTH,
+                    () -> new AddressFormatException.InvalidDataLength("Data part too short: " + dataPartLength));
         byte[] values = new byte[dataPartLength];
         for (int i = 0; i < dataPartLength; ++i) {
             char c = str.charAt(i + pos + 1);
-            if (CHARSET_REV[c] == -1) throw new AddressFormatException.InvalidCharacter(c, i + pos + 1);
+            if (CHARSET_REV[c] == -1) return invalidCharacter(c, i + pos + 1);
             values[i] = CHARSET_REV[c];
         }
         String hrp = str.substring(0, pos).toLowerCase(Locale.ROOT);
         Encoding encoding = verifyChecksum(hrp, values);
-        return new Bech32Data(encoding, hrp, Arrays.copyOfRange(values, 0, values.length - 6));
+        if (encoding == null)
+            return DecodeResult.failure(ErrorCode.INVALID_CHECKSUM, AddressFormatException.InvalidChecksum::new);
+        return DecodeResult.of(new Bech32Data(encoding, hrp, Arrays.copyOfRange(values, 0, values.length - 6)));
+    }
+
+    private static <T> DecodeResult<T> invalidCharacter(char c, int position) {
+        return DecodeResult.failure(ErrorCode.INVALID_CHARACTER,
+                () -> new AddressFormatException.InvalidCharacter(c, position));
     }
 
     /**
      * Helper for re-arranging bits into groups.
+     * @return The groups, or null if the padding is invalid, which is only checked if {@code pad} is false
      */
-    private static byte[] convertBits(final byte[] in, final int inStart, final int inLen, final int fromBits,
+    private static byte @Nullable [] convertBits(final byte[] in, final int inStart, final int inLen, final int fromBits,
                               final int toBits, final boolean pad) throws AddressFormatException {
         int acc = 0;
         int bits = 0;
@@ -352,7 +374,7 @@ public class Bech32 {
             if (bits > 0)
                 out.write((acc << (toBits - bits)) & maxv);
         } else if (bits >= fromBits || ((acc << (toBits - bits)) & maxv) != 0) {
-            throw new AddressFormatException("Could not convert bits, invalid padding");
+            return null;
         }
         return out.toByteArray();
     }
@@ -0,0 +1,104 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.base;
+
+import org.bitcoinj.base.BatchAddressParser.ErrorCode;
+import org.bitcoinj.base.exceptions.AddressFormatException;
+import org.jspecify.annotations.Nullable;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import static org.bitcoinj.base.internal.Preconditions.checkState;
+
+/**
+ * The outcome of one of the non-throwing decoders of addresses and their encodings: either the decoded value, or the
+ * reason it was rejected. The throwing decoders call them and throw {@link #exception()}, while
+ * {@link BatchAddressParser} only looks at the {@link ErrorCode}, so that rejecting a string doesn't create an
+ * exception.
+ *
+ * @param <T> type of the decoded value
+ */
+final class DecodeResult<T> {
+    @Nullable
+    private final T value;
+    @Nullable
+    private final ErrorCode error;
+    // Creates the exception to throw for the error, which must correspond to it
+    @Nullable
+    private final Supplier<? extends AddressFormatException> exception;
+
+    private DecodeResult(@Nullable T value, @Nullable ErrorCode error,
+                         @Nullable Supplier<? extends AddressFormatException> exception) {
+        this.value = value;
+        this.error = error;
+        this.exception = exception;
+    }
+
+    static <T> DecodeResult<T> of(T value) {
+        return new DecodeResult<>(Objects.requireNonNull(value), null, null);
+    }
+
+    static <T> DecodeResult<T> failure(ErrorCode error, Supplier<? extends AddressFormatException> exception) {
+        return new DecodeResult<>(null, Objects.requireNonNull(error), Objects.requireNonNull(exception));
+    }
+
+    /** @return true if decoding succeeded */
+    boolean isValid() {
+        return value != null;
+    }
+
+    /** @return the decoded value, or null if decoding failed */
+    @Nullable
+    T value() {
+        return value;
+    }
+
+    /** @return the reason decoding failed, or null if it succeeded */
+    @Nullable
+    ErrorCode error() {
+        return error;
+    }
+
+    /**
+     * Returns this failure as the failure of a decoder of another type.
+     *
+     * @throws IllegalStateException if decoding succeeded
+     */
+    @SuppressWarnings("unchecked")
+    <U> DecodeResult<U> asFailure() {
+        checkState(value == null);
+        return (DecodeResult<U>) this;
+    }
+
+    /** @return the exception the throwing decoders throw for the failure */
+    AddressFormatException exception() {
+        checkState(exception != null);
+        return exception.get();
+    }
+
+    /**
+     * Returns the decoded value, or throws the exception for the failure.
+     *
+     * @throws AddressFormatException if decoding failed
+     */
+    T getOrThrow() throws AddressFormatException {
+        if (value == null)
+            throw exception();
+        return value;
+    }
+}
@@ -16,6 +16,7 @@
 
 package org.bitcoinj.base;
 
+import org.bitcoinj.base.BatchAddressParser.ErrorCode;
 import org.bitcoinj.base.exceptions.AddressFormatException;
 
 import java.util.ArrayList;
@@ -64,80 +65,85 @@ class DefaultAddressParserProvider implements AddressParser.AddressParserProvide
 
     @Override
     public AddressParser forKnownNetworks() {
-        return this::parseAddress;
+        return address -> tryParseAddress(address).getOrThrow();
     }
 
     @Override
     public AddressParser forNetwork(Network network) {
-        return address -> this.parseAddress(address, network);
+        return address -> tryParseAddress(address, network).getOrThrow();
     }
 
-    private Address parseAddress(String addressString) throws AddressFormatException {
-        try {
-            return parseBase58AnyNetwork(addressString);
-        } catch (AddressFormatException.WrongNetwork x) {
-            throw x;
-        } catch (AddressFormatException x) {
-            try {
-                return parseBech32AnyNetwork(addressString);
-            } catch (AddressFormatException.WrongNetwork x2) {
-                throw x;
-            } catch (AddressFormatException x2) {
-                //throw new AddressFormatException(addressString);
-                throw x2;
-            }
-        }
+    /**
+     * Parse an address of any of the known networks, returning the reason it was rejected rather than throwing.
+     *
+     * @param addressString textual form of the address
+     * @return parsed address, or the reason the string is invalid
+     */
+    DecodeResult<? extends Address> tryParseAddress(String addressString) {
+        DecodeResult<LegacyAddress> base58 = tryParseBase58AnyNetwork(addressString);
+        if (base58.isValid() || base58.error() == ErrorCode.WRONG_NETWORK)
+            return base58;
+        DecodeResult<SegwitAddress> bech32 = tryParseBech32AnyNetwork(addressString);
+        if (bech32.error() == ErrorCode.WRONG_NETWORK)
+            return base58;
+        return bech32;
     }
 
-    private Address parseAddress(String addressString, Network network) throws AddressFormatException {
-        try {
-            return LegacyAddress.fromBase58(addressString, network);
-        } catch (AddressFormatException.WrongNetwork x) {
-            throw x;
-        } catch (AddressFormatException x) {
-            try {
-                return SegwitAddress.fromBech32(addressString, network);
-            } catch (AddressFormatException.WrongNetwork x2) {
-                throw x;
-            } catch (AddressFormatException x2) {
-                throw new AddressFormatException(addressString);
-            }
-        }
+    /**
+     * Parse an address of the given network, returning the reason it was rejected rather than throwing.
+     *
+     * @param addressString textual form of the address
+     * @param network       network the address must be valid for
+     * @return parsed address, or the reason the string is invalid
+     */
+    DecodeResult<? extends Address> tryParseAddress(String addressString, Network network) {
+        DecodeResult<LegacyAddress> base58 = LegacyAddress.tryFromBase58(addressString, network);
+        if (base58.isValid() || base58.error() == ErrorCode.WRONG_NETWORK)
+            return base58;
+        DecodeResult<SegwitAddress> bech32 = SegwitAddress.tryFromBech32(addressString, network);
+        if (bech32.isValid())
+            return bech32;
+        if (bech32.error() == ErrorCode.WRONG_NETWORK)
+            return base58;
+        return DecodeResult.failure(ErrorCode.INVALID, () -> new AddressFormatException(addressString));
     }
 
     /**
      * Construct a {@link SegwitAddress} from its textual form.
      *
      * @param bech32 bech32-encoded textual form of the address
-     * @return constructed address
-     * @throws AddressFormatException if something about the given bech32 address isn't right
+     * @return constructed address, or the reason the string is invalid
      */
-    private SegwitAddress parseBech32AnyNetwork(String bech32)
-            throws AddressFormatException {
-        Bech32.Bech32Data bechData = Bech32.decode(bech32);
+    private DecodeResult<SegwitAddress> tryParseBech32AnyNetwork(String bech32) {
+        DecodeResult<Bech32.Bech32Data> decoded = Bech32.tryDecode(bech32);
+        Bech32.Bech32Data bechData = decoded.value();
+        if (bechData == null)
+            return decoded.asFailure();
         String hrp = bechData.hrp;
-        Network network = segwitNetworks.stream()
-                .filter(n -> hrp.equals(n.segwitAddressHrp()))
-                .findFirst()
-                .orElseThrow(() -> new AddressFormatException.InvalidPrefix("No network found for " + bech32));
-        return SegwitAddress.fromBechData(network, bechData);
+        for (Network network : segwitNetworks)
+            if (hrp.equals(network.segwitAddressHrp()))
+                return SegwitAddress.tryFromBechData(network, bechData);
+        return DecodeResult.failure(ErrorCode.INVALID_PREFIX,
+                () -> new AddressFormatException.InvalidPrefix("No network found for " + bech32));
     }
 
     /**
      * Construct a {@link LegacyAddress} from its base58 form.
      *
      * @param base58 base58-encoded textual form of the address
-     * @throws AddressFormatException if the given base58 doesn't parse or the checksum is invalid
-     * @throws AddressFormatException.WrongNetwork if the given address is valid but for a different chain (e.g. testnet vs mainnet)
+     * @return constructed address, or the reason the string is invalid
      */
-    private LegacyAddress parseBase58AnyNetwork(String base58)
-            throws AddressFormatException, AddressFormatException.WrongNetwork {
-        int version = Base58.decodeChecked(base58)[0] & 0xFF;
-        return base58Networks.stream()
-                .filter(n -> version == n.legacyAddressHeader() || version == n.legacyP2SHHeader())
-                .findFirst()
-                .map(n -> LegacyAddress.fromBase58(base58, n))
-                .orElseThrow(() -> new AddressFormatException.InvalidPrefix("No network found for " + base58));
+    private DecodeResult<LegacyAddress> tryParseBase58AnyNetwork(String base58) {
+        DecodeResult<byte[]> decoded = Base58.tryDecodeChecked(base58);
+        byte[] versionAndData = decoded.value();
+        if (versionAndData == null)
+            return decoded.asFailure();
+        int version = versionAndData.length > 0 ? versionAndData[0] & 0xFF : -1;
+        for (Network network : base58Networks)
+            if (version == network.legacyAddressHeader() || version == network.legacyP2SHHeader())
+                return LegacyAddress.tryFromVersionAndData(versionAndData, network);
+        return DecodeResult.failure(ErrorCode.INVALID_PREFIX,
+                () -> new AddressFormatException.InvalidPrefix("No network found for " + base58));
     }
 
     // Create an unmodifiable set of NetworkParameters from an array/varargs
@@ -18,8 +18,10 @@
 
 package org.bitcoinj.base;
 
+import org.bitcoinj.base.BatchAddressParser.ErrorCode;
 import org.bitcoinj.base.exceptions.AddressFormatException;
 import org.bitcoinj.base.internal.ByteUtils;
+import org.jspecify.annotations.Nullable;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -66,12 +68,22 @@ public class LegacyAddress implements Address {
     private LegacyAddress(Network network, boolean p2sh, byte[] hash160) throws AddressFormatException {
         this.network = normalizeNetwork(Objects.requireNonNull(network));
         this.bytes = Objects.requireNonNull(hash160);
-        if (hash160.length != 20)
-            throw new AddressFormatException.InvalidDataLength(
-                    "Legacy addresses are 20 byte (160 bit) hashes, but got: " + hash160.length);
+        DecodeResult<LegacyAddress> invalid = checkHash(hash160);
+        if (invalid != null)
+            throw invalid.exception();
         this.p2sh = p2sh;
     }
 
+    // The sanity check of the constructor. Returns the reason the hash is invalid, or null if it is valid.
+    @Nullable
+    private static DecodeResult<LegacyAddress> checkHash(byte[] hash160) {
+        if (hash160.length != LENGTH)
+            return DecodeResult.failure(ErrorCode.INVALID_DATA_LENGTH,
+                    () -> new AddressFormatException.InvalidDataLength(
+                            "Legacy addresses are 20 byte (160 bit) hashes, but got: " + hash160.length));
+        return null;
+    }
+
     private static Network normalizeNetwork(Network network) {
         // LegacyAddress does not distinguish between the different testnet types, normalize to TESTNET
         if (network instanceof BitcoinNetwork) {
@@ -116,14 +128,37 @@ public class LegacyAddress implements Address {
      */
     public static LegacyAddress fromBase58(String base58, Network network)
             throws AddressFormatException, AddressFormatException.WrongNetwork {
-        byte[] versionAndDataBytes = Base58.decodeChecked(base58);
+        return tryFromBase58(base58, network).getOrThrow();
+    }
+
+    // Non-throwing core of fromBase58()
+    static DecodeResult<LegacyAddress> tryFromBase58(String base58, Network network) {
+        DecodeResult<byte[]> decoded = Base58.tryDecodeChecked(base58);
+        byte[] versionAndDataBytes = decoded.value();
+        if (versionAndDataBytes == null)
+            return decoded.asFailure();
+        return tryFromVersionAndData(versionAndDataBytes, network);
+    }
+
+    // Creates the address from its version byte and hash, as decoded from base58 without the checksum.
+    static DecodeResult<LegacyAddress> tryFromVersionAndData(byte[] versionAndDataBytes, Network network) {
+        if (versionAndDataBytes.length < 1)
+            return DecodeResult.failure(ErrorCode.INVALID_DATA_LENGTH,
+                    () -> new AddressFormatException.InvalidDataLength("Missing version byte"));
         int version = versionAndDataBytes[0] & 0xFF;
-        byte[] bytes = Arrays.copyOfRange(versionAndDataBytes, 1, versionAndDataBytes.length);
+        boolean p2sh;
         if (version == network.legacyAddressHeader())
-            return new LegacyAddress(network, false, bytes);
+            p2sh = false;
         else if (version == network.legacyP2SHHeader())
-            return new LegacyAddress(network, true, bytes);
-        throw new AddressFormatException.WrongNetwork(version);
+            p2sh = true;
+        else
+            return DecodeResult.failure(ErrorCode.WRONG_NETWORK,
+                    () -> new AddressFormatException.WrongNetwork(version));
+        byte[] bytes = Arrays.copyOfRange(versionAndDataBytes, 1, versionAndDataBytes.length);
+        DecodeResult<LegacyAddress> invalid = checkHash(bytes);
+        if (invalid != null)
+            return invalid;
+        return DecodeResult.of(new LegacyAddress(network, p2sh, bytes));
     }
 
     /**
@@ -16,8 +16,10 @@
 
 package org.bitcoinj.base;
 
+import org.bitcoinj.base.BatchAddressParser.ErrorCode;
 import org.bitcoinj.base.exceptions.AddressFormatException;
 import org.bitcoinj.base.internal.ByteUtils;
+import org.jspecify.annotations.Nullable;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -148,18 +150,32 @@ public class SegwitAddress implements Address {
      *             if any of the sanity checks fail
      */
     private SegwitAddress(Network network, int witnessVersion, byte[] witnessProgram) throws AddressFormatException {
+        DecodeResult<SegwitAddress> invalid = checkProgram(witnessVersion, witnessProgram);
+        if (invalid != null)
+            throw invalid.exception();
+        this.network = normalizeNetwork(Objects.requireNonNull(network));
+        this.witnessVersion = (short) witnessVersion;
+        this.witnessProgram = Objects.requireNonNull(witnessProgram);
+    }
+
+    // The sanity checks of the constructor. Returns the reason the program is invalid, or null if it is valid.
+    @Nullable
+    private static DecodeResult<SegwitAddress> checkProgram(int witnessVersion, byte[] witnessProgram) {
         if (witnessVersion < 0 || witnessVersion > 16)
-            throw new AddressFormatException("Invalid script version: " + witnessVersion);
+            return DecodeResult.failure(ErrorCode.INVALID,
+                    () -> new AddressFormatException("Invalid script version: " + witnessVersion));
         if (witnessProgram.length < WITNESS_PROGRAM_MIN_LENGTH || witnessProgram.length > WITNESS_PROGRAM_MAX_LENGTH)
-            throw new AddressFormatException.InvalidDataLength("Invalid length: " + witnessProgram.length);
+            return DecodeResult.failure(ErrorCode.INVALID_DATA_LENGTH,
+                    () -> new AddressFormatException.InvalidDataLength("Invalid length: " + witnessProgram.length));
         // Check script length for version 0:
         // BIP 141:
         // "If the version byte is 0, but the witness program is neither 20 nor 32 bytes, the script must fail."
         // In other words: coins sent to addresses with other lengths will become unspendable.
         if (witnessVersion == 0 && witnessProgram.length != WITNESS_PROGRAM_LENGTH_PKH
                 && witnessProgram.length != WITNESS_PROGRAM_LENGTH_SH)
-            throw new AddressFormatException.InvalidDataLength(
-                    "Invalid length for address version 0: " + witnessProgram.length);
+            return DecodeResult.failure(ErrorCode.INVALID_DATA_LENGTH,
+                    () -> new AddressFormatException.InvalidDataLength(
+                            "Invalid length for address version 0: " + witnessProgram.length));
         // Check script length for version 1:
         // BIP 341:
         // "A Taproot output is a native SegWit output (see BIP141) with version number 1, and a 32-byte
@@ -175,11 +191,10 @@ public class SegwitAddress implements Address {
         // than 32 bytes.)
         if (witnessVersion == 1 && witnessProgram.length != WITNESS_PROGRAM_LENGTH_TR
                 && !isPayToAnchorOutputScript(witnessVersion, witnessProgram))
-            throw new AddressFormatException.InvalidDataLength(
-                    "Invalid length for address version 1: " + witnessProgram.length);
-        this.network = normalizeNetwork(Objects.requireNonNull(network));
-        this.witnessVersion = (short) witnessVersion;
-        this.witnessProgram = Objects.requireNonNull(witnessProgram);
+            return DecodeResult.failure(ErrorCode.INVALID_DATA_LENGTH,
+                    () -> new AddressFormatException.InvalidDataLength(
+                            "Invalid length for address version 1: " + witnessProgram.length));
+        return null;
     }
 
     /**
@@ -187,7 +202,7 @@ public class SegwitAddress implements Address {
      *
      * @return <code>true</code> if the given witnessProgram and witnessVersion represent a Pay-to-anchor output script, <code>false</code> otherwise
      */
-    private boolean isPayToAnchorOutputScript(int witnessVersion, byte[] witnessProgram) {
+    private static boolean isPayToAnchorOutputScript(int witnessVersion, byte[] witnessProgram) {
         return witnessVersion == 1 && Arrays.equals(P2A_SCRIPT, witnessProgram);
     }
 
@@ -255,22 +270,39 @@ public class SegwitAddress implements Address {
      */
     public static SegwitAddress fromBech32(String bech32, Network network)
             throws AddressFormatException {
-        Bech32.Bech32Data bechData = Bech32.decode(bech32);
+        return tryFromBech32(bech32, network).getOrThrow();
+    }
+
+    // Non-throwing core of fromBech32()
+    static DecodeResult<SegwitAddress> tryFromBech32(String bech32, Network network) {
+        DecodeResult<Bech32.Bech32Data> decoded = Bech32.tryDecode(bech32);
+        Bech32.Bech32Data bechData = decoded.value();
+        if (bechData == null)
+            return decoded.asFailure();
         if (bechData.hrp.equals(network.segwitAddressHrp()))
-            return fromBechData(network, bechData);
-        throw new AddressFormatException.WrongNetwork(bechData.hrp);
+            return tryFromBechData(network, bechData);
+        return DecodeResult.failure(ErrorCode.WRONG_NETWORK,
+                () -> new AddressFormatException.WrongNetwork(bechData.hrp));
     }
 
-    static SegwitAddress fromBechData(Network network, Bech32.Bech32Data bechData) {
-        if (bechData.bytes().length < 1) {
-            throw new AddressFormatException.InvalidDataLength("invalid address length (0)");
-        }
+    static DecodeResult<SegwitAddress> tryFromBechData(Network network, Bech32.Bech32Data bechData) {
+        if (bechData.bytes().length < 1)
+            return DecodeResult.failure(ErrorCode.INVALID_DATA_LENGTH,
+                    () -> new AddressFormatException.InvalidDataLength("invalid address length (0)"));
         final int witnessVersion = bechData.witnessVersion();
-        final SegwitAddress address = new SegwitAddress(network, witnessVersion, bechData.witnessProgram());
+        final byte[] witnessProgram = bechData.witnessProgram();
+        if (witnessProgram == null)
+            return DecodeResult.failure(ErrorCode.INVALID,
+                    () -> new AddressFormatException("Could not convert bits, invalid padding"));
+        DecodeResult<SegwitAddress> invalid = checkProgram(witnessVersion, witnessProgram);
+        if (invalid != null)
+            return invalid;
         if ((witnessVersion == 0 && bechData.encoding != Bech32.Encoding.BECH32) ||
                 (witnessVersion != 0 && bechData.encoding != Bech32.Encoding.BECH32M))
-            throw new AddressFormatException.UnexpectedWitnessVersion("Unexpected witness version: " + witnessVersion);
-        return address;
+            return DecodeResult.failure(ErrorCode.UNEXPECTED_WITNESS_VERSION,
+                    () -> new AddressFormatException.UnexpectedWitnessVersion(
+                            "Unexpected witness version: " + witnessVersion));
+        return DecodeResult.of(new SegwitAddress(network, witnessVersion, witnessProgram));
     }
 
     /**
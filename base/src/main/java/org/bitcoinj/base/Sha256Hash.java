@@ -28,14 +28,17 @@ import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Arrays;
 
+import static org.bitcoinj.base.internal.Preconditions.check;
 import static org.bitcoinj.base.internal.Preconditions.checkArgument;
 
 /**
- * A {@code Sha256Hash} wraps a {@code byte[]} so that {@link #equals} and {@link #hashCode} work correctly, allowing it to be used as a key in a
+ * A {@code Sha256Hash} holds the 32 bytes of a hash so that {@link #equals} and {@link #hashCode} work correctly, allowing it to be used as a key in a
  * map. It also checks that the {@code length} is correct (equal to {@link #LENGTH}) and provides a bit more type safety.
  * <p>
+ * The bytes are held as four {@code long} words rather than in an array, so that an instance is a single small object.
+ * This matters because hashes are the keys of most maps and sets of transactions and blocks.
+ * <p>
  * Given that {@code Sha256Hash} instances can be created using {@link #wrapReversed(byte[])} or {@link #twiceOf(byte[])} or by wrapping raw bytes, there is no guarantee that if two {@code Sha256Hash} instances are found equal (via {@link #equals(Object)}) that their preimages would be the same (even in the absence of a hash collision.)
  */
 public class Sha256Hash implements Comparable<Sha256Hash> {
@@ -53,12 +56,40 @@ public class Sha256Hash implements Comparable<Sha256Hash> {
     public static final int LENGTH = 32; // bytes
     public static final Sha256Hash ZERO_HASH = wrap(new byte[LENGTH]);
 
-    private final byte[] bytes;
+    // The bytes in big-endian words, in the order of getBytes()
+    private final long word0;
+    private final long word1;
+    private final long word2;
+    private final long word3;
 
     private Sha256Hash(byte[] rawHashBytes) {
         checkArgument(rawHashBytes.length == LENGTH, () ->
                 "length must be " + LENGTH + ": " + rawHashBytes.length);
-        this.bytes = rawHashBytes;
+        this.word0 = readWord(rawHashBytes, 0);
+        this.word1 = readWord(rawHashBytes, Long.BYTES);
+        this.word2 = readWord(rawHashBytes, Long.BYTES * 2);
+        this.word3 = readWord(rawHashBytes, Long.BYTES * 3);
+    }
+
+    private Sha256Hash(long word0, long word1, long word2, long word3) {
+        this.word0 = word0;
+        this.word1 = word1;
+        this.word2 = word2;
+        this.word3 = word3;
+    }
+
+    private static long readWord(byte[] bytes, int offset) {
+        long word = 0;
+        for (int i = 0; i < Long.BYTES; i++)
+            word = word << 8 | (bytes[offset + i] & 0xff);
+        return word;
+    }
+
+    private static void writeWord(long word, byte[] bytes, int offset) {
+        for (int i = Long.BYTES - 1; i >= 0; i--) {
+            bytes[offset + i] = (byte) word;
+            word >>>= 8;
+        }
     }
 
     /**
@@ -92,7 +123,12 @@ public class Sha256Hash implements Comparable<Sha256Hash> {
      * @throws IllegalArgumentException if the given array length is not exactly 32
      */
     public static Sha256Hash wrapReversed(byte[] rawHashBytes) {
-        return wrap(ByteUtils.reverseBytes(rawHashBytes));
+        checkArgument(rawHashBytes.length == LENGTH, () ->
+                "length must be " + LENGTH + ": " + rawHashBytes.length);
+        return new Sha256Hash(Long.reverseBytes(readWord(rawHashBytes, Long.BYTES * 3)),
+                Long.reverseBytes(readWord(rawHashBytes, Long.BYTES * 2)),
+                Long.reverseBytes(readWord(rawHashBytes, Long.BYTES)),
+                Long.reverseBytes(readWord(rawHashBytes, 0)));
     }
 
     /**
@@ -103,10 +139,13 @@ public class Sha256Hash implements Comparable<Sha256Hash> {
      * @throws BufferUnderflowException if the read hash extends beyond the remaining bytes of the buffer
      */
     public static Sha256Hash read(ByteBuffer buf) throws BufferUnderflowException {
-        byte[] b = new byte[32];
-        buf.get(b);
+        check(buf.remaining() >= LENGTH, BufferUnderflowException::new);
         // we have to flip it around, as on the wire it's in little endian
-        return Sha256Hash.wrapReversed(b);
+        long word3 = ByteUtils.readInt64(buf);
+        long word2 = ByteUtils.readInt64(buf);
+        long word1 = ByteUtils.readInt64(buf);
+        long word0 = ByteUtils.readInt64(buf);
+        return new Sha256Hash(word0, word1, word2, word3);
     }
 
     /**
@@ -246,7 +285,8 @@ public class Sha256Hash implements Comparable<Sha256Hash> {
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
-        return Arrays.equals(bytes, ((Sha256Hash)o).bytes);
+        Sha256Hash other = (Sha256Hash) o;
+        return word0 == other.word0 && word1 == other.word1 && word2 == other.word2 && word3 == other.word3;
     }
 
     /**
@@ -257,25 +297,32 @@ public class Sha256Hash implements Comparable<Sha256Hash> {
     @Override
     public int hashCode() {
         // use the last 4 bytes, not the first 4 which are often zeros in Bitcoin
-        return ByteBuffer.wrap(bytes).getInt(LENGTH - Integer.BYTES);
+        return (int) word3;
     }
 
     @Override
     public String toString() {
-        return ByteUtils.formatHex(bytes);
+        return ByteUtils.formatHex(getBytes());
     }
 
     /**
      * Returns the bytes interpreted as a positive integer.
      */
     public BigInteger toBigInteger() {
-        return ByteUtils.bytesToBigInteger(bytes);
+        return ByteUtils.bytesToBigInteger(getBytes());
     }
 
     /**
-     * Returns the internal byte array, without defensively copying. Therefore do NOT modify the returned array.
+     * Allocates a byte array and writes the hash into it.
+     *
+     * @return byte array containing the hash
      */
     public byte[] getBytes() {
+        byte[] bytes = new byte[LENGTH];
+        writeWord(word0, bytes, 0);
+        writeWord(word1, bytes, Long.BYTES);
+        writeWord(word2, bytes, Long.BYTES * 2);
+        writeWord(word3, bytes, Long.BYTES * 3);
         return bytes;
     }
 
@@ -285,7 +332,7 @@ public class Sha256Hash implements Comparable<Sha256Hash> {
      * @return byte array containing the hash
      */
     public byte[] serialize() {
-        return ByteUtils.reverseBytes(bytes);
+        return ByteUtils.reverseBytes(getBytes());
     }
 
     /** @deprecated use {@link #serialize()} */
@@ -303,20 +350,24 @@ public class Sha256Hash implements Comparable<Sha256Hash> {
      */
     public ByteBuffer write(ByteBuffer buf) throws BufferOverflowException {
         // we have to flip it around, as on the wire it's in little endian
-        buf.put(serialize());
+        check(buf.remaining() >= LENGTH, BufferOverflowException::new);
+        ByteUtils.writeInt64LE(word3, buf);
+        ByteUtils.writeInt64LE(word2, buf);
+        ByteUtils.writeInt64LE(word1, buf);
+        ByteUtils.writeInt64LE(word0, buf);
         return buf;
     }
 
     @Override
     public int compareTo(final Sha256Hash other) {
-        for (int i = LENGTH - 1; i >= 0; i--) {
-            final int thisByte = this.bytes[i] & 0xff;
-            final int otherByte = other.bytes[i] & 0xff;
-            if (thisByte > otherByte)
-                return 1;
-            if (thisByte < otherByte)
-                return -1;
-        }
-        return 0;
+        // compare from the last byte to the first one, as unsigned bytes
+        int result = Long.compareUnsigned(Long.reverseBytes(word3), Long.reverseBytes(other.word3));
+        if (result == 0)
+            result = Long.compareUnsigned(Long.reverseBytes(word2), Long.reverseBytes(other.word2));
+        if (result == 0)
+            result = Long.compareUnsigned(Long.reverseBytes(word1), Long.reverseBytes(other.word1));
+        if (result == 0)
+            result = Long.compareUnsigned(Long.reverseBytes(word0), Long.reverseBytes(other.word0));
+        return Integer.signum(result);
     }
 }
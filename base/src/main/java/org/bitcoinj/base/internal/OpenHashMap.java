@@ -0,0 +1,339 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.base.internal;
+
+import org.jspecify.annotations.Nullable;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import static org.bitcoinj.base.internal.Preconditions.checkArgument;
+import static org.bitcoinj.base.internal.Preconditions.checkState;
+
+/**
+ * A hash map using open addressing with linear probing, for keys with well distributed hash codes such as
+ * {@link org.bitcoinj.base.Sha256Hash} or transaction outpoints. Keys and values are kept next to each other in a
+ * single array, so there is no entry object per mapping like in {@link java.util.HashMap}. This makes a mapping cost
+ * about 8 to 16 bytes on top of the key and value themselves, rather than about 40.
+ * <p>
+ * Null keys are not permitted, null values are. Removed mappings leave a marker behind, which is cleaned up the next
+ * time the table is rebuilt. The iteration order is unspecified. Like {@link java.util.HashMap}, this class is not
+ * thread safe and its iterators are fail-fast.
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the values
+ */
+public final class OpenHashMap<K, V> extends AbstractMap<K, V> {
+    // Marks the key of a removed mapping
+    private static final Object REMOVED = new Object();
+    private static final int MIN_CAPACITY = 4;
+
+    // Keys and values, interleaved: the key of slot i is at 2i and its value at 2i + 1. A null key marks a free slot.
+    private Object[] table;
+    // Number of mappings
+    private int size;
+    // Number of slots that aren't free, i.e. mappings and removed markers
+    private int used;
+    private int modCount;
+    @Nullable
+    private Set<Map.Entry<K, V>> entrySet;
+
+    /** Creates an empty map. */
+    public OpenHashMap() {
+        this(0);
+    }
+
+    /**
+     * Creates an empty map that can hold the given number of mappings without being rebuilt.
+     *
+     * @param expectedSize number of mappings expected
+     */
+    public OpenHashMap(int expectedSize) {
+        checkArgument(expectedSize >= 0, () -> "expected size must not be negative: " + expectedSize);
+        this.table = new Object[2 * capacityFor(expectedSize)];
+    }
+
+    // Smallest power of two capacity that holds the given number of slots below the max load of 3/4
+    private static int capacityFor(int slots) {
+        int capacity = MIN_CAPACITY;
+        while (capacity - capacity / 4 < slots + 1)
+            capacity *= 2;
+        return capacity;
+    }
+
+    private int capacity() {
+        return table.length / 2;
+    }
+
+    private static int slot(Object key, int mask) {
+        int h = key.hashCode() * 0x9E3779B9; // spread the bits, as the low ones pick the slot
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    // Returns the slot of the given key, or -1 if there is no mapping for it
+    private int find(Object key) {
+        int mask = capacity() - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            Object k = table[2 * i];
+            if (k == null)
+                return -1;
+            if (k == key || (k != REMOVED && k.equals(key)))
+                return i;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key != null && find(key) >= 0;
+    }
+
+    @Override
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (key == null)
+            return null;
+        int i = find(key);
+        return i >= 0 ? (V) table[2 * i + 1] : null;
+    }
+
+    @Override
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        Objects.requireNonNull(key);
+        int mask = capacity() - 1;
+        int removed = -1;
+        int i = slot(key, mask);
+        for (; ; i = (i + 1) & mask) {
+            Object k = table[2 * i];
+            if (k == null)
+                break;
+            if (k == REMOVED) {
+                if (removed < 0)
+                    removed = i;
+            } else if (k == key || k.equals(key)) {
+                V old = (V) table[2 * i + 1];
+                table[2 * i + 1] = value;
+                return old;
+            }
+        }
+        if (removed >= 0) {
+            i = removed; // reuse the slot
+        } else {
+            used++;
+        }
+        table[2 * i] = key;
+        table[2 * i + 1] = value;
+        size++;
+        modCount++;
+        if (used > capacity() - capacity() / 4)
+            rebuild();
+        return null;
+    }
+
+    @Override
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        if (key == null)
+            return null;
+        int i = find(key);
+        if (i < 0)
+            return null;
+        V old = (V) table[2 * i + 1];
+        removeAt(i);
+        return old;
+    }
+
+    private void removeAt(int i) {
+        int mask = capacity() - 1;
+        if (table[2 * ((i + 1) & mask)] == null) {
+            // No probe sequence continues past this slot, so it can be freed.
+            table[2 * i] = null;
+            used--;
+        } else {
+            table[2 * i] = REMOVED;
+        }
+        table[2 * i + 1] = null;
+        size--;
+        modCount++;
+    }
+
+    // Rebuilds the table without the removed markers, doubling the capacity if it's more than half used by mappings.
+    private void rebuild() {
+        Object[] old = table;
+        int capacity = capacity();
+        table = new Object[2 * (size > capacity / 2 - capacity / 8 ? capacity * 2 : capacity)];
+        int mask = capacity() - 1;
+        for (int j = 0; j < old.length; j += 2) {
+            Object key = old[j];
+            if (key == null || key == REMOVED)
+                continue;
+            int i = slot(key, mask);
+            while (table[2 * i] != null)
+                i = (i + 1) & mask;
+            table[2 * i] = key;
+            table[2 * i + 1] = old[j + 1];
+        }
+        used = size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(table, null);
+        size = 0;
+        used = 0;
+        modCount++;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        int expectedModCount = modCount;
+        Object[] table = this.table;
+        for (int j = 0; j < table.length; j += 2) {
+            Object key = table[j];
+            if (key != null && key != REMOVED)
+                action.accept((K) key, (V) table[j + 1]);
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        if (entrySet == null)
+            entrySet = new EntrySet();
+        return entrySet;
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            OpenHashMap.this.clear();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            Object key = entry.getKey();
+            if (key == null)
+                return false;
+            int i = find(key);
+            return i >= 0 && Objects.equals(table[2 * i + 1], entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!contains(o))
+                return false;
+            OpenHashMap.this.remove(((Map.Entry<?, ?>) o).getKey());
+            return true;
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        // Slot of the next mapping, or the capacity if there is none
+        private int next = -1;
+        // Slot of the mapping last returned, or -1
+        private int last = -1;
+        private int expectedModCount = modCount;
+
+        EntryIterator() {
+            advance();
+        }
+
+        private void advance() {
+            do {
+                next++;
+            } while (next < capacity() && (table[2 * next] == null || table[2 * next] == REMOVED));
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < capacity();
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (!hasNext())
+                throw new NoSuchElementException();
+            last = next;
+            advance();
+            return new Entry(last);
+        }
+
+        @Override
+        public void remove() {
+            checkState(last >= 0);
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            // Removing never moves other mappings, so the iteration can carry on.
+            removeAt(last);
+            last = -1;
+            expectedModCount = modCount;
+        }
+    }
+
+    // A mapping, which writes through to the table
+    private final class Entry extends AbstractMap.SimpleEntry<K, V> {
+        private final int slot;
+
+        @SuppressWarnings("unchecked")
+        Entry(int slot) {
+            super((K) table[2 * slot], (V) table[2 * slot + 1]);
+            this.slot = slot;
+        }
+
+        @Override
+        public V setValue(V value) {
+            Object[] table = OpenHashMap.this.table;
+            if (table[2 * slot] != getKey())
+                throw new ConcurrentModificationException();
+            table[2 * slot + 1] = value;
+            return super.setValue(value);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.base.internal;
+
+import org.jspecify.annotations.Nullable;
+
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+/**
+ * Serializes into a heap buffer that is reused by the calling thread, and grows as needed. This allows serializing in
+ * a single pass, without calculating the size first and without allocating a buffer of that size each time.
+ * <p>
+ * The writer is given a buffer to write into. If it runs out of space, the buffer is replaced by a larger one and the
+ * writer is called again, so it must not have any effect other than writing to the buffer. As the buffer is kept,
+ * this only happens while it grows to the size of the largest message written by the thread, up to
+ * {@link #MAX_POOLED_CAPACITY}. Larger messages run out of space every time, so if their size can be calculated, pass
+ * it to {@link #write(Consumer, IntSupplier, Reader)}. The writer is then called at most twice: once with the pooled
+ * buffer and, if that runs out of space, once with a buffer of exactly the calculated size.
+ * <p>
+ * The written bytes can only be used within the reader, as the buffer is reused afterwards. Nested calls, e.g. from
+ * within a writer or a reader, work but use a buffer of their own.
+ */
+public final class PooledWriter {
+    /** Initial capacity of the buffer of each thread. */
+    static final int INITIAL_CAPACITY = 1024;
+    /** Buffers larger than this aren't kept after use, so that a thread doesn't hold on to too much memory. */
+    static final int MAX_POOLED_CAPACITY = 1024 * 1024;
+
+    private static final ThreadLocal<Pool> POOL = ThreadLocal.withInitial(Pool::new);
+
+    private static final class Pool {
+        ByteBuffer buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+        boolean inUse = false;
+    }
+
+    /**
+     * Reads the bytes written by a writer.
+     *
+     * @param <R> type of the result
+     * @param <X> type of exception thrown by the reader
+     */
+    @FunctionalInterface
+    public interface Reader<R, X extends Exception> {
+        /**
+         * Reads the written bytes.
+         *
+         * @param buf buffer with the written bytes between position 0 and the limit, backed by an array with an
+         *            offset of 0
+         * @return result
+         */
+        R read(ByteBuffer buf) throws X;
+    }
+
+    private PooledWriter() {
+    }
+
+    /**
+     * Calls the given writer with a reused buffer, and then the given reader with the written bytes.
+     *
+     * @param writer writes into the buffer it is given, see the class description
+     * @param reader reads the written bytes, which are only valid until the reader returns
+     * @return the result of the reader
+     * @throws X if the reader throws
+     */
+    public static <R, X extends Exception> R write(Consumer<ByteBuffer> writer, Reader<R, X> reader) throws X {
+        return write(writer, null, reader);
+    }
+
+    /**
+     * Calls the given writer with a reused buffer, and then the given reader with the written bytes. If the buffer runs
+     * out of space, the size is calculated to replace it with a buffer of the right size, rather than growing it
+     * step by step.
+     *
+     * @param writer writes into the buffer it is given, see the class description
+     * @param size calculates the number of bytes the writer writes, only called if the buffer runs out of space
+     * @param reader reads the written bytes, which are only valid until the reader returns
+     * @return the result of the reader
+     * @throws X if the reader throws
+     */
+    public static <R, X extends Exception> R write(Consumer<ByteBuffer> writer, @Nullable IntSupplier size,
+                                                   Reader<R, X> reader) throws X {
+        Pool pool = POOL.get();
+        boolean pooled = !pool.inUse;
+        ByteBuffer buf = pooled ? pool.buffer : ByteBuffer.allocate(INITIAL_CAPACITY);
+        pool.inUse = true;
+        try {
+            while (true) {
+                ((Buffer) buf).clear();
+                try {
+                    writer.accept(buf);
+                    break;
+                } catch (BufferOverflowException x) {
+                    if (buf.capacity() > Integer.MAX_VALUE / 4)
+                        throw x;
+                    // Use the calculated size once. Should it be too small, fall back to doubling.
+                    int capacity = size != null ? size.getAsInt() : 0;
+                    size = null;
+                    buf = ByteBuffer.allocate(capacity > buf.capacity() ? capacity : buf.capacity() * 2);
+                }
+            }
+            ((Buffer) buf).flip();
+            return reader.read(buf);
+        } finally {
+            if (pooled) {
+                pool.inUse = false;
+                if (buf.capacity() <= MAX_POOLED_CAPACITY)
+                    pool.buffer = buf;
+            }
+        }
+    }
+
+    /**
+     * Calls the given writer with a reused buffer and returns a copy of the written bytes.
+     *
+     * @param writer writes into the buffer it is given, see the class description
+     * @return the written bytes
+     */
+    public static byte[] toByteArray(Consumer<ByteBuffer> writer) {
+        return write(writer, buf -> Arrays.copyOf(buf.array(), buf.limit()));
+    }
+}
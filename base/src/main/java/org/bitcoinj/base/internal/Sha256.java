@@ -0,0 +1,184 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.base.internal;
+
+import org.bitcoinj.base.Sha256Hash;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.bitcoinj.base.internal.Preconditions.checkArgument;
+
+/**
+ * An incremental SHA-256 hash whose intermediate state, the midstate, can be saved and resumed any number of times via
+ * {@link #copy()}. This allows hashing many messages that share a prefix without hashing the prefix again, for
+ * example the tagged hashes of BIP340, see {@link #tagged(String)}, or the headers of a block being solved with
+ * different nonces. Hashes can be written into a caller supplied array, so that finishing a hash doesn't allocate.
+ * <p>
+ * This is based on the JDK digest, as returned by {@link Sha256Hash#newDigest()}, which uses the SHA instructions of
+ * the CPU if there are any. The midstate is the state of that digest, so it can't be exported as words.
+ * <p>
+ * Instances are not thread safe.
+ */
+public final class Sha256 {
+    /** Size of a block of the compression function, in bytes. */
+    public static final int BLOCK_LENGTH = 64;
+
+    // Midstates after the prefix SHA256(tag) || SHA256(tag), by tag
+    private static final Map<String, Sha256> TAGGED = new ConcurrentHashMap<>();
+    // For hashTwice()
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(Sha256Hash::newDigest);
+
+    private final MessageDigest digest;
+
+    /** Creates an instance in the initial state. */
+    public Sha256() {
+        this(Sha256Hash.newDigest());
+    }
+
+    private Sha256(MessageDigest digest) {
+        this.digest = digest;
+    }
+
+    /**
+     * Returns an instance that has already hashed the prefix of the BIP340 tagged hash with the given tag, which is
+     * {@code SHA256(tag) || SHA256(tag)}. The midstate after the prefix is calculated once per tag and then reused.
+     *
+     * @param tag tag of the hash, e.g. {@code "TapLeaf"}
+     * @return instance ready to hash the message
+     */
+    public static Sha256 tagged(String tag) {
+        return TAGGED.computeIfAbsent(tag, t -> {
+            byte[] tagHash = Sha256Hash.hash(t.getBytes(StandardCharsets.UTF_8));
+            return new Sha256().update(tagHash).update(tagHash);
+        }).copy();
+    }
+
+    /**
+     * Calculates the SHA-256 hash of the given byte range, and then hashes the resulting hash again, writing the
+     * result into the given array. This doesn't allocate.
+     *
+     * @param input the array containing the bytes to hash
+     * @param offset the offset within the array of the bytes to hash
+     * @param length the number of bytes to hash
+     * @param output the array to write the double-hash (in big-endian order) to
+     * @param outputOffset the offset within the output array to write at
+     */
+    public static void hashTwice(byte[] input, int offset, int length, byte[] output, int outputOffset) {
+        checkArgument(outputOffset >= 0 && outputOffset + Sha256Hash.LENGTH <= output.length, () ->
+                "invalid output offset: " + outputOffset);
+        MessageDigest digest = DIGEST.get();
+        digest.update(input, offset, length);
+        digestTwice(digest, output, outputOffset);
+    }
+
+    /**
+     * Returns an independent copy of this instance, which continues from the current midstate. This instance can
+     * still be used and isn't affected by the copy.
+     *
+     * @return copy of this instance
+     */
+    public Sha256 copy() {
+        try {
+            return new Sha256((MessageDigest) digest.clone());
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException(e); // Built-in SHA256 implementation is Cloneable, this should never happen.
+        }
+    }
+
+    /** Resets this instance to the initial state. */
+    public Sha256 reset() {
+        digest.reset();
+        return this;
+    }
+
+    /** Hashes the given byte. */
+    public Sha256 update(byte input) {
+        digest.update(input);
+        return this;
+    }
+
+    /** Hashes the given bytes. */
+    public Sha256 update(byte[] input) {
+        digest.update(input);
+        return this;
+    }
+
+    /** Hashes the given byte range. */
+    public Sha256 update(byte[] input, int offset, int length) {
+        digest.update(input, offset, length);
+        return this;
+    }
+
+    /** Hashes the remaining bytes of the given buffer. */
+    public Sha256 update(ByteBuffer input) {
+        digest.update(input);
+        return this;
+    }
+
+    /**
+     * Finishes the hash and resets this instance to the initial state.
+     *
+     * @return the hash (in big-endian order)
+     */
+    public byte[] digest() {
+        return digest.digest();
+    }
+
+    /**
+     * Finishes the hash, writing it into the given array, and resets this instance to the initial state.
+     *
+     * @param output the array to write the hash (in big-endian order) to
+     * @param offset the offset within the output array to write at
+     */
+    public void digest(byte[] output, int offset) {
+        checkArgument(offset >= 0 && offset + Sha256Hash.LENGTH <= output.length, () ->
+                "invalid offset: " + offset);
+        digest(digest, output, offset);
+    }
+
+    /**
+     * Finishes the hash, hashes the result again, writing it into the given array, and resets this instance to the
+     * initial state.
+     *
+     * @param output the array to write the double-hash (in big-endian order) to
+     * @param offset the offset within the output array to write at
+     */
+    public void digestTwice(byte[] output, int offset) {
+        checkArgument(offset >= 0 && offset + Sha256Hash.LENGTH <= output.length, () ->
+                "invalid offset: " + offset);
+        digestTwice(digest, output, offset);
+    }
+
+    private static void digestTwice(MessageDigest digest, byte[] output, int offset) {
+        digest(digest, output, offset);
+        digest.update(output, offset, Sha256Hash.LENGTH);
+        digest(digest, output, offset);
+    }
+
+    private static void digest(MessageDigest digest, byte[] output, int offset) {
+        try {
+            digest.digest(output, offset, Sha256Hash.LENGTH);
+        } catch (DigestException e) {
+            throw new RuntimeException(e); // Cannot happen.
+        }
+    }
+}
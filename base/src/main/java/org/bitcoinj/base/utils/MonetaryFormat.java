@@ -20,7 +20,6 @@ import org.bitcoinj.base.Coin;
 import org.bitcoinj.base.Monetary;
 import org.jspecify.annotations.Nullable;
 
-import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.text.DecimalFormatSymbols;
 import java.util.ArrayList;
@@ -42,6 +41,11 @@ import static org.bitcoinj.base.internal.Preconditions.checkState;
  * must store and use the new instance it returns, instead. Instances are thread safe, so they may be stored safely as
  * static constants.
  * </p>
+ *
+ * <p>
+ * Formatting and parsing only use long arithmetic. For high rates of values, {@link #format(Monetary, StringBuilder)}
+ * and {@link #parse(CharSequence, int, int)} avoid creating intermediate strings.
+ * </p>
  */
 public final class MonetaryFormat {
 
@@ -85,8 +89,16 @@ public final class MonetaryFormat {
     private final String @Nullable[] codes;
     private final char codeSeparator;
     private final boolean codePrefixed;
-
-    private static final String DECIMALS_PADDING = "0000000000000000"; // a few more than necessary for Bitcoin
+    // maximum number of decimals that can be visible in the formatted string (if all decimal groups were to be used)
+    private final int maxVisibleDecimals;
+
+    // powers of ten that fit into a long
+    private static final long[] POWERS_OF_TEN = new long[19];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
 
     /**
      * Set character to prefix negative values.
@@ -340,6 +352,7 @@ public final class MonetaryFormat {
         this.codes[8] = useSymbol ? SYMBOL_SAT : CODE_SAT;
         this.codeSeparator = ' ';
         this.codePrefixed = true;
+        this.maxVisibleDecimals = minDecimals;
     }
 
     private MonetaryFormat(char negativeSign, char positiveSign, char zeroDigit, char decimalMark, int minDecimals,
@@ -356,156 +369,259 @@ public final class MonetaryFormat {
         this.codes = codes;
         this.codeSeparator = codeSeparator;
         this.codePrefixed = codePrefixed;
+        int max = minDecimals;
+        if (decimalGroups != null)
+            for (int group : decimalGroups)
+                max += group;
+        this.maxVisibleDecimals = max;
     }
 
     /**
      * Format the given monetary value to a human-readable form.
      */
     public CharSequence format(Monetary monetary) {
-        // determine maximum number of decimals that can be visible in the formatted string
-        // (if all decimal groups were to be used)
-        int max = minDecimals;
-        if (decimalGroups != null)
-            for (int group : decimalGroups)
-                max += group;
-        final int maxVisibleDecimals = max;
+        return format(monetary, new StringBuilder());
+    }
 
+    /**
+     * Format the given monetary value to a human-readable form, appending it to the given builder. The result is the
+     * same as that of {@link #format(Monetary)}, but no intermediate objects are created. This makes it suitable for
+     * formatting many values into a reused builder.
+     *
+     * @param monetary value to format
+     * @param builder builder to append to
+     * @return the given builder
+     */
+    public StringBuilder format(Monetary monetary, StringBuilder builder) {
         int smallestUnitExponent = monetary.smallestUnitExponent();
         checkState(maxVisibleDecimals <= smallestUnitExponent, () ->
                 "maxVisibleDecimals cannot exceed " + smallestUnitExponent + ": " + maxVisibleDecimals);
-
-        // convert to decimal
-        long satoshis = Math.abs(monetary.getValue());
         int decimalShift = smallestUnitExponent - shift;
-        DecimalNumber decimal = satoshisToDecimal(satoshis, roundingMode, decimalShift, maxVisibleDecimals);
-        long numbers = decimal.numbers;
-        long decimals = decimal.decimals;
+        checkState(decimalShift < POWERS_OF_TEN.length, () ->
+                "shift too small: " + shift);
+        String code = code();
+
+        // Split into numbers and decimals, rounding off decimals that can't be visible. This works on the negated
+        // magnitude, so that even Long.MIN_VALUE can be represented.
+        long value = monetary.getValue();
+        long negated = value < 0 ? value : -value;
+        long numbers;
+        long decimals;
+        if (decimalShift <= 0) {
+            numbers = negated;
+            for (int i = decimalShift; i < 0; i++)
+                numbers = Math.multiplyExact(numbers, 10);
+            decimals = 0;
+        } else if (maxVisibleDecimals < decimalShift) {
+            long divisor = POWERS_OF_TEN[decimalShift - maxVisibleDecimals];
+            long rounded = round(negated / divisor, negated % divisor, divisor);
+            numbers = rounded / POWERS_OF_TEN[maxVisibleDecimals];
+            decimals = rounded % POWERS_OF_TEN[maxVisibleDecimals] * divisor;
+        } else {
+            numbers = negated / POWERS_OF_TEN[decimalShift];
+            decimals = negated % POWERS_OF_TEN[decimalShift];
+        }
 
-        // formatting
-        String decimalsStr = decimalShift > 0 ? String.format(Locale.US,
-                "%0" + Integer.toString(decimalShift) + "d", decimals) : "";
-        StringBuilder str = new StringBuilder(decimalsStr);
-        while (str.length() > minDecimals && str.charAt(str.length() - 1) == '0')
-            str.setLength(str.length() - 1); // trim trailing zero
-        int i = minDecimals;
+        // trim trailing zeros, then pad to the end of the decimal group they end in
+        int trimmedLength = Math.max(decimalShift, 0);
+        while (trimmedLength > minDecimals && trimmedLength > 0 && decimals % 10 == 0) {
+            decimals /= 10;
+            trimmedLength--;
+        }
+        int length = trimmedLength;
         if (decimalGroups != null) {
+            int i = minDecimals;
             for (int group : decimalGroups) {
-                if (str.length() > i && str.length() < i + group) {
-                    while (str.length() < i + group)
-                        str.append('0');
+                if (trimmedLength > i && trimmedLength < i + group) {
+                    length = i + group;
                     break;
                 }
                 i += group;
             }
         }
-        if (str.length() > 0)
-            str.insert(0, decimalMark);
-        str.insert(0, numbers);
-        if (monetary.getValue() < 0)
-            str.insert(0, negativeSign);
+
+        // formatting
+        int start = builder.length();
+        if (code != null && codePrefixed)
+            builder.append(code).append(codeSeparator);
+        if (value < 0)
+            builder.append(negativeSign);
         else if (positiveSign != 0)
-            str.insert(0, positiveSign);
-        if (codes != null) {
-            if (codePrefixed) {
-                str.insert(0, codeSeparator);
-                str.insert(0, code());
-            } else {
-                str.append(codeSeparator);
-                str.append(code());
-            }
+            builder.append(positiveSign);
+        appendDigits(builder, numbers, 1);
+        if (length > 0) {
+            builder.append(decimalMark);
+            appendDigits(builder, decimals, trimmedLength);
+            for (int i = trimmedLength; i < length; i++)
+                builder.append('0');
         }
+        if (code != null && !codePrefixed)
+            builder.append(codeSeparator).append(code);
 
         // Convert to non-arabic digits.
         if (zeroDigit != '0') {
             int offset = zeroDigit - '0';
-            for (int d = 0; d < str.length(); d++) {
-                char c = str.charAt(d);
+            for (int d = start; d < builder.length(); d++) {
+                char c = builder.charAt(d);
                 if (Character.isDigit(c))
-                    str.setCharAt(d, (char) (c + offset));
+                    builder.setCharAt(d, (char) (c + offset));
             }
         }
-        return str;
+        return builder;
     }
 
     /**
-     * Convert a long number of satoshis to a decimal number of BTC
-     * @param satoshis number of satoshis
-     * @param roundingMode rounding mode
-     * @param decimalShift the number of places to move the decimal point to the left,
-     *                     coming from smallest unit (e.g. satoshi)
-     * @param maxVisibleDecimals the maximum number of decimals that can be visible in the formatted string
-     * @return private class with two longs
+     * Round a quotient of a negated magnitude according to the rounding mode, given the remainder of the division.
+     * @param quotient quotient, not positive
+     * @param remainder remainder, not positive
+     * @param divisor divisor, positive
+     * @return rounded quotient, not positive
      */
-    private static DecimalNumber satoshisToDecimal(long satoshis, RoundingMode roundingMode, int decimalShift,
-                                                   int maxVisibleDecimals) {
-        BigDecimal decimalSats = BigDecimal.valueOf(satoshis);
-        // shift the decimal point
-        decimalSats = decimalSats.movePointLeft(decimalShift);
-        // discard unwanted precision and round accordingly
-        decimalSats = decimalSats.setScale(maxVisibleDecimals, roundingMode);
-        // separate decimals from the number
-        BigDecimal[] separated = decimalSats.divideAndRemainder(BigDecimal.ONE);
-        return new DecimalNumber(
-                separated[0].longValue(),
-                separated[1].movePointRight(decimalShift).longValue()
-        );
+    private long round(long quotient, long remainder, long divisor) {
+        if (remainder == 0)
+            return quotient;
+        long twice = -2 * remainder;
+        boolean away;
+        switch (roundingMode) {
+            case UP:
+            case CEILING:
+                away = true;
+                break;
+            case DOWN:
+            case FLOOR:
+                away = false;
+                break;
+            case HALF_UP:
+                away = twice >= divisor;
+                break;
+            case HALF_DOWN:
+                away = twice > divisor;
+                break;
+            case HALF_EVEN:
+                away = twice > divisor || (twice == divisor && quotient % 2 != 0);
+                break;
+            default:
+                throw new ArithmeticException("Rounding necessary");
+        }
+        return away ? quotient - 1 : quotient;
     }
 
-    private static class DecimalNumber {
-        final long numbers;
-        final long decimals;
-
-        private DecimalNumber(long numbers, long decimals) {
-            this.numbers = numbers;
-            this.decimals = decimals;
+    /**
+     * Append the digits of a negated magnitude, padded with leading zeros to the given length.
+     * @param builder builder to append to
+     * @param negated negated magnitude, not positive
+     * @param minLength minimum number of digits
+     */
+    private static void appendDigits(StringBuilder builder, long negated, int minLength) {
+        int length = 1;
+        for (long n = negated / 10; n != 0; n /= 10)
+            length++;
+        length = Math.max(length, minLength);
+        int end = builder.length() + length;
+        builder.setLength(end);
+        for (int i = end - 1; i >= end - length; i--) {
+            builder.setCharAt(i, (char) ('0' - negated % 10));
+            negated /= 10;
         }
     }
 
     /**
      * Parse a human-readable coin value to a {@link Coin} instance.
-     * 
+     *
      * @throws NumberFormatException
      *             if the string cannot be parsed for some reason
      */
     public Coin parse(String str) throws NumberFormatException {
-        return Coin.valueOf(parseValue(str, Coin.SMALLEST_UNIT_EXPONENT));
+        return parse(str, 0, str.length());
+    }
+
+    /**
+     * Parse a range of characters containing a human-readable coin value to a {@link Coin} instance. No intermediate
+     * objects are created, so values can be parsed right out of a larger buffer.
+     *
+     * @param str characters to parse from
+     * @param start index of the first character of the value
+     * @param end index after the last character of the value
+     * @throws NumberFormatException
+     *             if the value cannot be parsed for some reason
+     */
+    public Coin parse(CharSequence str, int start, int end) throws NumberFormatException {
+        return Coin.valueOf(parseValue(str, start, end, Coin.SMALLEST_UNIT_EXPONENT));
     }
 
     /**
      * Parse a human-readable fiat value to a {@link Fiat} instance.
-     * 
+     *
      * @throws NumberFormatException
      *             if the string cannot be parsed for some reason
      */
     public Fiat parseFiat(String currencyCode, String str) throws NumberFormatException {
-        return Fiat.valueOf(currencyCode, parseValue(str, Fiat.SMALLEST_UNIT_EXPONENT));
+        return parseFiat(currencyCode, str, 0, str.length());
+    }
+
+    /**
+     * Parse a range of characters containing a human-readable fiat value to a {@link Fiat} instance. No intermediate
+     * objects are created, so values can be parsed right out of a larger buffer.
+     *
+     * @param currencyCode currency code of the value
+     * @param str characters to parse from
+     * @param start index of the first character of the value
+     * @param end index after the last character of the value
+     * @throws NumberFormatException
+     *             if the value cannot be parsed for some reason
+     */
+    public Fiat parseFiat(String currencyCode, CharSequence str, int start, int end) throws NumberFormatException {
+        return Fiat.valueOf(currencyCode, parseValue(str, start, end, Fiat.SMALLEST_UNIT_EXPONENT));
     }
 
-    private long parseValue(String str, int smallestUnitExponent) {
-        checkState(DECIMALS_PADDING.length() >= smallestUnitExponent, () ->
-                "smallestUnitExponent can't be higher than " + DECIMALS_PADDING.length() + ": " + smallestUnitExponent);
-        if (str.isEmpty())
+    private long parseValue(CharSequence str, int start, int end, int smallestUnitExponent) {
+        if (start < 0 || start > end || end > str.length())
+            throw new IndexOutOfBoundsException("range [" + start + ", " + end + ") out of bounds for length " +
+                    str.length());
+        int decimalShift = smallestUnitExponent - shift;
+        checkState(decimalShift >= 0, () ->
+                "shift cannot exceed " + smallestUnitExponent + ": " + shift);
+        if (start == end)
             throw new NumberFormatException("empty string");
-        char first = str.charAt(0);
+        char first = str.charAt(start);
         if (first == negativeSign || first == positiveSign)
-            str = str.substring(1);
-        String numbers;
-        String decimals;
-        int decimalMarkIndex = str.indexOf(decimalMark);
-        if (decimalMarkIndex != -1) {
-            numbers = str.substring(0, decimalMarkIndex);
-            decimals = (str + DECIMALS_PADDING).substring(decimalMarkIndex + 1);
-            if (decimals.indexOf(decimalMark) != -1)
-                throw new NumberFormatException("more than one decimal mark");
-        } else {
-            numbers = str;
-            decimals = DECIMALS_PADDING;
+            start++;
+        int decimalMarkIndex = -1;
+        for (int i = start; i < end; i++) {
+            if (str.charAt(i) == decimalMark) {
+                if (decimalMarkIndex != -1)
+                    throw new NumberFormatException("more than one decimal mark");
+                decimalMarkIndex = i;
+            }
         }
-        String satoshis = numbers + decimals.substring(0, smallestUnitExponent - shift);
-        for (char c : satoshis.toCharArray())
+        // Decimals beyond the smallest unit are ignored, without even being checked. Missing ones are zeros.
+        int numbersEnd = decimalMarkIndex != -1 ? decimalMarkIndex : end;
+        int decimalsEnd = decimalMarkIndex != -1 ? Math.min(end, decimalMarkIndex + 1 + decimalShift) : end;
+        int missingDecimals = decimalShift - Math.max(decimalsEnd - numbersEnd - 1, 0);
+        if (numbersEnd == start && decimalShift == 0)
+            throw new NumberFormatException("no digits");
+        long value = 0;
+        boolean overflow = false;
+        for (int i = start; i < decimalsEnd; i++) {
+            if (i == numbersEnd)
+                continue; // decimal mark
+            char c = str.charAt(i);
             if (!Character.isDigit(c))
                 throw new NumberFormatException("illegal character: " + c);
-        long value = Long.parseLong(satoshis); // Non-arabic digits allowed here.
+            int digit = c >= '0' && c <= '9' ? c - '0' : Character.digit(c, 10); // Non-arabic digits allowed here.
+            if (overflow || value > (Long.MAX_VALUE - digit) / 10)
+                overflow = true;
+            else
+                value = value * 10 + digit;
+        }
+        for (int i = 0; i < missingDecimals && !overflow; i++) {
+            if (value > Long.MAX_VALUE / 10)
+                overflow = true;
+            else
+                value *= 10;
+        }
+        if (overflow)
+            throw new NumberFormatException("out of range: " + str.subSequence(start, end));
         if (first == negativeSign)
             value = -value;
         return value;
@@ -24,6 +24,7 @@ import org.junit.runners.Parameterized;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Random;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
@@ -60,6 +61,19 @@ public class Base58DecodeTest {
         assertEquals(0, Base58.decode("").length);
     }
 
+    @Test
+    public void testDecode_roundTrip() {
+        Random random = new Random(input.hashCode());
+        for (int i = 0; i < 1000; i++) {
+            byte[] bytes = new byte[random.nextInt(80)];
+            random.nextBytes(bytes);
+            // some leading zeros
+            for (int j = 0; j < bytes.length && random.nextInt(4) == 0; j++)
+                bytes[j] = 0;
+            assertArrayEquals(bytes, Base58.decode(Base58.encode(bytes)));
+        }
+    }
+
     @Test(expected = AddressFormatException.class)
     public void testDecode_invalidBase58() {
         Base58.decode("This isn't valid base58");
@@ -0,0 +1,149 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.base;
+
+import org.bitcoinj.base.BatchAddressParser.ErrorCode;
+import org.bitcoinj.base.BatchAddressParser.Result;
+import org.bitcoinj.base.exceptions.AddressFormatException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BatchAddressParserTest {
+    private static final List<String> INVALID = Arrays.asList(
+            "", "1", "1111", "0OIl", "17kzeh4N8g49GFvdDzSf8PjaPfyoD1MndM", "bc1rw5uspcuh",
+            "bc10w508d6qejxtdg4y5r3zarvary0c5xw7kw508d6qejxtdg4y5r3zarvary0c5xw7kw5rljs90",
+            "bc1pqypqzqspqgqsyqgzqypqzqspqgqsyqgzzezy58", "bc1zw508d6qejxtdg4y5r3zarvaryvg6kdaj",
+            "BC1QW508D6QEJXTDG4Y5R3ZARVARY0C5XW7Kv8f3t4", "tc1qw508d6qejxtdg4y5r3zarvary0c5xw7kg3g4ty",
+            "bc1qw508d6qejxtdg4y5r3zarvary0c5xw7kv8f3t5", "bc1gmk9yu", "bc1q9zpgru");
+
+    @Test
+    public void parse() {
+        BatchAddressParser parser = BatchAddressParser.forKnownNetworks();
+        Result valid = parser.parse("17kzeh4N8g49GFvdDzSf8PjaPfyoD1MndL");
+        assertTrue(valid.isValid());
+        assertEquals(BitcoinNetwork.MAINNET, valid.address().network());
+        assertNull(valid.error());
+        Result invalid = parser.parse("17kzeh4N8g49GFvdDzSf8PjaPfyoD1MndM");
+        assertFalse(invalid.isValid());
+        assertNull(invalid.address());
+        assertEquals(ErrorCode.INVALID_CHECKSUM, parser.parse("bc1qw508d6qejxtdg4y5r3zarvary0c5xw7kv8f3t5").error());
+        // neither base58 nor bech32
+        assertEquals(ErrorCode.INVALID, BatchAddressParser.forNetwork(BitcoinNetwork.MAINNET)
+                .parse("17kzeh4N8g49GFvdDzSf8PjaPfyoD1MndM").error());
+        assertEquals(ErrorCode.WRONG_NETWORK, BatchAddressParser.forNetwork(BitcoinNetwork.TESTNET)
+                .parse("17kzeh4N8g49GFvdDzSf8PjaPfyoD1MndL").error());
+    }
+
+    @Test
+    public void parseList() {
+        List<String> corpus = corpus(new Random(1));
+        List<Result> results = BatchAddressParser.forKnownNetworks().parse(corpus);
+        assertEquals(corpus.size(), results.size());
+        for (int i = 0; i < corpus.size(); i++)
+            assertEquals(corpus.get(i), results.get(i).input());
+        assertEquals(results, BatchAddressParser.forKnownNetworks().parse(corpus.stream())
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void sameAsAddressParser() {
+        List<String> corpus = corpus(new Random(2));
+        assertSameAsAddressParser(AddressParser.getDefault(), BatchAddressParser.forKnownNetworks(), corpus);
+        for (BitcoinNetwork network : BitcoinNetwork.values())
+            assertSameAsAddressParser(AddressParser.getDefault(network), BatchAddressParser.forNetwork(network),
+                    corpus);
+    }
+
+    private static void assertSameAsAddressParser(AddressParser expectedParser, BatchAddressParser parser,
+                                                  List<String> corpus) {
+        List<Result> results = parser.parse(corpus);
+        for (Result result : results) {
+            Address expected = null;
+            ErrorCode expectedError = null;
+            try {
+                expected = expectedParser.parseAddress(result.input());
+            } catch (AddressFormatException x) {
+                expectedError = errorCode(x);
+            }
+            assertEquals(result.input(), expected, result.address());
+            assertEquals(result.input(), expectedError, result.error());
+        }
+    }
+
+    private static ErrorCode errorCode(AddressFormatException x) {
+        if (x instanceof AddressFormatException.InvalidCharacter)
+            return ErrorCode.INVALID_CHARACTER;
+        if (x instanceof AddressFormatException.InvalidDataLength)
+            return ErrorCode.INVALID_DATA_LENGTH;
+        if (x instanceof AddressFormatException.InvalidChecksum)
+            return ErrorCode.INVALID_CHECKSUM;
+        if (x instanceof AddressFormatException.UnexpectedWitnessVersion)
+            return ErrorCode.UNEXPECTED_WITNESS_VERSION;
+        if (x instanceof AddressFormatException.WrongNetwork)
+            return ErrorCode.WRONG_NETWORK;
+        if (x instanceof AddressFormatException.InvalidPrefix)
+            return ErrorCode.INVALID_PREFIX;
+        return ErrorCode.INVALID;
+    }
+
+    // Valid addresses of all types and networks, mutations of them, and some invalid strings
+    private static List<String> corpus(Random random) {
+        List<String> valid = new ArrayList<>();
+        for (BitcoinNetwork network : BitcoinNetwork.values()) {
+            for (int i = 0; i < 5; i++) {
+                valid.add(LegacyAddress.fromPubKeyHash(network, randomBytes(random, 20)).toString());
+                valid.add(LegacyAddress.fromScriptHash(network, randomBytes(random, 20)).toString());
+                valid.add(SegwitAddress.fromProgram(network, 0, randomBytes(random, 20)).toString());
+                valid.add(SegwitAddress.fromProgram(network, 0, randomBytes(random, 32)).toString());
+                valid.add(SegwitAddress.fromProgram(network, 1, randomBytes(random, 32)).toString());
+                valid.add(SegwitAddress.fromProgram(network, 2 + random.nextInt(15),
+                        randomBytes(random, 2 + random.nextInt(39))).toString());
+            }
+            valid.add(SegwitAddress.fromProgram(network, 1, new byte[] { 0x4e, 0x73 }).toString());
+        }
+        List<String> corpus = new ArrayList<>(valid);
+        corpus.addAll(INVALID);
+        for (String address : valid) {
+            corpus.add(address.toUpperCase(Locale.ROOT));
+            corpus.add(address.substring(0, address.length() - 1));
+            corpus.add(address.substring(1));
+            for (int i = 0; i < 10; i++) {
+                char[] chars = address.toCharArray();
+                chars[random.nextInt(chars.length)] = (char) (32 + random.nextInt(96));
+                corpus.add(new String(chars));
+            }
+        }
+        return corpus;
+    }
+
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.base.internal;
+
+import org.bitcoinj.base.Sha256Hash;
+import org.junit.Test;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OpenHashMapTest {
+    @Test
+    public void randomOperations() {
+        Random random = new Random(42);
+        Sha256Hash[] keys = new Sha256Hash[500];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = Sha256Hash.of(new byte[] { (byte) i, (byte) (i >> 8) });
+        Map<Sha256Hash, Integer> expected = new HashMap<>();
+        Map<Sha256Hash, Integer> map = new OpenHashMap<>();
+        for (int n = 0; n < 100_000; n++) {
+            Sha256Hash key = keys[random.nextInt(keys.length)];
+            int op = random.nextInt(10);
+            if (op < 5)
+                assertEquals(expected.put(key, n), map.put(key, n));
+            else if (op < 8)
+                assertEquals(expected.remove(key), map.remove(key));
+            else
+                assertEquals(expected.get(key), map.get(key));
+            if (n % 10_000 == 0) {
+                // grow and shrink
+                if (random.nextBoolean())
+                    expected.keySet().removeIf(k -> random.nextBoolean());
+                map.keySet().retainAll(expected.keySet());
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        assertEquals(expected, map);
+        assertEquals(map, expected);
+        assertEquals(expected.hashCode(), map.hashCode());
+    }
+
+    @Test
+    public void iteratorRemove() {
+        Map<Sha256Hash, Integer> map = new OpenHashMap<>();
+        for (int i = 0; i < 1000; i++)
+            map.put(Sha256Hash.of(new byte[] { (byte) i, (byte) (i >> 8) }), i);
+        int visited = 0;
+        for (Iterator<Integer> it = map.values().iterator(); it.hasNext(); visited++) {
+            if (it.next() % 2 == 0)
+                it.remove();
+        }
+        assertEquals(1000, visited);
+        assertEquals(500, map.size());
+        map.values().forEach(v -> assertTrue(v % 2 == 1));
+        for (int i = 0; i < 1000; i++)
+            assertEquals(i % 2 == 1, map.containsKey(Sha256Hash.of(new byte[] { (byte) i, (byte) (i >> 8) })));
+    }
+
+    @Test
+    public void entrySetValue() {
+        Map<String, String> map = new OpenHashMap<>();
+        map.put("a", "1");
+        map.entrySet().iterator().next().setValue("2");
+        assertEquals("2", map.get("a"));
+    }
+
+    @Test
+    public void nullValues() {
+        Map<String, String> map = new OpenHashMap<>();
+        assertNull(map.put("a", null));
+        assertTrue(map.containsKey("a"));
+        assertTrue(map.containsValue(null));
+        assertNull(map.get("a"));
+        assertFalse(map.containsKey(null));
+        assertNull(map.get(null));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullKey() {
+        new OpenHashMap<String, String>().put(null, "a");
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void concurrentModification() {
+        Map<String, String> map = new OpenHashMap<>();
+        map.put("a", "1");
+        map.put("b", "2");
+        for (String key : map.keySet())
+            map.put(key + key, "3");
+    }
+}
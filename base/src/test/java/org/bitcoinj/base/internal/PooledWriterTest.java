@@ -0,0 +1,109 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.base.internal;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class PooledWriterTest {
+    @Test
+    public void grows() {
+        Random random = new Random(1);
+        for (int length : new int[] { 0, 10, PooledWriter.INITIAL_CAPACITY, PooledWriter.INITIAL_CAPACITY + 1,
+                PooledWriter.MAX_POOLED_CAPACITY * 2, 10 }) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            assertArrayEquals(bytes, PooledWriter.toByteArray(buf -> buf.put(bytes)));
+        }
+    }
+
+    @Test
+    public void sized() {
+        byte[] bytes = new byte[PooledWriter.MAX_POOLED_CAPACITY * 3];
+        new Random(1).nextBytes(bytes);
+        for (int i = 0; i < 2; i++) {
+            AtomicInteger calls = new AtomicInteger();
+            byte[] result = PooledWriter.write(buf -> {
+                calls.incrementAndGet();
+                buf.put(bytes);
+            }, () -> bytes.length, buf -> {
+                assertEquals(bytes.length, buf.capacity());
+                return Arrays.copyOf(buf.array(), buf.limit());
+            });
+            assertArrayEquals(bytes, result);
+            // once with the pooled buffer, once with one of the calculated size
+            assertEquals(2, calls.get());
+        }
+    }
+
+    @Test
+    public void sizedTooSmall() {
+        byte[] bytes = new byte[PooledWriter.MAX_POOLED_CAPACITY * 3];
+        new Random(1).nextBytes(bytes);
+        byte[] result = PooledWriter.write(buf -> buf.put(bytes), () -> 1,
+                buf -> Arrays.copyOf(buf.array(), buf.limit()));
+        assertArrayEquals(bytes, result);
+    }
+
+    @Test
+    public void reused() {
+        ByteBuffer first = PooledWriter.write(buf -> buf.put((byte) 1), buf -> buf);
+        ByteBuffer second = PooledWriter.write(buf -> buf.put((byte) 2), buf -> buf);
+        assertSame(first, second);
+    }
+
+    @Test
+    public void nested() {
+        byte[] inner = new byte[2000];
+        Arrays.fill(inner, (byte) 2);
+        byte[] result = PooledWriter.write(buf -> buf.put((byte) 1), buf -> {
+            // the inner call must not overwrite the outer bytes
+            byte[] innerResult = PooledWriter.toByteArray(innerBuf -> innerBuf.put(inner));
+            assertArrayEquals(inner, innerResult);
+            return Arrays.copyOf(buf.array(), buf.limit());
+        });
+        assertArrayEquals(new byte[] { 1 }, result);
+    }
+
+    @Test(expected = IOException.class)
+    public void readerThrows() throws IOException {
+        PooledWriter.write(buf -> buf.put((byte) 1), buf -> {
+            throw new IOException();
+        });
+    }
+
+    @Test
+    public void afterReaderThrows() {
+        try {
+            readerThrows();
+        } catch (IOException x) {
+            // expected
+        }
+        assertEquals(1, PooledWriter.toByteArray(buf -> buf.put((byte) 1)).length);
+        ByteBuffer first = PooledWriter.write(buf -> buf.put((byte) 1), buf -> buf);
+        assertSame(first, PooledWriter.write(buf -> buf.put((byte) 2), buf -> buf));
+    }
+}
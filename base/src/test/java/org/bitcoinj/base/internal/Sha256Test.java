@@ -0,0 +1,84 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.base.internal;
+
+import org.bitcoinj.base.Sha256Hash;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class Sha256Test {
+    private static final byte[] MESSAGE = "The quick brown fox jumps over the lazy dog, and then over the lazy cat"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    public void digest() {
+        assertArrayEquals(ByteUtils.parseHex("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855"),
+                new Sha256().digest());
+        assertArrayEquals(Sha256Hash.hash(MESSAGE), new Sha256().update(MESSAGE).digest());
+        byte[] output = new byte[40];
+        Sha256 sha256 = new Sha256().update(MESSAGE[0]).update(MESSAGE, 1, 9).update(ByteBuffer.wrap(MESSAGE, 10,
+                MESSAGE.length - 10));
+        sha256.digest(output, 5);
+        assertArrayEquals(Sha256Hash.hash(MESSAGE), Arrays.copyOfRange(output, 5, 37));
+        // reset after digest
+        assertArrayEquals(Sha256Hash.hash(MESSAGE), sha256.update(MESSAGE).digest());
+    }
+
+    @Test
+    public void copy() {
+        Sha256 prefix = new Sha256().update(MESSAGE, 0, Sha256.BLOCK_LENGTH);
+        for (int i = 0; i < 3; i++) {
+            byte[] hash = prefix.copy().update(MESSAGE, Sha256.BLOCK_LENGTH, MESSAGE.length - Sha256.BLOCK_LENGTH)
+                    .digest();
+            assertArrayEquals(Sha256Hash.hash(MESSAGE), hash);
+        }
+        // not at a block boundary
+        Sha256 partial = new Sha256().update(MESSAGE, 0, 10);
+        Sha256 copy = partial.copy();
+        partial.update(MESSAGE, 10, 5);
+        assertArrayEquals(Sha256Hash.hash(MESSAGE), copy.update(MESSAGE, 10, MESSAGE.length - 10).digest());
+        assertArrayEquals(Sha256Hash.hash(MESSAGE, 0, 15), partial.digest());
+    }
+
+    @Test
+    public void tagged() {
+        byte[] tagHash = Sha256Hash.hash("TapLeaf".getBytes(StandardCharsets.UTF_8));
+        byte[] expected = Sha256Hash.hash(ByteUtils.concat(ByteUtils.concat(tagHash, tagHash), MESSAGE));
+        assertArrayEquals(expected, Sha256.tagged("TapLeaf").update(MESSAGE).digest());
+        // the cached midstate isn't affected by the previous use
+        assertArrayEquals(expected, Sha256.tagged("TapLeaf").update(MESSAGE).digest());
+    }
+
+    @Test
+    public void hashTwice() {
+        byte[] output = new byte[34];
+        Sha256.hashTwice(MESSAGE, 3, 20, output, 2);
+        assertArrayEquals(Sha256Hash.hashTwice(MESSAGE, 3, 20), Arrays.copyOfRange(output, 2, 34));
+        new Sha256().update(MESSAGE, 3, 20).digestTwice(output, 1);
+        assertArrayEquals(Sha256Hash.hashTwice(MESSAGE, 3, 20), Arrays.copyOfRange(output, 1, 33));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void hashTwice_outputTooSmall() {
+        Sha256.hashTwice(MESSAGE, 0, MESSAGE.length, new byte[40], 9);
+    }
+}
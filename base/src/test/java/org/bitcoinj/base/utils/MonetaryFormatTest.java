@@ -20,16 +20,21 @@ import org.bitcoinj.base.BitcoinNetwork;
 import org.bitcoinj.base.utils.Fiat;
 import org.bitcoinj.base.utils.MonetaryFormat;
 import org.bitcoinj.base.Coin;
+import org.bitcoinj.base.Monetary;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.Locale;
+import java.util.Random;
 
 import static org.bitcoinj.base.Coin.CENT;
 import static org.bitcoinj.base.Coin.COIN;
 import static org.bitcoinj.base.Coin.SATOSHI;
 import static org.bitcoinj.base.Coin.ZERO;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 public class MonetaryFormatTest {
 
@@ -381,4 +386,207 @@ public class MonetaryFormatTest {
         MonetaryFormat mf2 = new MonetaryFormat(true);
         assertEquals(mf1.hashCode(), mf2.hashCode());
     }
+
+    @Test
+    public void formatAppends() {
+        StringBuilder builder = new StringBuilder("amount: ");
+        assertEquals("amount: BTC 1.00", MonetaryFormat.BTC.format(Coin.COIN, builder).toString());
+        assertEquals("amount: BTC 1.00, 0.50 EUR",
+                MonetaryFormat.FIAT.code(0, "EUR").postfixCode().format(Fiat.parseFiat("EUR", "0.5"),
+                        builder.append(", ")).toString());
+    }
+
+    @Test
+    public void formatMinValue() {
+        assertEquals("-92233720368.54775808", NO_CODE.format(Coin.valueOf(Long.MIN_VALUE)).toString());
+        assertEquals("-9223372036854775808", MonetaryFormat.SAT.noCode().format(Coin.valueOf(Long.MIN_VALUE)).toString());
+    }
+
+    @Test
+    public void formatRoundingModes() {
+        Coin value = Coin.valueOf(125);
+        MonetaryFormat format = NO_CODE.minDecimals(7).optionalDecimals();
+        assertEquals("0.0000013", format.roundingMode(RoundingMode.UP).format(value).toString());
+        assertEquals("0.0000012", format.roundingMode(RoundingMode.DOWN).format(value).toString());
+        assertEquals("0.0000013", format.roundingMode(RoundingMode.HALF_UP).format(value).toString());
+        assertEquals("0.0000012", format.roundingMode(RoundingMode.HALF_DOWN).format(value).toString());
+        assertEquals("0.0000012", format.roundingMode(RoundingMode.HALF_EVEN).format(value).toString());
+        assertEquals("-0.0000013", format.roundingMode(RoundingMode.CEILING).format(value.negate()).toString());
+        assertEquals("-0.0000012", format.roundingMode(RoundingMode.FLOOR).format(value.negate()).toString());
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void formatRoundingUnnecessary() {
+        NO_CODE.minDecimals(7).optionalDecimals().roundingMode(RoundingMode.UNNECESSARY).format(Coin.valueOf(125));
+    }
+
+    @Test
+    public void formatSameAsReference() {
+        Random random = new Random(42);
+        RoundingMode[] roundingModes = { RoundingMode.UP, RoundingMode.DOWN, RoundingMode.CEILING, RoundingMode.FLOOR,
+                RoundingMode.HALF_UP, RoundingMode.HALF_DOWN, RoundingMode.HALF_EVEN };
+        for (int n = 0; n < 20_000; n++) {
+            boolean fiat = random.nextBoolean();
+            int exponent = fiat ? Fiat.SMALLEST_UNIT_EXPONENT : Coin.SMALLEST_UNIT_EXPONENT;
+            int shift = random.nextInt(9);
+            int minDecimals = random.nextInt(exponent + 1);
+            int[] groups = new int[random.nextInt(4)];
+            int remaining = exponent - minDecimals;
+            for (int i = 0; i < groups.length; i++) {
+                groups[i] = random.nextInt(remaining + 1);
+                remaining -= groups[i];
+            }
+            RoundingMode roundingMode = roundingModes[random.nextInt(roundingModes.length)];
+            char positiveSign = random.nextBoolean() ? '+' : 0;
+            char zeroDigit = random.nextBoolean() ? '0' : '٠';
+            String code = random.nextBoolean() ? "XYZ" : null;
+            boolean codePrefixed = random.nextBoolean();
+            MonetaryFormat format = new MonetaryFormat().shift(shift).minDecimals(minDecimals)
+                    .optionalDecimals(groups).roundingMode(roundingMode).positiveSign(positiveSign).digits(zeroDigit);
+            format = code != null ? format.code(shift, code) : format.noCode();
+            format = codePrefixed ? format.prefixCode() : format.postfixCode();
+            long value;
+            switch (random.nextInt(3)) {
+                case 0: value = random.nextLong(); break;
+                case 1: value = random.nextInt(); break;
+                default: value = random.nextInt(1000) * (long) Math.pow(10, random.nextInt(12)) + random.nextInt(10) - 5;
+            }
+            if (shift > exponent)
+                value /= 100_000_000; // the shifted value has to fit into a long
+            Monetary monetary = fiat ? Fiat.valueOf("EUR", value) : Coin.valueOf(value);
+            String expected = referenceFormat(monetary, shift, minDecimals, groups, roundingMode, positiveSign,
+                    zeroDigit, code, codePrefixed);
+            assertEquals(expected, format.format(monetary).toString());
+        }
+    }
+
+    @Test
+    public void parseRange() {
+        assertEquals(Coin.CENT, NO_CODE.parse("BTC 0.01 BTC", 4, 8));
+        assertEquals(Coin.CENT.negate(), NO_CODE.parse(new StringBuilder("[-.01]"), 1, 5));
+        assertEquals(Fiat.parseFiat("EUR", "-1.5"), NO_CODE.parseFiat("EUR", "x-1.5", 1, 5));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void parseInvalidRange() {
+        NO_CODE.parse("1.0", 2, 1);
+    }
+
+    @Test
+    public void parseSameAsReference() {
+        Random random = new Random(42);
+        String chars = "0123456789.,-+@ ٠١";
+        for (int n = 0; n < 100_000; n++) {
+            StringBuilder str = new StringBuilder();
+            int length = random.nextInt(24);
+            for (int i = 0; i < length; i++)
+                str.append(random.nextInt(4) == 0 ? chars.charAt(random.nextInt(chars.length())) :
+                        (char) ('0' + random.nextInt(10)));
+            int f = random.nextInt(6);
+            int shift = new int[] { 0, 3, 6, 8, 0, 0 }[f];
+            char positiveSign = f == 4 ? '+' : 0;
+            char decimalMark = f == 5 ? ',' : '.';
+            MonetaryFormat format = NO_CODE.shift(shift).positiveSign(positiveSign).decimalMark(decimalMark);
+            boolean fiat = random.nextBoolean();
+            int exponent = fiat ? Fiat.SMALLEST_UNIT_EXPONENT : Coin.SMALLEST_UNIT_EXPONENT;
+            if (shift > exponent)
+                continue;
+            Long expected;
+            try {
+                expected = referenceParseValue(str.toString(), shift, positiveSign, decimalMark, exponent);
+            } catch (NumberFormatException x) {
+                expected = null;
+            }
+            try {
+                long actual = fiat ? format.parseFiat("EUR", str.toString()).getValue() :
+                        format.parse(str.toString()).getValue();
+                assertEquals(str.toString(), expected, (Long) actual);
+            } catch (NumberFormatException x) {
+                if (expected != null)
+                    fail(str + ": " + x);
+            }
+        }
+    }
+
+    // formatting as done before switching to long arithmetic
+    private static String referenceFormat(Monetary monetary, int shift, int minDecimals, int[] decimalGroups,
+            RoundingMode roundingMode, char positiveSign, char zeroDigit, String code, boolean codePrefixed) {
+        int maxVisibleDecimals = minDecimals;
+        for (int group : decimalGroups)
+            maxVisibleDecimals += group;
+        long satoshis = Math.abs(monetary.getValue());
+        int decimalShift = monetary.smallestUnitExponent() - shift;
+        BigDecimal decimalSats = BigDecimal.valueOf(satoshis).movePointLeft(decimalShift)
+                .setScale(maxVisibleDecimals, roundingMode);
+        BigDecimal[] separated = decimalSats.divideAndRemainder(BigDecimal.ONE);
+        long numbers = separated[0].longValue();
+        long decimals = separated[1].movePointRight(decimalShift).longValue();
+        String decimalsStr = decimalShift > 0 ? String.format(Locale.US,
+                "%0" + Integer.toString(decimalShift) + "d", decimals) : "";
+        StringBuilder str = new StringBuilder(decimalsStr);
+        while (str.length() > minDecimals && str.charAt(str.length() - 1) == '0')
+            str.setLength(str.length() - 1);
+        int i = minDecimals;
+        for (int group : decimalGroups) {
+            if (str.length() > i && str.length() < i + group) {
+                while (str.length() < i + group)
+                    str.append('0');
+                break;
+            }
+            i += group;
+        }
+        if (str.length() > 0)
+            str.insert(0, '.');
+        str.insert(0, numbers);
+        if (monetary.getValue() < 0)
+            str.insert(0, '-');
+        else if (positiveSign != 0)
+            str.insert(0, positiveSign);
+        if (code != null) {
+            if (codePrefixed)
+                str.insert(0, code + " ");
+            else
+                str.append(" " + code);
+        }
+        if (zeroDigit != '0') {
+            int offset = zeroDigit - '0';
+            for (int d = 0; d < str.length(); d++) {
+                char c = str.charAt(d);
+                if (Character.isDigit(c))
+                    str.setCharAt(d, (char) (c + offset));
+            }
+        }
+        return str.toString();
+    }
+
+    // parsing as done before switching to long arithmetic
+    private static long referenceParseValue(String str, int shift, char positiveSign, char decimalMark,
+            int smallestUnitExponent) {
+        String padding = "0000000000000000";
+        if (str.isEmpty())
+            throw new NumberFormatException("empty string");
+        char first = str.charAt(0);
+        if (first == '-' || first == positiveSign)
+            str = str.substring(1);
+        String numbers;
+        String decimals;
+        int decimalMarkIndex = str.indexOf(decimalMark);
+        if (decimalMarkIndex != -1) {
+            numbers = str.substring(0, decimalMarkIndex);
+            decimals = (str + padding).substring(decimalMarkIndex + 1);
+            if (decimals.indexOf(decimalMark) != -1)
+                throw new NumberFormatException("more than one decimal mark");
+        } else {
+            numbers = str;
+            decimals = padding;
+        }
+        String satoshis = numbers + decimals.substring(0, smallestUnitExponent - shift);
+        for (char c : satoshis.toCharArray())
+            if (!Character.isDigit(c))
+                throw new NumberFormatException("illegal character: " + c);
+        long value = Long.parseLong(satoshis);
+        if (first == '-')
+            value = -value;
+        return value;
+    }
 }
@@ -21,6 +21,8 @@ import org.bitcoinj.base.BitcoinNetwork;
 import org.bitcoinj.base.Difficulty;
 import org.bitcoinj.base.Network;
 import org.bitcoinj.base.Sha256Hash;
+import org.bitcoinj.base.internal.OpenHashMap;
+import org.bitcoinj.base.internal.PooledWriter;
 import org.bitcoinj.core.listeners.NewBestBlockListener;
 import org.bitcoinj.core.listeners.ReorganizeListener;
 import org.bitcoinj.core.listeners.TransactionReceivedInBlockListener;
@@ -37,9 +39,10 @@ import org.slf4j.LoggerFactory;
 
 import org.jspecify.annotations.Nullable;
 import java.math.BigInteger;
-import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -54,6 +57,8 @@ import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Predicate;
 
@@ -140,6 +145,8 @@ public abstract class AbstractBlockChain {
         final Block block;
         final List<Sha256Hash> filteredTxHashes;
         final Map<Sha256Hash, Transaction> filteredTxn;
+        // Approximate number of bytes held, for limiting the size of the orphan pool
+        final int size;
         OrphanBlock(Block block, @Nullable List<Sha256Hash> filteredTxHashes, @Nullable Map<Sha256Hash, Transaction> filteredTxn) {
             final boolean filtered = filteredTxHashes != null && filteredTxn != null;
             checkArgument((block.isHeaderOnly() && filtered)
@@ -147,11 +154,28 @@ public abstract class AbstractBlockChain {
             this.block = block;
             this.filteredTxHashes = filteredTxHashes;
             this.filteredTxn = filteredTxn;
+            int size = block.messageSize();
+            if (filtered) {
+                size += filteredTxHashes.size() * Sha256Hash.LENGTH;
+                for (Transaction tx : filteredTxn.values())
+                    size += tx.messageSize();
+            }
+            this.size = size;
         }
     }
     // Holds blocks that we have received but can't plug into the chain yet, e.g. because they were created whilst we
-    // were downloading the block chain.
+    // were downloading the block chain. Iteration order is the order of arrival, so the eldest entry is evicted first
+    // when the orphans exceed maxOrphanBlocksSize.
     private final LinkedHashMap<Sha256Hash, OrphanBlock> orphanBlocks = new LinkedHashMap<>();
+    // The same orphan blocks, indexed by the hash of the block they build on.
+    private final Map<Sha256Hash, List<OrphanBlock>> orphanBlocksByPrev = new OpenHashMap<>();
+    private long orphanBlocksSize = 0;
+    private long maxOrphanBlocksSize = MAX_ORPHAN_BLOCKS_SIZE;
+    @Nullable
+    private volatile ForkJoinPool verificationPool = null;
+
+    /** Default limit for the total size of orphan blocks held, in bytes. See {@link #setMaxOrphanBlocksSize(long)}. */
+    public static final long MAX_ORPHAN_BLOCKS_SIZE = 32 * 1024 * 1024;
 
     /** False positive estimation uses a double exponential moving average. */
     public static final double FP_ESTIMATOR_ALPHA = 0.0001;
@@ -164,6 +188,9 @@ public abstract class AbstractBlockChain {
 
     private final VersionTally versionTally;
 
+    // While true, setChainHead() doesn't write the chain head to the block store. See addHeaders().
+    private boolean chainHeadWriteDeferred = false;
+
     /**
      * Constructs a BlockChain connected to the given list of listeners (wallets) and a store.
      * @param network network for this chain
@@ -400,7 +427,7 @@ public abstract class AbstractBlockChain {
      */
     public boolean add(Block block) throws VerificationException, PrunedException {
         try {
-            return add(block, true, null, null);
+            return add(block, true, false, null, null);
         } catch (BlockStoreException e) {
             // TODO: Figure out a better way to propagate this exception to the user.
             throw new RuntimeException(e);
@@ -433,7 +460,8 @@ public abstract class AbstractBlockChain {
             // a false positive, as expected in any Bloom filtering scheme). The filteredTxn list here will usually
             // only be full of data when we are catching up to the head of the chain and thus haven't witnessed any
             // of the transactions.
-            return add(block.getBlockHeader(), true, block.getTransactionHashes(), block.getAssociatedTransactions());
+            return add(block.getBlockHeader(), true, false, block.getTransactionHashes(),
+                    block.getAssociatedTransactions());
         } catch (BlockStoreException e) {
             // TODO: Figure out a better way to propagate this exception to the user.
             throw new RuntimeException(e);
@@ -480,15 +508,117 @@ public abstract class AbstractBlockChain {
      */
     protected abstract TransactionOutputChanges connectTransactions(StoredBlock newBlock) throws VerificationException, BlockStoreException, PrunedException;    
     
+    /**
+     * Processes a batch of consecutive block headers, as received in a {@link HeadersMessage} during fast catchup, and
+     * tries to add them to the chain. The headers are hashed and checked for proof of work and linkage before the
+     * chain lock is taken. If a pool was set with {@link #setVerificationPool(ForkJoinPool)}, they are hashed in
+     * parallel on it. Then they are connected under a single acquisition of the lock. Each header is still put into
+     * the block store as it is connected, but the new chain head is written once for the whole batch rather than for
+     * each header.
+     * <p>
+     * Headers are connected in order until one can't be connected to the chain at this time; the number of headers
+     * connected is returned. If the first header can't be connected, nothing is added and 0 is returned. If a header
+     * fails the checks done before taking the lock, none of the headers are added. If it fails a check that needs the
+     * chain, the headers before it stay connected and the exception is thrown.
+     * @param headers consecutive block headers, each building on the one before
+     * @return number of headers from the start of the list that were connected, which is the size of the list if all
+     *         of them were
+     * @throws VerificationException a header is invalid or the headers don't build on each other
+     * @throws PrunedException a reorg that is too-long for our stored block data has occurred
+     */
+    public int addHeaders(List<Block> headers) throws VerificationException, PrunedException {
+        if (headers.isEmpty())
+            return 0;
+        // Hashing is the expensive part of checking a header, so do it without holding the lock.
+        ForkJoinPool pool = verificationPool;
+        if (pool != null && headers.size() > 1)
+            pool.invoke(new HeaderHashTask(headers, 0, headers.size()));
+        Block prev = null;
+        for (Block header : headers) {
+            if (!header.isHeaderOnly())
+                throw new VerificationException("Not a block header: " + header.getHashAsString());
+            if (prev != null && !header.prevHash().equals(prev.getHash()))
+                throw new VerificationException("Block header " + header.getHashAsString() +
+                        " does not build on the header before it: " + prev.getHashAsString());
+            try {
+                Block.verifyHeader(header);
+            } catch (VerificationException e) {
+                throw new VerificationException("Could not verify block:\n" + header.toString(), e);
+            }
+            prev = header;
+        }
+        lock.lock();
+        try {
+            // Headers can't be kept as orphans, see OrphanBlock.
+            if (getStoredBlockInCurrentScope(headers.get(0).prevHash()) == null)
+                return 0;
+            StoredBlock headBefore = getChainHead();
+            int connected = 0;
+            VerificationException failure = null;
+            chainHeadWriteDeferred = true;
+            try {
+                for (Block header : headers) {
+                    if (!add(header, true, true, null, null))
+                        break;
+                    connected++;
+                }
+            } catch (VerificationException e) {
+                failure = e;
+            } finally {
+                chainHeadWriteDeferred = false;
+            }
+            // Either the head moved, then the headers connected before a failure are kept, or nothing was written.
+            StoredBlock head = getChainHead();
+            if (!head.equals(headBefore))
+                doSetChainHead(head);
+            else if (failure != null)
+                notSettingChainHead();
+            if (failure != null)
+                throw failure;
+            return connected;
+        } catch (BlockStoreException e) {
+            throw new RuntimeException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Hashes a range of headers, splitting it up for the pool.
+    private static final class HeaderHashTask extends RecursiveAction {
+        // Ranges up to this size are hashed without splitting them further
+        private static final int MAX_HEADERS = 256;
+
+        private final List<Block> headers;
+        private final int start;
+        private final int end;
+
+        HeaderHashTask(List<Block> headers, int start, int end) {
+            this.headers = headers;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > MAX_HEADERS) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new HeaderHashTask(headers, start, middle), new HeaderHashTask(headers, middle, end));
+                return;
+            }
+            for (int i = start; i < end; i++)
+                headers.get(i).getHash();
+        }
+    }
+
     // filteredTxHashList contains all transactions, filteredTxn just a subset
-    private boolean add(Block block, boolean tryConnecting,
+    // headerVerified means the header already passed Block.verifyHeader(), see addHeaders()
+    private boolean add(Block block, boolean tryConnecting, boolean headerVerified,
                         @Nullable List<Sha256Hash> filteredTxHashList, @Nullable Map<Sha256Hash, Transaction> filteredTxn)
             throws BlockStoreException, VerificationException, PrunedException {
         // TODO: Use read/write locks to ensure that during chain download properties are still low latency.
         lock.lock();
         try {
-            // Quick check for duplicates to avoid an expensive check further down (in findSplit). This can happen a lot
-            // when connecting orphan transactions due to the dumb brute force algorithm we use.
+            // Quick check for duplicates to avoid an expensive check further down (in findSplit).
             if (block.equals(getChainHead().getHeader())) {
                 return true;
             }
@@ -507,6 +637,8 @@ public abstract class AbstractBlockChain {
             // Check for already-seen block, but only for full pruned mode, where the DB is
             // more likely able to handle these queries quickly.
             if (shouldVerifyTransactions() && blockStore.get(block.getHash()) != null) {
+                if (tryConnecting)
+                    tryConnectingOrphans(block.getHash());
                 return true;
             }
 
@@ -519,7 +651,8 @@ public abstract class AbstractBlockChain {
             // are only lightly verified: presence in a valid connecting block is taken as proof of validity. See the
             // article here for more details: https://bitcoinj.github.io/security-model
             try {
-                Block.verifyHeader(block);
+                if (!headerVerified)
+                    Block.verifyHeader(block);
                 storedPrev = getStoredBlockInCurrentScope(block.prevHash());
                 if (storedPrev != null) {
                     height = storedPrev.getHeight() + 1;
@@ -527,8 +660,13 @@ public abstract class AbstractBlockChain {
                     height = Block.BLOCK_HEIGHT_UNKNOWN;
                 }
                 flags = params.getBlockVerificationFlags(block, versionTally, height);
-                if (shouldVerifyTransactions())
-                    Block.verifyTransactions(params, block, height, flags);
+                if (shouldVerifyTransactions()) {
+                    ForkJoinPool pool = verificationPool;
+                    if (pool != null)
+                        Block.verifyTransactions(params, block, height, flags, pool);
+                    else
+                        Block.verifyTransactions(params, block, height, flags);
+                }
             } catch (VerificationException e) {
                 log.error("Failed to verify block: ", e);
                 log.error(block.getHashAsString());
@@ -544,9 +682,7 @@ public abstract class AbstractBlockChain {
                 checkState(tryConnecting, () ->
                         "bug in tryConnectingOrphans");
                 log.warn("Block does not connect: {} prev {}", block.getHashAsString(), block.prevHash());
-                orphanBlocks.put(block.getHash(), new OrphanBlock(block, filteredTxHashList, filteredTxn));
-                if (tryConnecting)
-                    tryConnectingOrphans();
+                addOrphanBlock(new OrphanBlock(block, filteredTxHashList, filteredTxn));
                 return false;
             } else {
                 checkState(lock.isHeldByCurrentThread());
@@ -554,7 +690,7 @@ public abstract class AbstractBlockChain {
                 difficultyTransitions.checkDifficultyTransitions(storedPrev, block, blockStore);
                 connectBlock(block, storedPrev, shouldVerifyTransactions(), filteredTxHashList, filteredTxn);
                 if (tryConnecting)
-                    tryConnectingOrphans();
+                    tryConnectingOrphans(block.getHash());
                 return true;
             }
         } finally {
@@ -573,6 +709,8 @@ public abstract class AbstractBlockChain {
         try {
             Set<Sha256Hash> hashes = new HashSet<>(orphanBlocks.keySet());
             orphanBlocks.clear();
+            orphanBlocksByPrev.clear();
+            orphanBlocksSize = 0;
             return hashes;
         } finally {
             lock.unlock();
@@ -903,14 +1041,22 @@ public abstract class AbstractBlockChain {
         //         \--> E -> F -> G
         //
         // findSplit will return block B. oldChainHead = D and newChainHead = G.
+        //
+        // First bring both cursors to the same height, which the store may be able to do without visiting the blocks
+        // in between, then walk back both chains in lockstep.
+        if (currentChainCursor.getHeight() > newChainCursor.getHeight())
+            currentChainCursor = Objects.requireNonNull(
+                    store.getAncestor(currentChainCursor, newChainCursor.getHeight()),
+                    "Attempt to follow an orphan chain");
+        else if (newChainCursor.getHeight() > currentChainCursor.getHeight())
+            newChainCursor = Objects.requireNonNull(
+                    store.getAncestor(newChainCursor, currentChainCursor.getHeight()),
+                    "Attempt to follow an orphan chain");
         while (!currentChainCursor.equals(newChainCursor)) {
-            if (currentChainCursor.getHeight() > newChainCursor.getHeight()) {
-                currentChainCursor = currentChainCursor.getPrev(store);
-                Objects.requireNonNull(currentChainCursor, "Attempt to follow an orphan chain");
-            } else {
-                newChainCursor = newChainCursor.getPrev(store);
-                Objects.requireNonNull(newChainCursor, "Attempt to follow an orphan chain");
-            }
+            currentChainCursor = Objects.requireNonNull(currentChainCursor.getPrev(store),
+                    "Attempt to follow an orphan chain");
+            newChainCursor = Objects.requireNonNull(newChainCursor.getPrev(store),
+                    "Attempt to follow an orphan chain");
         }
         return currentChainCursor;
     }
@@ -942,7 +1088,7 @@ public abstract class AbstractBlockChain {
             try {
                 falsePositives.remove(tx.getTxId());
                 if (clone)
-                    tx = Transaction.read(ByteBuffer.wrap(tx.serialize()));
+                    tx = PooledWriter.write(tx::write, tx::messageSize, Transaction::read);
                 listener.receiveFromBlock(tx, block, blockType, relativityOffset++);
             } catch (ScriptException e) {
                 // We don't want scripts we don't understand to break the block chain so just note that this tx was
@@ -960,48 +1106,99 @@ public abstract class AbstractBlockChain {
      * @throws BlockStoreException if a failure occurs while storing a block
      */
     protected void setChainHead(StoredBlock chainHead) throws BlockStoreException {
-        doSetChainHead(chainHead);
+        if (!chainHeadWriteDeferred)
+            doSetChainHead(chainHead);
         synchronized (chainHeadLock) {
             this.chainHead = chainHead;
         }
     }
 
     /**
-     * For each block in orphanBlocks, see if we can now fit it on top of the chain and if so, do so.
+     * Connects the orphan blocks building on the given block, which has just been added to the chain, and then in
+     * turn the orphans building on those, and so on.
      */
-    private void tryConnectingOrphans() throws VerificationException, BlockStoreException, PrunedException {
+    private void tryConnectingOrphans(Sha256Hash connectedHash) throws VerificationException, BlockStoreException, PrunedException {
         checkState(lock.isHeldByCurrentThread());
-        // For each block in our orphan list, try and fit it onto the head of the chain. If we succeed remove it
-        // from the list and keep going. If we changed the head of the list at the end of the round try again until
-        // we can't fit anything else on the top.
-        //
-        // This algorithm is kind of crappy, we should do a topo-sort then just connect them in order, but for small
-        // numbers of orphan blocks it does OK.
-        int blocksConnectedThisRound;
-        do {
-            blocksConnectedThisRound = 0;
-            Iterator<OrphanBlock> iter = orphanBlocks.values().iterator();
-            while (iter.hasNext()) {
-                OrphanBlock orphanBlock = iter.next();
-                // Look up the blocks previous.
-                StoredBlock prev = getStoredBlockInCurrentScope(orphanBlock.block.prevHash());
-                if (prev == null) {
-                    // This is still an unconnected/orphan block.
-                    if (log.isDebugEnabled())
-                        log.debug("Orphan block {} is not connectable right now", orphanBlock.block.getHash());
-                    continue;
-                }
-                // Otherwise we can connect it now.
+        if (orphanBlocksByPrev.isEmpty())
+            return;
+        int blocksConnected = 0;
+        ArrayDeque<Sha256Hash> worklist = new ArrayDeque<>();
+        worklist.add(connectedHash);
+        while (!worklist.isEmpty()) {
+            List<OrphanBlock> children = orphanBlocksByPrev.get(worklist.poll());
+            if (children == null)
+                continue;
+            for (OrphanBlock orphanBlock : new ArrayList<>(children)) {
+                // Remove it first, so that an orphan that fails to verify doesn't stay around.
+                removeOrphanBlock(orphanBlock);
                 // False here ensures we don't recurse infinitely downwards when connecting huge chains.
                 log.info("Connected orphan {}", orphanBlock.block.getHash());
-                add(orphanBlock.block, false, orphanBlock.filteredTxHashes, orphanBlock.filteredTxn);
-                iter.remove();
-                blocksConnectedThisRound++;
-            }
-            if (blocksConnectedThisRound > 0) {
-                log.info("Connected {} orphan blocks.", blocksConnectedThisRound);
+                add(orphanBlock.block, false, false, orphanBlock.filteredTxHashes, orphanBlock.filteredTxn);
+                worklist.add(orphanBlock.block.getHash());
+                blocksConnected++;
             }
-        } while (blocksConnectedThisRound > 0);
+        }
+        if (blocksConnected > 0) {
+            log.info("Connected {} orphan blocks.", blocksConnected);
+        }
+    }
+
+    // Adds a block to the orphan pool, evicting the eldest orphans if the pool grows too big.
+    private void addOrphanBlock(OrphanBlock orphanBlock) {
+        checkState(lock.isHeldByCurrentThread());
+        OrphanBlock previous = orphanBlocks.put(orphanBlock.block.getHash(), orphanBlock);
+        if (previous != null) {
+            orphanBlocksByPrev.get(previous.block.prevHash()).remove(previous);
+            orphanBlocksSize -= previous.size;
+        }
+        orphanBlocksByPrev.computeIfAbsent(orphanBlock.block.prevHash(), prevHash -> new ArrayList<>(1)).add(orphanBlock);
+        orphanBlocksSize += orphanBlock.size;
+        Iterator<OrphanBlock> iter = orphanBlocks.values().iterator();
+        while (orphanBlocksSize > maxOrphanBlocksSize && orphanBlocks.size() > 1) {
+            OrphanBlock eldest = iter.next();
+            log.info("Evicting orphan block {} to limit memory usage", eldest.block.getHash());
+            iter.remove();
+            removeFromOrphanIndex(eldest);
+        }
+    }
+
+    private void removeOrphanBlock(OrphanBlock orphanBlock) {
+        orphanBlocks.remove(orphanBlock.block.getHash());
+        removeFromOrphanIndex(orphanBlock);
+    }
+
+    private void removeFromOrphanIndex(OrphanBlock orphanBlock) {
+        List<OrphanBlock> siblings = orphanBlocksByPrev.get(orphanBlock.block.prevHash());
+        siblings.remove(orphanBlock);
+        if (siblings.isEmpty())
+            orphanBlocksByPrev.remove(orphanBlock.block.prevHash());
+        orphanBlocksSize -= orphanBlock.size;
+    }
+
+    /**
+     * Sets the limit for the total size of orphan blocks held in memory, in bytes. When the limit is exceeded, the
+     * orphan blocks that arrived first are dropped. The default is {@link #MAX_ORPHAN_BLOCKS_SIZE}.
+     * @param maxOrphanBlocksSize limit in bytes
+     */
+    public void setMaxOrphanBlocksSize(long maxOrphanBlocksSize) {
+        checkArgument(maxOrphanBlocksSize > 0, () -> "limit must be positive: " + maxOrphanBlocksSize);
+        lock.lock();
+        try {
+            this.maxOrphanBlocksSize = maxOrphanBlocksSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets a pool to check the transactions of full blocks in parallel, see
+     * {@link Block#verifyTransactions(NetworkParameters, Block, int, EnumSet, ForkJoinPool)}. This only has an effect
+     * if this chain verifies transactions, i.e. for a {@link FullPrunedBlockChain}. The pool is also used to hash the
+     * headers passed to {@link #addHeaders(List)}. By default, or if set to null, all of this is done sequentially.
+     * @param pool pool to run the checks on, e.g. {@link ForkJoinPool#commonPool()}, or null
+     */
+    public void setVerificationPool(@Nullable ForkJoinPool pool) {
+        this.verificationPool = pool;
     }
 
     /**
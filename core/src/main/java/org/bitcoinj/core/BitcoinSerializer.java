@@ -20,16 +20,24 @@ package org.bitcoinj.core;
 import org.bitcoinj.base.Network;
 import org.bitcoinj.base.Sha256Hash;
 import org.bitcoinj.base.internal.ByteUtils;
+import org.bitcoinj.base.internal.PooledWriter;
+import org.bitcoinj.base.internal.Sha256;
+import org.jspecify.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.Buffer;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 import static org.bitcoinj.base.internal.ByteUtils.readUint32;
 import static org.bitcoinj.base.internal.Preconditions.check;
@@ -61,6 +69,7 @@ public class BitcoinSerializer extends MessageSerializer {
         names.put(Block.class, "block");
         names.put(GetDataMessage.class, "getdata");
         names.put(Transaction.class, "tx");
+        names.put(TransactionView.class, "tx");
         names.put(AddressV1Message.class, "addr");
         names.put(AddressV2Message.class, "addrv2");
         names.put(Ping.class, "ping");
@@ -116,6 +125,12 @@ public class BitcoinSerializer extends MessageSerializer {
      */
     @Override
     public void serialize(String name, byte[] message, OutputStream out) throws IOException {
+        serialize(name, message, message.length, Sha256Hash.hashTwice(message), out);
+    }
+
+    // Writes the first length bytes of the message. The checksum is the first four bytes of the given double-hash of
+    // these bytes.
+    private void serialize(String name, byte[] message, int length, byte[] hash, OutputStream out) throws IOException {
         byte[] header = new byte[4 + COMMAND_LEN + 4 + 4 /* checksum */];
         ByteUtils.writeInt32BE(packetMagic, header, 0);
 
@@ -125,15 +140,15 @@ public class BitcoinSerializer extends MessageSerializer {
             header[4 + i] = (byte) (name.codePointAt(i) & 0xFF);
         }
 
-        ByteUtils.writeInt32LE(message.length, header, 4 + COMMAND_LEN);
+        ByteUtils.writeInt32LE(length, header, 4 + COMMAND_LEN);
 
-        byte[] hash = Sha256Hash.hashTwice(message);
         System.arraycopy(hash, 0, header, 4 + COMMAND_LEN + 4, 4);
         out.write(header);
-        out.write(message);
+        out.write(message, 0, length);
 
         if (log.isDebugEnabled())
-            log.debug("Sending {} message: {}", name, ByteUtils.formatHex(header) + ByteUtils.formatHex(message));
+            log.debug("Sending {} message: {}", name,
+                    ByteUtils.formatHex(header) + ByteUtils.formatHex(Arrays.copyOf(message, length)));
     }
 
     /**
@@ -145,7 +160,19 @@ public class BitcoinSerializer extends MessageSerializer {
         if (name == null) {
             throw new Error("BitcoinSerializer doesn't currently know how to serialize " + message.getClass());
         }
-        serialize(name, message.serialize(), out);
+        if (message instanceof TransactionView) {
+            // Write the bytes the view is backed by, and reuse its wtxid as the double-hash of them.
+            TransactionView view = (TransactionView) message;
+            byte[] bytes = view.bytes();
+            serialize(name, bytes, bytes.length, view.getWTxId().serialize(), out);
+        } else {
+            // Serialize in one pass into a reused buffer. The size is only calculated if the message doesn't fit.
+            PooledWriter.write(message::write, message::messageSize, buf -> {
+                byte[] bytes = buf.array();
+                serialize(name, bytes, buf.limit(), Sha256Hash.hashTwice(bytes, 0, buf.limit()), out);
+                return null;
+            });
+        }
     }
 
     /**
@@ -190,30 +217,34 @@ public class BitcoinSerializer extends MessageSerializer {
     public Message deserializePayload(BitcoinPacketHeader header, ByteBuffer in) throws ProtocolException, BufferUnderflowException {
         byte[] payloadBytes = new byte[header.size];
         in.get(payloadBytes, 0, header.size);
+        verifyChecksum(header, Sha256Hash.hashTwice(payloadBytes));
+        return makeMessage(header, payloadBytes);
+    }
 
-        // Verify the checksum.
-        byte[] hash;
-        hash = Sha256Hash.hashTwice(payloadBytes);
+    // Verifies the checksum of the header against the double-hash of the payload.
+    private static void verifyChecksum(BitcoinPacketHeader header, byte[] hash) throws ProtocolException {
         if (header.checksum[0] != hash[0] || header.checksum[1] != hash[1] ||
                 header.checksum[2] != hash[2] || header.checksum[3] != hash[3]) {
             throw new ProtocolException("Checksum failed to verify, actual " +
                     ByteUtils.formatHex(hash) +
                     " vs " + ByteUtils.formatHex(header.checksum));
         }
+    }
 
+    private Message makeMessage(BitcoinPacketHeader header, byte[] payloadBytes) throws ProtocolException {
         if (log.isDebugEnabled()) {
             log.debug("Received {} byte '{}' message: {}", header.size, header.command,
                     ByteUtils.formatHex(payloadBytes));
         }
 
         try {
-            return makeMessage(header.command, payloadBytes, hash);
+            return makeMessage(header.command, payloadBytes);
         } catch (Exception e) {
             throw new ProtocolException("Error deserializing message " + ByteUtils.formatHex(payloadBytes) + "\n", e);
         }
     }
 
-    private Message makeMessage(String command, byte[] payloadBytes, byte[] hash) throws ProtocolException {
+    private Message makeMessage(String command, byte[] payloadBytes) throws ProtocolException {
         ByteBuffer payload = ByteBuffer.wrap(payloadBytes);
         // We use an if ladder rather than reflection because reflection is very slow on Android.
         if (command.equals("version")) {
@@ -346,8 +377,148 @@ public class BitcoinSerializer extends MessageSerializer {
                     // We still have further to go to find the next message.
                 }
             } else {
-                magicCursor = 3;
+                // The byte may start the magic anew, as the first magic byte isn't repeated in it.
+                magicCursor = b == (byte) (packetMagic >>> 24) ? 2 : 3;
+            }
+        }
+    }
+
+    /**
+     * Creates a decoder for messages that arrive in chunks, see {@link Decoder}. Unlike the default implementation,
+     * it doesn't collect the header and the payload as raw bytes first: the checksum of the payload is calculated as
+     * its bytes arrive, and the payload is read from the array it was collected in, so a message is only held once.
+     * Skipped payloads aren't collected at all. Checksums can be deferred.
+     */
+    @Override
+    public Decoder newDecoder() {
+        return new IncrementalDecoder(this);
+    }
+
+    private static class IncrementalDecoder implements Decoder {
+        private static final int SEEKING_MAGIC = 0;
+        private static final int READING_HEADER = 1;
+        private static final int READING_PAYLOAD = 2;
+        private static final int SKIPPING_PAYLOAD = 3;
+
+        private final BitcoinSerializer serializer;
+        private int state = SEEKING_MAGIC;
+        // Which byte of the magic we're looking for currently, see seekPastMagicBytes()
+        private int magicCursor = 3;
+        private int garbageLength = 0;
+        private final byte[] headerBytes = new byte[BitcoinPacketHeader.HEADER_LENGTH];
+        @Nullable
+        private BitcoinPacketHeader header;
+        private byte @Nullable [] payload;
+        // Number of bytes of the header or the payload read so far
+        private int position = 0;
+        private final Sha256 checksum = new Sha256();
+        private final byte[] hash = new byte[Sha256Hash.LENGTH];
+        // Whether the checksum of the current payload is verified on the checksum executor
+        private boolean checksumDeferred = false;
+        @Nullable
+        private Executor checksumExecutor;
+        @Nullable
+        private Consumer<ProtocolException> checksumFailureHandler;
+
+        private IncrementalDecoder(BitcoinSerializer serializer) {
+            this.serializer = serializer;
+        }
+
+        @Override
+        public void deferChecksums(Executor executor, Consumer<ProtocolException> failureHandler) {
+            this.checksumExecutor = Objects.requireNonNull(executor);
+            this.checksumFailureHandler = Objects.requireNonNull(failureHandler);
+        }
+
+        @Override
+        public void decode(ByteBuffer chunk, Listener listener) throws ProtocolException {
+            while (chunk.hasRemaining()) {
+                if (state == SEEKING_MAGIC) {
+                    seekMagic(chunk);
+                } else if (state == READING_HEADER) {
+                    int length = Math.min(chunk.remaining(), headerBytes.length - position);
+                    chunk.get(headerBytes, position, length);
+                    position += length;
+                    if (position == headerBytes.length) {
+                        BitcoinPacketHeader header = new BitcoinPacketHeader(ByteBuffer.wrap(headerBytes));
+                        this.header = header;
+                        position = 0;
+                        if (listener.onHeader(header)) {
+                            payload = new byte[header.size];
+                            checksumDeferred = checksumExecutor != null && header.size >= MIN_DEFERRED_CHECKSUM_SIZE;
+                            checksum.reset();
+                            state = READING_PAYLOAD;
+                        } else {
+                            state = SKIPPING_PAYLOAD;
+                        }
+                        finishIfComplete(header, listener);
+                    }
+                } else {
+                    BitcoinPacketHeader header = Objects.requireNonNull(this.header);
+                    int length = Math.min(chunk.remaining(), header.size - position);
+                    if (state == READING_PAYLOAD) {
+                        byte[] payload = Objects.requireNonNull(this.payload);
+                        chunk.get(payload, position, length);
+                        if (!checksumDeferred)
+                            checksum.update(payload, position, length);
+                    } else {
+                        ((Buffer) chunk).position(chunk.position() + length);
+                    }
+                    position += length;
+                    finishIfComplete(header, listener);
+                }
+            }
+        }
+
+        private void seekMagic(ByteBuffer chunk) throws ProtocolException {
+            while (chunk.hasRemaining()) {
+                byte b = chunk.get();
+                if (b == (byte) (serializer.packetMagic >>> (magicCursor * 8))) {
+                    magicCursor--;
+                    if (magicCursor < 0) {
+                        magicCursor = 3;
+                        garbageLength = 0;
+                        state = READING_HEADER;
+                        return;
+                    }
+                } else {
+                    // The byte may start the magic bytes anew. This is enough to restart the search as long as the
+                    // first of the magic bytes isn't repeated in them, which holds for all networks.
+                    magicCursor = b == (byte) (serializer.packetMagic >>> 24) ? 2 : 3;
+                    if (++garbageLength > MAX_GARBAGE_LENGTH)
+                        throw new ProtocolException("No magic bytes after reading " + garbageLength + " bytes");
+                }
+            }
+        }
+
+        private void finishIfComplete(BitcoinPacketHeader header, Listener listener) throws ProtocolException {
+            if (position < header.size)
+                return;
+            boolean skipped = state == SKIPPING_PAYLOAD;
+            byte[] payload = this.payload;
+            // Get ready for the next message first, so that a failure to make this one leaves a consistent state.
+            state = SEEKING_MAGIC;
+            position = 0;
+            this.header = null;
+            this.payload = null;
+            if (skipped)
+                return;
+            Objects.requireNonNull(payload);
+            if (checksumDeferred) {
+                // The payload isn't modified after this, so it can be hashed while the message is made from it.
+                Consumer<ProtocolException> failureHandler = Objects.requireNonNull(checksumFailureHandler);
+                Objects.requireNonNull(checksumExecutor).execute(() -> {
+                    try {
+                        verifyChecksum(header, Sha256Hash.hashTwice(payload));
+                    } catch (ProtocolException e) {
+                        failureHandler.accept(e);
+                    }
+                });
+            } else {
+                checksum.digestTwice(hash, 0);
+                verifyChecksum(header, hash);
             }
+            listener.onMessage(serializer.makeMessage(header, payload));
         }
     }
 
@@ -19,10 +19,10 @@ package org.bitcoinj.core;
 
 import com.google.common.annotations.VisibleForTesting;
 import org.bitcoinj.base.Difficulty;
+import org.bitcoinj.base.Network;
 import org.bitcoinj.base.Sha256Hash;
 import org.bitcoinj.base.VarInt;
 import org.bitcoinj.base.internal.Buffers;
-import org.bitcoinj.base.internal.StreamUtils;
 import org.bitcoinj.base.internal.TimeUtils;
 import org.bitcoinj.base.internal.ByteUtils;
 import org.bitcoinj.base.internal.InternalUtils;
@@ -47,13 +47,16 @@ import java.util.EnumSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.Consumer;
+import java.util.function.IntPredicate;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static org.bitcoinj.base.Coin.FIFTY_COINS;
-import static org.bitcoinj.base.Sha256Hash.hashTwice;
 import static org.bitcoinj.base.internal.Preconditions.check;
 import static org.bitcoinj.base.internal.Preconditions.checkState;
 
@@ -160,10 +163,28 @@ public class Block implements Message {
                 : new Block(version, prevHash, merkleRoot, time, difficultyTarget, nonce, hash);                           // header
     }
 
+    /**
+     * Deserialize a block from a given payload, deferring the deserialization of its transactions until they are
+     * accessed. The structure of the transactions is still checked. Transactions that are never accessed, for example
+     * by {@link #findTransactions(Predicate)} or {@link #forEachTransaction(Consumer)} stopping early, are never
+     * deserialized. Calculating the merkle root and serializing the block don't need to deserialize the transactions.
+     *
+     * @param payload payload to deserialize from
+     * @return read message
+     * @throws BufferUnderflowException if the read message extends beyond the remaining bytes of the payload
+     */
+    public static Block readLazily(ByteBuffer payload) throws BufferUnderflowException, ProtocolException {
+        Block header = read(ByteBuffer.wrap(Buffers.readBytes(payload, HEADER_SIZE)));
+        return payload.hasRemaining()
+                ? new Block(header.version, header.prevHash, header.merkleRoot, header.time, header.difficultyTarget,
+                        header.nonce, LazyTransactionList.read(payload), header.hash) // full block
+                : header;
+    }
+
     /**
      * Read transactions from a block message.
      * @param payload Contains the block message being read
-     * @return An unmodifiable list of transactions
+     * @return A list of transactions
      * @throws BufferUnderflowException if end-of-buffer reached before a complete, valid message could be read
      * @throws ProtocolException if the message is not compliant with the protocol
      */
@@ -173,7 +194,7 @@ public class Block implements Message {
         check(numTransactions.fitsInt(), BufferUnderflowException::new);
         return IntStream.range(0, numTransactions.intValue())
                 .mapToObj(i -> Transaction.read(payload))
-                .collect(StreamUtils.toUnmodifiableList());
+                .collect(Collectors.toCollection(ArrayList::new));
     }
 
     /** Special case constructor, used for unit tests. */
@@ -258,7 +279,7 @@ public class Block implements Message {
         this.time = time;
         this.difficultyTarget = difficultyTarget;
         this.nonce = nonce;
-        this.transactions = new ArrayList<>(Objects.requireNonNull(transactions));
+        this.transactions = Objects.requireNonNull(transactions); // not copied, as this is a freshly read list
         this.hash = hash;
     }
 
@@ -310,6 +331,8 @@ public class Block implements Message {
 
     @Override
     public int messageSize() {
+        if (transactions instanceof LazyTransactionList)
+            return HEADER_SIZE + ((LazyTransactionList) transactions).messageSize();
         return isHeaderOnly()
                 ? HEADER_SIZE
                 : HEADER_SIZE
@@ -330,6 +353,10 @@ public class Block implements Message {
 
     private void writeTransactions(ByteBuffer buf) throws BufferOverflowException {
         checkState(!isHeaderOnly());
+        if (transactions instanceof LazyTransactionList) {
+            ((LazyTransactionList) transactions).write(buf);
+            return;
+        }
         VarInt.of(transactions.size()).write(buf);
         for (Transaction tx : transactions) {
             tx.write(buf);
@@ -509,15 +536,18 @@ public class Block implements Message {
         return transactions.stream().mapToInt(Transaction::getSigOpCount).sum();
     }
 
-    private void checkSigOps() throws VerificationException {
+    private static void checkSigOps(int sigOpCount) throws VerificationException {
         // Check there aren't too many signature verifications in the block. This is an anti-DoS measure, see the
         // comments for MAX_BLOCK_SIGOPS.
-        if (sigOpCount() > MAX_BLOCK_SIGOPS)
+        if (sigOpCount > MAX_BLOCK_SIGOPS)
             throw new VerificationException("Block had too many Signature Operations");
     }
 
-    private void checkMerkleRoot() throws VerificationException {
-        Sha256Hash calculatedRoot = calculateMerkleRoot(transactions);
+    private void checkMerkleRoot(MerkleRoot calculated) throws VerificationException {
+        // A mutated tree can have the same root as a valid one, see CVE-2012-2459.
+        if (calculated.isMutated())
+            throw new VerificationException("Merkle tree is mutated: duplicate transactions");
+        Sha256Hash calculatedRoot = calculated.hash();
         if (!calculatedRoot.equals(merkleRoot)) {
             log.error("Merkle tree did not verify");
             throw new VerificationException("Merkle hashes do not match: " + calculatedRoot + " vs " + merkleRoot);
@@ -551,74 +581,11 @@ public class Block implements Message {
     }
 
     private static Sha256Hash calculateMerkleRoot(List<Transaction> transactions) {
-        List<Sha256Hash> tree = buildMerkleTree(transactions, false);
-        return tree.get(tree.size() - 1);
+        return MerkleRoot.of(transactions, false).hash();
     }
 
     private static Sha256Hash calculateWitnessRoot(List<Transaction> transactions) {
-        List<Sha256Hash> tree = buildMerkleTree(transactions, true);
-        return tree.get(tree.size() - 1);
-    }
-
-    private static List<Sha256Hash> buildMerkleTree(List<Transaction> transactions, boolean useWTxId) {
-        // The Merkle root is based on a tree of hashes calculated from the transactions:
-        //
-        //     root
-        //      / \
-        //   A      B
-        //  / \    / \
-        // t1 t2 t3 t4
-        //
-        // The tree is represented as a list: t1,t2,t3,t4,A,B,root where each
-        // entry is a hash.
-        //
-        // The hashing algorithm is double SHA-256. The leaves are a hash of the serialized contents of the transaction.
-        // The interior nodes are hashes of the concatenation of the two child hashes.
-        //
-        // This structure allows the creation of proof that a transaction was included into a block without having to
-        // provide the full block contents. Instead, you can provide only a Merkle branch. For example to prove tx2 was
-        // in a block you can just provide tx2, the hash(tx1) and B. Now the other party has everything they need to
-        // derive the root, which can be checked against the block header. These proofs aren't used right now but
-        // will be helpful later when we want to download partial block contents.
-        //
-        // Note that if the number of transactions is not even the last tx is repeated to make it so (see
-        // tx3 above). A tree with 5 transactions would look like this:
-        //
-        //         root
-        //        /     \
-        //       1        5
-        //     /   \     / \
-        //    2     3    4  4
-        //  / \   / \   / \
-        // t1 t2 t3 t4 t5 t5
-        ArrayList<Sha256Hash> tree = new ArrayList<>(transactions.size());
-        // Start by adding all the hashes of the transactions as leaves of the tree.
-        for (Transaction tx : transactions) {
-            final Sha256Hash hash;
-            if (useWTxId && tx.isCoinBase())
-                hash = Sha256Hash.ZERO_HASH;
-            else
-                hash = useWTxId ? tx.getWTxId() : tx.getTxId();
-            tree.add(hash);
-        }
-        int levelOffset = 0; // Offset in the list where the currently processed level starts.
-        // Step through each level, stopping when we reach the root (levelSize == 1).
-        for (int levelSize = transactions.size(); levelSize > 1; levelSize = (levelSize + 1) / 2) {
-            // For each pair of nodes on that level:
-            for (int left = 0; left < levelSize; left += 2) {
-                // The right hand node can be the same as the left hand, in the case where we don't have enough
-                // transactions.
-                int right = Math.min(left + 1, levelSize - 1);
-                Sha256Hash leftHash = tree.get(levelOffset + left);
-                Sha256Hash rightHash = tree.get(levelOffset + right);
-                tree.add(Sha256Hash.wrapReversed(hashTwice(
-                        leftHash.serialize(),
-                        rightHash.serialize())));
-            }
-            // Move to the next level.
-            levelOffset += levelSize;
-        }
-        return tree;
+        return MerkleRoot.of(transactions, true).hash();
     }
 
     /**
@@ -626,19 +593,20 @@ public class Block implements Message {
      *
      * @param height block height, if known, or -1 otherwise. If provided, used
      * to validate the coinbase input script of v2 and above blocks.
+     * @param isCoinBase tells whether the transaction at an index is a coinbase transaction
      * @throws VerificationException if there was an error verifying the block.
      */
-    private void checkTransactions(final int height, final EnumSet<VerifyFlag> flags)
+    private void checkTransactions(final int height, final EnumSet<VerifyFlag> flags, IntPredicate isCoinBase)
             throws VerificationException {
         // The first transaction in a block must always be a coinbase transaction.
-        if (!transactions.get(0).isCoinBase())
+        if (!isCoinBase.test(0))
             throw new VerificationException("First tx is not coinbase");
         if (flags.contains(Block.VerifyFlag.HEIGHT_IN_COINBASE) && height >= BLOCK_HEIGHT_GENESIS) {
             transactions.get(0).checkCoinBaseHeight(height);
         }
         // The rest must not be.
         for (int i = 1; i < transactions.size(); i++) {
-            if (transactions.get(i).isCoinBase())
+            if (isCoinBase.test(i))
                 throw new VerificationException("TX " + i + " is coinbase when it should not be.");
         }
     }
@@ -969,10 +937,139 @@ public class Block implements Message {
             throw new VerificationException("Block had no transactions");
         if (block.messageSize() > MAX_BLOCK_SIZE)
             throw new VerificationException("Block larger than MAX_BLOCK_SIZE");
-        block.checkTransactions(height, flags);
-        block.checkMerkleRoot();
-        block.checkSigOps();
+        block.checkTransactions(height, flags, i -> block.transactions.get(i).isCoinBase());
+        block.checkMerkleRoot(MerkleRoot.of(block.transactions, false));
+        checkSigOps(block.sigOpCount());
         for (Transaction tx : block.transactions)
             Transaction.verify(params.network(), tx);
     }
+
+    /**
+     * Verifies both the header and that the transactions hash to the merkle root, running the checks of the
+     * transactions in parallel. See {@link #verifyTransactions(NetworkParameters, Block, int, EnumSet, ForkJoinPool)}.
+     *
+     * @param params parameters for the verification rules
+     * @param block  block to verify
+     * @param height block height, if known, or -1 otherwise.
+     * @param flags flags to indicate which tests should be applied (i.e.
+     * whether to test for height in the coinbase transaction).
+     * @param pool pool to run the checks of the transactions on
+     * @throws VerificationException if at least one of the rules is violated
+     */
+    public static void verify(NetworkParameters params, Block block, int height, EnumSet<VerifyFlag> flags,
+                              ForkJoinPool pool) throws VerificationException {
+        verifyHeader(block);
+        verifyTransactions(params, block, height, flags, pool);
+    }
+
+    /**
+     * Checks the block contents like {@link #verifyTransactions(NetworkParameters, Block, int, EnumSet)}, but runs
+     * the checks of the individual transactions in parallel on the given pool, along with hashing the leaves of the
+     * merkle tree. All checks run to completion and failures are then reported in the same order as by the sequential
+     * verification, so the same exception is thrown: e.g. if several transactions are invalid, the one with the lowest
+     * index is reported.
+     *
+     * @param params parameters for the verification rules
+     * @param block  block to verify
+     * @param height block height, if known, or -1 otherwise. If valid, used
+     * to validate the coinbase input script of v2 and above blocks.
+     * @param flags flags to indicate which tests should be applied (i.e.
+     * whether to test for height in the coinbase transaction).
+     * @param pool pool to run the checks of the transactions on
+     * @throws VerificationException if at least one of the rules is violated
+     */
+    public static void verifyTransactions(NetworkParameters params, Block block, int height,
+                                          EnumSet<VerifyFlag> flags, ForkJoinPool pool) throws VerificationException {
+        if (block.transactions.isEmpty())
+            throw new VerificationException("Block had no transactions");
+        if (block.messageSize() > MAX_BLOCK_SIZE)
+            throw new VerificationException("Block larger than MAX_BLOCK_SIZE");
+        int count = block.transactions.size();
+        byte[] leaves = new byte[count * 32];
+        TransactionChecks[] checks = new TransactionChecks[count];
+        pool.invoke(new TransactionChecksTask(params.network(), block.transactions, leaves, checks, 0, count));
+        block.checkTransactions(height, flags, i -> {
+            if (checks[i].readFailure != null)
+                throw checks[i].readFailure;
+            return checks[i].coinBase;
+        });
+        block.checkMerkleRoot(MerkleRoot.of(leaves, count));
+        int sigOpCount = 0;
+        for (TransactionChecks check : checks) {
+            if (check.sigOpCountFailure != null)
+                throw check.sigOpCountFailure;
+            sigOpCount += check.sigOpCount;
+        }
+        checkSigOps(sigOpCount);
+        for (TransactionChecks check : checks)
+            if (check.verifyFailure != null)
+                throw check.verifyFailure;
+    }
+
+    // Outcome of the checks of one transaction, see verifyTransactions(). Failures are kept to be thrown in order.
+    private static final class TransactionChecks {
+        @Nullable RuntimeException readFailure;
+        boolean coinBase;
+        int sigOpCount;
+        @Nullable RuntimeException sigOpCountFailure;
+        @Nullable RuntimeException verifyFailure;
+    }
+
+    // Checks a range of transactions, splitting it up for the pool.
+    private static final class TransactionChecksTask extends RecursiveAction {
+        // Ranges up to this size are checked without splitting them further
+        private static final int MAX_TRANSACTIONS = 16;
+
+        private final Network network;
+        private final List<Transaction> transactions;
+        private final byte[] leaves;
+        private final TransactionChecks[] checks;
+        private final int start;
+        private final int end;
+
+        TransactionChecksTask(Network network, List<Transaction> transactions, byte[] leaves,
+                              TransactionChecks[] checks, int start, int end) {
+            this.network = network;
+            this.transactions = transactions;
+            this.leaves = leaves;
+            this.checks = checks;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > MAX_TRANSACTIONS) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new TransactionChecksTask(network, transactions, leaves, checks, start, middle),
+                        new TransactionChecksTask(network, transactions, leaves, checks, middle, end));
+                return;
+            }
+            ByteBuffer buf = ByteBuffer.wrap(leaves);
+            for (int i = start; i < end; i++) {
+                TransactionChecks check = new TransactionChecks();
+                checks[i] = check;
+                // Before accessing the transaction, so that it's hashed from its raw bytes if it hasn't been yet.
+                MerkleRoot.writeLeaf(transactions, i, false, buf);
+                Transaction tx;
+                try {
+                    tx = transactions.get(i);
+                } catch (RuntimeException e) {
+                    check.readFailure = e;
+                    continue;
+                }
+                check.coinBase = tx.isCoinBase();
+                try {
+                    check.sigOpCount = tx.getSigOpCount();
+                } catch (RuntimeException e) {
+                    check.sigOpCountFailure = e;
+                }
+                try {
+                    Transaction.verify(network, tx);
+                } catch (RuntimeException e) {
+                    check.verifyFailure = e;
+                }
+            }
+        }
+    }
 }
@@ -17,6 +17,7 @@
 package org.bitcoinj.core;
 
 import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
 import org.bitcoinj.base.Sha256Hash;
 import org.bitcoinj.base.internal.TimeUtils;
 import org.bitcoinj.store.BlockStore;
@@ -30,19 +31,26 @@ import org.jspecify.annotations.Nullable;
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Objects;
 import java.util.TreeMap;
@@ -73,15 +81,31 @@ import static org.bitcoinj.base.internal.Preconditions.checkState;
  *
  * <p>After the signatures come the number of checkpoints in the file. Then each checkpoint follows one per line in
  * compact format (as written by {@link StoredBlock#serializeCompactV2(ByteBuffer)}) as a base64-encoded blob.</p>
+ *
+ * <p>Checkpoints can also be read from a binary file, as written by {@link #writeBinary(Collection, OutputStream)}.
+ * It starts with the magic string "CHECKPOINTS 2", followed by the number of signatures and the signatures as above,
+ * then the number of checkpoints, all as big endian 32-bit integers. Then each checkpoint follows in the
+ * compact V2 format, ordered by height. As the checkpoints are of a fixed size, a binary file can be memory mapped
+ * via {@link #fromFile(NetworkParameters, File)} and searched by time or height without parsing it first.
+ * Only the checkpoint found is parsed.</p>
  */
 public class CheckpointManager {
     private static final Logger log = LoggerFactory.getLogger(CheckpointManager.class);
 
     private static final String TEXTUAL_MAGIC = "TXT CHECKPOINTS 1";
+    private static final String BINARY_MAGIC = "CHECKPOINTS 2";
     private static final int MAX_SIGNATURES = 256;
+    private static final int SIGNATURE_SIZE = 65;
+
+    // Offsets into the checkpoints of the binary format
+    private static final int RECORD_SIZE = StoredBlock.COMPACT_SERIALIZED_SIZE_V2;
+    private static final int HEIGHT_OFFSET = RECORD_SIZE - Block.HEADER_SIZE - 4;
+    private static final int TIME_OFFSET = RECORD_SIZE - Block.HEADER_SIZE + 68;
 
-    // Map of block header time (in seconds) to data.
+    // Map of block header time (in seconds) to data. Only used for the textual format.
     protected final TreeMap<Instant, StoredBlock> checkpoints = new TreeMap<>();
+    // Checkpoints of the binary format
+    private final @Nullable ByteBuffer records;
 
     protected final NetworkParameters params;
     protected final Sha256Hash dataHash;
@@ -107,10 +131,39 @@ public class CheckpointManager {
         inputStream.mark(1);
         int first = inputStream.read();
         inputStream.reset();
-        if (first == TEXTUAL_MAGIC.charAt(0))
+        if (first == TEXTUAL_MAGIC.charAt(0)) {
+            records = null;
             dataHash = readTextual(inputStream);
-        else
+        } else if (first == BINARY_MAGIC.charAt(0)) {
+            records = readBinary(ByteBuffer.wrap(ByteStreams.toByteArray(inputStream)));
+            dataHash = hashBinary(records);
+        } else {
             throw new IOException("Unsupported format.");
+        }
+    }
+
+    // Uses the given checkpoints of the binary format
+    private CheckpointManager(NetworkParameters params, ByteBuffer records, Sha256Hash dataHash) {
+        this.params = Objects.requireNonNull(params);
+        this.records = records;
+        this.dataHash = dataHash;
+    }
+
+    /**
+     * Loads the checkpoints from the given file. A file in the binary format is memory mapped rather than read.
+     */
+    public static CheckpointManager fromFile(NetworkParameters params, File file) throws IOException {
+        ByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (mapped.remaining() > 0 && mapped.get(0) == BINARY_MAGIC.charAt(0)) {
+            ByteBuffer records = readBinary(mapped);
+            return new CheckpointManager(params, records, hashBinary(records));
+        }
+        try (InputStream inputStream = Files.newInputStream(file.toPath())) {
+            return new CheckpointManager(params, inputStream);
+        }
     }
 
     /** Returns a checkpoints stream pointing to inside the bitcoinj JAR */
@@ -155,16 +208,110 @@ public class CheckpointManager {
         }
     }
 
+    // Checks the binary format and returns its checkpoints
+    private static ByteBuffer readBinary(ByteBuffer buffer) throws IOException {
+        try {
+            byte[] magic = new byte[BINARY_MAGIC.length()];
+            buffer.get(magic);
+            if (!BINARY_MAGIC.equals(new String(magic, StandardCharsets.US_ASCII)))
+                throw new IOException("unexpected magic: " + new String(magic, StandardCharsets.US_ASCII));
+            int numSigs = buffer.getInt();
+            if (numSigs < 0 || numSigs > MAX_SIGNATURES)
+                throw new IOException("invalid number of signatures: " + numSigs);
+            ((Buffer) buffer).position(buffer.position() + numSigs * SIGNATURE_SIZE); // Skip sigs for now.
+            int numCheckpoints = buffer.getInt();
+            if (numCheckpoints <= 0)
+                throw new IOException("invalid number of checkpoints: " + numCheckpoints);
+            if (buffer.remaining() != (long) numCheckpoints * RECORD_SIZE)
+                throw new IOException("unexpected length of checkpoints: " + buffer.remaining());
+            ByteBuffer records = buffer.slice();
+            // Searching relies on the checkpoints being ordered by both height and time.
+            for (int i = 1; i < numCheckpoints; i++) {
+                if (height(records, i) <= height(records, i - 1) || time(records, i) < time(records, i - 1))
+                    throw new IOException("checkpoints out of order at index " + i);
+            }
+            return records;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("truncated checkpoints", e);
+        }
+    }
+
+    // Hash numCheckpoints and the checkpoints the same way as the textual format.
+    private static Sha256Hash hashBinary(ByteBuffer records) {
+        MessageDigest digest = Sha256Hash.newDigest();
+        digest.update(ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN).putInt(records.remaining() / RECORD_SIZE)
+                .array());
+        digest.update(records.duplicate());
+        return Sha256Hash.wrap(digest.digest());
+    }
+
+    private static int height(ByteBuffer records, int index) {
+        return records.getInt(index * RECORD_SIZE + HEIGHT_OFFSET);
+    }
+
+    private static long time(ByteBuffer records, int index) {
+        return Integer.toUnsignedLong(Integer.reverseBytes(records.getInt(index * RECORD_SIZE + TIME_OFFSET)));
+    }
+
+    // Returns the index of the last checkpoint whose time or height is at most the given value, or -1 if none is.
+    private static int floorIndex(ByteBuffer records, boolean byTime, long value) {
+        int low = 0;
+        int high = records.remaining() / RECORD_SIZE - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long key = byTime ? time(records, mid) : height(records, mid);
+            if (key <= value) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private static StoredBlock readRecord(ByteBuffer records, int index) {
+        ByteBuffer record = records.duplicate();
+        ((Buffer) record).position(index * RECORD_SIZE);
+        return StoredBlock.deserializeCompactV2(record);
+    }
+
     /**
      * Returns a {@link StoredBlock} representing the last checkpoint before the given time, for example, normally
      * you would want to know the checkpoint before the earliest wallet birthday.
      */
     public StoredBlock getCheckpointBefore(Instant time) {
+        checkArgument(time.isAfter(params.getGenesisBlock().time()));
+        if (records != null) {
+            int index = floorIndex(records, true, time.getEpochSecond());
+            return index >= 0 ? readRecord(records, index) : genesis();
+        }
+        // This is thread safe because the map never changes after creation.
+        Map.Entry<Instant, StoredBlock> entry = checkpoints.floorEntry(time);
+        return entry != null ? entry.getValue() : genesis();
+    }
+
+    /**
+     * Returns a {@link StoredBlock} representing the last checkpoint at or below the given height.
+     */
+    public StoredBlock getCheckpointBeforeHeight(int height) {
+        checkArgument(height >= 0, () -> "negative height: " + height);
+        if (records != null) {
+            int index = floorIndex(records, false, height);
+            return index >= 0 ? readRecord(records, index) : genesis();
+        }
+        StoredBlock found = null;
+        for (StoredBlock checkpoint : checkpoints.values()) {
+            if (checkpoint.getHeight() > height)
+                break;
+            found = checkpoint;
+        }
+        return found != null ? found : genesis();
+    }
+
+    private StoredBlock genesis() {
         try {
-            checkArgument(time.isAfter(params.getGenesisBlock().time()));
-            // This is thread safe because the map never changes after creation.
-            Map.Entry<Instant, StoredBlock> entry = checkpoints.floorEntry(time);
-            if (entry != null) return entry.getValue();
             Block genesis = params.getGenesisBlock().asHeader();
             return new StoredBlock(genesis, genesis.getWork(), 0);
         } catch (VerificationException e) {
@@ -174,7 +321,7 @@ public class CheckpointManager {
 
     /** Returns the number of checkpoints that were loaded. */
     public int numCheckpoints() {
-        return checkpoints.size();
+        return records != null ? records.remaining() / RECORD_SIZE : checkpoints.size();
     }
 
     /** Returns a hash of the concatenated checkpoint data. */
@@ -182,6 +329,22 @@ public class CheckpointManager {
         return dataHash;
     }
 
+    /**
+     * Writes checkpoints in the binary format.
+     * @param checkpoints checkpoints ordered by height, whose times are ordered too
+     * @param outputStream stream to write to
+     */
+    public static void writeBinary(Collection<StoredBlock> checkpoints, OutputStream outputStream) throws IOException {
+        checkArgument(!checkpoints.isEmpty(), () -> "no checkpoints");
+        ByteBuffer buffer = ByteBuffer.allocate(BINARY_MAGIC.length() + 4 + 4 + checkpoints.size() * RECORD_SIZE);
+        buffer.put(BINARY_MAGIC.getBytes(StandardCharsets.US_ASCII));
+        buffer.putInt(0); // Number of signatures to read. Do this later.
+        buffer.putInt(checkpoints.size());
+        for (StoredBlock checkpoint : checkpoints)
+            checkpoint.serializeCompactV2(buffer);
+        outputStream.write(buffer.array());
+    }
+
     /**
      * <p>Convenience method that creates a CheckpointManager, loads the given data, gets the checkpoint for the given
      * time, then inserts it into the store and sets that to be the chain head. Useful when you have just created
@@ -17,6 +17,7 @@
 package org.bitcoinj.core;
 
 import org.bitcoinj.base.Coin;
+import org.bitcoinj.script.ScriptVerificationCache;
 import org.bitcoinj.utils.ContextPropagatingThreadFactory;
 import org.bitcoinj.wallet.SendRequest;
 import org.slf4j.Logger;
@@ -48,6 +49,7 @@ public class Context {
     public static final int DEFAULT_EVENT_HORIZON = 100;
 
     final private TxConfidenceTable confidenceTable;
+    final private ScriptVerificationCache scriptVerificationCache;
     final private int eventHorizon;
     final private boolean ensureMinRequiredFee;
     final private Coin feePerKb;
@@ -72,6 +74,7 @@ public class Context {
     public Context(int eventHorizon, Coin feePerKb, boolean ensureMinRequiredFee, boolean relaxProofOfWork) {
         log.info("Creating bitcoinj {} context.", VersionMessage.BITCOINJ_VERSION);
         this.confidenceTable = new TxConfidenceTable();
+        this.scriptVerificationCache = new ScriptVerificationCache();
         this.eventHorizon = eventHorizon;
         this.ensureMinRequiredFee = ensureMinRequiredFee;
         this.feePerKb = feePerKb;
@@ -160,6 +163,15 @@ public class Context {
         return confidenceTable;
     }
 
+    /**
+     * Returns the {@link ScriptVerificationCache} created by this context. It remembers transaction inputs that have
+     * already passed script verification, e.g. on arrival into a memory pool, so that they don't need to be verified
+     * again when the block confirming them is connected.
+     */
+    public ScriptVerificationCache getScriptVerificationCache() {
+        return scriptVerificationCache;
+    }
+
     /**
      * The event horizon is the number of blocks after which various bits of the library consider a transaction to be
      * so confirmed that it's safe to delete data. Re-orgs larger than the event horizon will not be correctly
@@ -21,11 +21,13 @@ import org.bitcoinj.base.BitcoinNetwork;
 import org.bitcoinj.base.Coin;
 import org.bitcoinj.base.Sha256Hash;
 import org.bitcoinj.base.internal.FutureUtils;
+import org.bitcoinj.crypto.SchnorrSignature;
 import org.bitcoinj.params.BitcoinNetworkParams;
 import org.bitcoinj.params.UnitTestParams;
 import org.bitcoinj.script.Script;
 import org.bitcoinj.script.ScriptExecution;
 import org.bitcoinj.script.ScriptPattern;
+import org.bitcoinj.script.ScriptVerificationCache;
 import org.bitcoinj.store.BlockStoreException;
 import org.bitcoinj.store.FullPrunedBlockStore;
 import org.bitcoinj.utils.ContextPropagatingThreadFactory;
@@ -38,9 +40,10 @@ import org.jspecify.annotations.Nullable;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
@@ -69,6 +72,18 @@ public class FullPrunedBlockChain extends AbstractBlockChain {
     // Whether or not to execute scriptPubKeys before accepting a transaction (i.e. check signatures).
     private boolean runScripts = true;
 
+    // Inputs known to be valid, e.g. because they were verified on arrival into the memory pool.
+    private ScriptVerificationCache scriptVerificationCache;
+
+    // The scripts of this block and its ancestors aren't run, see setAssumeValidBlock().
+    @Nullable
+    private Sha256Hash assumeValidBlock;
+    private int assumeValidHeight;
+
+    // Number of transaction inputs whose scripts were verified, or skipped
+    private volatile long inputsVerified = 0;
+    private volatile long inputsSkipped = 0;
+
     /**
      * Constructs a block chain connected to the given wallet and store. To obtain a {@link Wallet} you can construct
      * one from scratch, or you can deserialize a saved wallet from disk using
@@ -99,6 +114,9 @@ public class FullPrunedBlockChain extends AbstractBlockChain {
                                 FullPrunedBlockStore blockStore) throws BlockStoreException {
         super(params, listeners, blockStore);
         this.blockStore = blockStore;
+        this.scriptVerificationCache = Context.getOrCreate().getScriptVerificationCache();
+        this.assumeValidBlock = params.getAssumeValidBlock();
+        this.assumeValidHeight = params.getAssumeValidHeight();
         // Ignore upgrading for now
         this.chainHead = blockStore.getVerifiedChainHead();
     }
@@ -140,6 +158,65 @@ public class FullPrunedBlockChain extends AbstractBlockChain {
         this.runScripts = value;
     }
 
+    /**
+     * Sets the cache consulted before running the scripts of a transaction input, and updated after running them
+     * successfully. By default, the cache of the {@link Context} is used, which means inputs that were already verified
+     * elsewhere using that cache (e.g. on arrival into a memory pool) don't need to be verified again when connecting
+     * a block.
+     */
+    public void setScriptVerificationCache(ScriptVerificationCache cache) {
+        this.scriptVerificationCache = Objects.requireNonNull(cache);
+    }
+
+    /**
+     * Overrides the assume-valid block of the network, see {@link NetworkParameters#getAssumeValidBlock()}. The scripts
+     * of this block and its ancestors are not run, but all other rules are still checked and the set of unspent outputs
+     * is maintained as usual. Scripts are verified again for all blocks after it.
+     * <p>
+     * The assume-valid block is locked in like a checkpoint: a block at its height but with a different hash is
+     * rejected. This ensures the blocks that had their scripts skipped are ancestors of the assume-valid block.
+     * @param hash hash of the block, or null to verify the scripts of all blocks
+     * @param height height of the block
+     */
+    public void setAssumeValidBlock(@Nullable Sha256Hash hash, int height) {
+        checkArgument(hash == null || height >= 0, () -> "invalid height: " + height);
+        lock.lock();
+        try {
+            this.assumeValidBlock = hash;
+            this.assumeValidHeight = hash != null ? height : -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of transaction inputs whose scripts were verified, or found in the
+     * {@link ScriptVerificationCache}, while connecting blocks.
+     */
+    public long getInputsVerified() {
+        return inputsVerified;
+    }
+
+    /**
+     * Returns the number of transaction inputs whose scripts were not run while connecting blocks, because they were
+     * below the assume-valid block or running scripts was switched off via {@link #setRunScripts(boolean)}.
+     */
+    public long getInputsSkipped() {
+        return inputsSkipped;
+    }
+
+    // Returns true if the scripts of the block at the given height need to run. Also enforces the assume-valid lockin.
+    private boolean shouldRunScripts(int height, Sha256Hash blockHash) throws VerificationException {
+        if (assumeValidBlock == null || height > assumeValidHeight)
+            return true;
+        if (height == assumeValidHeight) {
+            if (!assumeValidBlock.equals(blockHash))
+                throw new VerificationException("Block failed assume-valid lockin at " + height);
+            log.info("Reached assume-valid block {} at height {}, verifying scripts from here on", blockHash, height);
+        }
+        return false;
+    }
+
     // TODO: Remove lots of duplicated code in the two connectTransactions
 
     // TODO: execute in order of largest transaction (by input count) first
@@ -147,12 +224,13 @@ public class FullPrunedBlockChain extends AbstractBlockChain {
             Runtime.getRuntime().availableProcessors(), new ContextPropagatingThreadFactory("Script verification"));
 
     @Nullable
-    private VerificationException verify(Transaction tx, List<Script> prevOutScripts, Set<ScriptExecution.VerifyFlag> verifyFlags) {
+    private VerificationException verify(Transaction tx, PrecomputedTransactionData txData,
+                                         Set<ScriptExecution.VerifyFlag> verifyFlags,
+                                         SchnorrSignature.BatchVerifier batchVerifier) {
         try {
-            ListIterator<Script> prevOutIt = prevOutScripts.listIterator();
             for (int index = 0; index < tx.getInputs().size(); index++) {
-                ScriptExecution.correctlySpends(tx.getInput(index).getScriptSig(), tx, index, null, null, prevOutIt.next(),
-                        verifyFlags);
+                if (!scriptVerificationCache.contains(txData, index, verifyFlags))
+                    ScriptExecution.correctlySpends(tx, index, txData, verifyFlags, batchVerifier);
             }
         } catch (VerificationException e) {
             return e;
@@ -160,6 +238,17 @@ public class FullPrunedBlockChain extends AbstractBlockChain {
         return null;
     }
 
+    // Schnorr signatures of the whole block are verified at once. Only after that, inputs can be remembered as valid.
+    private void verifyBatch(SchnorrSignature.BatchVerifier batchVerifier,
+                             Map<PrecomputedTransactionData, Set<ScriptExecution.VerifyFlag>> verifiedTransactions) {
+        if (!batchVerifier.verify())
+            throw new VerificationException("Block contains an invalid Schnorr signature");
+        verifiedTransactions.forEach((txData, verifyFlags) -> {
+            for (int index = 0; index < txData.getTransaction().getInputs().size(); index++)
+                scriptVerificationCache.add(txData, index, verifyFlags);
+        });
+    }
+
     /**
      * Get the {@link Script} from the script bytes or return Script of empty byte array.
      */
@@ -184,6 +273,8 @@ public class FullPrunedBlockChain extends AbstractBlockChain {
         LinkedList<UTXO> txOutsSpent = new LinkedList<>();
         LinkedList<UTXO> txOutsCreated = new LinkedList<>();
         long sigOps = 0;
+        final boolean runScripts = this.runScripts && shouldRunScripts(height, block.getHash());
+        long inputs = 0;
 
         if (scriptVerificationExecutor.isShutdown())
             scriptVerificationExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
@@ -207,11 +298,14 @@ public class FullPrunedBlockChain extends AbstractBlockChain {
             Coin totalFees = Coin.ZERO;
             Coin coinbaseValue = null;
             List<CompletableFuture<VerificationException>> listScriptVerificationResults = new ArrayList<>(block.transactionCount());
+            SchnorrSignature.BatchVerifier batchVerifier = new SchnorrSignature.BatchVerifier();
+            Map<PrecomputedTransactionData, Set<ScriptExecution.VerifyFlag>> verifiedTransactions = new LinkedHashMap<>();
             for (final Transaction tx : block.transactions()) {
                 boolean isCoinBase = tx.isCoinBase();
                 Coin valueIn = Coin.ZERO;
                 Coin valueOut = Coin.ZERO;
-                final List<Script> prevOutScripts = new LinkedList<>();
+                final List<Script> prevOutScripts = new ArrayList<>();
+                final List<Coin> prevOutValues = new ArrayList<>();
                 final Set<ScriptExecution.VerifyFlag> verifyFlags = params.getTransactionVerificationFlags(block, tx, getVersionTally(), height);
                 if (!isCoinBase) {
                     // For each input of the transaction remove the corresponding output from the set of unspent
@@ -240,6 +334,7 @@ public class FullPrunedBlockChain extends AbstractBlockChain {
                         }
 
                         prevOutScripts.add(prevOut.getScript());
+                        prevOutValues.add(prevOut.getValue());
                         blockStore.removeUnspentTransactionOutput(prevOut);
                         txOutsSpent.add(prevOut);
                     }
@@ -269,13 +364,17 @@ public class FullPrunedBlockChain extends AbstractBlockChain {
                     totalFees = totalFees.add(valueIn.subtract(valueOut));
                 }
 
+                if (!isCoinBase)
+                    inputs += tx.getInputs().size();
                 if (!isCoinBase && runScripts) {
                     // Because correctlySpends modifies transactions, this must come after we are done with tx
+                    PrecomputedTransactionData txData = new PrecomputedTransactionData(tx, prevOutValues, prevOutScripts);
                     CompletableFuture<VerificationException> future = CompletableFuture.supplyAsync(
-                            () -> verify(tx, prevOutScripts, verifyFlags),
+                            () -> verify(tx, txData, verifyFlags, batchVerifier),
                             scriptVerificationExecutor
                     );
                     listScriptVerificationResults.add(future);
+                    verifiedTransactions.put(txData, verifyFlags);
                 }
             }
             if (params.network().exceedsMaxMoney(totalFees) || getBlockInflation(height).add(totalFees).compareTo(coinbaseValue) < 0)
@@ -288,11 +387,13 @@ public class FullPrunedBlockChain extends AbstractBlockChain {
                 }
             }).join();
             verifications.stream().filter(Objects::nonNull).findAny().ifPresent(e -> { throw e; });
+            verifyBatch(batchVerifier, verifiedTransactions);
         } catch (VerificationException | BlockStoreException e) {
             scriptVerificationExecutor.shutdownNow();
             blockStore.abortDatabaseBatchWrite();
             throw e;
         }
+        countInputs(inputs, runScripts);
         return new TransactionOutputChanges(txOutsCreated, txOutsSpent);
     }
 
@@ -320,6 +421,8 @@ public class FullPrunedBlockChain extends AbstractBlockChain {
                 LinkedList<UTXO> txOutsSpent = new LinkedList<>();
                 LinkedList<UTXO> txOutsCreated = new LinkedList<>();
                 long sigOps = 0;
+                final boolean runScripts = shouldRunScripts(newBlock.getHeight(), newBlock.getHeader().getHash());
+                long inputs = 0;
 
                 if (!params.isCheckpoint(newBlock.getHeight())) {
                     for (Transaction tx : transactions) {
@@ -334,13 +437,16 @@ public class FullPrunedBlockChain extends AbstractBlockChain {
                 if (scriptVerificationExecutor.isShutdown())
                     scriptVerificationExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
                 List<CompletableFuture<VerificationException>> listScriptVerificationResults = new ArrayList<>(transactions.size());
+                SchnorrSignature.BatchVerifier batchVerifier = new SchnorrSignature.BatchVerifier();
+                Map<PrecomputedTransactionData, Set<ScriptExecution.VerifyFlag>> verifiedTransactions = new LinkedHashMap<>();
                 for (final Transaction tx : transactions) {
                     final Set<ScriptExecution.VerifyFlag> verifyFlags =
                         params.getTransactionVerificationFlags(newBlock.getHeader(), tx, getVersionTally(), Integer.SIZE);
                     boolean isCoinBase = tx.isCoinBase();
                     Coin valueIn = Coin.ZERO;
                     Coin valueOut = Coin.ZERO;
-                    final List<Script> prevOutScripts = new LinkedList<>();
+                    final List<Script> prevOutScripts = new ArrayList<>();
+                    final List<Coin> prevOutValues = new ArrayList<>();
 
                     if (!isCoinBase) {
                         for (int index = 0; index < tx.getInputs().size(); index++) {
@@ -362,6 +468,7 @@ public class FullPrunedBlockChain extends AbstractBlockChain {
                             // TODO: Enforce DER signature format
 
                             prevOutScripts.add(prevOut.getScript());
+                            prevOutValues.add(prevOut.getValue());
 
                             blockStore.removeUnspentTransactionOutput(prevOut);
                             txOutsSpent.add(prevOut);
@@ -392,13 +499,17 @@ public class FullPrunedBlockChain extends AbstractBlockChain {
                         totalFees = totalFees.add(valueIn.subtract(valueOut));
                     }
 
-                    if (!isCoinBase) {
+                    if (!isCoinBase)
+                        inputs += tx.getInputs().size();
+                    if (!isCoinBase && runScripts) {
                         // Because correctlySpends modifies transactions, this must come after we are done with tx
+                        PrecomputedTransactionData txData = new PrecomputedTransactionData(tx, prevOutValues, prevOutScripts);
                         CompletableFuture<VerificationException> future = CompletableFuture.supplyAsync(
-                            () -> verify(tx, prevOutScripts, verifyFlags),
+                            () -> verify(tx, txData, verifyFlags, batchVerifier),
                                     scriptVerificationExecutor
                         );
                         listScriptVerificationResults.add(future);
+                        verifiedTransactions.put(txData, verifyFlags);
                     }
                 }
                 if (params.network().exceedsMaxMoney(totalFees) || getBlockInflation(newBlock.getHeight()).add(totalFees).compareTo(coinbaseValue) < 0)
@@ -411,6 +522,8 @@ public class FullPrunedBlockChain extends AbstractBlockChain {
                     }
                 }).join();
                 verifications.stream().filter(Objects::nonNull).findAny().ifPresent(e -> { throw e; });
+                verifyBatch(batchVerifier, verifiedTransactions);
+                countInputs(inputs, runScripts);
             } else {
                 txOutChanges = block.getTxOutChanges();
                 if (!params.isCheckpoint(newBlock.getHeight()))
@@ -432,6 +545,13 @@ public class FullPrunedBlockChain extends AbstractBlockChain {
         return txOutChanges;
     }
 
+    private void countInputs(long inputs, boolean verified) {
+        if (verified)
+            inputsVerified += inputs;
+        else
+            inputsSkipped += inputs;
+    }
+
     /**
      * This is broken for blocks that do not pass BIP30, so all BIP30-failing blocks which are allowed to fail BIP30
      * must be checkpointed.
@@ -0,0 +1,215 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import org.bitcoinj.base.Sha256Hash;
+import org.bitcoinj.base.VarInt;
+import org.jspecify.annotations.Nullable;
+
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+
+import static org.bitcoinj.base.internal.Preconditions.check;
+
+/**
+ * The transactions of a block, kept as their raw bytes and only deserialized when accessed. Reading it does a single
+ * pass over the payload, which checks the structure of each transaction and records where it starts, where its
+ * witnesses start and whether it is a coinbase. This is enough to write the transactions and to calculate their ids
+ * without deserializing them.
+ * <p>
+ * A transaction that has been accessed once is kept, so accessing it again returns the same instance. Modifying the
+ * list deserializes all transactions and drops the raw bytes. Malformed scripts or witnesses that the pass over the
+ * payload doesn't detect cause a {@link ProtocolException} on access.
+ * <p>
+ * Like the list it replaces, this class is not thread safe. The one exception is that different transactions may be
+ * accessed from different threads, as long as the list isn't modified. Parallel block verification relies on that.
+ */
+final class LazyTransactionList extends AbstractList<Transaction> implements RandomAccess {
+    // null once the list has been modified
+    private byte @Nullable [] raw;
+    // Offsets of the transactions in raw, plus the end of the last one
+    private int[] offsets;
+    // Offsets of the inputs in raw, after the segwit marker and flags if present
+    private int[] inputsOffsets;
+    // Offsets of the witnesses in raw, or of the lock time for transactions without witnesses
+    private int[] witnessesOffsets;
+    private BitSet coinBases;
+    private Transaction[] transactions;
+    // Replaces all of the above once the list has been modified
+    @Nullable
+    private List<Transaction> modified;
+
+    private LazyTransactionList(byte[] raw, int[] offsets, int[] inputsOffsets, int[] witnessesOffsets,
+                                BitSet coinBases) {
+        this.raw = raw;
+        this.offsets = offsets;
+        this.inputsOffsets = inputsOffsets;
+        this.witnessesOffsets = witnessesOffsets;
+        this.coinBases = coinBases;
+        this.transactions = new Transaction[offsets.length - 1];
+    }
+
+    /**
+     * Read the transactions of a block message, deferring their deserialization. The raw bytes are copied, so the
+     * payload can be reused afterwards.
+     *
+     * @param payload payload to read from, positioned at the number of transactions
+     * @return list of transactions
+     * @throws BufferUnderflowException if the transactions extend beyond the remaining bytes of the payload
+     */
+    static LazyTransactionList read(ByteBuffer payload) throws BufferUnderflowException, ProtocolException {
+        VarInt numTransactions = VarInt.read(payload);
+        check(numTransactions.fitsInt(), BufferUnderflowException::new);
+        int count = numTransactions.intValue();
+        // The array lengths are bounded by the payload, as every transaction is at least ten bytes.
+        check(count <= payload.remaining() / 10, BufferUnderflowException::new);
+        int start = payload.position();
+        int[] offsets = new int[count + 1];
+        int[] inputsOffsets = new int[count];
+        int[] witnessesOffsets = new int[count];
+        BitSet coinBases = new BitSet(count);
+        for (int i = 0; i < count; i++) {
+            int offset = payload.position() - start;
+            TransactionLayout layout = TransactionLayout.scan(payload, false);
+            offsets[i] = offset;
+            inputsOffsets[i] = offset + layout.inputsOffset;
+            witnessesOffsets[i] = offset + layout.witnessesOffset;
+            coinBases.set(i, layout.coinBase);
+        }
+        offsets[count] = payload.position() - start;
+        byte[] raw = new byte[offsets[count]];
+        ((Buffer) payload).position(start);
+        payload.get(raw);
+        return new LazyTransactionList(raw, offsets, inputsOffsets, witnessesOffsets, coinBases);
+    }
+
+    @Override
+    public Transaction get(int index) {
+        if (modified != null)
+            return modified.get(index);
+        Transaction tx = transactions[index];
+        if (tx == null) {
+            tx = Transaction.read(ByteBuffer.wrap(raw, offsets[index], offsets[index + 1] - offsets[index]));
+            transactions[index] = tx;
+        }
+        return tx;
+    }
+
+    @Override
+    public int size() {
+        return modified != null ? modified.size() : transactions.length;
+    }
+
+    /**
+     * Returns the id of the transaction at the given index. If the transaction hasn't been accessed, this is
+     * calculated from the raw bytes without deserializing it.
+     */
+    Sha256Hash txId(int index) {
+        if (modified != null || transactions[index] != null)
+            return get(index).getTxId();
+        int offset = offsets[index];
+        return TransactionLayout.txId(ByteBuffer.wrap(raw), offset, inputsOffsets[index] - offset,
+                witnessesOffsets[index] - offset, offsets[index + 1] - offset);
+    }
+
+    /**
+     * Returns the witness id of the transaction at the given index. If the transaction hasn't been accessed, this is
+     * calculated from the raw bytes without deserializing it.
+     */
+    Sha256Hash wTxId(int index) {
+        if (modified != null || transactions[index] != null)
+            return get(index).getWTxId();
+        int offset = offsets[index];
+        return TransactionLayout.wTxId(ByteBuffer.wrap(raw), offset, offsets[index + 1] - offset);
+    }
+
+    /**
+     * Returns true if the transaction at the given index is a coinbase. If the transaction hasn't been accessed, this
+     * is determined without deserializing it.
+     */
+    boolean isCoinBase(int index) {
+        if (modified != null || transactions[index] != null)
+            return get(index).isCoinBase();
+        return coinBases.get(index);
+    }
+
+    /** Returns the serialized size of the transactions, including their count. */
+    int messageSize() {
+        int size = VarInt.sizeOf(size());
+        for (int i = 0; i < size(); i++)
+            size += modified != null || transactions[i] != null
+                    ? get(i).messageSize()
+                    : offsets[i + 1] - offsets[i];
+        return size;
+    }
+
+    /**
+     * Write the transactions, including their count. Transactions that haven't been accessed are copied from the raw
+     * bytes.
+     */
+    void write(ByteBuffer buf) throws BufferOverflowException {
+        VarInt.of(size()).write(buf);
+        for (int i = 0; i < size(); i++) {
+            if (modified != null || transactions[i] != null)
+                get(i).write(buf);
+            else
+                buf.put(raw, offsets[i], offsets[i + 1] - offsets[i]);
+        }
+    }
+
+    // Deserializes all transactions and drops the raw bytes, so that the list can be modified.
+    private List<Transaction> modify() {
+        if (modified == null) {
+            List<Transaction> list = new ArrayList<>(transactions.length);
+            for (int i = 0; i < transactions.length; i++)
+                list.add(get(i));
+            modified = list;
+            raw = null;
+            transactions = new Transaction[0];
+            offsets = new int[] { 0 };
+            inputsOffsets = new int[0];
+            witnessesOffsets = new int[0];
+            coinBases = new BitSet();
+        }
+        return modified;
+    }
+
+    @Override
+    public Transaction set(int index, Transaction tx) {
+        return modify().set(index, tx);
+    }
+
+    @Override
+    public void add(int index, Transaction tx) {
+        modify().add(index, tx);
+        modCount++;
+    }
+
+    @Override
+    public Transaction remove(int index) {
+        Transaction removed = modify().remove(index);
+        modCount++;
+        return removed;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import org.bitcoinj.base.Sha256Hash;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.bitcoinj.base.internal.Preconditions.checkArgument;
+
+/**
+ * <p>The merkle root of the transactions of a block, and whether the tree is mutated.</p>
+ *
+ * <p>The merkle root is based on a tree of hashes calculated from the transactions:</p>
+ *
+ * <pre>
+ *     root
+ *      / \
+ *   A      B
+ *  / \    / \
+ * t1 t2 t3 t4
+ * </pre>
+ *
+ * <p>The hashing algorithm is double SHA-256. The leaves are a hash of the serialized contents of the transaction.
+ * The interior nodes are hashes of the concatenation of the two child hashes. If the number of nodes on a level is
+ * odd, the last node is repeated to make it even. A tree with 5 transactions looks like this:</p>
+ *
+ * <pre>
+ *         root
+ *        /     \
+ *       1        5
+ *     /   \     / \
+ *    2     3    4  4
+ *  / \   / \   / \
+ * t1 t2 t3 t4 t5 t5
+ * </pre>
+ *
+ * <p>Because of that repetition, a list of transactions ending with a repeated run has the same root as the list
+ * without it (CVE-2012-2459). Such a tree is called mutated: two sibling nodes are identical.</p>
+ *
+ * <p>The levels are hashed in place in one flat array, with one digest per thread. For large blocks, the subtrees
+ * below {@link #SUBTREE_LEAVES} leaves are hashed in parallel on the common fork-join pool.</p>
+ */
+final class MerkleRoot {
+    // Number of leaves of the subtrees hashed in parallel; a power of two
+    static final int SUBTREE_LEAVES = 512;
+    // Minimum number of leaves to hash in parallel
+    private static final int PARALLEL_THRESHOLD = 4 * SUBTREE_LEAVES;
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(Sha256Hash::newDigest);
+
+    private final Sha256Hash hash;
+    private final boolean mutated;
+
+    private MerkleRoot(Sha256Hash hash, boolean mutated) {
+        this.hash = hash;
+        this.mutated = mutated;
+    }
+
+    /**
+     * Calculates the merkle root of the given transactions.
+     * @param transactions transactions of a block, at least one
+     * @param useWTxId true for the witness merkle root, false for the merkle root
+     * @return merkle root
+     */
+    static MerkleRoot of(List<Transaction> transactions, boolean useWTxId) {
+        int count = transactions.size();
+        checkArgument(count > 0, () -> "no transactions");
+        byte[] hashes = new byte[count * 32];
+        ByteBuffer buf = ByteBuffer.wrap(hashes);
+        for (int i = 0; i < count; i++)
+            writeLeaf(transactions, i, useWTxId, buf);
+        return of(hashes, count);
+    }
+
+    /**
+     * Writes the leaf of one transaction to its place among the leaves. Transactions that haven't been deserialized
+     * yet are hashed from their raw bytes.
+     * @param transactions transactions of a block
+     * @param index index of the transaction
+     * @param useWTxId true for the witness merkle root, false for the merkle root
+     * @param hashes leaves to be passed to {@link #of(byte[], int)}, wrapped in a buffer
+     */
+    static void writeLeaf(List<Transaction> transactions, int index, boolean useWTxId, ByteBuffer hashes) {
+        Sha256Hash leaf;
+        if (transactions instanceof LazyTransactionList) {
+            LazyTransactionList lazy = (LazyTransactionList) transactions;
+            if (useWTxId && lazy.isCoinBase(index))
+                return; // zero hash
+            leaf = useWTxId ? lazy.wTxId(index) : lazy.txId(index);
+        } else {
+            Transaction tx = transactions.get(index);
+            if (useWTxId && tx.isCoinBase())
+                return; // zero hash
+            leaf = useWTxId ? tx.getWTxId() : tx.getTxId();
+        }
+        // Leaves are hashed in their serialized (reversed) byte order.
+        ((Buffer) hashes).position(index * 32);
+        leaf.write(hashes);
+    }
+
+    /**
+     * Calculates the merkle root of the given leaves, overwriting them.
+     * @param hashes leaves in their serialized byte order, 32 bytes each
+     * @param count number of leaves, at least one
+     * @return merkle root
+     */
+    static MerkleRoot of(byte[] hashes, int count) {
+        checkArgument(count > 0 && hashes.length >= count * 32, () -> "invalid count: " + count);
+        boolean mutated = false;
+        int size = count;
+        if (count >= PARALLEL_THRESHOLD) {
+            int subtrees = (count + SUBTREE_LEAVES - 1) / SUBTREE_LEAVES;
+            int levels = Integer.numberOfTrailingZeros(SUBTREE_LEAVES);
+            mutated = IntStream.range(0, subtrees).parallel()
+                    .map(i -> hashLevels(hashes, i * SUBTREE_LEAVES,
+                            Math.min(SUBTREE_LEAVES, count - i * SUBTREE_LEAVES), levels, DIGEST.get()) ? 1 : 0)
+                    .sum() > 0;
+            // Gather the subtree roots to continue with the upper levels.
+            for (int i = 1; i < subtrees; i++)
+                System.arraycopy(hashes, i * SUBTREE_LEAVES * 32, hashes, i * 32, 32);
+            size = subtrees;
+        }
+        int levels = 32 - Integer.numberOfLeadingZeros(size - 1);
+        mutated |= hashLevels(hashes, 0, size, levels, DIGEST.get());
+        return new MerkleRoot(Sha256Hash.wrapReversed(Arrays.copyOf(hashes, 32)), mutated);
+    }
+
+    // Hashes the given number of levels of the subtree starting at the given node, leaving its root in the first
+    // node. Returns true if any two siblings were identical.
+    private static boolean hashLevels(byte[] hashes, int first, int size, int levels, MessageDigest digest) {
+        boolean mutated = false;
+        int offset = first * 32;
+        for (int level = 0; level < levels; level++) {
+            for (int left = 0; left < size; left += 2) {
+                // The right hand node is the same as the left hand one if the level has an odd number of nodes.
+                int right = Math.min(left + 1, size - 1);
+                int leftOffset = offset + left * 32;
+                int rightOffset = offset + right * 32;
+                if (right != left && equals(hashes, leftOffset, rightOffset))
+                    mutated = true;
+                int target = offset + left / 2 * 32;
+                try {
+                    digest.update(hashes, leftOffset, 32);
+                    digest.update(hashes, rightOffset, 32);
+                    digest.digest(hashes, target, 32);
+                    digest.update(hashes, target, 32);
+                    digest.digest(hashes, target, 32);
+                } catch (DigestException e) {
+                    throw new RuntimeException(e); // Cannot happen.
+                }
+            }
+            size = (size + 1) / 2;
+        }
+        return mutated;
+    }
+
+    private static boolean equals(byte[] hashes, int offset1, int offset2) {
+        for (int i = 0; i < 32; i++)
+            if (hashes[offset1 + i] != hashes[offset2 + i])
+                return false;
+        return true;
+    }
+
+    /** Returns the merkle root. */
+    Sha256Hash hash() {
+        return hash;
+    }
+
+    /**
+     * Returns true if two sibling nodes of the tree are identical. The transactions of a block with a mutated tree
+     * are never valid, but the same merkle root might also commit to a valid list of transactions.
+     */
+    boolean isMutated() {
+        return mutated;
+    }
+}
@@ -18,10 +18,15 @@
 
 package org.bitcoinj.core;
 
+import org.jspecify.annotations.Nullable;
+
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.Buffer;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 /**
  * Generic interface for classes which serialize/deserialize messages. Implementing
@@ -105,6 +110,16 @@ public abstract class MessageSerializer {
 
     public abstract void seekPastMagicBytes(ByteBuffer in) throws BufferUnderflowException;
 
+    /**
+     * Create a decoder for messages that arrive in chunks of any size, e.g. straight from a socket. The default
+     * implementation is built on {@link #seekPastMagicBytes(ByteBuffer)}, {@link #deserializeHeader(ByteBuffer)} and
+     * {@link #deserializePayload(BitcoinSerializer.BitcoinPacketHeader, ByteBuffer)}, so it collects the bytes of each
+     * header and payload until they are complete. It doesn't support deferring checksums.
+     */
+    public Decoder newDecoder() {
+        return new BufferingDecoder(this);
+    }
+
     /**
      * Writes message to the output stream.
      * 
@@ -124,5 +139,155 @@ public abstract class MessageSerializer {
      * it does not support serializing the given message.
      */
     public abstract void serialize(Message message, OutputStream out) throws IOException, UnsupportedOperationException;
-    
+
+    /**
+     * <p>Decodes messages from a stream of bytes that arrives in chunks of any size, e.g. straight from a socket. Unlike
+     * {@link #deserialize(ByteBuffer)}, this doesn't need a whole message to be available at once. It picks up where
+     * the previous chunk left off: it looks for the magic bytes, decodes the header and then the payload.</p>
+     *
+     * <p>The header of each message is passed to the listener as soon as it is complete, before the payload arrives.
+     * For a large payload like a block this can be well before the message is complete. The listener may then reject
+     * the message by throwing, or decide to skip its payload, which is discarded as it arrives.</p>
+     *
+     * <p>Like {@link #deserialize(ByteBuffer)}, garbage before the magic bytes is ignored, but only up to
+     * {@link #MAX_GARBAGE_LENGTH} bytes at a time. Instances are not thread safe.</p>
+     */
+    public interface Decoder {
+        /** Maximum number of bytes before the magic bytes of a message that are ignored. */
+        int MAX_GARBAGE_LENGTH = 65536;
+        /** Minimum size of payloads whose checksums are verified on the executor, if checksums are deferred. */
+        int MIN_DEFERRED_CHECKSUM_SIZE = 65536;
+
+        /**
+         * Decodes all bytes remaining in the given chunk. Each message completed by them is passed to the listener.
+         * An incomplete message at the end is kept, to be continued by the next chunk.
+         *
+         * @param chunk bytes to decode, the buffer is left at its limit
+         * @param listener listener for the decoded headers and messages
+         * @throws ProtocolException if a message is invalid, or if no magic bytes could be found
+         */
+        void decode(ByteBuffer chunk, Listener listener) throws ProtocolException;
+
+        /**
+         * <p>Verifies the checksums of payloads of at least {@link #MIN_DEFERRED_CHECKSUM_SIZE} bytes, e.g. blocks, on
+         * the given executor rather than while decoding. This keeps the decoding thread, typically the network thread,
+         * from hashing large payloads, and lets the hashing overlap with the parsing and processing of the message.</p>
+         *
+         * <p>The message is passed to the listener without waiting for its checksum. If the checksum turns out not to
+         * match, a {@link ProtocolException} is passed to the failure handler on the executor, usually after the
+         * message has been processed. The handler should then disconnect from the peer. This must be called before
+         * decoding starts.</p>
+         *
+         * <p>Decoders that can't defer checksums ignore this, and keep verifying them while decoding.</p>
+         *
+         * @param executor executor to verify checksums on
+         * @param failureHandler handler for checksums that don't match
+         */
+        default void deferChecksums(Executor executor, Consumer<ProtocolException> failureHandler) {
+        }
+
+        /**
+         * Receives the headers and messages decoded by a {@link Decoder}.
+         */
+        interface Listener {
+            /**
+             * Called as soon as the header of a message is decoded, before its payload.
+             *
+             * @param header header of the message
+             * @return true to decode the message, false to skip its payload
+             * @throws ProtocolException to reject the message
+             */
+            default boolean onHeader(BitcoinSerializer.BitcoinPacketHeader header) throws ProtocolException {
+                return true;
+            }
+
+            /**
+             * Called for each decoded message.
+             *
+             * @param message the message
+             */
+            void onMessage(Message message);
+        }
+    }
+
+    /**
+     * Decoder built on the methods that need a whole header or payload at once. Bytes are collected until those are
+     * complete, except for skipped payloads.
+     */
+    static class BufferingDecoder implements Decoder {
+        private static final int HEADER_LENGTH = BitcoinSerializer.BitcoinPacketHeader.HEADER_LENGTH;
+        private static final int MAGIC_LENGTH = 4;
+
+        private final MessageSerializer serializer;
+        // Bytes not decoded yet, in write mode between decode() calls
+        private ByteBuffer pending = ByteBuffer.allocate(HEADER_LENGTH);
+        // Header of the message whose payload is being collected or skipped, or null if looking for the next header
+        private BitcoinSerializer.@Nullable BitcoinPacketHeader header;
+        private boolean skipping = false;
+        // Number of bytes of a skipped payload discarded so far
+        private int skipped = 0;
+
+        BufferingDecoder(MessageSerializer serializer) {
+            this.serializer = serializer;
+        }
+
+        @Override
+        public void decode(ByteBuffer chunk, Listener listener) throws ProtocolException {
+            if (pending.remaining() < chunk.remaining()) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2,
+                        pending.position() + chunk.remaining()));
+                ((Buffer) pending).flip();
+                pending = grown.put(pending);
+            }
+            pending.put(chunk);
+            ((Buffer) pending).flip();
+            try {
+                boolean decoded;
+                do {
+                    decoded = decodeNext(listener);
+                } while (decoded);
+            } finally {
+                pending.compact();
+                // Don't hold on to the space of a large payload.
+                if (pending.position() == 0 && pending.capacity() > MAX_GARBAGE_LENGTH)
+                    pending = ByteBuffer.allocate(HEADER_LENGTH);
+            }
+        }
+
+        // Decodes the next header or payload from the pending bytes, returns false if more bytes are needed.
+        private boolean decodeNext(Listener listener) throws ProtocolException {
+            BitcoinSerializer.BitcoinPacketHeader header = this.header;
+            if (header == null) {
+                ((Buffer) pending).mark();
+                try {
+                    serializer.seekPastMagicBytes(pending);
+                    header = serializer.deserializeHeader(pending);
+                } catch (BufferUnderflowException e) {
+                    ((Buffer) pending).reset();
+                    // What's left is garbage, possibly followed by the magic bytes and part of a header.
+                    if (pending.remaining() > MAX_GARBAGE_LENGTH + MAGIC_LENGTH + HEADER_LENGTH)
+                        throw new ProtocolException("No magic bytes after reading " + pending.remaining() + " bytes");
+                    return false;
+                }
+                this.header = header;
+                skipping = !listener.onHeader(header);
+                skipped = 0;
+            }
+            if (skipping) {
+                int length = Math.min(pending.remaining(), header.size - skipped);
+                ((Buffer) pending).position(pending.position() + length);
+                skipped += length;
+                if (skipped < header.size)
+                    return false;
+                this.header = null;
+                return true;
+            }
+            if (pending.remaining() < header.size)
+                return false;
+            // Get ready for the next message first, so that a failure to make this one leaves a consistent state.
+            this.header = null;
+            listener.onMessage(serializer.deserializePayload(header, pending));
+            return true;
+        }
+    }
 }
@@ -27,6 +27,7 @@ import org.bitcoinj.params.Networks;
 import org.bitcoinj.script.ScriptExecution;
 import org.bitcoinj.base.utils.MonetaryFormat;
 import org.bitcoinj.utils.VersionTally;
+import org.jspecify.annotations.Nullable;
 
 import java.math.BigInteger;
 import java.time.Instant;
@@ -77,6 +78,9 @@ public abstract class NetworkParameters {
     protected String[] dnsSeeds;
     protected int[] addrSeeds;
     protected Map<Integer, Sha256Hash> checkpoints = new HashMap<>();
+    /** See {@link #getAssumeValidBlock()} */
+    protected Sha256Hash assumeValidBlock = null;
+    protected int assumeValidHeight = -1;
     protected volatile transient MessageSerializer defaultSerializer = null;
 
     protected NetworkParameters(Network network) {
@@ -95,6 +99,13 @@ public abstract class NetworkParameters {
      */
     public static final Instant BIP16_ENFORCE_TIME = Instant.ofEpochSecond(1333238400);
 
+    /**
+     * Taproot (BIPs 341 and 342) is enforced for all blocks, like Bitcoin Core does, except for this single block on
+     * mainnet that was mined before activation and violates the rules.
+     */
+    private static final Sha256Hash TAPROOT_EXCEPTION_BLOCK =
+            Sha256Hash.wrap("0000000000000000000f14c35b2d841e986ab5441de8c585d5ffe55ea1e395ad");
+
     /**
      * A Java package style string acting as unique ID for these parameters
      * @return network id string
@@ -166,6 +177,26 @@ public abstract class NetworkParameters {
         return checkpointHash != null;
     }
 
+    /**
+     * Returns a block that is known to be valid, like the assume-valid block of Bitcoin Core. A fully verifying chain
+     * doesn't need to run the scripts of this block and its ancestors, because the network has already done so. The
+     * rest of the rules, including the tracking of unspent outputs, still applies. See
+     * {@link FullPrunedBlockChain#setAssumeValidBlock(Sha256Hash, int)} for how to override this.
+     * @return hash of the block, or null if there isn't one for this network
+     */
+    @Nullable
+    public Sha256Hash getAssumeValidBlock() {
+        return assumeValidBlock;
+    }
+
+    /**
+     * Returns the height of the block returned by {@link #getAssumeValidBlock()}.
+     * @return height of the block, or -1 if there isn't one for this network
+     */
+    public int getAssumeValidHeight() {
+        return assumeValidHeight;
+    }
+
     public int getSubsidyDecreaseBlockCount() {
         return subsidyDecreaseBlockCount;
     }
@@ -402,6 +433,9 @@ public abstract class NetworkParameters {
             verifyFlags.add(ScriptExecution.VerifyFlag.CHECKLOCKTIMEVERIFY);
         }
 
+        if (!block.getHash().equals(TAPROOT_EXCEPTION_BLOCK))
+            verifyFlags.add(ScriptExecution.VerifyFlag.TAPROOT);
+
         return verifyFlags;
     }
 }
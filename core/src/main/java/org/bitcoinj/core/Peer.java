@@ -35,6 +35,7 @@ import org.bitcoinj.net.StreamConnection;
 import org.bitcoinj.store.BlockStore;
 import org.bitcoinj.store.BlockStoreException;
 import org.bitcoinj.base.internal.FutureUtils;
+import org.bitcoinj.base.internal.OpenHashMap;
 import org.bitcoinj.utils.ListenerRegistration;
 import org.bitcoinj.utils.Threading;
 import org.bitcoinj.wallet.Wallet;
@@ -144,7 +145,7 @@ public class Peer extends PeerSocketHandler {
     //
     // It is important to avoid a nasty edge case where we can end up with parallel chain downloads proceeding
     // simultaneously if we were to receive a newly solved block whilst parts of the chain are streaming to us.
-    private final HashSet<Sha256Hash> pendingBlockDownloads = new HashSet<>();
+    private final Set<Sha256Hash> pendingBlockDownloads = Collections.newSetFromMap(new OpenHashMap<>());
     // Keep references to TransactionConfidence objects for transactions that were announced by a remote peer, but
     // which we haven't downloaded yet. These objects are de-duplicated by the TxConfidenceTable class.
     // Once the tx is downloaded (by some peer), the Transaction object that is created will have a reference to
@@ -458,6 +459,18 @@ public class Peer extends PeerSocketHandler {
         return versionHandshakeFuture;
     }
 
+    @Override
+    protected boolean processHeader(BitcoinSerializer.BitcoinPacketHeader header) throws ProtocolException {
+        // Reject a message that can't be processed before the version handshake without reading its payload. Event
+        // listeners are allowed to drop messages, so leave the check to processMessage() if there are any.
+        if (preMessageReceivedEventListeners.isEmpty()
+                && !(header.command.equals("version") || header.command.equals("verack")
+                        || header.command.equals("sendaddrv2")
+                        || (versionHandshakeFuture.isDone() && !versionHandshakeFuture.isCancelled())))
+            throw new ProtocolException("Received " + header.command + " before version handshake is complete.");
+        return true;
+    }
+
     @Override
     protected void processMessage(Message m) {
         // Allow event listeners to filter the message stream. Listeners are allowed to drop messages by
@@ -658,44 +671,51 @@ public class Peer extends PeerSocketHandler {
 
         try {
             checkState(!downloadBlockBodies, () -> toString());
-            for (int i = 0; i < m.getBlockHeaders().size(); i++) {
-                Block header = m.getBlockHeaders().get(i);
-                // Process headers until we pass the fast catchup time, or are about to catch up with the head
-                // of the chain - always process the last block as a full/filtered block to kick us out of the
-                // fast catchup mode (in which we ignore new blocks).
-                boolean passedTime = header.time().compareTo(fastCatchupTime) >= 0;
-                boolean reachedTop = blockChain.getBestChainHeight() >= vPeerVersionMessage.bestHeight;
-                if (!passedTime && !reachedTop) {
-                    if (!vDownloadData) {
-                        // Not download peer anymore, some other peer probably became better.
-                        log.info("Lost download peer status, throwing away downloaded headers.");
-                        return;
-                    }
-                    if (blockChain.add(header)) {
-                        // The block was successfully linked into the chain. Notify the user of our progress.
-                        invokeOnBlocksDownloaded(header, null);
-                    } else {
-                        // This block is unconnected - we don't know how to get from it back to the genesis block yet.
-                        // That must mean that the peer is buggy or malicious because we specifically requested for
-                        // headers that are part of the best chain.
-                        throw new ProtocolException("Got unconnected header from peer: " + header.getHashAsString());
-                    }
-                } else {
-                    lock.lock();
-                    try {
-                        log.info(
-                                "Passed the fast catchup time ({}) at height {}, discarding {} headers and requesting full blocks",
-                                TimeUtils.dateTimeFormat(fastCatchupTime), blockChain.getBestChainHeight() + 1,
-                                m.getBlockHeaders().size() - i);
-                        this.downloadBlockBodies = true;
-                        // Prevent this request being seen as a duplicate.
-                        this.lastGetBlocksBegin = Sha256Hash.ZERO_HASH;
-                        blockChainDownloadLocked(Sha256Hash.ZERO_HASH);
-                    } finally {
-                        lock.unlock();
-                    }
+            // Process headers until we pass the fast catchup time, or are about to catch up with the head of the
+            // chain - always process the last block as a full/filtered block to kick us out of the fast catchup mode
+            // (in which we ignore new blocks).
+            List<Block> headers = m.getBlockHeaders();
+            int heightBefore = blockChain.getBestChainHeight();
+            int count = 0;
+            while (count < headers.size()
+                    && headers.get(count).time().compareTo(fastCatchupTime) < 0
+                    && heightBefore + count < vPeerVersionMessage.bestHeight)
+                count++;
+            if (count > 0) {
+                if (!vDownloadData) {
+                    // Not download peer anymore, some other peer probably became better.
+                    log.info("Lost download peer status, throwing away downloaded headers.");
                     return;
                 }
+                // The headers are verified and connected as a batch, which is a lot quicker than one by one.
+                int connected = blockChain.addHeaders(headers.subList(0, count));
+                // The connected headers were successfully linked into the chain. Notify the user of our progress.
+                int heightAfter = blockChain.getBestChainHeight();
+                for (int i = 0; i < connected; i++)
+                    invokeOnBlocksDownloaded(headers.get(i), null, Math.min(heightBefore + i + 1, heightAfter));
+                if (connected < count) {
+                    // This header is unconnected - we don't know how to get from it back to the genesis block yet.
+                    // That must mean that the peer is buggy or malicious because we specifically requested for
+                    // headers that are part of the best chain.
+                    throw new ProtocolException("Got unconnected header from peer: " +
+                            headers.get(connected).getHashAsString());
+                }
+            }
+            if (count < headers.size()) {
+                lock.lock();
+                try {
+                    log.info(
+                            "Passed the fast catchup time ({}) at height {}, discarding {} headers and requesting full blocks",
+                            TimeUtils.dateTimeFormat(fastCatchupTime), blockChain.getBestChainHeight() + 1,
+                            headers.size() - count);
+                    this.downloadBlockBodies = true;
+                    // Prevent this request being seen as a duplicate.
+                    this.lastGetBlocksBegin = Sha256Hash.ZERO_HASH;
+                    blockChainDownloadLocked(Sha256Hash.ZERO_HASH);
+                } finally {
+                    lock.unlock();
+                }
+                return;
             }
             // We added all headers in the message to the chain. Request some more if we got up to the limit, otherwise
             // we are at the end of the chain.
@@ -1146,10 +1166,15 @@ public class Peer extends PeerSocketHandler {
     }
 
     private void invokeOnBlocksDownloaded(final Block block, @Nullable final FilteredBlock fb) {
+        invokeOnBlocksDownloaded(block, fb, Objects.requireNonNull(blockChain).getBestChainHeight());
+    }
+
+    // bestChainHeight is the height of our chain right after adding the block
+    private void invokeOnBlocksDownloaded(final Block block, @Nullable final FilteredBlock fb, int bestChainHeight) {
         // It is possible for the peer block height difference to be negative when blocks have been solved and broadcast
         // since the time we first connected to the peer. However, it's weird and unexpected to receive a callback
         // with negative "blocks left" in this case, so we clamp to zero so the API user doesn't have to think about it.
-        final int blocksLeft = Math.max(0, (int) vPeerVersionMessage.bestHeight - Objects.requireNonNull(blockChain).getBestChainHeight());
+        final int blocksLeft = Math.max(0, (int) vPeerVersionMessage.bestHeight - bestChainHeight);
         for (final ListenerRegistration<BlocksDownloadedEventListener> registration : blocksDownloadedEventListeners) {
             registration.executor.execute(() -> registration.listener.onBlocksDownloaded(Peer.this, block, fb, blocksLeft));
         }
@@ -204,6 +204,8 @@ public class PeerGroup implements TransactionBroadcaster {
     @GuardedBy("lock") private int maxConnections;
     // Minimum protocol version we will allow ourselves to connect to: require Bloom filtering.
     private volatile int vMinRequiredProtocolVersion;
+    // Executor to verify the checksums of large messages on, or null to verify them on the network thread.
+    @Nullable private volatile Executor vChecksumExecutor;
 
     /** How many milliseconds to wait after receiving a pong before sending another ping. */
     public static final long DEFAULT_PING_INTERVAL_MSEC = 2000;
@@ -1508,6 +1510,9 @@ public class PeerGroup implements TransactionBroadcaster {
         peer.addConnectedEventListener(Threading.SAME_THREAD, startupListener);
         peer.addDisconnectedEventListener(Threading.SAME_THREAD, startupListener);
         peer.setMinProtocolVersion(vMinRequiredProtocolVersion);
+        Executor checksumExecutor = vChecksumExecutor;
+        if (checksumExecutor != null)
+            peer.setChecksumExecutor(checksumExecutor);
         pendingPeers.add(peer);
 
         try {
@@ -2290,6 +2295,17 @@ public class PeerGroup implements TransactionBroadcaster {
         return vMinRequiredProtocolVersion;
     }
 
+    /**
+     * Verifies the checksums of large messages, e.g. blocks, on the given executor rather than on the network thread,
+     * see {@link PeerSocketHandler#setChecksumExecutor(Executor)}. This does not apply to peers that are already
+     * connected or pending. By default, checksums are verified on the network thread.
+     *
+     * @param checksumExecutor executor to verify checksums on, or null to verify them on the network thread
+     */
+    public void setChecksumExecutor(@Nullable Executor checksumExecutor) {
+        this.vChecksumExecutor = checksumExecutor;
+    }
+
     /**
      * Returns our peers most commonly reported chain height.
      * If the most common heights are tied, or no peers are connected, returns {@code 0}.
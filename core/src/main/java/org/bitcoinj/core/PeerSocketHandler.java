@@ -31,17 +31,15 @@ import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.Buffer;
-import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.NotYetConnectedException;
 import java.time.Duration;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.locks.Lock;
 
 import static org.bitcoinj.base.internal.Preconditions.checkArgument;
-import static org.bitcoinj.base.internal.Preconditions.checkState;
 
 /**
  * Handles high-level message (de)serialization for peers, acting as the bridge between the
@@ -59,14 +57,23 @@ public abstract class PeerSocketHandler implements TimeoutHandler, StreamConnect
     @VisibleForTesting protected MessageWriteTarget writeTarget = null;
 
     // The ByteBuffers passed to us from the writeTarget are static in size, and usually smaller than some messages we
-    // will receive. For SPV clients, this should be rare (ie we're mostly dealing with small transactions), but for
-    // messages which are larger than the read buffer, we have to keep a temporary buffer with its bytes.
-    private byte[] largeReadBuffer;
-    private int largeReadBufferPos;
-    private BitcoinSerializer.BitcoinPacketHeader header;
+    // will receive. The decoder picks up each message where the previous buffer left off.
+    private final MessageSerializer.Decoder decoder;
+    private final MessageSerializer.Decoder.Listener decoderListener = new MessageSerializer.Decoder.Listener() {
+        @Override
+        public boolean onHeader(BitcoinSerializer.BitcoinPacketHeader header) throws ProtocolException {
+            return processHeader(header);
+        }
+
+        @Override
+        public void onMessage(Message message) {
+            processMessage(message);
+        }
+    };
 
     protected PeerSocketHandler(MessageSerializer messageSerializer) {
         this.serializer = Objects.requireNonNull(messageSerializer);
+        this.decoder = serializer.newDecoder();
         this.timeoutTask = new SocketTimeoutTask(this::timeoutOccurred);
     }
 
@@ -120,11 +127,40 @@ public abstract class PeerSocketHandler implements TimeoutHandler, StreamConnect
         writeTarget.closeConnection();
     }
 
+    /**
+     * Verifies the checksums of large messages received from the peer, e.g. blocks, on the given executor rather than
+     * on the network thread. The messages are processed without waiting for their checksums, and the connection is
+     * closed if one doesn't match. This must be called before the connection is opened. It has no effect if the decoder
+     * of the serializer doesn't support deferring checksums.
+     *
+     * @param executor executor to verify checksums on
+     */
+    public void setChecksumExecutor(Executor executor) {
+        decoder.deferChecksums(executor, this::checksumFailed);
+    }
+
+    private void checksumFailed(ProtocolException e) {
+        log.warn("{} - {}", getAddress(), e.getMessage());
+        close();
+    }
+
     protected void timeoutOccurred() {
         log.info("{}: Timed out", getAddress());
         close();
     }
 
+    /**
+     * Called every time the header of a message is received from the network, before its payload. The default
+     * implementation accepts all messages.
+     *
+     * @param header header of the message
+     * @return true to receive the message, false to skip its payload
+     * @throws ProtocolException if the message must not be sent by the peer at all
+     */
+    protected boolean processHeader(BitcoinSerializer.BitcoinPacketHeader header) throws ProtocolException {
+        return true;
+    }
+
     /**
      * Called every time a message is received from the network
      */
@@ -132,65 +168,10 @@ public abstract class PeerSocketHandler implements TimeoutHandler, StreamConnect
 
     @Override
     public int receiveBytes(ByteBuffer buff) {
-        checkArgument(buff.position() == 0 &&
-                buff.capacity() >= BitcoinSerializer.BitcoinPacketHeader.HEADER_LENGTH + 4);
-        // Repeatedly try to deserialize messages until we hit a BufferUnderflowException
-        boolean firstMessage = true;
-        while (true) {
-            // If we are in the middle of reading a message, try to fill that one first, before we expect another
-            if (largeReadBuffer != null) {
-                // This can only happen in the first iteration
-                checkState(firstMessage);
-                // Read new bytes into the largeReadBuffer
-                int bytesToGet = Math.min(buff.remaining(), largeReadBuffer.length - largeReadBufferPos);
-                buff.get(largeReadBuffer, largeReadBufferPos, bytesToGet);
-                largeReadBufferPos += bytesToGet;
-                // Check the largeReadBuffer's status
-                if (largeReadBufferPos == largeReadBuffer.length) {
-                    // ...processing a message if one is available
-                    processMessage(serializer.deserializePayload(header, ByteBuffer.wrap(largeReadBuffer)));
-                    largeReadBuffer = null;
-                    header = null;
-                    firstMessage = false;
-                } else // ...or just returning if we don't have enough bytes yet
-                    return buff.position();
-            }
-            // Now try to deserialize any messages left in buff
-            Message message;
-            int preSerializePosition = buff.position();
-            try {
-                message = serializer.deserialize(buff);
-            } catch (BufferUnderflowException e) {
-                // If we went through the whole buffer without a full message, we need to use the largeReadBuffer
-                if (firstMessage && buff.limit() == buff.capacity()) {
-                    // ...so reposition the buffer to 0 and read the next message header
-                    ((Buffer) buff).position(0);
-                    try {
-                        serializer.seekPastMagicBytes(buff);
-                        header = serializer.deserializeHeader(buff);
-                        // Initialize the largeReadBuffer with the next message's size and fill it with any bytes
-                        // left in buff
-                        largeReadBuffer = new byte[header.size];
-                        largeReadBufferPos = buff.remaining();
-                        buff.get(largeReadBuffer, 0, largeReadBufferPos);
-                    } catch (BufferUnderflowException e1) {
-                        // If we went through a whole buffer's worth of bytes without getting a header, give up
-                        // In cases where the buff is just really small, we could create a second largeReadBuffer
-                        // that we use to deserialize the magic+header, but that is rather complicated when the buff
-                        // should probably be at least that big anyway (for efficiency)
-                        throw new ProtocolException("No magic bytes+header after reading " + buff.capacity() + " bytes");
-                    }
-                } else {
-                    // Reposition the buffer to its original position, which saves us from skipping messages by
-                    // seeking past part of the magic bytes before all of them are in the buffer
-                    ((Buffer) buff).position(preSerializePosition);
-                }
-                return buff.position();
-            }
-            // Process our freshly deserialized message
-            processMessage(message);
-            firstMessage = false;
-        }
+        checkArgument(buff.position() == 0);
+        // Decode all bytes, keeping any incomplete message in the decoder until the next bytes arrive
+        decoder.decode(buff, decoderListener);
+        return buff.position();
     }
 
     /**
@@ -0,0 +1,150 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import org.bitcoinj.base.Coin;
+import org.bitcoinj.base.Sha256Hash;
+import org.bitcoinj.base.internal.Buffers;
+import org.bitcoinj.script.Script;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.bitcoinj.base.internal.ByteUtils.writeInt32LE;
+import static org.bitcoinj.base.internal.Preconditions.checkArgument;
+
+/**
+ * <p>The outputs spent by a transaction, together with the hashes over the transaction that
+ * <a href="https://github.com/bitcoin/bips/blob/master/bip-0341.mediawiki">BIP341</a> signature hashes share between
+ * all inputs: {@code sha_prevouts}, {@code sha_amounts}, {@code sha_scriptpubkeys}, {@code sha_sequences} and
+ * {@code sha_outputs}. These are computed once, when first needed, so verifying a transaction with many inputs
+ * doesn't hash the whole transaction again for each of them.</p>
+ *
+ * <p>Instances are not thread safe; use one per transaction and thread. The transaction must not be modified after
+ * creating an instance.</p>
+ */
+public class PrecomputedTransactionData {
+    private final Transaction tx;
+    private final List<Coin> spentAmounts;
+    private final List<Script> spentScripts;
+
+    private byte[] shaPrevouts;
+    private byte[] shaAmounts;
+    private byte[] shaScriptPubKeys;
+    private byte[] shaSequences;
+    private byte[] shaOutputs;
+    private Sha256Hash spentOutputsHash;
+
+    /**
+     * @param tx transaction spending the outputs
+     * @param spentAmounts values of the spent outputs, in input order
+     * @param spentScripts scriptPubKeys of the spent outputs, in input order
+     */
+    public PrecomputedTransactionData(Transaction tx, List<Coin> spentAmounts, List<Script> spentScripts) {
+        checkArgument(spentAmounts.size() == tx.getInputs().size() && spentScripts.size() == tx.getInputs().size(),
+                () -> "one spent output per input required");
+        this.tx = tx;
+        this.spentAmounts = Collections.unmodifiableList(new ArrayList<>(spentAmounts));
+        this.spentScripts = Collections.unmodifiableList(new ArrayList<>(spentScripts));
+    }
+
+    /** Returns the transaction spending the outputs. */
+    public Transaction getTransaction() {
+        return tx;
+    }
+
+    /** Returns the value of the output spent by the given input. */
+    public Coin getSpentAmount(int inputIndex) {
+        return spentAmounts.get(inputIndex);
+    }
+
+    /** Returns the scriptPubKey of the output spent by the given input. */
+    public Script getSpentScript(int inputIndex) {
+        return spentScripts.get(inputIndex);
+    }
+
+    /**
+     * Returns a hash committing to the values and scriptPubKeys of all spent outputs. Together with the wtxid of the
+     * transaction, it identifies everything script verification of an input depends on.
+     */
+    public Sha256Hash getSpentOutputsHash() {
+        if (spentOutputsHash == null)
+            spentOutputsHash = Sha256Hash.of(ByteBuffer.allocate(2 * Sha256Hash.LENGTH)
+                    .put(shaAmounts())
+                    .put(shaScriptPubKeys())
+                    .array());
+        return spentOutputsHash;
+    }
+
+    /** SHA256 of the serialization of all input outpoints. */
+    byte[] shaPrevouts() {
+        if (shaPrevouts == null) {
+            ByteBuffer buf = ByteBuffer.allocate(tx.getInputs().size() * TransactionOutPoint.BYTES);
+            for (TransactionInput input : tx.getInputs())
+                input.getOutpoint().write(buf);
+            shaPrevouts = Sha256Hash.hash(buf.array());
+        }
+        return shaPrevouts;
+    }
+
+    /** SHA256 of the serialization of all spent output amounts. */
+    byte[] shaAmounts() {
+        if (shaAmounts == null) {
+            ByteBuffer buf = ByteBuffer.allocate(spentAmounts.size() * Coin.BYTES);
+            for (Coin amount : spentAmounts)
+                amount.write(buf);
+            shaAmounts = Sha256Hash.hash(buf.array());
+        }
+        return shaAmounts;
+    }
+
+    /** SHA256 of all spent outputs' scriptPubKeys, serialized as length-prefixed byte arrays. */
+    byte[] shaScriptPubKeys() {
+        if (shaScriptPubKeys == null) {
+            ByteBuffer buf = ByteBuffer.allocate(spentScripts.stream()
+                    .mapToInt(script -> Buffers.lengthPrefixedBytesSize(script.program())).sum());
+            for (Script script : spentScripts)
+                Buffers.writeLengthPrefixedBytes(buf, script.program());
+            shaScriptPubKeys = Sha256Hash.hash(buf.array());
+        }
+        return shaScriptPubKeys;
+    }
+
+    /** SHA256 of the serialization of all input nSequence. */
+    byte[] shaSequences() {
+        if (shaSequences == null) {
+            ByteBuffer buf = ByteBuffer.allocate(tx.getInputs().size() * 4);
+            for (TransactionInput input : tx.getInputs())
+                writeInt32LE(input.getSequenceNumber(), buf);
+            shaSequences = Sha256Hash.hash(buf.array());
+        }
+        return shaSequences;
+    }
+
+    /** SHA256 of the serialization of all outputs. */
+    byte[] shaOutputs() {
+        if (shaOutputs == null) {
+            ByteBuffer buf = ByteBuffer.allocate(tx.getOutputs().stream().mapToInt(TransactionOutput::messageSize).sum());
+            for (TransactionOutput output : tx.getOutputs())
+                output.write(buf);
+            shaOutputs = Sha256Hash.hash(buf.array());
+        }
+        return shaOutputs;
+    }
+}
@@ -18,7 +18,6 @@ package org.bitcoinj.core;
 
 import org.bitcoinj.base.BitcoinNetwork;
 import org.bitcoinj.base.Difficulty;
-import org.bitcoinj.base.Sha256Hash;
 import org.bitcoinj.store.BlockStore;
 import org.bitcoinj.store.BlockStoreException;
 
@@ -70,21 +69,16 @@ public class StandardDifficultyTransitions implements DifficultyTransitions {
             return;
         }
 
-        // We need to find a block far back in the chain. It's OK that this is expensive because it only occurs every
-        // two weeks after the initial block chain download.
-        Sha256Hash hash = prev.getHash();
-        StoredBlock cursor = null;
+        // We need to find a block far back in the chain. Block stores that index the best chain by height find it
+        // directly, otherwise it's found by walking back, which is OK because it only occurs every two weeks.
         final int interval = params.getInterval();
-        for (int i = 0; i < interval; i++) {
-            cursor = blockStore.get(hash);
-            if (cursor == null) {
-                // This should never happen. If it does, it means we are following an incorrect or busted chain.
-                throw new VerificationException(
-                        "Difficulty transition point but we did not find a way back to the last transition point. Not found: " + hash);
-            }
-            hash = cursor.getHeader().prevHash();
+        StoredBlock cursor = blockStore.getAncestor(storedPrev, storedPrev.getHeight() - (interval - 1));
+        if (cursor == null) {
+            // This should never happen. If it does, it means we are following an incorrect or busted chain.
+            throw new VerificationException(
+                    "Difficulty transition point but we did not find a way back to the last transition point.");
         }
-        checkState(cursor != null && isDifficultyTransitionPoint(cursor.getHeight() - 1), () ->
+        checkState(isDifficultyTransitionPoint(cursor.getHeight() - 1), () ->
                 "didn't arrive at a transition point");
 
         Block blockIntervalAgo = cursor.getHeader();
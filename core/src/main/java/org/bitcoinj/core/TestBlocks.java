@@ -20,6 +20,8 @@ import com.google.common.annotations.VisibleForTesting;
 import org.bitcoinj.base.Address;
 import org.bitcoinj.base.Coin;
 import org.bitcoinj.base.Sha256Hash;
+import org.bitcoinj.base.internal.ByteUtils;
+import org.bitcoinj.base.internal.Sha256;
 import org.bitcoinj.base.internal.Stopwatch;
 import org.bitcoinj.base.internal.TimeUtils;
 import org.bitcoinj.crypto.ECKey;
@@ -189,20 +191,26 @@ public class TestBlocks {
     public static void solve(Block block) {
         Duration warningThreshold = Duration.ofSeconds(5);
         Stopwatch watch = Stopwatch.start();
+        // Only the last block of the header changes with the nonce, so hash the first block just once.
+        byte[] header = block.asHeader().serialize();
+        Sha256 prefix = new Sha256().update(header, 0, Sha256.BLOCK_LENGTH);
+        byte[] hash = new byte[Sha256Hash.LENGTH];
+        long nonce = block.getNonce();
         while (true) {
-            try {
-                // Is our proof of work valid yet?
-                if (block.difficultyTarget().isMetByWork(block.getHash()))
-                    return;
-                // No, so increment the nonce and try again.
-                block.setNonce(block.getNonce() + 1);
-
-                if (watch.isRunning() && watch.elapsed().compareTo(warningThreshold) > 0) {
-                    watch.stop();
-                    log.warn("trying to solve block for longer than {} seconds", warningThreshold.getSeconds());
-                }
-            } catch (VerificationException e) {
-                throw new RuntimeException(e); // Cannot happen.
+            ByteUtils.writeInt32LE(nonce, header, Block.HEADER_SIZE - 4);
+            prefix.copy().update(header, Sha256.BLOCK_LENGTH, Block.HEADER_SIZE - Sha256.BLOCK_LENGTH)
+                    .digestTwice(hash, 0);
+            // Is our proof of work valid yet?
+            if (block.difficultyTarget().isMetByWork(Sha256Hash.wrapReversed(hash))) {
+                block.setNonce(nonce);
+                return;
+            }
+            // No, so increment the nonce and try again.
+            nonce++;
+
+            if (watch.isRunning() && watch.elapsed().compareTo(warningThreshold) > 0) {
+                watch.stop();
+                log.warn("trying to solve block for longer than {} seconds", warningThreshold.getSeconds());
             }
         }
     }
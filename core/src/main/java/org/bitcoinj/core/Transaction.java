@@ -24,6 +24,7 @@ import org.bitcoinj.base.Network;
 import org.bitcoinj.base.Sha256Hash;
 import org.bitcoinj.base.VarInt;
 import org.bitcoinj.base.internal.Buffers;
+import org.bitcoinj.base.internal.PooledWriter;
 import org.bitcoinj.base.internal.TimeUtils;
 import org.bitcoinj.core.LockTime.HeightLock;
 import org.bitcoinj.core.LockTime.TimeLock;
@@ -32,6 +33,7 @@ import org.bitcoinj.base.internal.ByteUtils;
 import org.bitcoinj.core.TransactionConfidence.ConfidenceType;
 import org.bitcoinj.crypto.ECKey;
 import org.bitcoinj.crypto.TransactionSignature;
+import org.bitcoinj.crypto.internal.CryptoUtils;
 import org.bitcoinj.script.Script;
 import org.bitcoinj.base.ScriptType;
 import org.bitcoinj.script.ScriptBuilder;
@@ -298,9 +300,11 @@ public class Transaction implements Message {
     public static Transaction read(ByteBuffer payload, int protocolVersion) throws BufferUnderflowException, ProtocolException {
         Transaction tx = new Transaction(protocolVersion);
         boolean allowWitness = allowWitness(protocolVersion);
+        int start = payload.position();
 
         // version
         tx.version = ByteUtils.readUint32(payload);
+        int inputsStart = payload.position();
         byte flags = 0;
         // Try to parse the inputs. In case the dummy is there, this will be read as an empty array list.
         tx.readInputs(payload);
@@ -309,6 +313,7 @@ public class Transaction implements Message {
             flags = payload.get();
 
             if (flags != 0) {
+                inputsStart = payload.position();
                 tx.readInputs(payload);
                 tx.readOutputs(payload);
             } else {
@@ -319,6 +324,7 @@ public class Transaction implements Message {
             tx.readOutputs(payload);
         }
 
+        int witnessesStart = payload.position();
         if (((flags & 1) != 0) && allowWitness) {
             // The witness flag is present, and we support witnesses.
             flags ^= 1;
@@ -334,7 +340,13 @@ public class Transaction implements Message {
             throw new ProtocolException("Unknown transaction optional data");
         }
         // lock_time
+        int lockTimeStart = payload.position();
         tx.vLockTime = LockTime.of(ByteUtils.readUint32(payload));
+
+        // Hash the bytes just read, rather than serializing them again on the first call to getTxId()/getWTxId().
+        int size = payload.position() - start;
+        tx.cachedTxId = TransactionLayout.txId(payload, start, inputsStart - start, witnessesStart - start, size);
+        tx.cachedWTxId = lockTimeStart != witnessesStart ? TransactionLayout.wTxId(payload, start, size) : tx.cachedTxId;
         return tx;
     }
 
@@ -362,9 +374,8 @@ public class Transaction implements Message {
             if (!hasWitnesses() && cachedWTxId != null) {
                 cachedTxId = cachedWTxId;
             } else {
-                ByteBuffer buf = ByteBuffer.allocate(messageSize(false));
-                write(buf, false);
-                cachedTxId = Sha256Hash.wrapReversed(Sha256Hash.hashTwice(buf.array()));
+                cachedTxId = PooledWriter.write(buf -> write(buf, false), () -> messageSize(false),
+                        Transaction::hashTwice);
             }
         }
         return cachedTxId;
@@ -399,14 +410,19 @@ public class Transaction implements Message {
             if (!hasWitnesses() && cachedTxId != null) {
                 cachedWTxId = cachedTxId;
             } else {
-                ByteBuffer buf = ByteBuffer.allocate(messageSize(hasWitnesses()));
-                write(buf, hasWitnesses());
-                cachedWTxId = Sha256Hash.wrapReversed(Sha256Hash.hashTwice(buf.array()));
+                boolean useSegwitSerialization = hasWitnesses();
+                cachedWTxId = PooledWriter.write(buf -> write(buf, useSegwitSerialization),
+                        () -> messageSize(useSegwitSerialization), Transaction::hashTwice);
             }
         }
         return cachedWTxId;
     }
 
+    // The id of the serialized transaction in the given buffer
+    private static Sha256Hash hashTwice(ByteBuffer buf) {
+        return Sha256Hash.wrapReversed(Sha256Hash.hashTwice(buf.array(), 0, buf.limit()));
+    }
+
     /** invalidates cache for both transaction IDs */
     private void invalidateCachedTxIds() {
         cachedTxId = null;
@@ -1460,6 +1476,85 @@ public class Transaction implements Message {
         return Sha256Hash.twiceOf(buf.array());
     }
 
+    /**
+     * <p>Calculates a signature hash for spending a Taproot output, as specified by
+     * <a href="https://github.com/bitcoin/bips/blob/master/bip-0341.mediawiki">BIP341</a> (and extended for script path
+     * spends by BIP342). Unlike the legacy and segwit v0 hashes, it commits to all outputs spent by the transaction,
+     * so these need to be provided via {@code txData}, which also caches the parts of the hash that are shared
+     * between inputs.</p>
+     *
+     * @param inputIndex            input the signature is being calculated for
+     * @param txData                outputs spent by this transaction
+     * @param sigHashType           0x00 for the default hash type (which commits like {@link SigHash#ALL}), or a
+     *                              combination of {@link SigHash} values
+     * @param annex                 annex of the input's witness, including its 0x50 tag, or null if there is none
+     * @param tapleafHash           hash of the executed tapleaf for script path spends, or null for key path spends
+     * @param codeSeparatorPosition opcode position of the last executed OP_CODESEPARATOR, or 0xffffffff if none; only
+     *                              used for script path spends
+     */
+    public synchronized Sha256Hash hashForTaprootSignature(
+            int inputIndex,
+            PrecomputedTransactionData txData,
+            byte sigHashType,
+            byte @Nullable [] annex,
+            byte @Nullable [] tapleafHash,
+            long codeSeparatorPosition) {
+        checkArgument(txData.getTransaction() == this, () -> "txData belongs to a different transaction");
+        int hashType = sigHashType & 0xff;
+        checkArgument(hashType <= SigHash.SINGLE.value ||
+                (hashType > SigHash.ANYONECANPAY.value && hashType <= (SigHash.ANYONECANPAY.value | SigHash.SINGLE.value)),
+                () -> "invalid hash type: " + hashType);
+        int outputType = hashType == 0 ? SigHash.ALL.value : hashType & 0x03;
+        boolean anyoneCanPay = (hashType & SigHash.ANYONECANPAY.value) != 0;
+        checkArgument(outputType != SigHash.SINGLE.value || inputIndex < outputs.size(),
+                () -> "SIGHASH_SINGLE without corresponding output: " + inputIndex);
+        TransactionInput input = inputs.get(inputIndex);
+        byte[] spentScript = txData.getSpentScript(inputIndex).program();
+
+        ByteBuffer buf = ByteBuffer.allocate(1 + 1 + 4 + 4 +
+                (anyoneCanPay ? 0 : Sha256Hash.LENGTH * 4) +
+                (outputType == SigHash.ALL.value ? Sha256Hash.LENGTH : 0) +
+                1 +
+                (anyoneCanPay ? TransactionOutPoint.BYTES + Coin.BYTES + Buffers.lengthPrefixedBytesSize(spentScript) + 4 : 4) +
+                (annex != null ? Sha256Hash.LENGTH : 0) +
+                (outputType == SigHash.SINGLE.value ? Sha256Hash.LENGTH : 0) +
+                (tapleafHash != null ? Sha256Hash.LENGTH + 1 + 4 : 0));
+        buf.put((byte) 0x00); // epoch
+        buf.put((byte) hashType);
+        writeInt32LE(version, buf);
+        writeInt32LE(vLockTime.rawValue(), buf);
+        if (!anyoneCanPay) {
+            buf.put(txData.shaPrevouts());
+            buf.put(txData.shaAmounts());
+            buf.put(txData.shaScriptPubKeys());
+            buf.put(txData.shaSequences());
+        }
+        if (outputType == SigHash.ALL.value)
+            buf.put(txData.shaOutputs());
+        buf.put((byte) ((tapleafHash != null ? 2 : 0) | (annex != null ? 1 : 0))); // spend type
+        if (anyoneCanPay) {
+            input.getOutpoint().write(buf);
+            txData.getSpentAmount(inputIndex).write(buf);
+            Buffers.writeLengthPrefixedBytes(buf, spentScript);
+            writeInt32LE(input.getSequenceNumber(), buf);
+        } else {
+            writeInt32LE(inputIndex, buf);
+        }
+        if (annex != null) {
+            ByteBuffer annexBuf = ByteBuffer.allocate(Buffers.lengthPrefixedBytesSize(annex));
+            Buffers.writeLengthPrefixedBytes(annexBuf, annex);
+            buf.put(Sha256Hash.hash(annexBuf.array()));
+        }
+        if (outputType == SigHash.SINGLE.value)
+            buf.put(Sha256Hash.hash(outputs.get(inputIndex).serialize()));
+        if (tapleafHash != null) {
+            buf.put(tapleafHash);
+            buf.put((byte) 0x00); // key version
+            writeInt32LE(codeSeparatorPosition, buf);
+        }
+        return Sha256Hash.wrap(CryptoUtils.taggedHash("TapSighash", buf.array()));
+    }
+
     @Override
     public int messageSize() {
         return messageSize(useSegwitSerialization());
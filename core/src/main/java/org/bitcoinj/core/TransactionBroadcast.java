@@ -178,8 +178,10 @@ public class TransactionBroadcast implements Wallet.SendResult {
             numWaitingFor = (int) Math.ceil((peers.size() - numToBroadcastTo) / 2.0);
             log.info("broadcastTransaction: We have {} peers, adding {} to the memory pool", peers.size(), tx.getTxId());
             log.info("Sending to {} peers, will wait for {}, sending to: {}", numToBroadcastTo, numWaitingFor, InternalUtils.joiner(",").join(peers));
+            // Serialize the transaction once, rather than once per peer.
+            TransactionView view = TransactionView.of(tx);
             List<CompletableFuture<Void>> sentFutures = broadcastPeers.stream()
-                    .map(this::broadcastOne)
+                    .map(peer -> broadcastOne(peer, view))
                     .collect(StreamUtils.toUnmodifiableList());
             // Complete successfully if ALL peer.sendMessage complete successfully, fail otherwise
             return CompletableFuture.allOf(sentFutures.toArray(new CompletableFuture[0]));
@@ -239,9 +241,9 @@ public class TransactionBroadcast implements Wallet.SendResult {
         return broadcastAndAwaitRelay().thenApply(TransactionBroadcast::transaction);
     }
 
-    private CompletableFuture<Void> broadcastOne(Peer peer) {
+    private CompletableFuture<Void> broadcastOne(Peer peer, TransactionView view) {
         try {
-            CompletableFuture<Void> future = peer.sendMessage(tx);
+            CompletableFuture<Void> future = peer.sendMessage(view);
             if (dropPeersAfterBroadcast) {
                 // We drop the peer shortly after the transaction has been sent, because this peer will not
                 // send us back useful broadcast confirmations.
@@ -0,0 +1,251 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import org.bitcoinj.base.Sha256Hash;
+import org.bitcoinj.base.VarInt;
+import org.jspecify.annotations.Nullable;
+
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+import static org.bitcoinj.base.internal.Preconditions.check;
+
+/**
+ * Where the parts of a serialized transaction are. {@link #scan(ByteBuffer, boolean)} finds them with a single pass
+ * over the bytes, which follows the structure of {@link Transaction#read(ByteBuffer)} and checks it, but doesn't
+ * deserialize anything. The layout is enough to calculate the ids of the transaction from its bytes, see
+ * {@link #txId(ByteBuffer, int, int, int, int)}.
+ * <p>
+ * All offsets are relative to the start of the transaction.
+ */
+final class TransactionLayout {
+    // Size of an outpoint and a sequence number
+    static final int OUTPOINT_SIZE = 36;
+    static final int SEQUENCE_SIZE = 4;
+    // Size of a version or a lock time
+    static final int UINT32_SIZE = 4;
+    // Minimum size of an input: outpoint, empty script, sequence number
+    private static final int MIN_INPUT_SIZE = OUTPOINT_SIZE + 1 + SEQUENCE_SIZE;
+    // Minimum size of an output: value, empty script
+    private static final int MIN_OUTPUT_SIZE = Long.BYTES + 1;
+    // Used to calculate the transaction IDs
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(Sha256Hash::newDigest);
+
+    // Offset of the number of inputs, after the segwit marker and flags if present
+    final int inputsOffset;
+    // Offset of the witnesses, which is the offset of the lock time if there are none
+    final int witnessesOffset;
+    // Size of the transaction, which ends with the lock time
+    final int size;
+    final boolean coinBase;
+    // Offsets of the inputs, outputs and witnesses, plus the end of the last one. Only recorded if asked for, and
+    // witnessOffsets is null if there are no witnesses.
+    final int @Nullable [] inputOffsets;
+    final int @Nullable [] outputOffsets;
+    final int @Nullable [] witnessOffsets;
+
+    private TransactionLayout(int inputsOffset, int witnessesOffset, int size, boolean coinBase,
+                              int @Nullable [] inputOffsets, int @Nullable [] outputOffsets,
+                              int @Nullable [] witnessOffsets) {
+        this.inputsOffset = inputsOffset;
+        this.witnessesOffset = witnessesOffset;
+        this.size = size;
+        this.coinBase = coinBase;
+        this.inputOffsets = inputOffsets;
+        this.outputOffsets = outputOffsets;
+        this.witnessOffsets = witnessOffsets;
+    }
+
+    /**
+     * Advances the payload past one transaction and returns its layout.
+     *
+     * @param payload     payload to read from, positioned at the start of the transaction
+     * @param recordItems whether to record the offsets of each input, output and witness
+     * @return layout of the transaction
+     * @throws BufferUnderflowException if the transaction extends beyond the remaining bytes of the payload
+     * @throws ProtocolException if the transaction has unknown optional data or a superfluous witness record
+     */
+    static TransactionLayout scan(ByteBuffer payload, boolean recordItems)
+            throws BufferUnderflowException, ProtocolException {
+        int start = payload.position();
+        skip(payload, UINT32_SIZE); // version
+        int inputsOffset = payload.position() - start;
+        int numInputs = readCount(payload, MIN_INPUT_SIZE);
+        boolean witnesses = false;
+        boolean noOutputs = false;
+        if (numInputs == 0) {
+            check(payload.hasRemaining(), BufferUnderflowException::new);
+            byte flags = payload.get();
+            if ((flags & ~1) != 0)
+                throw new ProtocolException("Unknown transaction optional data");
+            if (flags != 0) {
+                witnesses = true;
+                inputsOffset = payload.position() - start;
+                numInputs = readCount(payload, MIN_INPUT_SIZE);
+            } else {
+                noOutputs = true; // no inputs and no outputs
+            }
+        }
+        boolean coinBase = numInputs == 1 && isCoinBaseOutpoint(payload, payload.position());
+        int[] inputOffsets = recordItems ? new int[numInputs + 1] : null;
+        for (int i = 0; i < numInputs; i++) {
+            if (inputOffsets != null)
+                inputOffsets[i] = payload.position() - start;
+            skip(payload, OUTPOINT_SIZE);
+            skip(payload, readCount(payload, 1)); // script
+            skip(payload, SEQUENCE_SIZE);
+        }
+        if (inputOffsets != null)
+            inputOffsets[numInputs] = payload.position() - start;
+        int[] outputOffsets = null;
+        if (noOutputs) {
+            if (recordItems)
+                outputOffsets = new int[] { payload.position() - start };
+        } else {
+            int numOutputs = readCount(payload, MIN_OUTPUT_SIZE);
+            outputOffsets = recordItems ? new int[numOutputs + 1] : null;
+            for (int i = 0; i < numOutputs; i++) {
+                if (outputOffsets != null)
+                    outputOffsets[i] = payload.position() - start;
+                skip(payload, Long.BYTES); // value
+                skip(payload, readCount(payload, 1)); // script
+            }
+            if (outputOffsets != null)
+                outputOffsets[numOutputs] = payload.position() - start;
+        }
+        int witnessesOffset = payload.position() - start;
+        int[] witnessOffsets = null;
+        if (witnesses) {
+            witnessOffsets = recordItems ? new int[numInputs + 1] : null;
+            boolean hasWitnesses = false;
+            for (int i = 0; i < numInputs; i++) {
+                if (witnessOffsets != null)
+                    witnessOffsets[i] = payload.position() - start;
+                int numPushes = readCount(payload, 1);
+                hasWitnesses |= numPushes != 0;
+                for (int j = 0; j < numPushes; j++)
+                    skip(payload, readCount(payload, 1));
+            }
+            if (witnessOffsets != null)
+                witnessOffsets[numInputs] = payload.position() - start;
+            if (!hasWitnesses)
+                throw new ProtocolException("Superfluous witness record");
+        }
+        skip(payload, UINT32_SIZE); // lock time
+        return new TransactionLayout(inputsOffset, witnessesOffset, payload.position() - start, coinBase,
+                inputOffsets, outputOffsets, witnessOffsets);
+    }
+
+    // Reads a count, which can't be larger than the remaining bytes allow for items of the given minimum size.
+    private static int readCount(ByteBuffer payload, int minItemSize) throws BufferUnderflowException {
+        VarInt count = VarInt.read(payload);
+        check(count.fitsInt() && count.intValue() <= payload.remaining() / minItemSize,
+                BufferUnderflowException::new);
+        return count.intValue();
+    }
+
+    private static void skip(ByteBuffer payload, int length) throws BufferUnderflowException {
+        check(length <= payload.remaining(), BufferUnderflowException::new);
+        ((Buffer) payload).position(payload.position() + length);
+    }
+
+    // Checks for the all zero hash and the index of -1 of the outpoint of a coinbase input, without moving.
+    private static boolean isCoinBaseOutpoint(ByteBuffer payload, int offset) {
+        if (payload.limit() - offset < OUTPOINT_SIZE)
+            return false; // skip() will fail
+        for (int i = 0; i < Sha256Hash.LENGTH; i++)
+            if (payload.get(offset + i) != 0)
+                return false;
+        return payload.getInt(offset + Sha256Hash.LENGTH) == -1;
+    }
+
+    /** @return true if the transaction has witnesses */
+    boolean hasWitnesses() {
+        return witnessesOffset != size - UINT32_SIZE;
+    }
+
+    /**
+     * Calculates the id of the transaction from its bytes.
+     *
+     * @param buf   buffer holding the transaction
+     * @param start absolute index of the transaction in the buffer
+     * @return transaction id
+     */
+    Sha256Hash txId(ByteBuffer buf, int start) {
+        return txId(buf, start, inputsOffset, witnessesOffset, size);
+    }
+
+    /**
+     * Calculates the witness id of the transaction from its bytes.
+     *
+     * @param buf   buffer holding the transaction
+     * @param start absolute index of the transaction in the buffer
+     * @return witness transaction id
+     */
+    Sha256Hash wTxId(ByteBuffer buf, int start) {
+        return wTxId(buf, start, size);
+    }
+
+    /**
+     * Calculates the id of a transaction from its bytes, given the offsets of its parts. The txid leaves out the
+     * marker, the flags and the witnesses. The position of the buffer isn't used or changed.
+     *
+     * @param buf             buffer holding the transaction
+     * @param start           absolute index of the transaction in the buffer
+     * @param inputsOffset    offset of the number of inputs, after the segwit marker and flags if present
+     * @param witnessesOffset offset of the witnesses, or of the lock time if there are none
+     * @param size            size of the transaction
+     * @return transaction id
+     */
+    static Sha256Hash txId(ByteBuffer buf, int start, int inputsOffset, int witnessesOffset, int size) {
+        if (witnessesOffset == size - UINT32_SIZE)
+            return wTxId(buf, start, size);
+        MessageDigest digest = DIGEST.get();
+        update(digest, buf, start, UINT32_SIZE);
+        update(digest, buf, start + inputsOffset, witnessesOffset - inputsOffset);
+        update(digest, buf, start + size - UINT32_SIZE, UINT32_SIZE);
+        return Sha256Hash.wrapReversed(digest.digest(digest.digest()));
+    }
+
+    /**
+     * Calculates the witness id of a transaction from its bytes. The position of the buffer isn't used or changed.
+     *
+     * @param buf   buffer holding the transaction
+     * @param start absolute index of the transaction in the buffer
+     * @param size  size of the transaction
+     * @return witness transaction id
+     */
+    static Sha256Hash wTxId(ByteBuffer buf, int start, int size) {
+        MessageDigest digest = DIGEST.get();
+        update(digest, buf, start, size);
+        return Sha256Hash.wrapReversed(digest.digest(digest.digest()));
+    }
+
+    // Feeds a range of the buffer to the digest, regardless of the position of the buffer.
+    private static void update(MessageDigest digest, ByteBuffer buf, int offset, int length) {
+        if (buf.hasArray()) {
+            digest.update(buf.array(), buf.arrayOffset() + offset, length);
+        } else {
+            ByteBuffer range = buf.duplicate();
+            ((Buffer) range).limit(offset + length).position(offset);
+            digest.update(range);
+        }
+    }
+}
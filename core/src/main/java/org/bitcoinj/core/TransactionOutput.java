@@ -66,6 +66,10 @@ public class TransactionOutput {
     // The script bytes are parsed and turned into a Script on demand.
     private Script scriptPubKey;
 
+    // The type of the script and the key or hash it pays to are determined on demand, once. See classifyScript().
+    // Both are published together, so that other threads never see one without the other.
+    @Nullable private volatile ScriptClassification scriptClassification;
+
     // These fields are not Bitcoin serialized. They are used for tracking purposes in our wallet
     // only. If set to true, this output is counted towards our balance. If false and spentBy is null the tx output
     // was owned by us and was sent to somebody else. If false and spentBy is set it means this output was owned by
@@ -126,6 +130,71 @@ public class TransactionOutput {
         return scriptPubKey;
     }
 
+    /**
+     * Returns the type of the scriptPubKey, if it is one of the standard types paying to a single key or hash: P2PK,
+     * P2PKH, P2SH, P2WPKH, P2WSH or P2TR. The type is determined the first time it is needed and then remembered, so
+     * that the wallet doesn't have to match the script again every time it checks whether the output is relevant.
+     * @return type of the scriptPubKey, or null if it isn't one of the above types
+     */
+    @Nullable
+    public ScriptType getScriptType() {
+        return classifyScript().type;
+    }
+
+    /**
+     * Returns what the scriptPubKey pays to: the public key for P2PK, the output key for P2TR and the hash for the
+     * other types returned by {@link #getScriptType()}. The returned array must not be modified.
+     * @return key or hash, or null if {@link #getScriptType()} is null
+     */
+    public byte @Nullable [] getScriptKeyOrHash() {
+        return classifyScript().keyOrHash;
+    }
+
+    private ScriptClassification classifyScript() {
+        ScriptClassification classification = scriptClassification;
+        if (classification == null) {
+            // Racing threads may both classify the script, with the same result.
+            classification = ScriptClassification.of(scriptBytes);
+            scriptClassification = classification;
+        }
+        return classification;
+    }
+
+    // Immutable type of a script and the key or hash it pays to, see getScriptType() and getScriptKeyOrHash()
+    private static final class ScriptClassification {
+        private static final ScriptClassification UNKNOWN = new ScriptClassification(null, null);
+
+        @Nullable private final ScriptType type;
+        private final byte @Nullable [] keyOrHash;
+
+        private ScriptClassification(@Nullable ScriptType type, byte @Nullable [] keyOrHash) {
+            this.type = type;
+            this.keyOrHash = keyOrHash;
+        }
+
+        private static ScriptClassification of(byte[] scriptBytes) {
+            try {
+                Script script = Script.parse(scriptBytes);
+                if (ScriptPattern.isP2PK(script))
+                    return new ScriptClassification(ScriptType.P2PK, ScriptPattern.extractKeyFromP2PK(script));
+                else if (ScriptPattern.isP2PKH(script))
+                    return new ScriptClassification(ScriptType.P2PKH, ScriptPattern.extractHashFromP2PKH(script));
+                else if (ScriptPattern.isP2SH(script))
+                    return new ScriptClassification(ScriptType.P2SH, ScriptPattern.extractHashFromP2SH(script));
+                else if (ScriptPattern.isP2WPKH(script))
+                    return new ScriptClassification(ScriptType.P2WPKH, ScriptPattern.extractHashFromP2WH(script));
+                else if (ScriptPattern.isP2WSH(script))
+                    return new ScriptClassification(ScriptType.P2WSH, ScriptPattern.extractHashFromP2WH(script));
+                else if (ScriptPattern.isP2TR(script))
+                    return new ScriptClassification(ScriptType.P2TR, ScriptPattern.extractOutputKeyFromP2TR(script));
+            } catch (ScriptException e) {
+                // Just means we didn't understand the output of this transaction: leave it unclassified.
+                log.debug("Could not parse tx output script: {}", e.toString());
+            }
+            return UNKNOWN;
+        }
+    }
+
     /**
      * Write this transaction output into the given buffer.
      *
@@ -315,25 +384,21 @@ public class TransactionOutput {
      * Returns true if this output is to a key, or an address we have the keys for, in the wallet.
      */
     public boolean isMine(TransactionBag transactionBag) {
-        try {
-            Script script = getScriptPubKey();
-            if (ScriptPattern.isP2PK(script))
-                return transactionBag.isPubKeyMine(ScriptPattern.extractKeyFromP2PK(script));
-            else if (ScriptPattern.isP2SH(script))
-                return transactionBag.isPayToScriptHashMine(ScriptPattern.extractHashFromP2SH(script));
-            else if (ScriptPattern.isP2PKH(script))
-                return transactionBag.isPubKeyHashMine(ScriptPattern.extractHashFromP2PKH(script),
-                        ScriptType.P2PKH);
-            else if (ScriptPattern.isP2WPKH(script))
-                return transactionBag.isPubKeyHashMine(ScriptPattern.extractHashFromP2WH(script),
-                        ScriptType.P2WPKH);
-            else
-                return false;
-        } catch (ScriptException e) {
-            // Just means we didn't understand the output of this transaction: ignore it.
-            log.debug("Could not parse tx {} output script: {}",
-                    parent != null ? ((Transaction) parent).getTxId() : "(no parent)", e.toString());
+        ScriptClassification classification = classifyScript();
+        ScriptType type = classification.type;
+        if (type == null)
             return false;
+        byte[] keyOrHash = Objects.requireNonNull(classification.keyOrHash);
+        switch (type) {
+            case P2PK:
+                return transactionBag.isPubKeyMine(keyOrHash);
+            case P2SH:
+                return transactionBag.isPayToScriptHashMine(keyOrHash);
+            case P2PKH:
+            case P2WPKH:
+                return transactionBag.isPubKeyHashMine(keyOrHash, type);
+            default:
+                return false;
         }
     }
 
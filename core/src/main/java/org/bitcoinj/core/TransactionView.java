@@ -0,0 +1,284 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import org.bitcoinj.base.Coin;
+import org.bitcoinj.base.Sha256Hash;
+import org.bitcoinj.base.internal.Buffers;
+import org.bitcoinj.base.internal.ByteUtils;
+import org.bitcoinj.base.internal.PooledWriter;
+
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+import static org.bitcoinj.base.internal.Preconditions.check;
+
+/**
+ * An immutable, read-only view of a transaction, backed by its serialized bytes. Reading it does a single pass over
+ * the payload, which checks its structure and records where each input, output and witness starts. The parts of the
+ * transaction are only deserialized when asked for, and writing it just copies the bytes it was read from.
+ * <p>
+ * This is meant for code that only looks at transactions or passes them on, for example relaying them to peers or
+ * indexing them, and doesn't need the object graph of a {@link Transaction}: its inputs and outputs, their connections
+ * and the confidence. Use {@link #toTransaction()} to get a {@link Transaction} that can be modified.
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ */
+public final class TransactionView implements Message {
+    private final byte[] raw;
+    // Where the inputs, outputs and witnesses are in raw
+    private final TransactionLayout layout;
+    // Offsets of the inputs in raw, plus the end of the last one
+    private final int[] inputOffsets;
+    // Offsets of the outputs in raw, plus the end of the last one
+    private final int[] outputOffsets;
+    private final Sha256Hash txId;
+    private final Sha256Hash wTxId;
+
+    private TransactionView(byte[] raw, TransactionLayout layout, Sha256Hash txId, Sha256Hash wTxId) {
+        this.raw = raw;
+        this.layout = layout;
+        this.inputOffsets = Objects.requireNonNull(layout.inputOffsets);
+        this.outputOffsets = Objects.requireNonNull(layout.outputOffsets);
+        this.txId = txId;
+        this.wTxId = wTxId;
+    }
+
+    /**
+     * Read a transaction from a given payload, according to
+     * <a href="https://github.com/bitcoin/bips/blob/master/bip-0144.mediawiki">BIP144</a> or the
+     * <a href="https://en.bitcoin.it/wiki/Protocol_documentation#tx">classic format</a>, like
+     * {@link Transaction#read(ByteBuffer)}. The bytes are copied, so the payload can be reused afterwards.
+     *
+     * @param payload payload to read from
+     * @return read transaction view
+     * @throws BufferUnderflowException if the transaction extends beyond the remaining bytes of the payload
+     * @throws ProtocolException if the transaction has unknown optional data or a superfluous witness record
+     */
+    public static TransactionView read(ByteBuffer payload) throws BufferUnderflowException, ProtocolException {
+        int start = payload.position();
+        TransactionLayout layout = TransactionLayout.scan(payload, true);
+        byte[] raw = new byte[layout.size];
+        ((Buffer) payload).position(start);
+        payload.get(raw);
+        ByteBuffer buf = ByteBuffer.wrap(raw);
+        Sha256Hash wTxId = layout.wTxId(buf, 0);
+        Sha256Hash txId = layout.hasWitnesses() ? layout.txId(buf, 0) : wTxId;
+        return new TransactionView(raw, layout, txId, wTxId);
+    }
+
+    /**
+     * Creates a view of the given transaction, as it is serialized now. Later changes to the transaction are not
+     * reflected by the view.
+     *
+     * @param tx transaction to create a view of
+     * @return view of the transaction
+     */
+    public static TransactionView of(Transaction tx) {
+        return PooledWriter.write(tx::write, tx::messageSize, TransactionView::read);
+    }
+
+    /**
+     * Deserializes the viewed transaction, for code that needs a {@link Transaction}. Each call returns a new
+     * instance.
+     *
+     * @return deserialized transaction
+     */
+    public Transaction toTransaction() {
+        return Transaction.read(ByteBuffer.wrap(raw));
+    }
+
+    /**
+     * Returns the transaction ID, see {@link Transaction#getTxId()}.
+     *
+     * @return transaction ID
+     */
+    public Sha256Hash getTxId() {
+        return txId;
+    }
+
+    /**
+     * Returns the witness transaction ID, see {@link Transaction#getWTxId()}.
+     *
+     * @return witness transaction ID
+     */
+    public Sha256Hash getWTxId() {
+        return wTxId;
+    }
+
+    /** @return the version of the transaction */
+    public long getVersion() {
+        return ByteUtils.readUint32(raw, 0);
+    }
+
+    /** @return the lock time of the transaction */
+    public LockTime lockTime() {
+        return LockTime.of(ByteUtils.readUint32(raw, raw.length - TransactionLayout.UINT32_SIZE));
+    }
+
+    /** @return true if any of the inputs has a witness */
+    public boolean hasWitnesses() {
+        return layout.hasWitnesses();
+    }
+
+    /** @return true if this is a coinbase transaction, see {@link Transaction#isCoinBase()} */
+    public boolean isCoinBase() {
+        return layout.coinBase;
+    }
+
+    /** @return number of inputs */
+    public int getInputCount() {
+        return inputOffsets.length - 1;
+    }
+
+    /**
+     * Returns the outpoint the input at the given index spends.
+     *
+     * @param index index of the input
+     * @return outpoint spent by the input
+     */
+    public TransactionOutPoint getOutpoint(int index) {
+        return TransactionOutPoint.read(input(index));
+    }
+
+    /**
+     * Returns the bytes of the script of the input at the given index.
+     *
+     * @param index index of the input
+     * @return copy of the script bytes
+     */
+    public byte[] getScriptSigBytes(int index) {
+        ByteBuffer input = input(index);
+        ((Buffer) input).position(input.position() + TransactionLayout.OUTPOINT_SIZE);
+        return Buffers.readLengthPrefixedBytes(input);
+    }
+
+    /**
+     * Returns the sequence number of the input at the given index.
+     *
+     * @param index index of the input
+     * @return sequence number
+     */
+    public long getSequenceNumber(int index) {
+        checkIndex(index, getInputCount());
+        return ByteUtils.readUint32(raw, inputOffsets[index + 1] - TransactionLayout.SEQUENCE_SIZE);
+    }
+
+    /**
+     * Returns the witness of the input at the given index.
+     *
+     * @param index index of the input
+     * @return witness of the input, or {@link TransactionWitness#EMPTY} if it has none
+     */
+    public TransactionWitness getWitness(int index) {
+        checkIndex(index, getInputCount());
+        int[] witnessOffsets = layout.witnessOffsets;
+        if (witnessOffsets == null)
+            return TransactionWitness.EMPTY;
+        return TransactionWitness.read(range(witnessOffsets, index));
+    }
+
+    /** @return number of outputs */
+    public int getOutputCount() {
+        return outputOffsets.length - 1;
+    }
+
+    /**
+     * Returns the value of the output at the given index.
+     *
+     * @param index index of the output
+     * @return value of the output
+     */
+    public Coin getValue(int index) {
+        checkIndex(index, getOutputCount());
+        return Coin.valueOf(ByteUtils.readInt64(raw, outputOffsets[index]));
+    }
+
+    /**
+     * Returns the bytes of the script of the output at the given index.
+     *
+     * @param index index of the output
+     * @return copy of the script bytes
+     */
+    public byte[] getScriptPubKeyBytes(int index) {
+        ByteBuffer output = range(outputOffsets, index);
+        ((Buffer) output).position(output.position() + Long.BYTES);
+        return Buffers.readLengthPrefixedBytes(output);
+    }
+
+    private static void checkIndex(int index, int size) throws IndexOutOfBoundsException {
+        check(index >= 0 && index < size, () -> new IndexOutOfBoundsException("index " + index + ", size " + size));
+    }
+
+    private ByteBuffer input(int index) {
+        return range(inputOffsets, index);
+    }
+
+    // Wraps the item at the given index, positioned at its start and limited to its end
+    private ByteBuffer range(int[] offsets, int index) {
+        checkIndex(index, offsets.length - 1);
+        return ByteBuffer.wrap(raw, offsets[index], offsets[index + 1] - offsets[index]);
+    }
+
+    // The serialized transaction, for writing it without a copy. Must not be modified.
+    byte[] bytes() {
+        return raw;
+    }
+
+    @Override
+    public int messageSize() {
+        return raw.length;
+    }
+
+    /**
+     * Write the bytes this view was read from into the given buffer.
+     *
+     * @param buf buffer to write into
+     * @return the buffer
+     * @throws BufferOverflowException if the transaction doesn't fit the remaining buffer
+     */
+    @Override
+    public ByteBuffer write(ByteBuffer buf) throws BufferOverflowException {
+        return buf.put(raw);
+    }
+
+    @Override
+    public byte[] serialize() {
+        return Arrays.copyOf(raw, raw.length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return Arrays.equals(raw, ((TransactionView) o).raw);
+    }
+
+    @Override
+    public int hashCode() {
+        return wTxId.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "TransactionView{" + txId + ", " + getInputCount() + " inputs, " + getOutputCount() + " outputs}";
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.crypto;
+
+import org.bitcoinj.base.internal.ByteUtils;
+import org.bitcoinj.crypto.internal.CryptoUtils;
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.math.ec.ECAlgorithms;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointCombMultiplier;
+
+import org.jspecify.annotations.Nullable;
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import static org.bitcoinj.base.internal.Preconditions.checkArgument;
+
+/**
+ * <p>A Schnorr signature over secp256k1 as specified by
+ * <a href="https://github.com/bitcoin/bips/blob/master/bip-0340.mediawiki">BIP340</a>, which is what Taproot uses.
+ * Public keys are "x-only": 32 bytes holding the X coordinate of a point with an even Y coordinate.</p>
+ *
+ * <p>Many signatures can be checked at once with a {@link BatchVerifier}, which is considerably faster than verifying
+ * them one by one.</p>
+ */
+public final class SchnorrSignature {
+    /** Length of an encoded signature. */
+    public static final int LENGTH = 64;
+    /** Length of an x-only public key. */
+    public static final int PUBLIC_KEY_LENGTH = 32;
+
+    private static final ECDomainParameters CURVE = ECKey.ecDomainParameters();
+    private static final BigInteger P = CURVE.getCurve().getField().getCharacteristic();
+    private static final BigInteger N = CURVE.getN();
+
+    private final byte[] r;
+    private final BigInteger s;
+
+    private SchnorrSignature(byte[] r, BigInteger s) {
+        this.r = r;
+        this.s = s;
+    }
+
+    /**
+     * Decodes a signature from its 64 byte encoding.
+     * @param bytes encoded signature
+     * @return decoded signature
+     * @throws SignatureDecodeException if the encoding is invalid
+     */
+    public static SchnorrSignature decode(byte[] bytes) throws SignatureDecodeException {
+        if (bytes.length != LENGTH)
+            throw new SignatureDecodeException("Schnorr signature must be 64 bytes: " + bytes.length);
+        byte[] r = Arrays.copyOfRange(bytes, 0, 32);
+        if (ByteUtils.bytesToBigInteger(r).compareTo(P) >= 0)
+            throw new SignatureDecodeException("Schnorr signature r out of range");
+        BigInteger s = ByteUtils.bytesToBigInteger(Arrays.copyOfRange(bytes, 32, 64));
+        if (s.compareTo(N) >= 0)
+            throw new SignatureDecodeException("Schnorr signature s out of range");
+        return new SchnorrSignature(r, s);
+    }
+
+    /** Returns the 64 byte encoding of this signature. */
+    public byte[] encode() {
+        byte[] bytes = new byte[LENGTH];
+        System.arraycopy(r, 0, bytes, 0, 32);
+        System.arraycopy(ByteUtils.bigIntegerToBytes(s, 32), 0, bytes, 32, 32);
+        return bytes;
+    }
+
+    /**
+     * Verifies this signature.
+     * @param message signed message, usually a 32 byte hash
+     * @param publicKey x-only public key
+     * @return true if the signature is valid
+     */
+    public boolean verify(byte[] message, byte[] publicKey) {
+        ECPoint pubKeyPoint = liftX(publicKey);
+        if (pubKeyPoint == null)
+            return false;
+        BigInteger e = challenge(r, publicKey, message);
+        // R = s*G - e*P
+        ECPoint point = ECAlgorithms.sumOfTwoMultiplies(CURVE.getG(), s, pubKeyPoint, N.subtract(e)).normalize();
+        if (point.isInfinity() || point.getAffineYCoord().testBitZero())
+            return false;
+        return Arrays.equals(point.getAffineXCoord().getEncoded(), r);
+    }
+
+    /**
+     * Signs a message. This is the default signing algorithm of BIP340.
+     * @param message message to sign, usually a 32 byte hash
+     * @param privateKey private key
+     * @param auxRand 32 bytes of auxiliary randomness
+     * @return signature
+     */
+    public static SchnorrSignature sign(byte[] message, BigInteger privateKey, byte[] auxRand) {
+        checkArgument(privateKey.signum() > 0 && privateKey.compareTo(N) < 0, () -> "private key out of range");
+        checkArgument(auxRand.length == 32, () -> "auxRand must be 32 bytes: " + auxRand.length);
+        ECPoint pubKeyPoint = multiplyG(privateKey);
+        BigInteger d = pubKeyPoint.getAffineYCoord().testBitZero() ? N.subtract(privateKey) : privateKey;
+        byte[] publicKey = pubKeyPoint.getAffineXCoord().getEncoded();
+        byte[] t = ByteUtils.bigIntegerToBytes(d, 32);
+        byte[] auxHash = CryptoUtils.taggedHash("BIP0340/aux", auxRand);
+        for (int i = 0; i < t.length; i++)
+            t[i] ^= auxHash[i];
+        BigInteger k = ByteUtils.bytesToBigInteger(CryptoUtils.taggedHash("BIP0340/nonce", t, publicKey, message)).mod(N);
+        checkArgument(k.signum() != 0, () -> "nonce is zero");
+        ECPoint noncePoint = multiplyG(k);
+        if (noncePoint.getAffineYCoord().testBitZero())
+            k = N.subtract(k);
+        byte[] r = noncePoint.getAffineXCoord().getEncoded();
+        BigInteger e = challenge(r, publicKey, message);
+        SchnorrSignature signature = new SchnorrSignature(r, k.add(e.multiply(d)).mod(N));
+        if (!signature.verify(message, publicKey))
+            throw new IllegalStateException("created signature does not verify");
+        return signature;
+    }
+
+    /**
+     * Returns the x-only public key belonging to a private key.
+     * @param privateKey private key
+     * @return x-only public key
+     */
+    public static byte[] publicKey(BigInteger privateKey) {
+        return multiplyG(privateKey).getAffineXCoord().getEncoded();
+    }
+
+    /**
+     * Tweaks an x-only public key by adding {@code tweak * G}, as done for Taproot output keys.
+     * @param publicKey x-only public key
+     * @param tweak 32 byte tweak
+     * @return the tweaked key in compressed form, so the first byte tells the parity of its Y coordinate
+     * @throws IllegalArgumentException if the key or tweak is invalid
+     */
+    public static byte[] tweakPublicKey(byte[] publicKey, byte[] tweak) {
+        ECPoint point = liftX(publicKey);
+        checkArgument(point != null, () -> "invalid public key");
+        BigInteger t = ByteUtils.bytesToBigInteger(tweak);
+        checkArgument(t.compareTo(N) < 0, () -> "tweak out of range");
+        ECPoint tweaked = point.add(multiplyG(t)).normalize();
+        checkArgument(!tweaked.isInfinity(), () -> "tweaked key is infinity");
+        return tweaked.getEncoded(true);
+    }
+
+    /**
+     * Tweaks a private key so that it matches {@link #tweakPublicKey(byte[], byte[])} of its x-only public key.
+     * @param privateKey private key
+     * @param tweak 32 byte tweak
+     * @return tweaked private key
+     */
+    public static BigInteger tweakPrivateKey(BigInteger privateKey, byte[] tweak) {
+        BigInteger d = multiplyG(privateKey).getAffineYCoord().testBitZero() ? N.subtract(privateKey) : privateKey;
+        BigInteger t = ByteUtils.bytesToBigInteger(tweak);
+        checkArgument(t.compareTo(N) < 0, () -> "tweak out of range");
+        return d.add(t).mod(N);
+    }
+
+    private static ECPoint multiplyG(BigInteger k) {
+        return new FixedPointCombMultiplier().multiply(CURVE.getG(), k).normalize();
+    }
+
+    private static BigInteger challenge(byte[] r, byte[] publicKey, byte[] message) {
+        return ByteUtils.bytesToBigInteger(CryptoUtils.taggedHash("BIP0340/challenge", r, publicKey, message)).mod(N);
+    }
+
+    /** Returns the point with the given X coordinate and an even Y coordinate, or null if there is none. */
+    @Nullable
+    private static ECPoint liftX(byte[] x) {
+        if (x.length != PUBLIC_KEY_LENGTH)
+            return null;
+        byte[] encoded = new byte[33];
+        encoded[0] = 0x02;
+        System.arraycopy(x, 0, encoded, 1, 32);
+        try {
+            return CURVE.getCurve().decodePoint(encoded);
+        } catch (IllegalArgumentException e) {
+            return null; // x >= p or x^3 + 7 is not a square
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SchnorrSignature other = (SchnorrSignature) o;
+        return Arrays.equals(r, other.r) && s.equals(other.s);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(Arrays.hashCode(r), s);
+    }
+
+    /**
+     * <p>Collects signatures and verifies them all at once, using the batch verification algorithm of BIP340. Instead of
+     * two point multiplications per signature, a single multi-scalar multiplication is done over all of them.</p>
+     *
+     * <p>A batch only tells whether all of its signatures are valid, not which one is invalid. Signatures can be added
+     * from multiple threads.</p>
+     */
+    public static class BatchVerifier {
+        private final List<Entry> entries = new ArrayList<>();
+        private final SecureRandom random = new SecureRandom();
+
+        private static class Entry {
+            final SchnorrSignature signature;
+            final byte[] message;
+            final byte[] publicKey;
+
+            Entry(SchnorrSignature signature, byte[] message, byte[] publicKey) {
+                this.signature = signature;
+                this.message = message;
+                this.publicKey = publicKey;
+            }
+        }
+
+        /**
+         * Adds a signature to be verified.
+         * @param signature signature
+         * @param message signed message
+         * @param publicKey x-only public key
+         */
+        public synchronized void add(SchnorrSignature signature, byte[] message, byte[] publicKey) {
+            entries.add(new Entry(signature, message, publicKey));
+        }
+
+        /** Returns the number of signatures added. */
+        public synchronized int size() {
+            return entries.size();
+        }
+
+        /**
+         * Verifies all signatures added so far.
+         * @return true if all signatures are valid, including when none were added
+         */
+        public boolean verify() {
+            List<Entry> entries;
+            synchronized (this) {
+                entries = new ArrayList<>(this.entries);
+            }
+            if (entries.isEmpty())
+                return true;
+            if (entries.size() == 1) {
+                Entry entry = entries.get(0);
+                return entry.signature.verify(entry.message, entry.publicKey);
+            }
+            // Checks (sum a_i * s_i) * G == sum a_i * R_i + sum (a_i * e_i) * P_i, with a_0 = 1 and the other a_i
+            // random, by adding -(sum a_i * s_i) * G to the right hand side and checking for the point at infinity.
+            ECPoint[] points = new ECPoint[1 + 2 * entries.size()];
+            BigInteger[] scalars = new BigInteger[points.length];
+            BigInteger sSum = BigInteger.ZERO;
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                ECPoint pubKeyPoint = liftX(entry.publicKey);
+                ECPoint noncePoint = liftX(entry.signature.r);
+                if (pubKeyPoint == null || noncePoint == null)
+                    return false;
+                BigInteger e = challenge(entry.signature.r, entry.publicKey, entry.message);
+                BigInteger a = i == 0 ? BigInteger.ONE : randomScalar();
+                points[1 + 2 * i] = noncePoint;
+                scalars[1 + 2 * i] = a;
+                points[2 + 2 * i] = pubKeyPoint;
+                scalars[2 + 2 * i] = a.multiply(e).mod(N);
+                sSum = sSum.add(a.multiply(entry.signature.s));
+            }
+            points[0] = CURVE.getG();
+            scalars[0] = N.subtract(sSum.mod(N)).mod(N);
+            return ECAlgorithms.sumOfMultiplies(points, scalars).isInfinity();
+        }
+
+        private BigInteger randomScalar() {
+            BigInteger a;
+            do {
+                a = new BigInteger(256, random);
+            } while (a.signum() == 0 || a.compareTo(N) >= 0);
+            return a;
+        }
+    }
+}
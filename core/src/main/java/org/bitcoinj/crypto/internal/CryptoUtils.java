@@ -16,6 +16,7 @@
 package org.bitcoinj.crypto.internal;
 
 import org.bitcoinj.base.Sha256Hash;
+import org.bitcoinj.base.internal.Sha256;
 import org.bouncycastle.crypto.digests.RIPEMD160Digest;
 import org.bouncycastle.jcajce.provider.digest.SHA3;
 
@@ -40,6 +41,20 @@ public class CryptoUtils {
         return digestRipeMd160(sha256);
     }
 
+    /**
+     * Calculate a BIP340 tagged hash: SHA256(SHA256(tag) || SHA256(tag) || inputs).
+     * @param tag The tag, e.g. {@code "TapLeaf"}
+     * @param inputs An ordered collection of inputs to be hashed
+     * @return the tagged hash
+     */
+    public static byte[] taggedHash(String tag, byte[]... inputs) {
+        Sha256 digest = Sha256.tagged(tag);
+        for (byte[] input : inputs) {
+            digest.update(input);
+        }
+        return digest.digest();
+    }
+
     /**
      * Calculate RIPEMD160(input).
      * @param input bytes to hash
@@ -67,6 +67,10 @@ public class MainNetParams extends BitcoinNetworkParams {
         checkpoints.put(91880, Sha256Hash.wrap("00000000000743f190a18c5577a3c2d2a1f610ae9601ac046a38084ccb7cd721"));
         checkpoints.put(200000, Sha256Hash.wrap("000000000000034a7dedef4a161fa058a2d67a173a90155f3a2fe6fc132e0ebf"));
 
+        // The most recent block of the bundled checkpoints.
+        assumeValidBlock = Sha256Hash.wrap("00000000000000000002819359a9af460f342404bec23e7478512a619584083b");
+        assumeValidHeight = 878976;
+
         dnsSeeds = new String[] {
                 "seed.bitcoin.sipa.be",         // Pieter Wuille
                 "dnsseed.bluematt.me",          // Matt Corallo
@@ -59,6 +59,10 @@ public class SigNetParams extends BitcoinNetworkParams {
         majorityRejectBlockOutdated = TESTNET_MAJORITY_REJECT_BLOCK_OUTDATED;
         majorityWindow = TESTNET_MAJORITY_WINDOW;
 
+        // The most recent block of the bundled checkpoints.
+        assumeValidBlock = Sha256Hash.wrap("000000bac742cfc8d76fda4ad387b7aafa577b17d3684c61d8a089dcd08fa374");
+        assumeValidHeight = 229824;
+
         dnsSeeds = new String[] {
                 "seed.signet.bitcoin.sprovoost.nl", // Sjors Provoost
                 "seed.signet.achownodes.xyz",       // Ava Chow
@@ -58,6 +58,10 @@ public class TestNet3Params extends BitcoinNetworkParams {
         majorityRejectBlockOutdated = TESTNET_MAJORITY_REJECT_BLOCK_OUTDATED;
         majorityWindow = TESTNET_MAJORITY_WINDOW;
 
+        // The most recent block of the bundled checkpoints.
+        assumeValidBlock = Sha256Hash.wrap("00000000000000000b030eae079897a2f81ec5da0b623bad6808bd64537cc103");
+        assumeValidHeight = 3612672;
+
         dnsSeeds = new String[] {
                 "testnet-seed.bitcoin.jonasschnelli.ch", // Jonas Schnelli
                 "seed.tbtc.petertodd.net",               // Peter Todd
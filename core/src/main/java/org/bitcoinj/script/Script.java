@@ -83,11 +83,15 @@ public class Script {
 
     private static final Logger log = LoggerFactory.getLogger(Script.class);
 
-    // The program is a set of chunks where each element is either [opcode] or [data, data, data ...]
-    private final List<ScriptChunk> chunks;
+    // The program is a set of chunks where each element is either [opcode] or [data, data, data ...]. For programs
+    // matching a standard template, the chunks are parsed on demand only.
+    private volatile @Nullable List<ScriptChunk> chunks;
     // Unfortunately, scripts are not ever re-serialized or canonicalized when used in signature hashing. Thus we
     // must preserve the exact bytes that we read off the wire, along with the parsed form.
     private final byte @Nullable [] program;
+    // If the program is the standard serialization of a template, the type of that template. This lets
+    // ScriptPattern answer its questions without looking at the chunks.
+    private final @Nullable ScriptType template;
 
     /**
      * If this is set, the script is associated with a creation time. This is currently used in the context of
@@ -139,6 +143,8 @@ public class Script {
      * @throws ScriptException if the program could not be parsed
      */
     public static Script parse(byte[] program, @Nullable Instant creationTime) throws ScriptException {
+        if (program.length == 0 && creationTime == null)
+            return EMPTY; // very common for segwit inputs
         return new Script(program, creationTime);
     }
 
@@ -185,7 +191,10 @@ public class Script {
 
             ScriptChunk chunk;
             if (dataToRead == -1) {
-                chunk = new ScriptChunk(opcode, null);
+                // Save some memory by eliminating redundant copies of the same chunk objects.
+                chunk = OPCODE_CHUNKS[opcode];
+            } else if (dataToRead == 0 && opcode == OP_0) {
+                chunk = OP_0_CHUNK;
             } else {
                 if (dataToRead > bis.available())
                     throw new ScriptException(ScriptError.SCRIPT_ERR_BAD_OPCODE, "Push of data element that is larger than remaining data: " + dataToRead + " vs " + bis.available());
@@ -193,20 +202,18 @@ public class Script {
                 checkState(dataToRead == 0 || bis.read(data, 0, (int) dataToRead) == dataToRead);
                 chunk = new ScriptChunk(opcode, data);
             }
-            // Save some memory by eliminating redundant copies of the same chunk objects.
-            for (ScriptChunk c : STANDARD_TRANSACTION_SCRIPT_CHUNKS) {
-                if (c.equals(chunk)) chunk = c;
-            }
             chunks.add(chunk);
         }
     }
 
 
-    // When constructing from a program, we store both program and chunks
+    // When constructing from a program, we store both program and chunks. Programs that match a standard template
+    // are syntactically valid by definition, so we can defer parsing them until the chunks are asked for.
     private Script(byte[] program, @Nullable Instant creationTime) {
         Objects.requireNonNull(program);
         this.program = Arrays.copyOf(program, program.length); // defensive copy;
-        this.chunks = parseIntoChunks(this.program);
+        this.template = ScriptPattern.matchTemplate(this.program);
+        this.chunks = template == null ? parseIntoChunks(this.program) : null;
         this.creationTime = creationTime;
     }
 
@@ -214,6 +221,7 @@ public class Script {
     private Script(List<ScriptChunk> chunks, @Nullable Instant creationTime) {
         Objects.requireNonNull(chunks);
         this.program = null;
+        this.template = null;
         this.chunks = Collections.unmodifiableList(new ArrayList<>(chunks));    // defensive copy
         this.creationTime = creationTime;
     }
@@ -228,6 +236,7 @@ public class Script {
             // Don't round-trip as Bitcoin Core doesn't and it would introduce a mismatch.
             return Arrays.copyOf(program, program.length);
         else {
+            List<ScriptChunk> chunks = chunks();
             int size = chunks.stream().mapToInt(ScriptChunk::size).sum();
             ByteBuffer buf = ByteBuffer.allocate(size);
             chunks.forEach(chunk ->
@@ -243,7 +252,22 @@ public class Script {
      * @return script chunks
      */
     public List<ScriptChunk> chunks() {
-        return Collections.unmodifiableList(chunks);
+        List<ScriptChunk> chunks = this.chunks;
+        if (chunks == null) {
+            // only happens for standard templates, which always parse
+            chunks = parseIntoChunks(Objects.requireNonNull(program));
+            this.chunks = chunks;
+        }
+        return chunks;
+    }
+
+    /**
+     * Gets the type of the standard template this program matches byte by byte, or null if the program isn't
+     * known to match any. Scripts constructed from chunks are never matched.
+     */
+    @Nullable
+    ScriptType template() {
+        return template;
     }
 
     /**
@@ -262,18 +286,22 @@ public class Script {
      */
     @Override
     public String toString() {
+        List<ScriptChunk> chunks = chunks();
         if (!chunks.isEmpty())
             return InternalUtils.SPACE_JOINER.join(chunks);
         else
             return "<empty>";
     }
 
-    private static final ScriptChunk[] STANDARD_TRANSACTION_SCRIPT_CHUNKS = {
-        new ScriptChunk(ScriptOpCodes.OP_DUP, null),
-        new ScriptChunk(ScriptOpCodes.OP_HASH160, null),
-        new ScriptChunk(ScriptOpCodes.OP_EQUALVERIFY, null),
-        new ScriptChunk(ScriptOpCodes.OP_CHECKSIG, null),
-    };
+    // Chunks without data are immutable, so they can be shared between all scripts. Indexed by opcode.
+    private static final ScriptChunk[] OPCODE_CHUNKS = new ScriptChunk[256];
+    static {
+        for (int opcode = OP_PUSHDATA4 + 1; opcode < OPCODE_CHUNKS.length; opcode++)
+            OPCODE_CHUNKS[opcode] = new ScriptChunk(opcode, null);
+    }
+    private static final ScriptChunk OP_0_CHUNK = new ScriptChunk(OP_0, new byte[0]);
+
+    private static final Script EMPTY = new Script(new byte[0], null);
 
 
     /**
@@ -431,6 +459,7 @@ public class Script {
     public int getSigInsertionIndex(Sha256Hash hash, ECKey signingKey) {
         // Iterate over existing signatures, skipping the initial OP_0, the final redeem script
         // and any placeholder OP_0 sigs.
+        List<ScriptChunk> chunks = chunks();
         List<ScriptChunk> existingChunks = chunks.subList(1, chunks.size() - 1);
         ScriptChunk redeemScriptChunk = chunks.get(chunks.size() - 1);
         Objects.requireNonNull(redeemScriptChunk.data);
@@ -456,6 +485,7 @@ public class Script {
     }
 
     private int findKeyInRedeem(ECKey key) {
+        List<ScriptChunk> chunks = chunks();
         checkArgument(chunks.get(0).isOpCode()); // P2SH scriptSig
         int numKeys = Script.decodeFromOpN(chunks.get(chunks.size() - 2).opcode);
         for (int i = 0 ; i < numKeys ; i++) {
@@ -476,6 +506,7 @@ public class Script {
         if (!ScriptPattern.isSentToMultisig(this))
             throw new ScriptException(ScriptError.SCRIPT_ERR_UNKNOWN_ERROR, "Only usable for multisig scripts.");
 
+        List<ScriptChunk> chunks = chunks();
         ArrayList<ECKey> result = new ArrayList<>();
         int numKeys = Script.decodeFromOpN(chunks.get(chunks.size() - 2).opcode);
         for (int i = 0 ; i < numKeys ; i++) {
@@ -486,6 +517,7 @@ public class Script {
     }
 
     private int findSigInRedeem(byte[] signatureBytes, Sha256Hash hash) throws SignatureDecodeException {
+        List<ScriptChunk> chunks = chunks();
         checkArgument(chunks.get(0).isOpCode()); // P2SH scriptSig
         int numKeys = Script.decodeFromOpN(chunks.get(chunks.size() - 2).opcode);
         TransactionSignature signature = TransactionSignature.decodeFromBitcoin(signatureBytes, true, false);
@@ -576,7 +608,7 @@ public class Script {
         for (ScriptChunk chunk : chunks) {
             if (!chunk.isOpCode()) {
                 Script subScript = parse(Objects.requireNonNull(chunk.data));
-                return getSigOpCount(subScript.chunks, true);
+                return getSigOpCount(subScript.chunks(), true);
             }
         }
         return 0;
@@ -588,7 +620,7 @@ public class Script {
     public int getNumberOfSignaturesRequiredToSpend() {
         if (ScriptPattern.isSentToMultisig(this)) {
             // for N of M CHECKMULTISIG script we will need N signatures to spend
-            ScriptChunk nChunk = chunks.get(0);
+            ScriptChunk nChunk = chunks().get(0);
             return Script.decodeFromOpN(nChunk.opcode);
         } else if (ScriptPattern.isP2PKH(this) || ScriptPattern.isP2PK(this)) {
             // P2PKH and P2PK require single sig
@@ -689,7 +721,7 @@ public class Script {
     }
     
     // Utility that doesn't copy for internal use
-    private byte[] getQuickProgram() {
+    byte[] getQuickProgram() {
         if (program != null)
             return program;
         return program();
@@ -700,6 +732,8 @@ public class Script {
      * @return The script type, or null if the script is of unknown type
      */
     public @Nullable ScriptType getScriptType() {
+        if (template != null)
+            return template;
         if (ScriptPattern.isP2PKH(this))
             return ScriptType.P2PKH;
         if (ScriptPattern.isP2PK(this))
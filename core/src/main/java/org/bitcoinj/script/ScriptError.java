@@ -77,6 +77,16 @@ public enum ScriptError {
     SCRIPT_ERR_WITNESS_UNEXPECTED("WITNESS_UNEXPECTED"),
     SCRIPT_ERR_WITNESS_PUBKEYTYPE("WITNESS_PUBKEYTYPE"),
 
+    /* Taproot */
+    SCRIPT_ERR_SCHNORR_SIG_SIZE("SCHNORR_SIG_SIZE"),
+    SCRIPT_ERR_SCHNORR_SIG_HASHTYPE("SCHNORR_SIG_HASHTYPE"),
+    SCRIPT_ERR_SCHNORR_SIG("SCHNORR_SIG"),
+    SCRIPT_ERR_TAPROOT_WRONG_CONTROL_SIZE("TAPROOT_WRONG_CONTROL_SIZE"),
+    SCRIPT_ERR_TAPSCRIPT_VALIDATION_WEIGHT("TAPSCRIPT_VALIDATION_WEIGHT"),
+    SCRIPT_ERR_TAPSCRIPT_CHECKMULTISIG("TAPSCRIPT_CHECKMULTISIG"),
+    SCRIPT_ERR_TAPSCRIPT_MINIMALIF("TAPSCRIPT_MINIMALIF"),
+    SCRIPT_ERR_TAPSCRIPT_EMPTY_PUBKEY("TAPSCRIPT_EMPTY_PUBKEY"),
+
     SCRIPT_ERR_ERROR_COUNT("ERROR_COUNT");
 
     private final String mnemonic;
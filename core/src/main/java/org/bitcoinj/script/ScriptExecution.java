@@ -18,8 +18,10 @@ package org.bitcoinj.script;
 
 import org.bitcoinj.base.Coin;
 import org.bitcoinj.base.Sha256Hash;
+import org.bitcoinj.base.VarInt;
 import org.bitcoinj.base.internal.ByteUtils;
 import org.bitcoinj.core.LockTime;
+import org.bitcoinj.core.PrecomputedTransactionData;
 import org.bitcoinj.core.ProtocolException;
 import org.bitcoinj.core.Transaction;
 import org.bitcoinj.core.TransactionInput;
@@ -28,6 +30,7 @@ import org.bitcoinj.core.TransactionWitness;
 import org.bitcoinj.core.Utils;
 import org.bitcoinj.core.VerificationException;
 import org.bitcoinj.crypto.ECKey;
+import org.bitcoinj.crypto.SchnorrSignature;
 import org.bitcoinj.crypto.SignatureDecodeException;
 import org.bitcoinj.crypto.TransactionSignature;
 import org.bitcoinj.crypto.internal.CryptoUtils;
@@ -37,18 +40,17 @@ import org.slf4j.LoggerFactory;
 import org.jspecify.annotations.Nullable;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.EnumSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 
+import static org.bitcoinj.base.internal.Preconditions.checkArgument;
 import static org.bitcoinj.script.ScriptOpCodes.OP_0;
 import static org.bitcoinj.script.ScriptOpCodes.OP_0NOTEQUAL;
 import static org.bitcoinj.script.ScriptOpCodes.OP_1;
@@ -89,6 +91,7 @@ import static org.bitcoinj.script.ScriptOpCodes.OP_CHECKMULTISIG;
 import static org.bitcoinj.script.ScriptOpCodes.OP_CHECKMULTISIGVERIFY;
 import static org.bitcoinj.script.ScriptOpCodes.OP_CHECKSEQUENCEVERIFY;
 import static org.bitcoinj.script.ScriptOpCodes.OP_CHECKSIG;
+import static org.bitcoinj.script.ScriptOpCodes.OP_CHECKSIGADD;
 import static org.bitcoinj.script.ScriptOpCodes.OP_CHECKSIGVERIFY;
 import static org.bitcoinj.script.ScriptOpCodes.OP_CODESEPARATOR;
 import static org.bitcoinj.script.ScriptOpCodes.OP_DEPTH;
@@ -134,6 +137,8 @@ import static org.bitcoinj.script.ScriptOpCodes.OP_NUMNOTEQUAL;
 import static org.bitcoinj.script.ScriptOpCodes.OP_OR;
 import static org.bitcoinj.script.ScriptOpCodes.OP_OVER;
 import static org.bitcoinj.script.ScriptOpCodes.OP_PICK;
+import static org.bitcoinj.script.ScriptOpCodes.OP_PUSHDATA1;
+import static org.bitcoinj.script.ScriptOpCodes.OP_PUSHDATA2;
 import static org.bitcoinj.script.ScriptOpCodes.OP_PUSHDATA4;
 import static org.bitcoinj.script.ScriptOpCodes.OP_RETURN;
 import static org.bitcoinj.script.ScriptOpCodes.OP_RIGHT;
@@ -169,7 +174,8 @@ public class ScriptExecution {
         DISCOURAGE_UPGRADABLE_NOPS, // Discourage use of NOPs reserved for upgrades (NOP1-10)
         CLEANSTACK, // Require that only a single stack element remains after evaluation.
         CHECKLOCKTIMEVERIFY, // Enable CHECKLOCKTIMEVERIFY operation
-        CHECKSEQUENCEVERIFY // Enable CHECKSEQUENCEVERIFY operation
+        CHECKSEQUENCEVERIFY, // Enable CHECKSEQUENCEVERIFY operation
+        TAPROOT // Taproot/Tapscript validation (BIPs 341 & 342)
     }
     public static final EnumSet<VerifyFlag> ALL_VERIFY_FLAGS = EnumSet.allOf(VerifyFlag.class);
 
@@ -180,7 +186,41 @@ public class ScriptExecution {
     private static final int MAX_PUBKEYS_PER_MULTISIG = 20;
     /** Max number of sigops allowed in a standard p2sh redeem script */
     private static final int MAX_P2SH_SIGOPS = 15;
-    private static final BigInteger LOCKTIME_THRESHOLD_BIG = BigInteger.valueOf(LockTime.THRESHOLD);
+
+    private static final byte[] EMPTY_BYTES = new byte[0];
+
+    // Taproot (BIP 341) and tapscript (BIP 342)
+    private static final int ANNEX_TAG = 0x50;
+    private static final int TAPROOT_LEAF_MASK = 0xfe;
+    private static final int TAPROOT_LEAF_TAPSCRIPT = 0xc0;
+    private static final int TAPROOT_CONTROL_BASE_SIZE = 33;
+    private static final int TAPROOT_CONTROL_NODE_SIZE = 32;
+    private static final int TAPROOT_CONTROL_MAX_NODE_COUNT = 128;
+    private static final int TAPROOT_CONTROL_MAX_SIZE = TAPROOT_CONTROL_BASE_SIZE + TAPROOT_CONTROL_NODE_SIZE * TAPROOT_CONTROL_MAX_NODE_COUNT;
+    private static final int VALIDATION_WEIGHT_OFFSET = 50;
+    private static final int VALIDATION_WEIGHT_PER_SIGOP_PASSED = 50;
+    private static final long NO_CODESEPARATOR = 0xffffffffL;
+
+    /**
+     * State of a tapscript execution (BIP 342). The interpreter applies tapscript rules if it is given one of these.
+     */
+    private static final class TapscriptContext {
+        final PrecomputedTransactionData txData;
+        final byte[] tapleafHash;
+        final byte @Nullable [] annex;
+        final SchnorrSignature.@Nullable BatchVerifier batchVerifier;
+        long validationWeightLeft;
+        long codeSeparatorPosition = NO_CODESEPARATOR;
+
+        TapscriptContext(PrecomputedTransactionData txData, byte[] tapleafHash, byte @Nullable [] annex,
+                         long validationWeightLeft, SchnorrSignature.@Nullable BatchVerifier batchVerifier) {
+            this.txData = txData;
+            this.tapleafHash = tapleafHash;
+            this.annex = annex;
+            this.validationWeightLeft = validationWeightLeft;
+            this.batchVerifier = batchVerifier;
+        }
+    }
 
     private static final Logger log = LoggerFactory.getLogger(ScriptExecution.class);
 
@@ -195,26 +235,29 @@ public class ScriptExecution {
     }
 
     /**
-     * Cast a script chunk to a BigInteger.
+     * Cast a script chunk to a number.
      *
-     * @see #castToBigInteger(byte[], int, boolean) for values with different maximum
+     * @see #castToLong(byte[], int, boolean) for values with different maximum
      * sizes.
      * @throws ScriptException if the chunk is longer than 4 bytes.
      */
-    private static BigInteger castToBigInteger(byte[] chunk, final boolean requireMinimal) throws ScriptException {
-        return castToBigInteger(chunk, 4, requireMinimal);
+    private static long castToLong(byte[] chunk, final boolean requireMinimal) throws ScriptException {
+        return castToLong(chunk, 4, requireMinimal);
     }
 
     /**
-     * Cast a script chunk to a BigInteger. Normally you would want
-     * {@link #castToBigInteger(byte[], boolean)} instead, this is only for cases where
+     * Cast a script chunk to a number. Normally you would want
+     * {@link #castToLong(byte[], boolean)} instead, this is only for cases where
      * the normal maximum length does not apply (i.e. CHECKLOCKTIMEVERIFY, CHECKSEQUENCEVERIFY).
+     * <p>
+     * Script numbers are little endian with the sign in the most significant bit, like CScriptNum in Bitcoin Core.
+     * As long as the maximum length is at most 8 bytes, they always fit a long.
      *
-     * @param maxLength the maximum length in bytes.
+     * @param maxLength the maximum length in bytes, at most 8
      * @param requireMinimal check if the number is encoded with the minimum possible number of bytes
      * @throws ScriptException if the chunk is longer than the specified maximum.
      */
-    /* package private */ static BigInteger castToBigInteger(final byte[] chunk, final int maxLength, final boolean requireMinimal) throws ScriptException {
+    /* package private */ static long castToLong(final byte[] chunk, final int maxLength, final boolean requireMinimal) throws ScriptException {
         if (chunk.length > maxLength)
             throw new ScriptException(ScriptError.SCRIPT_ERR_UNKNOWN_ERROR, "Script attempted to use an integer larger than " + maxLength + " bytes");
 
@@ -237,7 +280,43 @@ public class ScriptExecution {
             }
         }
 
-        return ByteUtils.decodeMPI(ByteUtils.reverseBytes(chunk), false);
+        if (chunk.length == 0)
+            return 0;
+        long result = 0;
+        for (int i = 0; i < chunk.length; i++)
+            result |= (long) (chunk[i] & 0xFF) << (8 * i);
+        // If the input's most significant byte has the sign bit set, the result is negative. So we remove the sign
+        // bit and negate.
+        if ((chunk[chunk.length - 1] & 0x80) != 0)
+            return -(result & ~(0x80L << (8 * (chunk.length - 1))));
+        return result;
+    }
+
+    /**
+     * Encode a number as a script chunk, using the minimal encoding. This is the inverse of
+     * {@link #castToLong(byte[], int, boolean)}.
+     *
+     * @param value number to encode
+     * @return minimally encoded number
+     */
+    /* package private */ static byte[] encodeNumber(long value) {
+        if (value == 0)
+            return EMPTY_BYTES;
+        boolean negative = value < 0;
+        long absolute = negative ? -value : value;
+        int length = (64 - Long.numberOfLeadingZeros(absolute) + 7) / 8;
+        // If the most significant byte has its high bit set, we need an extra byte for the sign.
+        boolean extraByte = ((absolute >>> (8 * (length - 1))) & 0x80) != 0;
+        byte[] result = new byte[extraByte ? length + 1 : length];
+        for (int i = 0; i < length; i++)
+            result[i] = (byte) (absolute >>> (8 * i));
+        if (negative)
+            result[result.length - 1] |= (byte) 0x80;
+        return result;
+    }
+
+    private static byte[] encodeBool(boolean value) {
+        return value ? new byte[] {1} : EMPTY_BYTES;
     }
 
     /**
@@ -249,15 +328,33 @@ public class ScriptExecution {
      */
     public static void executeScript(@Nullable Transaction txContainingThis, long index,
                                      Script script, LinkedList<byte[]> stack, Set<VerifyFlag> verifyFlags) throws ScriptException {
+        ScriptStack scriptStack = new ScriptStack(stack);
+        try {
+            executeScript(txContainingThis, index, script, scriptStack, verifyFlags, null);
+        } finally {
+            stack.clear();
+            stack.addAll(scriptStack.toList());
+        }
+    }
+
+    private static void executeScript(@Nullable Transaction txContainingThis, long index,
+                                      Script script, ScriptStack stack, Set<VerifyFlag> verifyFlags,
+                                      @Nullable TapscriptContext tapscript) throws ScriptException {
         int opCount = 0;
         int lastCodeSepLocation = 0;
+        final boolean requireMinimal = verifyFlags.contains(VerifyFlag.MINIMALDATA);
 
-        LinkedList<byte[]> altstack = new LinkedList<>();
-        LinkedList<Boolean> ifStack = new LinkedList<>();
+        ScriptStack altstack = new ScriptStack();
+        // Rather than keeping a stack of booleans for nested OP_IFs, it's enough to know its size and the position of
+        // the first false value, like ConditionStack in Bitcoin Core. We execute if there is no false value.
+        int ifStackSize = 0;
+        int ifStackFirstFalse = -1;
 
         int nextLocationInScript = 0;
-        for (ScriptChunk chunk : script.chunks()) {
-            boolean shouldExecute = !ifStack.contains(false);
+        List<ScriptChunk> chunks = script.chunks();
+        for (int opcodePosition = 0; opcodePosition < chunks.size(); opcodePosition++) {
+            ScriptChunk chunk = chunks.get(opcodePosition);
+            boolean shouldExecute = ifStackFirstFalse == -1;
             int opcode = chunk.opcode;
             nextLocationInScript += chunk.size();
 
@@ -265,8 +362,8 @@ public class ScriptExecution {
             if (chunk.data != null && chunk.data.length > MAX_SCRIPT_ELEMENT_SIZE)
                 throw new ScriptException(ScriptError.SCRIPT_ERR_PUSH_SIZE, "Attempted to push a data string larger than 520 bytes");
 
-            // Note how OP_RESERVED does not count towards the opcode limit.
-            if (opcode > OP_16) {
+            // Note how OP_RESERVED does not count towards the opcode limit. Tapscript has no opcode limit.
+            if (opcode > OP_16 && tapscript == null) {
                 opCount++;
                 if (opCount > MAX_OPS_PER_SCRIPT)
                     throw new ScriptException(ScriptError.SCRIPT_ERR_OP_COUNT, "More script operations than is allowed");
@@ -282,48 +379,55 @@ public class ScriptExecution {
 
             if (shouldExecute && OP_0 <= opcode && opcode <= OP_PUSHDATA4) {
                 // Check minimal push
-                if (verifyFlags.contains(VerifyFlag.MINIMALDATA) && !chunk.isShortestPossiblePushData())
+                if (requireMinimal && !chunk.isShortestPossiblePushData())
                     throw new ScriptException(ScriptError.SCRIPT_ERR_MINIMALDATA, "Script included a not minimal push operation.");
 
+                // Data is pushed by reference, the interpreter never modifies stack elements.
                 if (opcode == OP_0)
-                    stack.add(new byte[]{});
+                    stack.push(EMPTY_BYTES);
                 else
-                    stack.add(chunk.data);
+                    stack.push(chunk.data);
             } else if (shouldExecute || (OP_IF <= opcode && opcode <= OP_ENDIF)){
 
                 switch (opcode) {
                     case OP_IF:
-                        if (!shouldExecute) {
-                            ifStack.add(false);
-                            continue;
-                        }
-                        if (stack.size() < 1)
-                            throw new ScriptException(ScriptError.SCRIPT_ERR_UNBALANCED_CONDITIONAL, "Attempted OP_IF on an empty stack");
-                        ifStack.add(castToBool(stack.pollLast()));
-                        continue;
                     case OP_NOTIF:
-                        if (!shouldExecute) {
-                            ifStack.add(false);
-                            continue;
+                        boolean condition = false;
+                        if (shouldExecute) {
+                            if (stack.size() < 1)
+                                throw new ScriptException(ScriptError.SCRIPT_ERR_UNBALANCED_CONDITIONAL, "Attempted " +
+                                        (opcode == OP_IF ? "OP_IF" : "OP_NOTIF") + " on an empty stack");
+                            byte[] conditionBytes = stack.pop();
+                            if (tapscript != null && (conditionBytes.length > 1 ||
+                                    (conditionBytes.length == 1 && conditionBytes[0] != 1)))
+                                throw new ScriptException(ScriptError.SCRIPT_ERR_TAPSCRIPT_MINIMALIF,
+                                        "Tapscript requires the argument of OP_IF/OP_NOTIF to be empty or 1");
+                            condition = castToBool(conditionBytes) == (opcode == OP_IF);
                         }
-                        if (stack.size() < 1)
-                            throw new ScriptException(ScriptError.SCRIPT_ERR_UNBALANCED_CONDITIONAL, "Attempted OP_NOTIF on an empty stack");
-                        ifStack.add(!castToBool(stack.pollLast()));
+                        if (!condition && ifStackFirstFalse == -1)
+                            ifStackFirstFalse = ifStackSize;
+                        ifStackSize++;
                         continue;
                     case OP_ELSE:
-                        if (ifStack.isEmpty())
+                        if (ifStackSize == 0)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_UNBALANCED_CONDITIONAL, "Attempted OP_ELSE without OP_IF/NOTIF");
-                        ifStack.add(!ifStack.pollLast());
+                        // Toggling the top value only matters if there is no false value below it.
+                        if (ifStackFirstFalse == -1)
+                            ifStackFirstFalse = ifStackSize - 1;
+                        else if (ifStackFirstFalse == ifStackSize - 1)
+                            ifStackFirstFalse = -1;
                         continue;
                     case OP_ENDIF:
-                        if (ifStack.isEmpty())
+                        if (ifStackSize == 0)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_UNBALANCED_CONDITIONAL, "Attempted OP_ENDIF without OP_IF/NOTIF");
-                        ifStack.pollLast();
+                        ifStackSize--;
+                        if (ifStackFirstFalse == ifStackSize)
+                            ifStackFirstFalse = -1;
                         continue;
 
                         // OP_0 is no opcode
                     case OP_1NEGATE:
-                        stack.add(ByteUtils.reverseBytes(ByteUtils.encodeMPI(BigInteger.ONE.negate(), false)));
+                        stack.push(encodeNumber(-1));
                         break;
                     case OP_1:
                     case OP_2:
@@ -341,14 +445,14 @@ public class ScriptExecution {
                     case OP_14:
                     case OP_15:
                     case OP_16:
-                        stack.add(ByteUtils.reverseBytes(ByteUtils.encodeMPI(BigInteger.valueOf(Script.decodeFromOpN(opcode)), false)));
+                        stack.push(encodeNumber(Script.decodeFromOpN(opcode)));
                         break;
                     case OP_NOP:
                         break;
                     case OP_VERIFY:
                         if (stack.size() < 1)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_VERIFY on an empty stack");
-                        if (!castToBool(stack.pollLast()))
+                        if (!castToBool(stack.pop()))
                             throw new ScriptException(ScriptError.SCRIPT_ERR_VERIFY, "OP_VERIFY failed");
                         break;
                     case OP_RETURN:
@@ -356,159 +460,122 @@ public class ScriptExecution {
                     case OP_TOALTSTACK:
                         if (stack.size() < 1)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_TOALTSTACK on an empty stack");
-                        altstack.add(stack.pollLast());
+                        altstack.push(stack.pop());
                         break;
                     case OP_FROMALTSTACK:
                         if (altstack.size() < 1)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_ALTSTACK_OPERATION, "Attempted OP_FROMALTSTACK on an empty altstack");
-                        stack.add(altstack.pollLast());
+                        stack.push(altstack.pop());
                         break;
                     case OP_2DROP:
                         if (stack.size() < 2)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_2DROP on a stack with size < 2");
-                        stack.pollLast();
-                        stack.pollLast();
+                        stack.pop();
+                        stack.pop();
                         break;
                     case OP_2DUP:
                         if (stack.size() < 2)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_2DUP on a stack with size < 2");
-                        Iterator<byte[]> it2DUP = stack.descendingIterator();
-                        byte[] OP2DUPtmpChunk2 = it2DUP.next();
-                        stack.add(it2DUP.next());
-                        stack.add(OP2DUPtmpChunk2);
+                        stack.push(stack.peek(1));
+                        stack.push(stack.peek(1));
                         break;
                     case OP_3DUP:
                         if (stack.size() < 3)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_3DUP on a stack with size < 3");
-                        Iterator<byte[]> it3DUP = stack.descendingIterator();
-                        byte[] OP3DUPtmpChunk3 = it3DUP.next();
-                        byte[] OP3DUPtmpChunk2 = it3DUP.next();
-                        stack.add(it3DUP.next());
-                        stack.add(OP3DUPtmpChunk2);
-                        stack.add(OP3DUPtmpChunk3);
+                        stack.push(stack.peek(2));
+                        stack.push(stack.peek(2));
+                        stack.push(stack.peek(2));
                         break;
                     case OP_2OVER:
                         if (stack.size() < 4)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_2OVER on a stack with size < 4");
-                        Iterator<byte[]> it2OVER = stack.descendingIterator();
-                        it2OVER.next();
-                        it2OVER.next();
-                        byte[] OP2OVERtmpChunk2 = it2OVER.next();
-                        stack.add(it2OVER.next());
-                        stack.add(OP2OVERtmpChunk2);
+                        stack.push(stack.peek(3));
+                        stack.push(stack.peek(3));
                         break;
                     case OP_2ROT:
                         if (stack.size() < 6)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_2ROT on a stack with size < 6");
-                        byte[] OP2ROTtmpChunk6 = stack.pollLast();
-                        byte[] OP2ROTtmpChunk5 = stack.pollLast();
-                        byte[] OP2ROTtmpChunk4 = stack.pollLast();
-                        byte[] OP2ROTtmpChunk3 = stack.pollLast();
-                        byte[] OP2ROTtmpChunk2 = stack.pollLast();
-                        byte[] OP2ROTtmpChunk1 = stack.pollLast();
-                        stack.add(OP2ROTtmpChunk3);
-                        stack.add(OP2ROTtmpChunk4);
-                        stack.add(OP2ROTtmpChunk5);
-                        stack.add(OP2ROTtmpChunk6);
-                        stack.add(OP2ROTtmpChunk1);
-                        stack.add(OP2ROTtmpChunk2);
+                        byte[] OP2ROTtmpChunk1 = stack.remove(5);
+                        byte[] OP2ROTtmpChunk2 = stack.remove(4);
+                        stack.push(OP2ROTtmpChunk1);
+                        stack.push(OP2ROTtmpChunk2);
                         break;
                     case OP_2SWAP:
                         if (stack.size() < 4)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_2SWAP on a stack with size < 4");
-                        byte[] OP2SWAPtmpChunk4 = stack.pollLast();
-                        byte[] OP2SWAPtmpChunk3 = stack.pollLast();
-                        byte[] OP2SWAPtmpChunk2 = stack.pollLast();
-                        byte[] OP2SWAPtmpChunk1 = stack.pollLast();
-                        stack.add(OP2SWAPtmpChunk3);
-                        stack.add(OP2SWAPtmpChunk4);
-                        stack.add(OP2SWAPtmpChunk1);
-                        stack.add(OP2SWAPtmpChunk2);
+                        byte[] OP2SWAPtmpChunk1 = stack.remove(3);
+                        byte[] OP2SWAPtmpChunk2 = stack.remove(2);
+                        stack.push(OP2SWAPtmpChunk1);
+                        stack.push(OP2SWAPtmpChunk2);
                         break;
                     case OP_IFDUP:
                         if (stack.size() < 1)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_IFDUP on an empty stack");
-                        if (castToBool(stack.getLast()))
-                            stack.add(stack.getLast());
+                        if (castToBool(stack.peek()))
+                            stack.push(stack.peek());
                         break;
                     case OP_DEPTH:
-                        stack.add(ByteUtils.reverseBytes(ByteUtils.encodeMPI(BigInteger.valueOf(stack.size()), false)));
+                        stack.push(encodeNumber(stack.size()));
                         break;
                     case OP_DROP:
                         if (stack.size() < 1)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_DROP on an empty stack");
-                        stack.pollLast();
+                        stack.pop();
                         break;
                     case OP_DUP:
                         if (stack.size() < 1)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_DUP on an empty stack");
-                        stack.add(stack.getLast());
+                        stack.push(stack.peek());
                         break;
                     case OP_NIP:
                         if (stack.size() < 2)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_NIP on a stack with size < 2");
-                        byte[] OPNIPtmpChunk = stack.pollLast();
-                        stack.pollLast();
-                        stack.add(OPNIPtmpChunk);
+                        stack.remove(1);
                         break;
                     case OP_OVER:
                         if (stack.size() < 2)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_OVER on a stack with size < 2");
-                        Iterator<byte[]> itOVER = stack.descendingIterator();
-                        itOVER.next();
-                        stack.add(itOVER.next());
+                        stack.push(stack.peek(1));
                         break;
                     case OP_PICK:
                     case OP_ROLL:
                         if (stack.size() < 1)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_PICK" +
                                     "/OP_ROLL on an empty stack");
-                        long val = castToBigInteger(stack.pollLast(), verifyFlags.contains(VerifyFlag.MINIMALDATA)).longValue();
+                        long val = castToLong(stack.pop(), requireMinimal);
                         if (val < 0 || val >= stack.size())
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "OP_PICK/OP_ROLL attempted to get data deeper than stack size");
-                        Iterator<byte[]> itPICK = stack.descendingIterator();
-                        for (long i = 0; i < val; i++)
-                            itPICK.next();
-                        byte[] OPROLLtmpChunk = itPICK.next();
-                        if (opcode == OP_ROLL)
-                            itPICK.remove();
-                        stack.add(OPROLLtmpChunk);
+                        byte[] OPROLLtmpChunk = opcode == OP_ROLL ? stack.remove((int) val) : stack.peek((int) val);
+                        stack.push(OPROLLtmpChunk);
                         break;
                     case OP_ROT:
                         if (stack.size() < 3)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_ROT on a stack with size < 3");
-                        byte[] OPROTtmpChunk3 = stack.pollLast();
-                        byte[] OPROTtmpChunk2 = stack.pollLast();
-                        byte[] OPROTtmpChunk1 = stack.pollLast();
-                        stack.add(OPROTtmpChunk2);
-                        stack.add(OPROTtmpChunk3);
-                        stack.add(OPROTtmpChunk1);
+                        stack.push(stack.remove(2));
                         break;
                     case OP_SWAP:
                     case OP_TUCK:
                         if (stack.size() < 2)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_SWAP on a stack with size < 2");
-                        byte[] OPSWAPtmpChunk2 = stack.pollLast();
-                        byte[] OPSWAPtmpChunk1 = stack.pollLast();
-                        stack.add(OPSWAPtmpChunk2);
-                        stack.add(OPSWAPtmpChunk1);
+                        byte[] OPSWAPtmpChunk2 = stack.peek();
+                        stack.push(stack.remove(1));
                         if (opcode == OP_TUCK)
-                            stack.add(OPSWAPtmpChunk2);
+                            stack.push(OPSWAPtmpChunk2);
                         break;
                     case OP_SIZE:
                         if (stack.size() < 1)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_SIZE on an empty stack");
-                        stack.add(ByteUtils.reverseBytes(ByteUtils.encodeMPI(BigInteger.valueOf(stack.getLast().length), false)));
+                        stack.push(encodeNumber(stack.peek().length));
                         break;
                     case OP_EQUAL:
                         if (stack.size() < 2)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_EQUAL on a stack with size < 2");
-                        stack.add(Arrays.equals(stack.pollLast(), stack.pollLast()) ? new byte[] {1} : new byte[] {});
+                        stack.push(encodeBool(Arrays.equals(stack.pop(), stack.pop())));
                         break;
                     case OP_EQUALVERIFY:
                         if (stack.size() < 2)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_EQUALVERIFY on a stack with size < 2");
-                        if (!Arrays.equals(stack.pollLast(), stack.pollLast()))
+                        if (!Arrays.equals(stack.pop(), stack.pop()))
                             throw new ScriptException(ScriptError.SCRIPT_ERR_EQUALVERIFY, "OP_EQUALVERIFY: non-equal data");
                         break;
                     case OP_1ADD:
@@ -519,39 +586,33 @@ public class ScriptExecution {
                     case OP_0NOTEQUAL:
                         if (stack.size() < 1)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted a numeric op on an empty stack");
-                        BigInteger numericOPnum = castToBigInteger(stack.pollLast(), verifyFlags.contains(VerifyFlag.MINIMALDATA));
+                        long numericOPnum = castToLong(stack.pop(), requireMinimal);
 
                         switch (opcode) {
                             case OP_1ADD:
-                                numericOPnum = numericOPnum.add(BigInteger.ONE);
+                                numericOPnum = numericOPnum + 1;
                                 break;
                             case OP_1SUB:
-                                numericOPnum = numericOPnum.subtract(BigInteger.ONE);
+                                numericOPnum = numericOPnum - 1;
                                 break;
                             case OP_NEGATE:
-                                numericOPnum = numericOPnum.negate();
+                                numericOPnum = -numericOPnum;
                                 break;
                             case OP_ABS:
-                                if (numericOPnum.signum() < 0)
-                                    numericOPnum = numericOPnum.negate();
+                                if (numericOPnum < 0)
+                                    numericOPnum = -numericOPnum;
                                 break;
                             case OP_NOT:
-                                if (numericOPnum.equals(BigInteger.ZERO))
-                                    numericOPnum = BigInteger.ONE;
-                                else
-                                    numericOPnum = BigInteger.ZERO;
+                                numericOPnum = numericOPnum == 0 ? 1 : 0;
                                 break;
                             case OP_0NOTEQUAL:
-                                if (numericOPnum.equals(BigInteger.ZERO))
-                                    numericOPnum = BigInteger.ZERO;
-                                else
-                                    numericOPnum = BigInteger.ONE;
+                                numericOPnum = numericOPnum != 0 ? 1 : 0;
                                 break;
                             default:
                                 throw new AssertionError("Unreachable");
                         }
 
-                        stack.add(ByteUtils.reverseBytes(ByteUtils.encodeMPI(numericOPnum, false)));
+                        stack.push(encodeNumber(numericOPnum));
                         break;
                     case OP_ADD:
                     case OP_SUB:
@@ -567,116 +628,84 @@ public class ScriptExecution {
                     case OP_MAX:
                         if (stack.size() < 2)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted a numeric op on a stack with size < 2");
-                        BigInteger numericOPnum2 = castToBigInteger(stack.pollLast(), verifyFlags.contains(VerifyFlag.MINIMALDATA));
-                        BigInteger numericOPnum1 = castToBigInteger(stack.pollLast(), verifyFlags.contains(VerifyFlag.MINIMALDATA));
+                        // Operands are at most 4 bytes, so neither of these can overflow a long.
+                        long numericOPnum2 = castToLong(stack.pop(), requireMinimal);
+                        long numericOPnum1 = castToLong(stack.pop(), requireMinimal);
 
-                        BigInteger numericOPresult;
+                        long numericOPresult;
                         switch (opcode) {
                             case OP_ADD:
-                                numericOPresult = numericOPnum1.add(numericOPnum2);
+                                numericOPresult = numericOPnum1 + numericOPnum2;
                                 break;
                             case OP_SUB:
-                                numericOPresult = numericOPnum1.subtract(numericOPnum2);
+                                numericOPresult = numericOPnum1 - numericOPnum2;
                                 break;
                             case OP_BOOLAND:
-                                if (!numericOPnum1.equals(BigInteger.ZERO) && !numericOPnum2.equals(BigInteger.ZERO))
-                                    numericOPresult = BigInteger.ONE;
-                                else
-                                    numericOPresult = BigInteger.ZERO;
+                                numericOPresult = numericOPnum1 != 0 && numericOPnum2 != 0 ? 1 : 0;
                                 break;
                             case OP_BOOLOR:
-                                if (!numericOPnum1.equals(BigInteger.ZERO) || !numericOPnum2.equals(BigInteger.ZERO))
-                                    numericOPresult = BigInteger.ONE;
-                                else
-                                    numericOPresult = BigInteger.ZERO;
+                                numericOPresult = numericOPnum1 != 0 || numericOPnum2 != 0 ? 1 : 0;
                                 break;
                             case OP_NUMEQUAL:
-                                if (numericOPnum1.equals(numericOPnum2))
-                                    numericOPresult = BigInteger.ONE;
-                                else
-                                    numericOPresult = BigInteger.ZERO;
+                                numericOPresult = numericOPnum1 == numericOPnum2 ? 1 : 0;
                                 break;
                             case OP_NUMNOTEQUAL:
-                                if (!numericOPnum1.equals(numericOPnum2))
-                                    numericOPresult = BigInteger.ONE;
-                                else
-                                    numericOPresult = BigInteger.ZERO;
+                                numericOPresult = numericOPnum1 != numericOPnum2 ? 1 : 0;
                                 break;
                             case OP_LESSTHAN:
-                                if (numericOPnum1.compareTo(numericOPnum2) < 0)
-                                    numericOPresult = BigInteger.ONE;
-                                else
-                                    numericOPresult = BigInteger.ZERO;
+                                numericOPresult = numericOPnum1 < numericOPnum2 ? 1 : 0;
                                 break;
                             case OP_GREATERTHAN:
-                                if (numericOPnum1.compareTo(numericOPnum2) > 0)
-                                    numericOPresult = BigInteger.ONE;
-                                else
-                                    numericOPresult = BigInteger.ZERO;
+                                numericOPresult = numericOPnum1 > numericOPnum2 ? 1 : 0;
                                 break;
                             case OP_LESSTHANOREQUAL:
-                                if (numericOPnum1.compareTo(numericOPnum2) <= 0)
-                                    numericOPresult = BigInteger.ONE;
-                                else
-                                    numericOPresult = BigInteger.ZERO;
+                                numericOPresult = numericOPnum1 <= numericOPnum2 ? 1 : 0;
                                 break;
                             case OP_GREATERTHANOREQUAL:
-                                if (numericOPnum1.compareTo(numericOPnum2) >= 0)
-                                    numericOPresult = BigInteger.ONE;
-                                else
-                                    numericOPresult = BigInteger.ZERO;
+                                numericOPresult = numericOPnum1 >= numericOPnum2 ? 1 : 0;
                                 break;
                             case OP_MIN:
-                                if (numericOPnum1.compareTo(numericOPnum2) < 0)
-                                    numericOPresult = numericOPnum1;
-                                else
-                                    numericOPresult = numericOPnum2;
+                                numericOPresult = Math.min(numericOPnum1, numericOPnum2);
                                 break;
                             case OP_MAX:
-                                if (numericOPnum1.compareTo(numericOPnum2) > 0)
-                                    numericOPresult = numericOPnum1;
-                                else
-                                    numericOPresult = numericOPnum2;
+                                numericOPresult = Math.max(numericOPnum1, numericOPnum2);
                                 break;
                             default:
                                 throw new RuntimeException("Opcode switched at runtime?");
                         }
 
-                        stack.add(ByteUtils.reverseBytes(ByteUtils.encodeMPI(numericOPresult, false)));
+                        stack.push(encodeNumber(numericOPresult));
                         break;
                     case OP_NUMEQUALVERIFY:
                         if (stack.size() < 2)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted " +
                                     "OP_NUMEQUALVERIFY on a stack with size < 2");
-                        BigInteger OPNUMEQUALVERIFYnum2 = castToBigInteger(stack.pollLast(), verifyFlags.contains(VerifyFlag.MINIMALDATA));
-                        BigInteger OPNUMEQUALVERIFYnum1 = castToBigInteger(stack.pollLast(), verifyFlags.contains(VerifyFlag.MINIMALDATA));
+                        long OPNUMEQUALVERIFYnum2 = castToLong(stack.pop(), requireMinimal);
+                        long OPNUMEQUALVERIFYnum1 = castToLong(stack.pop(), requireMinimal);
 
-                        if (!OPNUMEQUALVERIFYnum1.equals(OPNUMEQUALVERIFYnum2))
+                        if (OPNUMEQUALVERIFYnum1 != OPNUMEQUALVERIFYnum2)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_NUMEQUALVERIFY, "OP_NUMEQUALVERIFY failed");
                         break;
                     case OP_WITHIN:
                         if (stack.size() < 3)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_WITHIN on a stack with size < 3");
-                        BigInteger OPWITHINnum3 = castToBigInteger(stack.pollLast(), verifyFlags.contains(VerifyFlag.MINIMALDATA));
-                        BigInteger OPWITHINnum2 = castToBigInteger(stack.pollLast(), verifyFlags.contains(VerifyFlag.MINIMALDATA));
-                        BigInteger OPWITHINnum1 = castToBigInteger(stack.pollLast(), verifyFlags.contains(VerifyFlag.MINIMALDATA));
-                        if (OPWITHINnum2.compareTo(OPWITHINnum1) <= 0 && OPWITHINnum1.compareTo(OPWITHINnum3) < 0)
-                            stack.add(ByteUtils.reverseBytes(ByteUtils.encodeMPI(BigInteger.ONE, false)));
-                        else
-                            stack.add(ByteUtils.reverseBytes(ByteUtils.encodeMPI(BigInteger.ZERO, false)));
+                        long OPWITHINnum3 = castToLong(stack.pop(), requireMinimal);
+                        long OPWITHINnum2 = castToLong(stack.pop(), requireMinimal);
+                        long OPWITHINnum1 = castToLong(stack.pop(), requireMinimal);
+                        stack.push(encodeBool(OPWITHINnum2 <= OPWITHINnum1 && OPWITHINnum1 < OPWITHINnum3));
                         break;
                     case OP_RIPEMD160:
                         if (stack.size() < 1)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_RIPEMD160 on an empty stack");
-                        byte[] dataToHash = stack.pollLast();
+                        byte[] dataToHash = stack.pop();
                         byte[] ripmeMdHash = CryptoUtils.digestRipeMd160(dataToHash);
-                        stack.add(ripmeMdHash);
+                        stack.push(ripmeMdHash);
                         break;
                     case OP_SHA1:
                         if (stack.size() < 1)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_SHA1 on an empty stack");
                         try {
-                            stack.add(MessageDigest.getInstance("SHA-1").digest(stack.pollLast()));
+                            stack.push(MessageDigest.getInstance("SHA-1").digest(stack.pop()));
                         } catch (NoSuchAlgorithmException e) {
                             throw new RuntimeException(e);  // Cannot happen.
                         }
@@ -684,29 +713,42 @@ public class ScriptExecution {
                     case OP_SHA256:
                         if (stack.size() < 1)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_SHA256 on an empty stack");
-                        stack.add(Sha256Hash.hash(stack.pollLast()));
+                        stack.push(Sha256Hash.hash(stack.pop()));
                         break;
                     case OP_HASH160:
                         if (stack.size() < 1)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_HASH160 on an empty stack");
-                        stack.add(CryptoUtils.sha256hash160(stack.pollLast()));
+                        stack.push(CryptoUtils.sha256hash160(stack.pop()));
                         break;
                     case OP_HASH256:
                         if (stack.size() < 1)
                             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_SHA256 on an empty stack");
-                        stack.add(Sha256Hash.hashTwice(stack.pollLast()));
+                        stack.push(Sha256Hash.hashTwice(stack.pop()));
                         break;
                     case OP_CODESEPARATOR:
                         lastCodeSepLocation = nextLocationInScript;
+                        if (tapscript != null)
+                            tapscript.codeSeparatorPosition = opcodePosition;
                         break;
                     case OP_CHECKSIG:
                     case OP_CHECKSIGVERIFY:
                         if (txContainingThis == null)
                             throw new IllegalStateException("Script attempted signature check but no tx was provided");
-                        executeCheckSig(txContainingThis, (int) index, script, stack, lastCodeSepLocation, opcode, verifyFlags);
+                        if (tapscript != null)
+                            executeCheckSigTapscript(txContainingThis, (int) index, stack, opcode, verifyFlags, tapscript);
+                        else
+                            executeCheckSig(txContainingThis, (int) index, script, stack, lastCodeSepLocation, opcode, verifyFlags);
+                        break;
+                    case OP_CHECKSIGADD:
+                        if (tapscript == null)
+                            throw new ScriptException(ScriptError.SCRIPT_ERR_BAD_OPCODE, "Script used a reserved or disabled opcode: " + opcode);
+                        executeCheckSigTapscript(Objects.requireNonNull(txContainingThis), (int) index, stack, opcode,
+                                verifyFlags, tapscript);
                         break;
                     case OP_CHECKMULTISIG:
                     case OP_CHECKMULTISIGVERIFY:
+                        if (tapscript != null)
+                            throw new ScriptException(ScriptError.SCRIPT_ERR_TAPSCRIPT_CHECKMULTISIG, "OP_CHECKMULTISIG(VERIFY) is disabled in tapscript");
                         if (txContainingThis == null)
                             throw new IllegalStateException("Script attempted signature check but no tx was provided");
                         opCount = executeMultiSig(txContainingThis, (int) index, script, stack, opCount, lastCodeSepLocation, opcode, verifyFlags);
@@ -755,33 +797,33 @@ public class ScriptExecution {
                 throw new ScriptException(ScriptError.SCRIPT_ERR_STACK_SIZE, "Stack size exceeded range");
         }
 
-        if (!ifStack.isEmpty())
+        if (ifStackSize != 0)
             throw new ScriptException(ScriptError.SCRIPT_ERR_UNBALANCED_CONDITIONAL, "OP_IF/OP_NOTIF without OP_ENDIF");
     }
 
     // This is more or less a direct translation of the code in Bitcoin Core
-    private static void executeCheckLockTimeVerify(Transaction txContainingThis, int index, LinkedList<byte[]> stack, Set<VerifyFlag> verifyFlags) throws ScriptException {
+    private static void executeCheckLockTimeVerify(Transaction txContainingThis, int index, ScriptStack stack, Set<VerifyFlag> verifyFlags) throws ScriptException {
         if (stack.size() < 1)
             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_CHECKLOCKTIMEVERIFY on a stack with size < 1");
 
         // Thus as a special case we tell CScriptNum to accept up
         // to 5-byte bignums to avoid year 2038 issue.
-        final BigInteger nLockTime = castToBigInteger(stack.getLast(), 5, verifyFlags.contains(VerifyFlag.MINIMALDATA));
+        final long nLockTime = castToLong(stack.peek(), 5, verifyFlags.contains(VerifyFlag.MINIMALDATA));
 
-        if (nLockTime.compareTo(BigInteger.ZERO) < 0)
+        if (nLockTime < 0)
             throw new ScriptException(ScriptError.SCRIPT_ERR_NEGATIVE_LOCKTIME, "Negative locktime");
 
         // There are two kinds of nLockTime, need to ensure we're comparing apples-to-apples
         LockTime txContainingThisLockTime = txContainingThis.lockTime();
         if (!(
-                ((txContainingThisLockTime instanceof LockTime.HeightLock) && (nLockTime.compareTo(LOCKTIME_THRESHOLD_BIG)) < 0) ||
-                        ((txContainingThisLockTime instanceof LockTime.TimeLock) && (nLockTime.compareTo(LOCKTIME_THRESHOLD_BIG)) >= 0))
+                ((txContainingThisLockTime instanceof LockTime.HeightLock) && nLockTime < LockTime.THRESHOLD) ||
+                        ((txContainingThisLockTime instanceof LockTime.TimeLock) && nLockTime >= LockTime.THRESHOLD))
         )
             throw new ScriptException(ScriptError.SCRIPT_ERR_UNSATISFIED_LOCKTIME, "Lock time requirement type mismatch");
 
         // Now that we know we're comparing apples-to-apples, the
         // comparison is a simple numeric one.
-        if (nLockTime.compareTo(BigInteger.valueOf(txContainingThisLockTime.rawValue())) > 0)
+        if (nLockTime > txContainingThisLockTime.rawValue())
             throw new ScriptException(ScriptError.SCRIPT_ERR_UNSATISFIED_LOCKTIME, "Lock time requirement not satisfied");
 
         // Finally the nLockTime feature can be disabled and thus
@@ -798,7 +840,7 @@ public class ScriptExecution {
             throw new ScriptException(ScriptError.SCRIPT_ERR_UNSATISFIED_LOCKTIME, "Transaction contains a final transaction input for a CHECKLOCKTIMEVERIFY script.");
     }
 
-    private static void executeCheckSequenceVerify(Transaction txContainingThis, int index, LinkedList<byte[]> stack, Set<VerifyFlag> verifyFlags) throws ScriptException {
+    private static void executeCheckSequenceVerify(Transaction txContainingThis, int index, ScriptStack stack, Set<VerifyFlag> verifyFlags) throws ScriptException {
         if (stack.size() < 1)
             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_CHECKSEQUENCEVERIFY on a stack with size < 1");
 
@@ -811,7 +853,7 @@ public class ScriptExecution {
         // Thus as a special case we tell CScriptNum to accept up
         // to 5-byte bignums, which are good until 2**39-1, well
         // beyond the 2**32-1 limit of the nSequence field itself.
-        final long nSequence = castToBigInteger(stack.getLast(), 5, verifyFlags.contains(VerifyFlag.MINIMALDATA)).longValue();
+        final long nSequence = castToLong(stack.peek(), 5, verifyFlags.contains(VerifyFlag.MINIMALDATA));
 
         // In the rare event that the argument may be < 0 due to
         // some arithmetic being done first, you can always use
@@ -870,7 +912,7 @@ public class ScriptExecution {
             throw new ScriptException(ScriptError.SCRIPT_ERR_UNSATISFIED_LOCKTIME, "Relative locktime requirement not satisfied");
     }
 
-    private static void executeCheckSig(Transaction txContainingThis, int index, Script script, LinkedList<byte[]> stack,
+    private static void executeCheckSig(Transaction txContainingThis, int index, Script script, ScriptStack stack,
                                         int lastCodeSepLocation, int opcode,
                                         Set<VerifyFlag> verifyFlags) throws ScriptException {
         final boolean requireCanonical = verifyFlags.contains(VerifyFlag.STRICTENC)
@@ -878,10 +920,10 @@ public class ScriptExecution {
                 || verifyFlags.contains(VerifyFlag.LOW_S);
         if (stack.size() < 2)
             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_CHECKSIG(VERIFY) on a stack with size < 2");
-        byte[] pubKey = stack.pollLast();
-        byte[] sigBytes = stack.pollLast();
+        byte[] pubKey = stack.pop();
+        byte[] sigBytes = stack.pop();
 
-        byte[] prog = script.program();
+        byte[] prog = script.getQuickProgram();
         byte[] connectedScript = Arrays.copyOfRange(prog, lastCodeSepLocation, prog.length);
 
         ByteArrayOutputStream outStream = new ByteArrayOutputStream(sigBytes.length + 1);
@@ -916,13 +958,13 @@ public class ScriptExecution {
         }
 
         if (opcode == OP_CHECKSIG)
-            stack.add(sigValid ? new byte[] {1} : new byte[] {});
+            stack.push(encodeBool(sigValid));
         else if (opcode == OP_CHECKSIGVERIFY)
             if (!sigValid)
                 throw new ScriptException(ScriptError.SCRIPT_ERR_CHECKSIGVERIFY, "Script failed OP_CHECKSIGVERIFY");
     }
 
-    private static int executeMultiSig(Transaction txContainingThis, int index, Script script, LinkedList<byte[]> stack,
+    private static int executeMultiSig(Transaction txContainingThis, int index, Script script, ScriptStack stack,
                                        int opCount, int lastCodeSepLocation, int opcode,
                                        Set<VerifyFlag> verifyFlags) throws ScriptException {
         final boolean requireCanonical = verifyFlags.contains(VerifyFlag.STRICTENC)
@@ -930,7 +972,7 @@ public class ScriptExecution {
                 || verifyFlags.contains(VerifyFlag.LOW_S);
         if (stack.size() < 1)
             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_CHECKMULTISIG(VERIFY) on a stack with size < 2");
-        int pubKeyCount = castToBigInteger(stack.pollLast(), verifyFlags.contains(VerifyFlag.MINIMALDATA)).intValue();
+        int pubKeyCount = (int) castToLong(stack.pop(), verifyFlags.contains(VerifyFlag.MINIMALDATA));
         if (pubKeyCount < 0 || pubKeyCount > MAX_PUBKEYS_PER_MULTISIG)
             throw new ScriptException(ScriptError.SCRIPT_ERR_PUBKEY_COUNT, "OP_CHECKMULTISIG(VERIFY) with pubkey count out of range");
         opCount += pubKeyCount;
@@ -939,25 +981,21 @@ public class ScriptExecution {
         if (stack.size() < pubKeyCount + 1)
             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_CHECKMULTISIG(VERIFY) on a stack with size < num_of_pubkeys + 2");
 
-        LinkedList<byte[]> pubkeys = new LinkedList<>();
-        for (int i = 0; i < pubKeyCount; i++) {
-            byte[] pubKey = stack.pollLast();
-            pubkeys.add(pubKey);
-        }
+        byte[][] pubkeys = new byte[pubKeyCount][];
+        for (int i = 0; i < pubKeyCount; i++)
+            pubkeys[i] = stack.pop();
 
-        int sigCount = castToBigInteger(stack.pollLast(), verifyFlags.contains(VerifyFlag.MINIMALDATA)).intValue();
+        int sigCount = (int) castToLong(stack.pop(), verifyFlags.contains(VerifyFlag.MINIMALDATA));
         if (sigCount < 0 || sigCount > pubKeyCount)
             throw new ScriptException(ScriptError.SCRIPT_ERR_SIG_COUNT, "OP_CHECKMULTISIG(VERIFY) with sig count out of range");
         if (stack.size() < sigCount + 1)
             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted OP_CHECKMULTISIG(VERIFY) on a stack with size < num_of_pubkeys + num_of_signatures + 3");
 
-        LinkedList<byte[]> sigs = new LinkedList<>();
-        for (int i = 0; i < sigCount; i++) {
-            byte[] sig = stack.pollLast();
-            sigs.add(sig);
-        }
+        byte[][] sigs = new byte[sigCount][];
+        for (int i = 0; i < sigCount; i++)
+            sigs[i] = stack.pop();
 
-        byte[] prog = script.program();
+        byte[] prog = script.getQuickProgram();
         byte[] connectedScript = Arrays.copyOfRange(prog, lastCodeSepLocation, prog.length);
 
         for (byte[] sig : sigs) {
@@ -971,33 +1009,36 @@ public class ScriptExecution {
         }
 
         boolean valid = true;
-        while (sigs.size() > 0) {
-            byte[] pubKey = pubkeys.pollFirst();
+        int pubKeyIndex = 0;
+        int sigIndex = 0;
+        while (sigIndex < sigCount) {
+            byte[] pubKey = pubkeys[pubKeyIndex++];
             // We could reasonably move this out of the loop, but because signature verification is significantly
             // more expensive than hashing, its not a big deal.
             try {
-                TransactionSignature sig = TransactionSignature.decodeFromBitcoin(sigs.getFirst(), requireCanonical, false);
+                TransactionSignature sig = TransactionSignature.decodeFromBitcoin(sigs[sigIndex], requireCanonical, false);
                 Sha256Hash hash = txContainingThis.hashForSignature(index, connectedScript, (byte) sig.sighashFlags);
                 if (ECKey.verify(hash.getBytes(), sig, pubKey))
-                    sigs.pollFirst();
+                    sigIndex++;
             } catch (Exception e) {
                 // There is (at least) one exception that could be hit here (EOFException, if the sig is too short)
                 // Because I can't verify there aren't more, we use a very generic Exception catch
             }
 
-            if (sigs.size() > pubkeys.size()) {
+            // remaining signatures can't be satisfied by the remaining keys
+            if (sigCount - sigIndex > pubKeyCount - pubKeyIndex) {
                 valid = false;
                 break;
             }
         }
 
         // We uselessly remove a stack object to emulate a Bitcoin Core bug.
-        byte[] nullDummy = stack.pollLast();
+        byte[] nullDummy = stack.pop();
         if (verifyFlags.contains(VerifyFlag.NULLDUMMY) && nullDummy.length > 0)
             throw new ScriptException(ScriptError.SCRIPT_ERR_SIG_NULLFAIL, "OP_CHECKMULTISIG(VERIFY) with non-null nulldummy: " + Arrays.toString(nullDummy));
 
         if (opcode == OP_CHECKMULTISIG) {
-            stack.add(valid ? new byte[] {1} : new byte[] {});
+            stack.push(encodeBool(valid));
         } else if (opcode == OP_CHECKMULTISIGVERIFY) {
             if (!valid)
                 throw new ScriptException(ScriptError.SCRIPT_ERR_SIG_NULLFAIL, "Script failed OP_CHECKMULTISIGVERIFY");
@@ -1005,6 +1046,209 @@ public class ScriptExecution {
         return opCount;
     }
 
+    // Signature opcodes in tapscript, see EvalChecksigTapscript() in Bitcoin Core
+    private static void executeCheckSigTapscript(Transaction txContainingThis, int index, ScriptStack stack, int opcode,
+                                                 Set<VerifyFlag> verifyFlags,
+                                                 TapscriptContext tapscript) throws ScriptException {
+        int requiredSize = opcode == OP_CHECKSIGADD ? 3 : 2;
+        if (stack.size() < requiredSize)
+            throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "Attempted " +
+                    ScriptOpCodes.getOpCodeName(opcode) + " on a stack with size < " + requiredSize);
+        byte[] pubKey = stack.pop();
+        long num = opcode == OP_CHECKSIGADD ? castToLong(stack.pop(), verifyFlags.contains(VerifyFlag.MINIMALDATA)) : 0;
+        byte[] sigBytes = stack.pop();
+
+        // An empty signature is a valid way to fail a check, anything else has to be a valid signature.
+        boolean success = sigBytes.length > 0;
+        if (success) {
+            tapscript.validationWeightLeft -= VALIDATION_WEIGHT_PER_SIGOP_PASSED;
+            if (tapscript.validationWeightLeft < 0)
+                throw new ScriptException(ScriptError.SCRIPT_ERR_TAPSCRIPT_VALIDATION_WEIGHT, "Too many signature checks for witness size");
+        }
+        if (pubKey.length == 0)
+            throw new ScriptException(ScriptError.SCRIPT_ERR_TAPSCRIPT_EMPTY_PUBKEY, "Empty public key in tapscript");
+        if (pubKey.length == SchnorrSignature.PUBLIC_KEY_LENGTH && success)
+            checkSchnorrSignature(sigBytes, pubKey, txContainingThis, index, tapscript.txData, tapscript.annex,
+                    tapscript.tapleafHash, tapscript.codeSeparatorPosition, tapscript.batchVerifier);
+        // Public keys of other sizes are reserved for upgrades, signatures for them are considered valid.
+
+        if (opcode == OP_CHECKSIGADD)
+            stack.push(encodeNumber(num + (success ? 1 : 0)));
+        else if (opcode == OP_CHECKSIG)
+            stack.push(encodeBool(success));
+        else if (!success)
+            throw new ScriptException(ScriptError.SCRIPT_ERR_CHECKSIGVERIFY, "Script failed OP_CHECKSIGVERIFY");
+    }
+
+    private static void checkSchnorrSignature(byte[] sigBytes, byte[] pubKey, Transaction txContainingThis, int index,
+                                              PrecomputedTransactionData txData, byte @Nullable [] annex,
+                                              byte @Nullable [] tapleafHash, long codeSeparatorPosition,
+                                              SchnorrSignature.@Nullable BatchVerifier batchVerifier) throws ScriptException {
+        byte hashType = 0;
+        if (sigBytes.length == SchnorrSignature.LENGTH + 1) {
+            hashType = sigBytes[SchnorrSignature.LENGTH];
+            if (hashType == 0)
+                throw new ScriptException(ScriptError.SCRIPT_ERR_SCHNORR_SIG_HASHTYPE, "Default hash type must be implicit");
+        } else if (sigBytes.length != SchnorrSignature.LENGTH) {
+            throw new ScriptException(ScriptError.SCRIPT_ERR_SCHNORR_SIG_SIZE, "Invalid Schnorr signature size: " + sigBytes.length);
+        }
+        int type = hashType & 0xff;
+        if (!(type <= Transaction.SigHash.SINGLE.value || (type >= Transaction.SigHash.ANYONECANPAY_ALL.value &&
+                type <= Transaction.SigHash.ANYONECANPAY_SINGLE.value)))
+            throw new ScriptException(ScriptError.SCRIPT_ERR_SCHNORR_SIG_HASHTYPE, "Invalid hash type: " + type);
+        if ((type & 0x03) == Transaction.SigHash.SINGLE.value && index >= txContainingThis.getOutputs().size())
+            throw new ScriptException(ScriptError.SCRIPT_ERR_SCHNORR_SIG_HASHTYPE, "SIGHASH_SINGLE without corresponding output");
+        SchnorrSignature signature;
+        try {
+            signature = SchnorrSignature.decode(Arrays.copyOf(sigBytes, SchnorrSignature.LENGTH));
+        } catch (SignatureDecodeException e) {
+            throw new ScriptException(ScriptError.SCRIPT_ERR_SCHNORR_SIG, "Invalid Schnorr signature", e);
+        }
+        byte[] sigHash = txContainingThis.hashForTaprootSignature(index, txData, hashType, annex, tapleafHash,
+                codeSeparatorPosition).getBytes();
+        if (batchVerifier != null)
+            batchVerifier.add(signature, sigHash, pubKey);
+        else if (!signature.verify(sigHash, pubKey))
+            throw new ScriptException(ScriptError.SCRIPT_ERR_SCHNORR_SIG, "Invalid Schnorr signature");
+    }
+
+    /**
+     * Verifies that an input correctly spends the output it is connected to. Unlike
+     * {@link #correctlySpends(Script, Transaction, int, TransactionWitness, Coin, Script, Set)} this knows about all
+     * outputs spent by the transaction, so if {@link VerifyFlag#TAPROOT} is given it also fully validates Taproot
+     * key path and script path spends (BIPs 341 and 342).
+     * @param txContainingThis transaction containing the input
+     *                         Accessing txContainingThis from another thread while this method runs results in undefined behavior.
+     * @param inputIndex index of the input in txContainingThis
+     * @param txData outputs spent by txContainingThis
+     * @param verifyFlags Each flag enables one validation rule.
+     * @param batchVerifier If not null, Schnorr signatures are added to this batch rather than verified right away. The
+     *                      input is then only valid if the batch verifies.
+     */
+    public static void correctlySpends(Transaction txContainingThis, int inputIndex, PrecomputedTransactionData txData,
+                                       Set<VerifyFlag> verifyFlags,
+                                       SchnorrSignature.@Nullable BatchVerifier batchVerifier) throws ScriptException {
+        checkArgument(txData.getTransaction() == txContainingThis, () -> "txData belongs to a different transaction");
+        TransactionInput input = txContainingThis.getInput(inputIndex);
+        Script scriptPubKey = txData.getSpentScript(inputIndex);
+        if (verifyFlags.contains(VerifyFlag.TAPROOT) && ScriptPattern.isP2TR(scriptPubKey)) {
+            if (input.getScriptBytes().length != 0)
+                throw new ScriptException(ScriptError.SCRIPT_ERR_WITNESS_MALLEATED, "Taproot spend with non-empty scriptSig");
+            verifyTaproot(txContainingThis, inputIndex, txData, input.getWitness(),
+                    ScriptPattern.extractOutputKeyFromP2TR(scriptPubKey), verifyFlags, batchVerifier);
+        } else {
+            correctlySpends(input.getScriptSig(), txContainingThis, inputIndex, input.getWitness(),
+                    txData.getSpentAmount(inputIndex), scriptPubKey, verifyFlags);
+        }
+    }
+
+    // See VerifyWitnessProgram() in Bitcoin Core, for witness version 1
+    private static void verifyTaproot(Transaction txContainingThis, int index, PrecomputedTransactionData txData,
+                                      TransactionWitness witness, byte[] outputKey, Set<VerifyFlag> verifyFlags,
+                                      SchnorrSignature.@Nullable BatchVerifier batchVerifier) throws ScriptException {
+        int stackSize = witness.getPushCount();
+        if (stackSize == 0)
+            throw new ScriptException(ScriptError.SCRIPT_ERR_WITNESS_PROGRAM_WITNESS_EMPTY, "Taproot spend with empty witness");
+        byte[] annex = null;
+        byte[] last = witness.getPush(stackSize - 1);
+        if (stackSize >= 2 && last.length > 0 && (last[0] & 0xff) == ANNEX_TAG) {
+            // The annex has no meaning yet, but it is committed to by signatures.
+            annex = last;
+            stackSize--;
+        }
+        if (stackSize == 1) {
+            // Key path spend: the only element is a signature for the output key.
+            checkSchnorrSignature(witness.getPush(0), outputKey, txContainingThis, index, txData, annex, null,
+                    NO_CODESEPARATOR, batchVerifier);
+            return;
+        }
+        // Script path spend: the last two elements are the script and the control block.
+        byte[] control = witness.getPush(stackSize - 1);
+        byte[] scriptBytes = witness.getPush(stackSize - 2);
+        if (control.length < TAPROOT_CONTROL_BASE_SIZE || control.length > TAPROOT_CONTROL_MAX_SIZE ||
+                (control.length - TAPROOT_CONTROL_BASE_SIZE) % TAPROOT_CONTROL_NODE_SIZE != 0)
+            throw new ScriptException(ScriptError.SCRIPT_ERR_TAPROOT_WRONG_CONTROL_SIZE, "Invalid control block size: " + control.length);
+        int leafVersion = control[0] & TAPROOT_LEAF_MASK;
+        byte[] tapleafHash = tapleafHash(leafVersion, scriptBytes);
+        if (!verifyTaprootCommitment(control, outputKey, tapleafHash))
+            throw new ScriptException(ScriptError.SCRIPT_ERR_WITNESS_PROGRAM_MISMATCH, "Script is not committed to by the output key");
+        if (leafVersion != TAPROOT_LEAF_TAPSCRIPT)
+            return; // Unknown leaf versions are reserved for upgrades and always succeed.
+
+        // Tapscript (BIP 342)
+        if (containsOpSuccess(scriptBytes))
+            return; // OP_SUCCESSx are reserved for upgrades and make the script succeed unconditionally.
+        if (stackSize - 2 > MAX_STACK_SIZE)
+            throw new ScriptException(ScriptError.SCRIPT_ERR_STACK_SIZE, "Stack size exceeded range");
+        ScriptStack stack = new ScriptStack();
+        for (int i = 0; i < stackSize - 2; i++) {
+            byte[] element = witness.getPush(i);
+            if (element.length > MAX_SCRIPT_ELEMENT_SIZE)
+                throw new ScriptException(ScriptError.SCRIPT_ERR_PUSH_SIZE, "Witness element larger than 520 bytes");
+            stack.push(element);
+        }
+        TapscriptContext tapscript = new TapscriptContext(txData, tapleafHash, annex,
+                witness.messageSize() + VALIDATION_WEIGHT_OFFSET, batchVerifier);
+        executeScript(txContainingThis, index, Script.parse(scriptBytes), stack, verifyFlags, tapscript);
+        if (stack.size() != 1)
+            throw new ScriptException(ScriptError.SCRIPT_ERR_CLEANSTACK, "Tapscript must leave exactly one stack element");
+        if (!castToBool(stack.peek()))
+            throw new ScriptException(ScriptError.SCRIPT_ERR_EVAL_FALSE, "Tapscript resulted in a non-true stack");
+    }
+
+    private static byte[] tapleafHash(int leafVersion, byte[] scriptBytes) {
+        return CryptoUtils.taggedHash("TapLeaf", new byte[] { (byte) leafVersion },
+                VarInt.of(scriptBytes.length).serialize(), scriptBytes);
+    }
+
+    private static boolean verifyTaprootCommitment(byte[] control, byte[] outputKey, byte[] tapleafHash) {
+        byte[] internalKey = Arrays.copyOfRange(control, 1, TAPROOT_CONTROL_BASE_SIZE);
+        byte[] node = tapleafHash;
+        for (int offset = TAPROOT_CONTROL_BASE_SIZE; offset < control.length; offset += TAPROOT_CONTROL_NODE_SIZE) {
+            byte[] sibling = Arrays.copyOfRange(control, offset, offset + TAPROOT_CONTROL_NODE_SIZE);
+            node = ByteUtils.arrayUnsignedComparator().compare(node, sibling) < 0 ?
+                    CryptoUtils.taggedHash("TapBranch", node, sibling) :
+                    CryptoUtils.taggedHash("TapBranch", sibling, node);
+        }
+        byte[] tweakedKey;
+        try {
+            tweakedKey = SchnorrSignature.tweakPublicKey(internalKey, CryptoUtils.taggedHash("TapTweak", internalKey, node));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        boolean oddY = tweakedKey[0] == 0x03;
+        return oddY == ((control[0] & 1) == 1) && Arrays.equals(Arrays.copyOfRange(tweakedKey, 1, 33), outputKey);
+    }
+
+    // Scans for OP_SUCCESSx, failing on a truncated push before one is found, like Bitcoin Core.
+    private static boolean containsOpSuccess(byte[] program) throws ScriptException {
+        int pos = 0;
+        while (pos < program.length) {
+            int opcode = program[pos++] & 0xff;
+            if (isOpSuccess(opcode))
+                return true;
+            long pushLength = 0;
+            int lengthBytes = opcode == OP_PUSHDATA1 ? 1 : opcode == OP_PUSHDATA2 ? 2 : opcode == OP_PUSHDATA4 ? 4 : 0;
+            if (lengthBytes > program.length - pos)
+                throw new ScriptException(ScriptError.SCRIPT_ERR_BAD_OPCODE, "Push length exceeds script");
+            if (opcode < OP_PUSHDATA1)
+                pushLength = opcode;
+            for (int i = 0; i < lengthBytes; i++)
+                pushLength |= (long) (program[pos++] & 0xff) << (8 * i);
+            if (pushLength > program.length - pos)
+                throw new ScriptException(ScriptError.SCRIPT_ERR_BAD_OPCODE, "Push exceeds script");
+            pos += (int) pushLength;
+        }
+        return false;
+    }
+
+    private static boolean isOpSuccess(int opcode) {
+        return opcode == 80 || opcode == 98 || (opcode >= 126 && opcode <= 129) ||
+                (opcode >= 131 && opcode <= 134) || (opcode >= 137 && opcode <= 138) ||
+                (opcode >= 141 && opcode <= 142) || (opcode >= 149 && opcode <= 153) ||
+                (opcode >= 187 && opcode <= 254);
+    }
+
     /**
      * Verifies that a script (interpreted as a scriptSig) correctly spends the given scriptPubKey.
      * @param script script to verify
@@ -1109,19 +1353,18 @@ public class ScriptExecution {
         if (script.program().length > MAX_SCRIPT_SIZE || scriptPubKey.program().length > MAX_SCRIPT_SIZE)
             throw new ScriptException(ScriptError.SCRIPT_ERR_SCRIPT_SIZE, "Script larger than 10,000 bytes");
 
-        LinkedList<byte[]> stack = new LinkedList<>();
+        ScriptStack stack = new ScriptStack();
 
-        ScriptExecution.executeScript(txContainingThis, scriptSigIndex, script, stack, verifyFlags);
-        LinkedList<byte[]> p2shStack = (verifyFlags.contains(VerifyFlag.P2SH)) ? new LinkedList<>(stack) : null;
-        ScriptExecution.executeScript(txContainingThis, scriptSigIndex, scriptPubKey, stack, verifyFlags);
+        ScriptExecution.executeScript(txContainingThis, scriptSigIndex, script, stack, verifyFlags, null);
+        ScriptStack p2shStack = (verifyFlags.contains(VerifyFlag.P2SH)) ? stack.copy() : null;
+        ScriptExecution.executeScript(txContainingThis, scriptSigIndex, scriptPubKey, stack, verifyFlags, null);
 
         if (stack.size() == 0)
             throw new ScriptException(ScriptError.SCRIPT_ERR_EVAL_FALSE, "Stack empty at end of script execution.");
 
-        List<byte[]> stackCopy = new LinkedList<>(stack);
-        if (!ScriptExecution.castToBool(stack.pollLast()))
+        if (!ScriptExecution.castToBool(stack.peek()))
             throw new ScriptException(ScriptError.SCRIPT_ERR_EVAL_FALSE,
-                    "Script resulted in a non-true stack: " + Utils.toString(stackCopy));
+                    "Script resulted in a non-true stack: " + Utils.toString(stack.toList()));
 
         // P2SH is pay to script hash. It means that the scriptPubKey has a special form which is a valid
         // program but it has "useless" form that if evaluated as a normal program always returns true.
@@ -1142,18 +1385,17 @@ public class ScriptExecution {
                 if (!chunk.isPushData())
                     throw new ScriptException(ScriptError.SCRIPT_ERR_SIG_PUSHONLY, "Attempted to spend a P2SH scriptPubKey with a script that contained the script op " + chunk);
 
-            byte[] scriptPubKeyBytes = p2shStack.pollLast();
+            byte[] scriptPubKeyBytes = p2shStack.pop();
             Script scriptPubKeyP2SH = Script.parse(scriptPubKeyBytes);
 
-            ScriptExecution.executeScript(txContainingThis, scriptSigIndex, scriptPubKeyP2SH, p2shStack, verifyFlags);
+            ScriptExecution.executeScript(txContainingThis, scriptSigIndex, scriptPubKeyP2SH, p2shStack, verifyFlags, null);
 
             if (p2shStack.size() == 0)
                 throw new ScriptException(ScriptError.SCRIPT_ERR_EVAL_FALSE, "P2SH stack empty at end of script execution.");
 
-            List<byte[]> p2shStackCopy = new LinkedList<>(p2shStack);
-            if (!ScriptExecution.castToBool(p2shStack.pollLast()))
+            if (!ScriptExecution.castToBool(p2shStack.peek()))
                 throw new ScriptException(ScriptError.SCRIPT_ERR_EVAL_FALSE,
-                        "P2SH script execution resulted in a non-true stack: " + Utils.toString(p2shStackCopy));
+                        "P2SH script execution resulted in a non-true stack: " + Utils.toString(p2shStack.toList()));
         }
     }
 }
@@ -162,6 +162,9 @@ public class ScriptOpCodes {
     public static final int OP_NOP8 = 0xb7;
     public static final int OP_NOP9 = 0xb8;
     public static final int OP_NOP10 = 0xb9;
+
+    // tapscript (BIP 342)
+    public static final int OP_CHECKSIGADD = 0xba;
     public static final int OP_INVALIDOPCODE = 0xff;
 
     private static final Map<Integer, String> opCodeMap;
@@ -278,6 +281,7 @@ public class ScriptOpCodes {
         map.put(OP_NOP8, "NOP8");
         map.put(OP_NOP9, "NOP9");
         map.put(OP_NOP10, "NOP10");
+        map.put(OP_CHECKSIGADD, "CHECKSIGADD");
         opCodeMap = Collections.unmodifiableMap(map);
     }
 
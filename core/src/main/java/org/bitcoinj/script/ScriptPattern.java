@@ -19,9 +19,11 @@ package org.bitcoinj.script;
 
 import org.bitcoinj.base.internal.ByteUtils;
 import org.bitcoinj.base.LegacyAddress;
+import org.bitcoinj.base.ScriptType;
 import org.bitcoinj.base.SegwitAddress;
 import org.bitcoinj.base.Sha256Hash;
 
+import org.jspecify.annotations.Nullable;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
@@ -37,11 +39,40 @@ import static org.bitcoinj.script.ScriptOpCodes.OP_DUP;
 import static org.bitcoinj.script.ScriptOpCodes.OP_EQUAL;
 import static org.bitcoinj.script.ScriptOpCodes.OP_EQUALVERIFY;
 import static org.bitcoinj.script.ScriptOpCodes.OP_HASH160;
+import static org.bitcoinj.script.ScriptOpCodes.OP_PUSHDATA1;
 
 /**
  * This is a Script pattern matcher with some typical script patterns
+ * <p>
+ * Besides the methods operating on {@link Script}, there are variants operating directly on the program bytes. These
+ * only recognize the standard serialization of each template, i.e. the one with minimal data pushes that wallets
+ * create and Bitcoin Core's solver recognizes. They don't allocate, so they are suitable for hot paths like scanning
+ * the outputs of a block.
  */
 public class ScriptPattern {
+    /**
+     * Matches the given program against the standard templates byte by byte, without parsing it into chunks. See
+     * the class documentation for which serializations are recognized.
+     *
+     * @param program program bytes to match
+     * @return type of the matching template, or null if the program doesn't match any standard template
+     */
+    public static @Nullable ScriptType matchTemplate(byte[] program) {
+        if (isP2PKH(program))
+            return ScriptType.P2PKH;
+        if (isP2PK(program))
+            return ScriptType.P2PK;
+        if (isP2SH(program))
+            return ScriptType.P2SH;
+        if (isP2WPKH(program))
+            return ScriptType.P2WPKH;
+        if (isP2WSH(program))
+            return ScriptType.P2WSH;
+        if (isP2TR(program))
+            return ScriptType.P2TR;
+        return null;
+    }
+
     /**
      * Returns true if this script is of the form {@code DUP HASH160 <pubkey hash> EQUALVERIFY CHECKSIG}, ie, payment to an
      * address like {@code 1VayNert3x1KzbpzMGt2qdqrAThiRovi8}. This form was originally intended for the case where you wish
@@ -49,6 +80,9 @@ public class ScriptPattern {
      * way to make payments due to the short and recognizable base58 form addresses come in.
      */
     public static boolean isP2PKH(Script script) {
+        ScriptType template = script.template();
+        if (template != null)
+            return template == ScriptType.P2PKH;
         List<ScriptChunk> chunks = script.chunks();
         if (chunks.size() != 5)
             return false;
@@ -73,9 +107,38 @@ public class ScriptPattern {
      * will want to guard calls to this method with {@link #isP2PKH(Script)}.
      */
     public static byte[] extractHashFromP2PKH(Script script) {
+        if (script.template() == ScriptType.P2PKH)
+            return extractHashFromP2PKH(script.getQuickProgram());
         return Objects.requireNonNull(script.chunks().get(2).data);
     }
 
+    /**
+     * Returns true if this program is the standard serialization of
+     * {@code DUP HASH160 <pubkey hash> EQUALVERIFY CHECKSIG}.
+     *
+     * @param program program bytes to check
+     * @return true if the program is a P2PKH scriptPubKey
+     */
+    public static boolean isP2PKH(byte[] program) {
+        return program.length == 25
+                && program[0] == (byte) OP_DUP
+                && program[1] == (byte) OP_HASH160
+                && program[2] == LegacyAddress.LENGTH
+                && program[23] == (byte) OP_EQUALVERIFY
+                && program[24] == (byte) OP_CHECKSIG;
+    }
+
+    /**
+     * Extract the pubkey hash from a P2PKH program. You will want to guard calls to this method with
+     * {@link #isP2PKH(byte[])}.
+     *
+     * @param program program bytes to extract from
+     * @return newly allocated array containing the pubkey hash
+     */
+    public static byte[] extractHashFromP2PKH(byte[] program) {
+        return Arrays.copyOfRange(program, 3, 3 + LegacyAddress.LENGTH);
+    }
+
     /**
      * <p>
      * Whether or not this is a scriptPubKey representing a P2SH output. In such outputs, the logic that
@@ -87,6 +150,9 @@ public class ScriptPattern {
      * </p>
      */
     public static boolean isP2SH(Script script) {
+        ScriptType template = script.template();
+        if (template != null)
+            return template == ScriptType.P2SH;
         List<ScriptChunk> chunks = script.chunks();
         // We check for the effective serialized form because BIP16 defines a P2SH output using an exact byte
         // template, not the logical program structure. Thus you can have two programs that look identical when
@@ -115,9 +181,36 @@ public class ScriptPattern {
      * will want to guard calls to this method with {@link #isP2SH(Script)}.
      */
     public static byte[] extractHashFromP2SH(Script script) {
+        if (script.template() == ScriptType.P2SH)
+            return extractHashFromP2SH(script.getQuickProgram());
         return Objects.requireNonNull(script.chunks().get(1).data);
     }
 
+    /**
+     * Returns true if this program is the serialization of {@code HASH160 <script hash> EQUAL}. Unlike for other
+     * templates, this is the only form BIP16 accepts.
+     *
+     * @param program program bytes to check
+     * @return true if the program is a P2SH scriptPubKey
+     */
+    public static boolean isP2SH(byte[] program) {
+        return program.length == 23
+                && program[0] == (byte) OP_HASH160
+                && program[1] == LegacyAddress.LENGTH
+                && program[22] == (byte) OP_EQUAL;
+    }
+
+    /**
+     * Extract the script hash from a P2SH program. You will want to guard calls to this method with
+     * {@link #isP2SH(byte[])}.
+     *
+     * @param program program bytes to extract from
+     * @return newly allocated array containing the script hash
+     */
+    public static byte[] extractHashFromP2SH(byte[] program) {
+        return Arrays.copyOfRange(program, 2, 2 + LegacyAddress.LENGTH);
+    }
+
     /**
      * Returns true if this script is of the form {@code <pubkey> OP_CHECKSIG}. This form was originally intended for transactions
      * where the peers talked to each other directly via TCP/IP, but has fallen out of favor with time due to that mode
@@ -125,6 +218,9 @@ public class ScriptPattern {
      * useful more exotic types of transaction, but today most payments are to addresses.
      */
     public static boolean isP2PK(Script script) {
+        ScriptType template = script.template();
+        if (template != null)
+            return template == ScriptType.P2PK;
         List<ScriptChunk> chunks = script.chunks();
         if (chunks.size() != 2)
             return false;
@@ -146,14 +242,44 @@ public class ScriptPattern {
      * want to guard calls to this method with {@link #isP2PK(Script)}.
      */
     public static byte[] extractKeyFromP2PK(Script script) {
+        if (script.template() == ScriptType.P2PK)
+            return extractKeyFromP2PK(script.getQuickProgram());
         return Objects.requireNonNull(script.chunks().get(0).data);
     }
 
+    /**
+     * Returns true if this program is the standard serialization of {@code <pubkey> OP_CHECKSIG}, with the pubkey
+     * pushed directly by its length opcode.
+     *
+     * @param program program bytes to check
+     * @return true if the program is a P2PK scriptPubKey
+     */
+    public static boolean isP2PK(byte[] program) {
+        int keyLength = program.length - 2;
+        return keyLength > 1 && keyLength < OP_PUSHDATA1
+                && program[0] == keyLength
+                && program[program.length - 1] == (byte) OP_CHECKSIG;
+    }
+
+    /**
+     * Extract the pubkey from a P2PK program. You will want to guard calls to this method with
+     * {@link #isP2PK(byte[])}.
+     *
+     * @param program program bytes to extract from
+     * @return newly allocated array containing the pubkey
+     */
+    public static byte[] extractKeyFromP2PK(byte[] program) {
+        return Arrays.copyOfRange(program, 1, program.length - 1);
+    }
+
     /**
      * Returns true if this script is of the form {@code OP_0 <hash>}. This can either be a P2WPKH or P2WSH scriptPubKey. These
      * two script types were introduced with segwit.
      */
     public static boolean isP2WH(Script script) {
+        ScriptType template = script.template();
+        if (template != null)
+            return template == ScriptType.P2WPKH || template == ScriptType.P2WSH;
         List<ScriptChunk> chunks = script.chunks();
         if (chunks.size() != 2)
             return false;
@@ -173,6 +299,9 @@ public class ScriptPattern {
      * scriptPubKey. This script type was introduced with segwit.
      */
     public static boolean isP2WPKH(Script script) {
+        ScriptType template = script.template();
+        if (template != null)
+            return template == ScriptType.P2WPKH;
         if (!isP2WH(script))
             return false;
         List<ScriptChunk> chunks = script.chunks();
@@ -187,6 +316,9 @@ public class ScriptPattern {
      * scriptPubKey. This script type was introduced with segwit.
      */
     public static boolean isP2WSH(Script script) {
+        ScriptType template = script.template();
+        if (template != null)
+            return template == ScriptType.P2WSH;
         if (!isP2WH(script))
             return false;
         List<ScriptChunk> chunks = script.chunks();
@@ -202,14 +334,66 @@ public class ScriptPattern {
      * {@link #isP2WH(Script)}.
      */
     public static byte[] extractHashFromP2WH(Script script) {
+        ScriptType template = script.template();
+        if (template == ScriptType.P2WPKH || template == ScriptType.P2WSH)
+            return extractHashFromP2WH(script.getQuickProgram());
         return Objects.requireNonNull(script.chunks().get(1).data);
     }
 
+    /**
+     * Returns true if this program is the standard serialization of {@code OP_0 <hash>}, with a hash of either 20 or
+     * 32 bytes.
+     *
+     * @param program program bytes to check
+     * @return true if the program is a P2WPKH or P2WSH scriptPubKey
+     */
+    public static boolean isP2WH(byte[] program) {
+        return isP2WPKH(program) || isP2WSH(program);
+    }
+
+    /**
+     * Returns true if this program is the standard serialization of {@code OP_0 <hash>} with a 20 byte hash.
+     *
+     * @param program program bytes to check
+     * @return true if the program is a P2WPKH scriptPubKey
+     */
+    public static boolean isP2WPKH(byte[] program) {
+        return program.length == 2 + SegwitAddress.WITNESS_PROGRAM_LENGTH_PKH
+                && program[0] == OP_0
+                && program[1] == SegwitAddress.WITNESS_PROGRAM_LENGTH_PKH;
+    }
+
+    /**
+     * Returns true if this program is the standard serialization of {@code OP_0 <hash>} with a 32 byte hash.
+     *
+     * @param program program bytes to check
+     * @return true if the program is a P2WSH scriptPubKey
+     */
+    public static boolean isP2WSH(byte[] program) {
+        return program.length == 2 + SegwitAddress.WITNESS_PROGRAM_LENGTH_SH
+                && program[0] == OP_0
+                && program[1] == SegwitAddress.WITNESS_PROGRAM_LENGTH_SH;
+    }
+
+    /**
+     * Extract the pubkey hash from a P2WPKH or the script hash from a P2WSH program. You will want to guard calls to
+     * this method with {@link #isP2WH(byte[])}.
+     *
+     * @param program program bytes to extract from
+     * @return newly allocated array containing the hash
+     */
+    public static byte[] extractHashFromP2WH(byte[] program) {
+        return Arrays.copyOfRange(program, 2, program.length);
+    }
+
     /**
      * Returns true if this script is of the form {@code OP_1 <pubkey>}. This is a P2TR scriptPubKey. This
      * script type was introduced with taproot.
      */
     public static boolean isP2TR(Script script) {
+        ScriptType template = script.template();
+        if (template != null)
+            return template == ScriptType.P2TR;
         List<ScriptChunk> chunks = script.chunks();
         if (chunks.size() != 2)
             return false;
@@ -228,14 +412,41 @@ public class ScriptPattern {
      * form, so you will want to guard calls to this method with {@link #isP2TR(Script)}.
      */
     public static byte[] extractOutputKeyFromP2TR(Script script) {
+        if (script.template() == ScriptType.P2TR)
+            return extractOutputKeyFromP2TR(script.getQuickProgram());
         return Objects.requireNonNull(script.chunks().get(1).data);
     }
 
+    /**
+     * Returns true if this program is the standard serialization of {@code OP_1 <pubkey>} with a 32 byte key.
+     *
+     * @param program program bytes to check
+     * @return true if the program is a P2TR scriptPubKey
+     */
+    public static boolean isP2TR(byte[] program) {
+        return program.length == 2 + SegwitAddress.WITNESS_PROGRAM_LENGTH_TR
+                && program[0] == (byte) OP_1
+                && program[1] == SegwitAddress.WITNESS_PROGRAM_LENGTH_TR;
+    }
+
+    /**
+     * Extract the taproot output key from a P2TR program. You will want to guard calls to this method with
+     * {@link #isP2TR(byte[])}.
+     *
+     * @param program program bytes to extract from
+     * @return newly allocated array containing the output key
+     */
+    public static byte[] extractOutputKeyFromP2TR(byte[] program) {
+        return Arrays.copyOfRange(program, 2, program.length);
+    }
+
     /**
      * Returns whether this script matches the format used for m-of-n multisig outputs:
      * {@code [m] [keys...] [n] CHECKMULTISIG}
      */
     public static boolean isSentToMultisig(Script script) {
+        if (script.template() != null)
+            return false;
         List<ScriptChunk> chunks = script.chunks();
         if (chunks.size() < 4) return false;
         ScriptChunk chunk = chunks.get(chunks.size() - 1);
@@ -258,10 +469,22 @@ public class ScriptPattern {
      * Returns whether this script is using OP_RETURN to store arbitrary data.
      */
     public static boolean isOpReturn(Script script) {
+        if (script.template() != null)
+            return false;
         List<ScriptChunk> chunks = script.chunks();
         return chunks.size() > 0 && chunks.get(0).equalsOpCode(ScriptOpCodes.OP_RETURN);
     }
 
+    /**
+     * Returns whether this program starts with OP_RETURN, i.e. is used to store arbitrary data.
+     *
+     * @param program program bytes to check
+     * @return true if the program is an OP_RETURN script
+     */
+    public static boolean isOpReturn(byte[] program) {
+        return program.length > 0 && program[0] == (byte) ScriptOpCodes.OP_RETURN;
+    }
+
     private static final byte[] SEGWIT_COMMITMENT_HEADER = ByteUtils.parseHex("aa21a9ed");
 
     /**
@@ -270,11 +493,25 @@ public class ScriptPattern {
      * See <a href="https://github.com/bitcoin/bips/blob/master/bip-0141.mediawiki#commitment-structure">BIP141</a>.
      */
     public static boolean isWitnessCommitment(Script script) {
-        byte[] bytes = script.program();
-        return bytes.length >= 38
-                && bytes[0] == ScriptOpCodes.OP_RETURN
-                && bytes[1] == 36 // length byte
-                && Arrays.equals(Arrays.copyOfRange(bytes, 2, 6), SEGWIT_COMMITMENT_HEADER);
+        return isWitnessCommitment(script.getQuickProgram());
+    }
+
+    /**
+     * Returns whether this program matches the pattern for a segwit commitment (in an output of the coinbase
+     * transaction).
+     *
+     * @param program program bytes to check
+     * @return true if the program is a witness commitment
+     */
+    public static boolean isWitnessCommitment(byte[] program) {
+        if (program.length < 38
+                || program[0] != ScriptOpCodes.OP_RETURN
+                || program[1] != 36) // length byte
+            return false;
+        for (int i = 0; i < SEGWIT_COMMITMENT_HEADER.length; i++)
+            if (program[2 + i] != SEGWIT_COMMITMENT_HEADER[i])
+                return false;
+        return true;
     }
 
     /**
@@ -283,7 +520,7 @@ public class ScriptPattern {
      * See <a href="https://github.com/bitcoin/bips/blob/master/bip-0141.mediawiki#commitment-structure">BIP141</a>.
      */
     public static Sha256Hash extractWitnessCommitmentHash(Script script) {
-        byte[] hash = Arrays.copyOfRange(script.program(), 6, 38);
+        byte[] hash = Arrays.copyOfRange(script.getQuickProgram(), 6, 38);
         return Sha256Hash.wrap(hash);
     }
 }
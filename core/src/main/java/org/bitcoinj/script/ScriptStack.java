@@ -0,0 +1,100 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.script;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A stack of byte arrays as used by the script interpreter. It is backed by an array that grows as needed, so unlike
+ * a {@link java.util.LinkedList} pushing and popping elements doesn't allocate. Elements are addressed by their depth,
+ * with the top of the stack at depth 0.
+ * <p>
+ * Callers are expected to check {@link #size()} before accessing elements, like the interpreter does to produce
+ * its specific errors.
+ */
+final class ScriptStack {
+    private byte[][] elements;
+    private int size;
+
+    ScriptStack() {
+        this.elements = new byte[16][];
+        this.size = 0;
+    }
+
+    /**
+     * Creates a stack holding the given elements, the last one being on top.
+     *
+     * @param elements elements to copy, bottom first
+     */
+    ScriptStack(Collection<byte[]> elements) {
+        this.elements = elements.toArray(new byte[Math.max(16, elements.size())][]);
+        this.size = elements.size();
+    }
+
+    private ScriptStack(ScriptStack other) {
+        this.elements = Arrays.copyOf(other.elements, other.elements.length);
+        this.size = other.size;
+    }
+
+    /** Creates a copy of this stack. The elements themselves are not copied. */
+    ScriptStack copy() {
+        return new ScriptStack(this);
+    }
+
+    int size() {
+        return size;
+    }
+
+    void push(byte[] element) {
+        if (size == elements.length)
+            elements = Arrays.copyOf(elements, size * 2);
+        elements[size++] = element;
+    }
+
+    byte[] pop() {
+        byte[] element = elements[--size];
+        elements[size] = null;
+        return element;
+    }
+
+    /** Returns the element on top of the stack. */
+    byte[] peek() {
+        return elements[size - 1];
+    }
+
+    /** Returns the element at the given depth, 0 being the top of the stack. */
+    byte[] peek(int depth) {
+        return elements[size - 1 - depth];
+    }
+
+    /** Removes and returns the element at the given depth, 0 being the top of the stack. */
+    byte[] remove(int depth) {
+        int index = size - 1 - depth;
+        byte[] element = elements[index];
+        System.arraycopy(elements, index + 1, elements, index, depth);
+        elements[--size] = null;
+        return element;
+    }
+
+    /** Returns the elements as a new list, bottom first. */
+    List<byte[]> toList() {
+        return new ArrayList<>(Arrays.asList(elements).subList(0, size));
+    }
+}
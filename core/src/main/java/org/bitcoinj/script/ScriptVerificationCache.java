@@ -0,0 +1,184 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.script;
+
+import org.bitcoinj.base.Sha256Hash;
+import org.bitcoinj.core.PrecomputedTransactionData;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.crypto.SchnorrSignature;
+import org.bitcoinj.utils.Threading;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.bitcoinj.base.internal.Preconditions.checkArgument;
+
+/**
+ * <p>Remembers which transaction inputs have already passed script verification, so that they don't have to be
+ * executed again. This is the equivalent of the script execution cache of Bitcoin Core: transactions are usually
+ * verified once on their way into the memory pool, and then again when the block that confirms them is connected.
+ * With this cache the second check becomes a lookup.</p>
+ *
+ * <p>Entries are keyed by the wtxid of the spending transaction, a hash of the outputs it spends (see
+ * {@link PrecomputedTransactionData#getSpentOutputsHash()}), the index of the input and the set of
+ * {@link ScriptExecution.VerifyFlag}s used. The wtxid commits to the scriptSig and witness, but only to the outpoints
+ * being spent. The values and scriptPubKeys of the spent outputs come from the caller, so they are part of the key
+ * too: a success remembered for wrong spent outputs is never found for the real ones. Only successful verifications
+ * are remembered.</p>
+ *
+ * <p>The cache is bounded: once full, the oldest entries are dropped. It is safe to use from multiple threads.
+ * Typically you use the instance held by {@link org.bitcoinj.core.Context#getScriptVerificationCache()}, which is
+ * shared by everything using that context.</p>
+ */
+public class ScriptVerificationCache {
+    protected final ReentrantLock lock = Threading.lock(ScriptVerificationCache.class);
+
+    /** The max size of a cache created with the no-args constructor. */
+    public static final int MAX_SIZE = 100_000;
+
+    private final Map<Key, Boolean> entries;
+
+    /**
+     * Creates a cache that will remember at most the given number of verified inputs.
+     * @param size Max number of inputs to remember. The oldest entries are dropped when this size is exceeded.
+     */
+    public ScriptVerificationCache(final int size) {
+        checkArgument(size > 0, () -> "size must be positive: " + size);
+        entries = new LinkedHashMap<Key, Boolean>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Boolean> eldest) {
+                return size() > size;
+            }
+        };
+    }
+
+    /**
+     * Creates a cache that will remember at most {@link ScriptVerificationCache#MAX_SIZE} verified inputs. You should
+     * normally use this constructor.
+     */
+    public ScriptVerificationCache() {
+        this(MAX_SIZE);
+    }
+
+    /**
+     * Returns true if the given input was already verified successfully, spending the same outputs and with exactly the
+     * given flags.
+     * @param txData spending transaction and the outputs it spends
+     * @param index index of the input
+     * @param verifyFlags flags the input is to be verified with
+     */
+    public boolean contains(PrecomputedTransactionData txData, int index, Set<ScriptExecution.VerifyFlag> verifyFlags) {
+        Key key = new Key(txData, index, verifyFlags);
+        lock.lock();
+        try {
+            return entries.containsKey(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remembers that the given input has been verified successfully, spending the given outputs and with the given
+     * flags.
+     * @param txData spending transaction and the outputs it spends
+     * @param index index of the input
+     * @param verifyFlags flags the input was verified with
+     */
+    public void add(PrecomputedTransactionData txData, int index, Set<ScriptExecution.VerifyFlag> verifyFlags) {
+        Key key = new Key(txData, index, verifyFlags);
+        lock.lock();
+        try {
+            entries.put(key, Boolean.TRUE);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Verifies the given input using {@link ScriptExecution#correctlySpends(Transaction, int,
+     * PrecomputedTransactionData, Set, SchnorrSignature.BatchVerifier)}, unless it is already known to be valid. On
+     * success, the input is remembered. Use this for transactions arriving into a memory pool, so that connecting the
+     * block they're confirmed in later doesn't need to run their scripts again.
+     * @param tx spending transaction
+     * @param index index of the input
+     * @param txData outputs spent by the transaction
+     * @param verifyFlags flags to verify with
+     * @throws ScriptException if the input does not correctly spend the output
+     */
+    public void verify(Transaction tx, int index, PrecomputedTransactionData txData,
+                       Set<ScriptExecution.VerifyFlag> verifyFlags) throws ScriptException {
+        checkArgument(txData.getTransaction() == tx, () -> "txData must be for the given transaction");
+        if (contains(txData, index, verifyFlags))
+            return;
+        ScriptExecution.correctlySpends(tx, index, txData, verifyFlags, null);
+        add(txData, index, verifyFlags);
+    }
+
+    /** Returns the number of inputs currently remembered. */
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Forgets all remembered inputs. */
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Key {
+        private final Sha256Hash wtxid;
+        private final Sha256Hash spentOutputsHash;
+        private final int index;
+        private final int flags;
+
+        Key(PrecomputedTransactionData txData, int index, Set<ScriptExecution.VerifyFlag> verifyFlags) {
+            this.wtxid = txData.getTransaction().getWTxId();
+            this.spentOutputsHash = txData.getSpentOutputsHash();
+            this.index = index;
+            int flags = 0;
+            for (ScriptExecution.VerifyFlag flag : verifyFlags)
+                flags |= 1 << flag.ordinal();
+            this.flags = flags;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key other = (Key) o;
+            return index == other.index && flags == other.flags && wtxid.equals(other.wtxid)
+                    && spentOutputsHash.equals(other.spentOutputsHash);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(wtxid, spentOutputsHash, index, flags);
+        }
+    }
+}
@@ -21,6 +21,8 @@ import org.bitcoinj.base.Sha256Hash;
 import org.bitcoinj.core.StoredBlock;
 import org.jspecify.annotations.Nullable;
 
+import static org.bitcoinj.base.internal.Preconditions.checkArgument;
+
 /**
  * An implementor of BlockStore saves StoredBlock objects to disk. Different implementations store them in
  * different ways. An in-memory implementation (MemoryBlockStore) exists for unit testing but real apps will want to
@@ -59,6 +61,26 @@ public interface BlockStore {
      */
     void setChainHead(StoredBlock chainHead) throws BlockStoreException;
 
+    /**
+     * Returns the ancestor of the given block at the given height, that is the block at that height which the given
+     * block builds on. The default implementation follows the previous block hashes back one by one. Implementations
+     * may index the best chain by height, so that retrieving an ancestor on it doesn't need to visit the blocks in
+     * between.
+     *
+     * @param block block to start from
+     * @param height height of the ancestor, at most the height of the given block
+     * @return the ancestor, or null if it isn't in the store
+     * @throws BlockStoreException if there is a problem with the underlying storage layer
+     */
+    @Nullable
+    default StoredBlock getAncestor(StoredBlock block, int height) throws BlockStoreException {
+        checkArgument(height >= 0 && height <= block.getHeight(), () -> "bad height: " + height);
+        StoredBlock cursor = block;
+        while (cursor != null && cursor.getHeight() > height)
+            cursor = cursor.getPrev(this);
+        return cursor;
+    }
+
     /** Closes the store. */
     void close() throws BlockStoreException;
 }
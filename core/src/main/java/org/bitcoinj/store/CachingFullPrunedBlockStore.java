@@ -0,0 +1,433 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.store;
+
+import org.bitcoinj.base.Network;
+import org.bitcoinj.base.Sha256Hash;
+import org.bitcoinj.base.internal.OpenHashMap;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.core.StoredUndoableBlock;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.core.UTXO;
+import org.bitcoinj.core.UTXOProviderException;
+import org.bitcoinj.crypto.ECKey;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.bitcoinj.base.internal.Preconditions.checkArgument;
+import static org.bitcoinj.base.internal.Preconditions.checkState;
+
+/**
+ * <p>Keeps unspent transaction outputs in memory in front of another {@link FullPrunedBlockStore}, and writes changes
+ * to it in large batches. Most outputs are spent soon after they have been created; an output that is created and
+ * spent between two writes never reaches the other store.</p>
+ *
+ * <p>Cached outputs which differ from the other store are called dirty. Outputs created since the last write are
+ * called fresh; spending them just drops them from the cache. Spending any other output leaves a dirty, spent entry
+ * which removes it from the other store with the next write. The verified chain head is written together with the
+ * outputs, so that the other store stays consistent.</p>
+ *
+ * <p>The dirty outputs are written, sorted by outpoint, when a database batch is committed and the cache holds more
+ * than the given number of outputs, or by {@link #flush()}. Clean outputs are evicted least recently used first.
+ * Blocks and undo blocks are passed on to the other store directly.</p>
+ *
+ * <p>Unlike required by {@link FullPrunedBlockStore#beginDatabaseBatchWrite()}, outputs written in a batch are
+ * visible to other threads before it is committed.</p>
+ */
+public class CachingFullPrunedBlockStore implements FullPrunedBlockStore {
+    private static final Logger log = LoggerFactory.getLogger(CachingFullPrunedBlockStore.class);
+
+    private static final class Entry {
+        final UTXO output;
+        // true if the output has been spent and must be removed from the backing store
+        final boolean spent;
+        // true if the output differs from the backing store
+        final boolean dirty;
+        // true if the output isn't in the backing store
+        final boolean fresh;
+
+        Entry(UTXO output, boolean spent, boolean dirty, boolean fresh) {
+            this.output = output;
+            this.spent = spent;
+            this.dirty = dirty;
+            this.fresh = fresh;
+        }
+    }
+
+    private final FullPrunedBlockStore store;
+    private final int maxEntries;
+    // in least recently used order
+    private final LinkedHashMap<TransactionOutPoint, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int dirtyCount = 0;
+    // verified chain head that hasn't been written yet
+    private @Nullable StoredBlock verifiedChainHead = null;
+
+    // The state before the current batch, to restore if it is aborted
+    private boolean inBatch = false;
+    private final Map<TransactionOutPoint, Entry> batchUndo = new OpenHashMap<>();
+    private @Nullable StoredBlock batchVerifiedChainHead = null;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long flushCount = 0;
+    private long writeCount = 0;
+    private long skippedWriteCount = 0;
+
+    /**
+     * @param store store to keep outputs in front of
+     * @param maxEntries number of outputs above which dirty outputs are written and clean ones are evicted
+     */
+    public CachingFullPrunedBlockStore(FullPrunedBlockStore store, int maxEntries) {
+        checkArgument(maxEntries > 0, () -> "maxEntries must be positive: " + maxEntries);
+        this.store = Objects.requireNonNull(store);
+        this.maxEntries = maxEntries;
+    }
+
+    @Override
+    public void put(StoredBlock block) throws BlockStoreException {
+        store.put(block);
+    }
+
+    @Override
+    public void put(StoredBlock storedBlock, StoredUndoableBlock undoableBlock) throws BlockStoreException {
+        store.put(storedBlock, undoableBlock);
+    }
+
+    @Override
+    @Nullable
+    public StoredBlock get(Sha256Hash hash) throws BlockStoreException {
+        return store.get(hash);
+    }
+
+    @Override
+    @Nullable
+    public StoredBlock getOnceUndoableStoredBlock(Sha256Hash hash) throws BlockStoreException {
+        return store.getOnceUndoableStoredBlock(hash);
+    }
+
+    @Override
+    @Nullable
+    public StoredUndoableBlock getUndoBlock(Sha256Hash hash) throws BlockStoreException {
+        return store.getUndoBlock(hash);
+    }
+
+    @Override
+    public StoredBlock getAncestor(StoredBlock block, int height) throws BlockStoreException {
+        return store.getAncestor(block, height);
+    }
+
+    @Override
+    public synchronized StoredBlock getChainHead() throws BlockStoreException {
+        StoredBlock chainHead = store.getChainHead();
+        if (verifiedChainHead != null && verifiedChainHead.getHeight() > chainHead.getHeight())
+            return verifiedChainHead;
+        return chainHead;
+    }
+
+    @Override
+    public void setChainHead(StoredBlock chainHead) throws BlockStoreException {
+        store.setChainHead(chainHead);
+    }
+
+    @Override
+    @Nullable
+    public synchronized StoredBlock getVerifiedChainHead() throws BlockStoreException {
+        return verifiedChainHead != null ? verifiedChainHead : store.getVerifiedChainHead();
+    }
+
+    @Override
+    public synchronized void setVerifiedChainHead(StoredBlock chainHead) throws BlockStoreException {
+        verifiedChainHead = chainHead;
+    }
+
+    @Override
+    @Nullable
+    public synchronized UTXO getTransactionOutput(Sha256Hash hash, long index) throws BlockStoreException {
+        Entry entry = getEntry(TransactionOutPoint.of(hash, index));
+        return entry == null || entry.spent ? null : entry.output;
+    }
+
+    @Override
+    public synchronized void addUnspentTransactionOutput(UTXO out) throws BlockStoreException {
+        TransactionOutPoint outPoint = TransactionOutPoint.of(out.getHash(), out.getIndex());
+        Entry entry = entries.get(outPoint);
+        // If a spent output is created again, the backing store still has it.
+        boolean fresh = entry == null || entry.fresh;
+        update(outPoint, new Entry(out, false, true, fresh));
+    }
+
+    /**
+     * Writes the dirty outputs, then adds the given outputs to the backing store directly.
+     */
+    @Override
+    public synchronized void addUnspentTransactionOutputs(List<UTXO> outs) throws BlockStoreException {
+        flush();
+        for (UTXO out : outs)
+            entries.remove(TransactionOutPoint.of(out.getHash(), out.getIndex()));
+        store.addUnspentTransactionOutputs(outs);
+    }
+
+    /**
+     * Writes the dirty outputs, then returns the outputs of the backing store.
+     */
+    @Override
+    public synchronized Iterator<UTXO> getUnspentTransactionOutputs() throws BlockStoreException {
+        flush();
+        return store.getUnspentTransactionOutputs();
+    }
+
+    @Override
+    public synchronized void removeUnspentTransactionOutput(UTXO out) throws BlockStoreException {
+        TransactionOutPoint outPoint = TransactionOutPoint.of(out.getHash(), out.getIndex());
+        Entry entry = getEntry(outPoint);
+        if (entry == null || entry.spent)
+            throw new BlockStoreException("Tried to remove a UTXO from CachingFullPrunedBlockStore that it didn't have!");
+        if (entry.fresh) {
+            update(outPoint, null);
+            skippedWriteCount++;
+        } else {
+            update(outPoint, new Entry(entry.output, true, true, false));
+        }
+    }
+
+    @Override
+    public synchronized boolean hasUnspentOutputs(Sha256Hash hash, int numOutputs) throws BlockStoreException {
+        boolean cached = false;
+        for (int i = 0; i < numOutputs; i++) {
+            Entry entry = entries.get(TransactionOutPoint.of(hash, i));
+            if (entry != null) {
+                if (!entry.spent)
+                    return true;
+                cached = true;
+            }
+        }
+        if (!cached)
+            return store.hasUnspentOutputs(hash, numOutputs);
+        // Some outputs have been spent in the cache only, so look at the rest one by one.
+        for (int i = 0; i < numOutputs; i++)
+            if (getTransactionOutput(hash, i) != null)
+                return true;
+        return false;
+    }
+
+    @Override
+    public synchronized void beginDatabaseBatchWrite() throws BlockStoreException {
+        store.beginDatabaseBatchWrite();
+        if (!inBatch) {
+            inBatch = true;
+            batchVerifiedChainHead = verifiedChainHead;
+        }
+    }
+
+    @Override
+    public synchronized void commitDatabaseBatchWrite() throws BlockStoreException {
+        store.commitDatabaseBatchWrite();
+        inBatch = false;
+        batchUndo.clear();
+        batchVerifiedChainHead = null;
+        if (entries.size() > maxEntries) {
+            evict(maxEntries);
+            if (entries.size() > maxEntries) {
+                flush();
+                // Leave room for the next batches.
+                evict(maxEntries / 2);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void abortDatabaseBatchWrite() throws BlockStoreException {
+        store.abortDatabaseBatchWrite();
+        if (!inBatch)
+            return;
+        inBatch = false;
+        for (Map.Entry<TransactionOutPoint, Entry> undo : batchUndo.entrySet()) {
+            Entry current = undo.getValue() != null ?
+                    entries.put(undo.getKey(), undo.getValue()) :
+                    entries.remove(undo.getKey());
+            if (current != null && current.dirty)
+                dirtyCount--;
+            if (undo.getValue() != null && undo.getValue().dirty)
+                dirtyCount++;
+        }
+        batchUndo.clear();
+        verifiedChainHead = batchVerifiedChainHead;
+        batchVerifiedChainHead = null;
+    }
+
+    /**
+     * Writes all dirty outputs and the verified chain head to the backing store, in one database batch.
+     * @throws BlockStoreException if the backing store fails; nothing is written in that case
+     */
+    public synchronized void flush() throws BlockStoreException {
+        checkState(!inBatch, () -> "can't flush within a database batch");
+        if (dirtyCount == 0 && verifiedChainHead == null)
+            return;
+        List<Entry> dirty = new ArrayList<>(dirtyCount);
+        for (Entry entry : entries.values())
+            if (entry.dirty)
+                dirty.add(entry);
+        dirty.sort((e1, e2) -> UTXOSnapshot.ORDER.compare(e1.output, e2.output));
+        store.beginDatabaseBatchWrite();
+        try {
+            for (Entry entry : dirty) {
+                if (!entry.fresh)
+                    store.removeUnspentTransactionOutput(entry.output);
+                if (!entry.spent)
+                    store.addUnspentTransactionOutput(entry.output);
+            }
+            if (verifiedChainHead != null)
+                store.setVerifiedChainHead(verifiedChainHead);
+            store.commitDatabaseBatchWrite();
+        } catch (BlockStoreException | RuntimeException x) {
+            store.abortDatabaseBatchWrite();
+            throw x;
+        }
+        for (Iterator<Map.Entry<TransactionOutPoint, Entry>> i = entries.entrySet().iterator(); i.hasNext(); ) {
+            Map.Entry<TransactionOutPoint, Entry> mapEntry = i.next();
+            Entry entry = mapEntry.getValue();
+            if (entry.spent)
+                i.remove();
+            else if (entry.dirty)
+                mapEntry.setValue(new Entry(entry.output, false, false, false));
+        }
+        log.info("Wrote {} outputs, skipped {} outputs created and spent in the cache, hit rate {}%",
+                dirty.size(), skippedWriteCount, Math.round(getHitRate() * 100));
+        writeCount += dirty.size();
+        dirtyCount = 0;
+        verifiedChainHead = null;
+        flushCount++;
+    }
+
+    @Override
+    public synchronized void close() throws BlockStoreException {
+        if (!inBatch)
+            flush();
+        entries.clear();
+        store.close();
+    }
+
+    @Override
+    public Network network() {
+        return store.network();
+    }
+
+    @Override
+    public int getChainHeadHeight() throws UTXOProviderException {
+        try {
+            return Objects.requireNonNull(getVerifiedChainHead()).getHeight();
+        } catch (BlockStoreException e) {
+            throw new UTXOProviderException(e);
+        }
+    }
+
+    /**
+     * Writes the dirty outputs unless within a database batch, then returns the open outputs of the backing store.
+     */
+    @Override
+    public synchronized List<UTXO> getOpenTransactionOutputs(List<ECKey> keys) throws UTXOProviderException {
+        if (!inBatch) {
+            try {
+                flush();
+            } catch (BlockStoreException e) {
+                throw new UTXOProviderException(e);
+            }
+        }
+        return store.getOpenTransactionOutputs(keys);
+    }
+
+    /** Returns the number of output lookups answered by the cache. */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /** Returns the number of output lookups passed on to the backing store. */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /** Returns the share of output lookups answered by the cache, between 0 and 1. */
+    public synchronized double getHitRate() {
+        long lookups = hitCount + missCount;
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    /** Returns the number of times dirty outputs have been written to the backing store. */
+    public synchronized long getFlushCount() {
+        return flushCount;
+    }
+
+    /** Returns the number of outputs written to the backing store. */
+    public synchronized long getWriteCount() {
+        return writeCount;
+    }
+
+    /** Returns the number of outputs that were created and spent without being written to the backing store. */
+    public synchronized long getSkippedWriteCount() {
+        return skippedWriteCount;
+    }
+
+    /** Returns the number of outputs in the cache, including spent ones that haven't been written yet. */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // Looks up an output in the cache, or fetches it from the backing store
+    @Nullable
+    private Entry getEntry(TransactionOutPoint outPoint) throws BlockStoreException {
+        Entry entry = entries.get(outPoint);
+        if (entry != null) {
+            hitCount++;
+            return entry;
+        }
+        missCount++;
+        UTXO output = store.getTransactionOutput(outPoint.hash(), outPoint.index());
+        if (output == null)
+            return null;
+        entry = new Entry(output, false, false, false);
+        update(outPoint, entry);
+        return entry;
+    }
+
+    // Replaces or, if the new entry is null, removes an entry, remembering the old one in case the batch is aborted
+    private void update(TransactionOutPoint outPoint, @Nullable Entry entry) {
+        Entry previous = entry != null ? entries.put(outPoint, entry) : entries.remove(outPoint);
+        if (inBatch && !batchUndo.containsKey(outPoint))
+            batchUndo.put(outPoint, previous);
+        if (previous != null && previous.dirty)
+            dirtyCount--;
+        if (entry != null && entry.dirty)
+            dirtyCount++;
+    }
+
+    // Evicts clean entries, least recently used first, until there are no more than the given number of entries
+    private void evict(int targetSize) {
+        Iterator<Entry> i = entries.values().iterator();
+        while (entries.size() > targetSize && i.hasNext()) {
+            if (!i.next().dirty)
+                i.remove();
+        }
+    }
+}
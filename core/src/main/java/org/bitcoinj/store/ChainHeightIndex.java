@@ -0,0 +1,131 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.store;
+
+import org.bitcoinj.base.Sha256Hash;
+import org.bitcoinj.core.StoredBlock;
+import org.jspecify.annotations.Nullable;
+
+import static org.bitcoinj.base.internal.Preconditions.checkArgument;
+
+/**
+ * Maps heights to the hashes of the blocks at these heights on the best chain, like the active chain of Bitcoin Core.
+ * It covers a contiguous range of heights ending at the chain head, of at most the given capacity. Updating it when
+ * the chain head moves only visits the blocks that are new to the best chain. The range grows downwards on demand,
+ * when an ancestor below it is asked for.
+ * <p>
+ * This class is not thread safe; the block stores using it guard it with their own lock.
+ */
+final class ChainHeightIndex {
+    private final Sha256Hash[] hashes;
+    // The range of heights indexed; empty if lowest > tip
+    private int lowest = 0;
+    private int tip = -1;
+
+    /**
+     * @param capacity max number of heights to index
+     */
+    ChainHeightIndex(int capacity) {
+        checkArgument(capacity > 0, () -> "capacity must be positive: " + capacity);
+        this.hashes = new Sha256Hash[capacity];
+    }
+
+    /**
+     * Updates the index for a new chain head.
+     * @param head new chain head
+     * @param store store to look up the blocks new to the best chain in
+     */
+    void setChainHead(StoredBlock head, BlockStore store) throws BlockStoreException {
+        boolean wasEmpty = isEmpty();
+        int newTip = head.getHeight();
+        int lastWritten = newTip;
+        StoredBlock cursor = head;
+        for (int written = 0; cursor != null && written < hashes.length; written++) {
+            int height = cursor.getHeight();
+            Sha256Hash hash = cursor.getHeader().getHash();
+            if (hash.equals(get(height))) {
+                // The rest of the index is the chain below the cursor already.
+                tip = newTip;
+                lowest = Math.max(lowest, newTip - hashes.length + 1);
+                return;
+            }
+            hashes[slot(height)] = hash;
+            lastWritten = height;
+            if (wasEmpty || height <= lowest)
+                break;
+            cursor = cursor.getPrev(store);
+        }
+        // The new best chain doesn't meet the old one within the index, start over.
+        tip = newTip;
+        lowest = lastWritten;
+    }
+
+    /** Returns true if no chain head has been set yet. */
+    boolean isEmpty() {
+        return lowest > tip;
+    }
+
+    /**
+     * Returns the hash of the best chain block at the given height, or null if that height isn't indexed.
+     */
+    @Nullable
+    Sha256Hash get(int height) {
+        return height >= lowest && height <= tip ? hashes[slot(height)] : null;
+    }
+
+    /**
+     * Returns the ancestor of the given block at the given height. Once the walk back from the block reaches the best
+     * chain, the ancestor is looked up by its height.
+     */
+    @Nullable
+    StoredBlock getAncestor(StoredBlock block, int height, BlockStore store) throws BlockStoreException {
+        StoredBlock cursor = block;
+        while (cursor != null && cursor.getHeight() > height) {
+            if (cursor.getHeader().getHash().equals(get(cursor.getHeight()))) {
+                extendDownTo(height, store);
+                Sha256Hash ancestorHash = get(height);
+                if (ancestorHash != null)
+                    return store.get(ancestorHash);
+                // Beyond the capacity of the index, so walk on from the lowest block indexed.
+                cursor = store.get(hashes[slot(lowest)]);
+                while (cursor != null && cursor.getHeight() > height)
+                    cursor = cursor.getPrev(store);
+                return cursor;
+            }
+            cursor = cursor.getPrev(store);
+        }
+        return cursor;
+    }
+
+    // Extends the indexed range down towards the given height, as far as the capacity and the store allow.
+    private void extendDownTo(int height, BlockStore store) throws BlockStoreException {
+        if (lowest <= height || lowest > tip)
+            return;
+        StoredBlock cursor = store.get(hashes[slot(lowest)]);
+        while (cursor != null && lowest > height && tip - lowest + 1 < hashes.length) {
+            cursor = cursor.getPrev(store);
+            if (cursor == null)
+                break;
+            lowest--;
+            hashes[slot(lowest)] = cursor.getHeader().getHash();
+        }
+    }
+
+    private int slot(int height) {
+        return height % hashes.length;
+    }
+}
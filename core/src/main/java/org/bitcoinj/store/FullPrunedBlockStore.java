@@ -23,6 +23,8 @@ import org.bitcoinj.core.UTXO;
 import org.bitcoinj.core.UTXOProvider;
 import org.jspecify.annotations.Nullable;
 
+import java.util.Iterator;
+import java.util.List;
 
 /**
  * <p>An implementor of FullPrunedBlockStore saves StoredBlock objects to some storage mechanism.</p>
@@ -89,6 +91,24 @@ public interface FullPrunedBlockStore extends BlockStore, UTXOProvider {
      */
     void addUnspentTransactionOutput(UTXO out) throws BlockStoreException;
     
+    /**
+     * Adds many {@link UTXO}s to the list of unspent TransactionOutputs at once, e.g. when loading a
+     * {@link UTXOSnapshot}. Stores should override this if they can add them quicker than one by one.
+     */
+    default void addUnspentTransactionOutputs(List<UTXO> outs) throws BlockStoreException {
+        for (UTXO out : outs)
+            addUnspentTransactionOutput(out);
+    }
+
+    /**
+     * Returns all unspent TransactionOutputs, ordered by transaction hash and then output index. This is used to
+     * export a {@link UTXOSnapshot}. The list of unspent TransactionOutputs must not change while iterating.
+     * @throws BlockStoreException if there is an underlying storage issue, or the store doesn't support this
+     */
+    default Iterator<UTXO> getUnspentTransactionOutputs() throws BlockStoreException {
+        throw new BlockStoreException("Unsupported");
+    }
+
     /**
      * Removes a {@link UTXO} from the list of unspent TransactionOutputs
      * Note that the coinbase of the genesis block should NEVER be spendable and thus never in the list.
@@ -25,6 +25,8 @@ import org.jspecify.annotations.Nullable;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import static org.bitcoinj.base.internal.Preconditions.checkArgument;
+
 /**
  * Keeps {@link StoredBlock}s in memory. Used primarily for unit testing.
  */
@@ -35,6 +37,7 @@ public class MemoryBlockStore implements BlockStore {
             return this.size() > 5000;
         }
     };
+    private final ChainHeightIndex chainIndex = new ChainHeightIndex(5000);
     private StoredBlock chainHead;
 
     public MemoryBlockStore(Block genesisBlock) {
@@ -42,7 +45,7 @@ public class MemoryBlockStore implements BlockStore {
             Block genesisHeader = genesisBlock.asHeader();
             StoredBlock storedGenesis = new StoredBlock(genesisHeader, genesisHeader.getWork(), 0);
             put(storedGenesis);
-            chainHead = storedGenesis;
+            setChainHead(storedGenesis);
         } catch (BlockStoreException | VerificationException e) {
             throw new RuntimeException(e);  // Cannot happen.
         }
@@ -69,9 +72,18 @@ public class MemoryBlockStore implements BlockStore {
     }
 
     @Override
-    public final void setChainHead(StoredBlock chainHead) throws BlockStoreException {
+    public synchronized final void setChainHead(StoredBlock chainHead) throws BlockStoreException {
         if (blockMap == null) throw new BlockStoreException("MemoryBlockStore is closed");
         this.chainHead = chainHead;
+        chainIndex.setChainHead(chainHead, this);
+    }
+
+    @Override
+    @Nullable
+    public synchronized StoredBlock getAncestor(StoredBlock block, int height) throws BlockStoreException {
+        if (blockMap == null) throw new BlockStoreException("MemoryBlockStore is closed");
+        checkArgument(height >= 0 && height <= block.getHeight(), () -> "bad height: " + height);
+        return chainIndex.getAncestor(block, height, this);
     }
     
     @Override
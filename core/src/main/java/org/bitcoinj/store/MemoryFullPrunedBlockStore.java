@@ -22,6 +22,7 @@ import org.bitcoinj.base.Address;
 import org.bitcoinj.crypto.ECKey;
 import org.bitcoinj.core.NetworkParameters;
 import org.bitcoinj.base.Sha256Hash;
+import org.bitcoinj.base.internal.OpenHashMap;
 import org.bitcoinj.core.StoredBlock;
 import org.bitcoinj.core.StoredUndoableBlock;
 import org.bitcoinj.core.Transaction;
@@ -37,11 +38,14 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 /**
  * A HashMap<KeyType, ValueType> that is DB transaction-aware
@@ -52,13 +56,13 @@ class TransactionalHashMap<KeyType, ValueType> {
     ThreadLocal<HashSet<KeyType>> tempSetRemoved;
     private ThreadLocal<Boolean> inTransaction;
     
-    HashMap<KeyType, ValueType> map;
+    Map<KeyType, ValueType> map;
     
     public TransactionalHashMap() {
         tempMap = new ThreadLocal<>();
         tempSetRemoved = new ThreadLocal<>();
         inTransaction = new ThreadLocal<>();
-        map = new HashMap<>();
+        map = new OpenHashMap<>();
     }
     
     public void beginDatabaseBatchWrite() {
@@ -114,6 +118,18 @@ class TransactionalHashMap<KeyType, ValueType> {
         }
     }
     
+    public void putAll(Map<KeyType, ValueType> values) {
+        if (Boolean.TRUE.equals(inTransaction.get())) {
+            if (tempSetRemoved.get() != null)
+                tempSetRemoved.get().removeAll(values.keySet());
+            if (tempMap.get() == null)
+                tempMap.set(new HashMap<KeyType, ValueType>());
+            tempMap.get().putAll(values);
+        }else{
+            map.putAll(values);
+        }
+    }
+
     @Nullable
     public ValueType remove(KeyType key) {
         if (Boolean.TRUE.equals(inTransaction.get())) {
@@ -141,11 +157,11 @@ class TransactionalHashMap<KeyType, ValueType> {
  */
 class TransactionalFullBlockMap {
     TransactionalHashMap<Sha256Hash, StoredUndoableBlock> mapValues;
-    HashMap<Integer, Set<Sha256Hash>> mapKeys;
+    TreeMap<Integer, Set<Sha256Hash>> mapKeys;
     
     public TransactionalFullBlockMap() {
         mapValues = new TransactionalHashMap<>();
-        mapKeys = new HashMap<>();
+        mapKeys = new TreeMap<>();
     }
     
     public void BeginTransaction() {
@@ -177,11 +193,12 @@ class TransactionalFullBlockMap {
         }
     }
     
-    public void removeByHeight(int height) {
-        Set<Sha256Hash> set = mapKeys.remove(height);
-        if (set != null)
+    public void removeUpToHeight(int height) {
+        SortedMap<Integer, Set<Sha256Hash>> removed = mapKeys.headMap(height + 1);
+        for (Set<Sha256Hash> set : removed.values())
             for (Sha256Hash hash : set)
                 mapValues.remove(hash);
+        removed.clear();
     }
 }
 
@@ -292,10 +309,9 @@ public class MemoryFullPrunedBlockStore implements FullPrunedBlockStore {
         this.verifiedChainHead = chainHead;
         if (this.chainHead.getHeight() < chainHead.getHeight())
             setChainHead(chainHead);
-        // Potential leak here if not all blocks get setChainHead'd
-        // Though the FullPrunedBlockStore allows for this, the current AbstractBlockChain will not do it.
+        // Remove all heights below, in case not every block was set as the verified chain head.
         Objects.requireNonNull(fullBlockMap);
-        fullBlockMap.removeByHeight(chainHead.getHeight() - fullStoreDepth);
+        fullBlockMap.removeUpToHeight(chainHead.getHeight() - fullStoreDepth);
     }
     
     @Override
@@ -318,6 +334,23 @@ public class MemoryFullPrunedBlockStore implements FullPrunedBlockStore {
         transactionOutputMap.put(TransactionOutPoint.of(out.getHash(), out.getIndex()), out);
     }
 
+    @Override
+    public synchronized void addUnspentTransactionOutputs(List<UTXO> outs) throws BlockStoreException {
+        Objects.requireNonNull(transactionOutputMap, "MemoryFullPrunedBlockStore is closed");
+        Map<TransactionOutPoint, UTXO> values = new HashMap<>();
+        for (UTXO out : outs)
+            values.put(TransactionOutPoint.of(out.getHash(), out.getIndex()), out);
+        transactionOutputMap.putAll(values);
+    }
+
+    @Override
+    public synchronized Iterator<UTXO> getUnspentTransactionOutputs() throws BlockStoreException {
+        Objects.requireNonNull(transactionOutputMap, "MemoryFullPrunedBlockStore is closed");
+        List<UTXO> outputs = transactionOutputMap.values();
+        outputs.sort(UTXOSnapshot.ORDER);
+        return Collections.unmodifiableList(outputs).iterator();
+    }
+
     @Override
     public synchronized void removeUnspentTransactionOutput(UTXO out) throws BlockStoreException {
         Objects.requireNonNull(transactionOutputMap, "MemoryFullPrunedBlockStore is closed");
@@ -93,6 +93,8 @@ public class SPVBlockStore implements BlockStore {
             return size() > 100;  // This was chosen arbitrarily.
         }
     };
+    // Heights of the blocks on the best chain, so that ancestors can be found without walking back block by block.
+    private final ChainHeightIndex chainIndex;
     // Used to stop other applications/processes from opening the store.
     protected @Nullable FileLock fileLock;
     protected final RandomAccessFile randomAccessFile;
@@ -122,6 +124,7 @@ public class SPVBlockStore implements BlockStore {
         this.params = Objects.requireNonNull(params);
         checkArgument(capacity > 0, () -> "capacity must be positive");
         checkArgument(capacity < 144 * 365 * 10, () -> "capacity must be sane"); // 10 years
+        this.chainIndex = new ChainHeightIndex(capacity);
 
         boolean exists = file.exists();
 
@@ -364,6 +367,21 @@ public class SPVBlockStore implements BlockStore {
             byte[] headHash = chainHead.getHeader().getHash().getBytes();
             ((Buffer) buffer).position(8);
             buffer.put(headHash);
+            chainIndex.setChainHead(chainHead, this);
+        } finally { lock.unlock(); }
+    }
+
+    @Override
+    @Nullable
+    public StoredBlock getAncestor(StoredBlock block, int height) throws BlockStoreException {
+        checkArgument(height >= 0 && height <= block.getHeight(), () -> "bad height: " + height);
+        if (buffer == null) throw new BlockStoreException("Store closed");
+
+        lock.lock();
+        try {
+            if (chainIndex.isEmpty())
+                chainIndex.setChainHead(getChainHead(), this);
+            return chainIndex.getAncestor(block, height, this);
         } finally { lock.unlock(); }
     }
 
@@ -0,0 +1,307 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.store;
+
+import org.bitcoinj.base.Coin;
+import org.bitcoinj.base.Sha256Hash;
+import org.bitcoinj.base.VarInt;
+import org.bitcoinj.base.internal.ByteUtils;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.ProtocolException;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.core.StoredUndoableBlock;
+import org.bitcoinj.core.TransactionOutputChanges;
+import org.bitcoinj.core.UTXO;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.script.ScriptException;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * <p>Exports and loads snapshots of the set of unspent transaction outputs of a {@link FullPrunedBlockStore}, similar
+ * to the AssumeUTXO snapshots of Bitcoin Core. Loading a snapshot into an empty store lets a
+ * {@link org.bitcoinj.core.FullPrunedBlockChain} start verifying blocks from the block the snapshot was taken at,
+ * rather than replaying the whole chain from the genesis block.</p>
+ *
+ * <p>A snapshot contains the block it was taken at, the headers before it that are needed to check the difficulty
+ * and timestamps of the blocks that follow, and all unspent outputs, ordered by transaction hash and output index.
+ * The outputs are written in chunks of at most {@link #CHUNK_SIZE} outputs, each followed by its hash. The snapshot
+ * ends with a hash committing to the block and all chunks, see {@link #write(FullPrunedBlockStore, OutputStream)}.
+ * Only load snapshots whose hash you got from a source you trust.</p>
+ *
+ * <p>The format is, with all integers in little endian:</p>
+ * <pre>
+ *   magic "UTXOSNAP", version (uint32)
+ *   number of blocks (uint32), blocks in the compact format of StoredBlock, ascending, ending with the snapshot block
+ *   chunks: number of outputs (uint32), size in bytes (uint32), outputs, double SHA-256 of the outputs
+ *   end of chunks: zero (uint32)
+ *   number of outputs (int64)
+ *   snapshot hash: double SHA-256 of the snapshot block hash, all chunk hashes and the number of outputs
+ * </pre>
+ * <p>Each output is the transaction hash, the output index (uint32), the value (int64), the height shifted left by one
+ * and or-ed with one for coinbase outputs (uint32) and the length-prefixed script.</p>
+ */
+public final class UTXOSnapshot {
+    private static final Logger log = LoggerFactory.getLogger(UTXOSnapshot.class);
+
+    private static final byte[] MAGIC = "UTXOSNAP".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    /** Max number of outputs in a chunk. */
+    public static final int CHUNK_SIZE = 4096;
+    // A safety limit for the size of a chunk, to not allocate silly amounts of memory for a corrupted snapshot
+    private static final int MAX_CHUNK_BYTES = 64 * 1024 * 1024;
+    // Number of blocks the median timestamp check looks back
+    private static final int MEDIAN_TIMESTAMP_BLOCKS = 11;
+
+    /** The order of the outputs in a snapshot: by transaction hash and then output index. */
+    static final Comparator<UTXO> ORDER = Comparator.comparing(UTXO::getHash).thenComparingLong(UTXO::getIndex);
+
+    private UTXOSnapshot() {
+    }
+
+    /**
+     * Writes a snapshot of the unspent outputs of the given store, at its verified chain head. The store must not be
+     * changed while this runs, so don't connect blocks to it meanwhile.
+     * @param store store to take the snapshot of
+     * @param os stream to write to; it isn't closed
+     * @return hash of the snapshot, to check the snapshot against when loading it
+     * @throws BlockStoreException if the store doesn't support iterating its unspent outputs, or fails
+     * @throws IOException if writing fails
+     */
+    public static Sha256Hash write(FullPrunedBlockStore store, OutputStream os) throws BlockStoreException,
+            IOException {
+        StoredBlock base = store.getVerifiedChainHead();
+        if (base == null)
+            throw new BlockStoreException("Store has no verified chain head");
+        int interval = NetworkParameters.of(store.network()).getInterval();
+        // The blocks back to the last difficulty transition point are needed to check the difficulty of the blocks
+        // after the snapshot block.
+        int numBlocks = Math.min(Math.max(MEDIAN_TIMESTAMP_BLOCKS, base.getHeight() % interval + 1),
+                Math.min(base.getHeight() + 1, NetworkParameters.INTERVAL));
+        LinkedList<StoredBlock> blocks = new LinkedList<>();
+        for (StoredBlock cursor = base; cursor != null && blocks.size() < numBlocks; cursor = cursor.getPrev(store))
+            blocks.addFirst(cursor);
+
+        BufferedOutputStream out = new BufferedOutputStream(os);
+        out.write(MAGIC);
+        ByteUtils.writeInt32LE(VERSION, out);
+        ByteUtils.writeInt32LE(blocks.size(), out);
+        ByteBuffer blockBuf = ByteBuffer.allocate(StoredBlock.COMPACT_SERIALIZED_SIZE_V2);
+        for (StoredBlock block : blocks) {
+            blockBuf.clear();
+            block.serializeCompactV2(blockBuf);
+            out.write(blockBuf.array());
+        }
+
+        ByteArrayOutputStream commitment = new ByteArrayOutputStream();
+        commitment.write(base.getHeader().getHash().serialize());
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+        Iterator<UTXO> outputs = store.getUnspentTransactionOutputs();
+        long numOutputs = 0;
+        while (outputs.hasNext()) {
+            chunk.reset();
+            int chunkOutputs = 0;
+            while (outputs.hasNext() && chunkOutputs < CHUNK_SIZE) {
+                writeOutput(outputs.next(), chunk);
+                chunkOutputs++;
+            }
+            byte[] chunkBytes = chunk.toByteArray();
+            byte[] chunkHash = Sha256Hash.hashTwice(chunkBytes);
+            ByteUtils.writeInt32LE(chunkOutputs, out);
+            ByteUtils.writeInt32LE(chunkBytes.length, out);
+            out.write(chunkBytes);
+            out.write(chunkHash);
+            commitment.write(chunkHash);
+            numOutputs += chunkOutputs;
+        }
+        ByteUtils.writeInt32LE(0, out);
+        ByteUtils.writeInt64LE(numOutputs, out);
+        ByteUtils.writeInt64LE(numOutputs, commitment);
+        Sha256Hash snapshotHash = Sha256Hash.twiceOf(commitment.toByteArray());
+        out.write(snapshotHash.serialize());
+        out.flush();
+        log.info("Wrote snapshot {} of {} unspent outputs at height {}", snapshotHash, numOutputs,
+                base.getHeight());
+        return snapshotHash;
+    }
+
+    /**
+     * Loads a snapshot into the given store, which must not have connected any blocks yet. The outputs are added in
+     * bulk via {@link FullPrunedBlockStore#addUnspentTransactionOutputs(List)}, and the snapshot block becomes the
+     * verified chain head. Each chunk is checked against its hash before it is added. If anything is wrong with the
+     * snapshot, an exception is thrown and the store should be thrown away, as it may contain part of the snapshot.
+     * @param is stream to read the snapshot from; it isn't closed
+     * @param store empty store to load the snapshot into
+     * @param expectedHash hash the snapshot must have, or null to accept any snapshot
+     * @return the block the snapshot was taken at
+     * @throws BlockStoreException if the snapshot is invalid, or the store isn't empty or fails
+     * @throws IOException if reading fails
+     */
+    public static StoredBlock load(InputStream is, FullPrunedBlockStore store, @Nullable Sha256Hash expectedHash)
+            throws BlockStoreException, IOException {
+        StoredBlock head = store.getVerifiedChainHead();
+        if (head != null && head.getHeight() != 0)
+            throw new BlockStoreException("Store must not have connected any blocks, but is at height " +
+                    head.getHeight());
+        DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(MAGIC, magic))
+                throw new BlockStoreException("Not a UTXO snapshot");
+            int version = readInt32(in);
+            if (version != VERSION)
+                throw new BlockStoreException("Unsupported snapshot version: " + version);
+
+            int numBlocks = readInt32(in);
+            if (numBlocks <= 0 || numBlocks > NetworkParameters.INTERVAL)
+                throw new BlockStoreException("Invalid number of blocks: " + numBlocks);
+            byte[] blockBytes = new byte[StoredBlock.COMPACT_SERIALIZED_SIZE_V2 * numBlocks];
+            in.readFully(blockBytes);
+            ByteBuffer blockBuf = ByteBuffer.wrap(blockBytes);
+            List<StoredBlock> blocks = new ArrayList<>(numBlocks);
+            for (int i = 0; i < numBlocks; i++) {
+                StoredBlock block = StoredBlock.deserializeCompactV2(blockBuf);
+                if (i > 0) {
+                    StoredBlock prev = blocks.get(i - 1);
+                    if (!block.getHeader().prevHash().equals(prev.getHeader().getHash()) ||
+                            block.getHeight() != prev.getHeight() + 1)
+                        throw new BlockStoreException("Blocks of snapshot don't connect at height " +
+                                block.getHeight());
+                }
+                blocks.add(block);
+            }
+            StoredBlock base = blocks.get(numBlocks - 1);
+
+            ByteArrayOutputStream commitment = new ByteArrayOutputStream();
+            commitment.write(base.getHeader().getHash().serialize());
+            UTXO last = null;
+            long numOutputs = 0;
+            while (true) {
+                int chunkOutputs = readInt32(in);
+                if (chunkOutputs == 0)
+                    break;
+                int chunkSize = readInt32(in);
+                if (chunkOutputs < 0 || chunkOutputs > CHUNK_SIZE || chunkSize <= 0 || chunkSize > MAX_CHUNK_BYTES)
+                    throw new BlockStoreException("Invalid chunk of " + chunkOutputs + " outputs, " + chunkSize +
+                            " bytes");
+                byte[] chunkBytes = readBytes(in, chunkSize);
+                byte[] chunkHash = readBytes(in, Sha256Hash.LENGTH);
+                if (!Arrays.equals(chunkHash, Sha256Hash.hashTwice(chunkBytes)))
+                    throw new BlockStoreException("Chunk hash mismatch after " + numOutputs + " outputs");
+                commitment.write(chunkHash);
+                ByteBuffer chunkBuf = ByteBuffer.wrap(chunkBytes);
+                List<UTXO> outputs = new ArrayList<>(chunkOutputs);
+                for (int i = 0; i < chunkOutputs; i++) {
+                    UTXO output = readOutput(chunkBuf);
+                    if (last != null && ORDER.compare(last, output) >= 0)
+                        throw new BlockStoreException("Outputs of snapshot are not in order: " + output);
+                    if (output.getHeight() > base.getHeight())
+                        throw new BlockStoreException("Output created after the snapshot block: " + output);
+                    outputs.add(output);
+                    last = output;
+                }
+                if (chunkBuf.hasRemaining())
+                    throw new BlockStoreException("Trailing bytes in chunk");
+                store.addUnspentTransactionOutputs(outputs);
+                numOutputs += chunkOutputs;
+            }
+            if (ByteUtils.readInt64(readBytes(in, 8), 0) != numOutputs)
+                throw new BlockStoreException("Number of outputs mismatch");
+            ByteUtils.writeInt64LE(numOutputs, commitment);
+            Sha256Hash snapshotHash = Sha256Hash.read(ByteBuffer.wrap(readBytes(in, Sha256Hash.LENGTH)));
+            if (!snapshotHash.equals(Sha256Hash.twiceOf(commitment.toByteArray())))
+                throw new BlockStoreException("Snapshot hash mismatch");
+            if (expectedHash != null && !expectedHash.equals(snapshotHash))
+                throw new BlockStoreException("Unexpected snapshot " + snapshotHash + ", expected " + expectedHash);
+
+            for (int i = 0; i < numBlocks - 1; i++)
+                store.put(blocks.get(i));
+            // The snapshot block needs to be undoable to connect blocks on top of it. It can't really be undone though.
+            store.put(base, new StoredUndoableBlock(base.getHeader().getHash(),
+                    new TransactionOutputChanges(Collections.emptyList(), Collections.emptyList())));
+            store.setVerifiedChainHead(base);
+            log.info("Loaded snapshot {} of {} unspent outputs at height {}", snapshotHash, numOutputs,
+                    base.getHeight());
+            return base;
+        } catch (EOFException e) {
+            throw new BlockStoreException("Snapshot is truncated", e);
+        } catch (BufferUnderflowException | ProtocolException e) {
+            throw new BlockStoreException("Snapshot is corrupt", e);
+        }
+    }
+
+    private static void writeOutput(UTXO output, ByteArrayOutputStream out) throws IOException {
+        out.write(output.getHash().serialize());
+        ByteUtils.writeInt32LE(output.getIndex(), out);
+        ByteUtils.writeInt64LE(output.getValue().value, out);
+        ByteUtils.writeInt32LE(((long) output.getHeight() << 1) | (output.isCoinbase() ? 1 : 0), out);
+        byte[] program = output.getScript().program();
+        out.write(VarInt.of(program.length).serialize());
+        out.write(program);
+    }
+
+    private static UTXO readOutput(ByteBuffer buf) throws BufferUnderflowException {
+        Sha256Hash hash = Sha256Hash.read(buf);
+        long index = ByteUtils.readUint32(buf);
+        Coin value = Coin.valueOf(ByteUtils.readInt64(buf));
+        long heightAndCoinbase = ByteUtils.readUint32(buf);
+        byte[] program = new byte[VarInt.read(buf).intValue()];
+        buf.get(program);
+        return new UTXO(hash, index, value, (int) (heightAndCoinbase >>> 1), (heightAndCoinbase & 1) != 0,
+                parseScript(program));
+    }
+
+    // Like FullPrunedBlockChain does for the outputs it stores, unparseable scripts are replaced by an empty one.
+    private static Script parseScript(byte[] program) {
+        try {
+            return Script.parse(program);
+        } catch (ScriptException e) {
+            return Script.parse(new byte[0]);
+        }
+    }
+
+    private static int readInt32(DataInputStream in) throws IOException {
+        return (int) ByteUtils.readUint32(readBytes(in, 4), 0);
+    }
+
+    private static byte[] readBytes(DataInputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
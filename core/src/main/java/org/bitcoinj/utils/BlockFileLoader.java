@@ -17,26 +17,45 @@
 package org.bitcoinj.utils;
 
 import org.bitcoinj.base.Network;
+import org.bitcoinj.base.Sha256Hash;
 import org.bitcoinj.base.internal.ByteUtils;
 import org.bitcoinj.core.Block;
 import org.bitcoinj.core.MessageSerializer;
 import org.bitcoinj.core.NetworkParameters;
 import org.bitcoinj.core.ProtocolException;
+import org.bitcoinj.core.Transaction;
 import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.Spliterator;
 import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -60,7 +79,16 @@ import static org.bitcoinj.base.internal.Preconditions.checkArgument;
  * }</p>
  */
 public class BlockFileLoader implements Iterable<Block> {
+    private static final Logger log = LoggerFactory.getLogger(BlockFileLoader.class);
     private static final int BLOCKFILE_BUFFER_SIZE = 16 * 1024 * 1024;
+    // Blocks parsed ahead of the consumer, per parser thread
+    private static final int PARSE_AHEAD_PER_THREAD = 16;
+    // Connected blocks remembered, so that the children of recent blocks can be passed on even if they're not on
+    // the best chain
+    private static final int CONNECTED_BLOCKS_REMEMBERED = 10_000;
+
+    /** Default limit for the total size of blocks held back, in bytes. See {@link #setMaxWaitingBlocksSize(long)}. */
+    public static final long MAX_WAITING_BLOCKS_SIZE = 512 * 1024 * 1024;
 
     /**
      * Gets the list of files which contain blocks from Bitcoin Core.
@@ -92,6 +120,7 @@ public class BlockFileLoader implements Iterable<Block> {
     private final List<File> files;
     private final long packetMagic;
     private final MessageSerializer serializer;
+    private long maxWaitingBlocksSize = MAX_WAITING_BLOCKS_SIZE;
 
     public BlockFileLoader(Network network, File blocksDir) {
         this(network, getReferenceClientBlockFileList(blocksDir));
@@ -187,14 +216,279 @@ public class BlockFileLoader implements Iterable<Block> {
         }
     }
 
+    /**
+     * Iterates all the blocks in a single block file, by mapping it into memory. The blocks are slices of the mapped
+     * file, so they aren't copied until they are parsed. Like {@link BlockFileIterator}, it stops at the first
+     * truncated block.
+     */
+    private class MappedBlockFileIterator implements Iterator<ByteBuffer> {
+        private final ByteBuffer mapped;
+        private @Nullable ByteBuffer nextBlock = null;
+
+        private MappedBlockFileIterator(File blockFile) throws IOException {
+            try (FileChannel channel = FileChannel.open(blockFile.toPath(), StandardOpenOption.READ)) {
+                this.mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (nextBlock == null)
+                loadNextBlock();
+            return nextBlock != null;
+        }
+
+        @Override
+        public ByteBuffer next() throws NoSuchElementException {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            ByteBuffer next = nextBlock;
+            nextBlock = null;
+            return next;
+        }
+
+        private void loadNextBlock() {
+            int magic = (int) packetMagic;
+            int position = mapped.position();
+            int limit = mapped.limit();
+            // Skip to the next magic, e.g. over the zeros Bitcoin Core preallocates files with
+            while (position + 8 <= limit && mapped.getInt(position) != magic)
+                position++;
+            if (position + 8 > limit) {
+                mapped.position(limit);
+                return;
+            }
+            long size = Integer.toUnsignedLong(Integer.reverseBytes(mapped.getInt(position + 4)));
+            int start = position + 8;
+            if (size > limit - start) {
+                mapped.position(limit);
+                return;
+            }
+            int end = start + (int) size;
+            ByteBuffer block = mapped.duplicate();
+            block.position(start).limit(end);
+            nextBlock = block.slice();
+            mapped.position(end);
+        }
+    }
+
+    /**
+     * Sets the limit for the total size of the blocks {@link #streamInChainOrder(Sha256Hash, int, Predicate)} holds
+     * back while waiting for their parents, in bytes of their serialized form. When the limit is exceeded, the blocks
+     * that have been waiting the longest are dropped. The default is {@link #MAX_WAITING_BLOCKS_SIZE}. This must be
+     * called before the blocks are streamed.
+     * @param maxWaitingBlocksSize limit for the total size of the blocks held back
+     */
+    public void setMaxWaitingBlocksSize(long maxWaitingBlocksSize) {
+        checkArgument(maxWaitingBlocksSize > 0, () -> "size must be positive: " + maxWaitingBlocksSize);
+        this.maxWaitingBlocksSize = maxWaitingBlocksSize;
+    }
+
+    /**
+     * Same as {@link #streamInChainOrder(Sha256Hash, int, Predicate)}, for a chain that doesn't know any blocks apart
+     * from the start block and its ancestors, e.g. an empty one.
+     *
+     * @param startHash hash of the block to start from, usually the head of the chain being imported into
+     * @param threads number of threads to parse blocks on
+     * @return stream of blocks, each following its parent
+     */
+    public Stream<Block> streamInChainOrder(Sha256Hash startHash, int threads) {
+        return streamInChainOrder(startHash, threads, hash -> false);
+    }
+
+    /**
+     * <p>Returns the blocks from all files in an order they can be connected in, starting with the children of the
+     * given block. Bitcoin Core doesn't store blocks in height order, because it downloads them in parallel. This
+     * holds back each block until its parent has been returned.</p>
+     *
+     * <p>Blocks that are already known, e.g. because they are in the block store of the chain being imported into, are
+     * skipped. Blocks building on a known block are returned right away, as the chain can connect them. So importing
+     * into a chain that already has blocks doesn't hold back all the blocks up to its head. Blocks that don't connect
+     * otherwise are held in memory up to {@link #setMaxWaitingBlocksSize(long)}, the longest waiting ones are dropped
+     * beyond that. The number of dropped blocks is logged once the end of the files is reached.</p>
+     *
+     * <p>The files are mapped into memory and scanned for blocks on the consuming thread, while the blocks are
+     * parsed on the given number of threads. Parsing also computes the block hash and the transaction ids, so that
+     * they are cached by the time the blocks are added to a chain. The stream must be closed, to stop the parser
+     * threads in case it isn't consumed entirely.</p>
+     *
+     * <pre>{@code
+     * try (Stream<Block> blocks = loader.streamInChainOrder(chain.getChainHead().getHeader().getHash(), 4)) {
+     *     blocks.forEach(chain::add);
+     * }
+     * }</pre>
+     *
+     * @param startHash hash of the block to start from, usually the head of the chain being imported into
+     * @param threads number of threads to parse blocks on
+     * @param isKnown tells whether the block with the given hash is already known, called on the consuming thread
+     * @return stream of blocks, each following its parent or a known block
+     */
+    public Stream<Block> streamInChainOrder(Sha256Hash startHash, int threads, Predicate<Sha256Hash> isKnown) {
+        checkArgument(threads > 0, () -> "threads must be positive: " + threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new ContextPropagatingThreadFactory("Block file parser"));
+        Iterator<ByteBuffer> buffers = files.stream()
+                .flatMap(this::mappedFileBlockStream)
+                .iterator();
+        ChainOrderIterator iterator = new ChainOrderIterator(buffers, executor, threads * PARSE_AHEAD_PER_THREAD,
+                startHash, isKnown, maxWaitingBlocksSize);
+        int characteristics = Spliterator.DISTINCT | Spliterator.ORDERED | Spliterator.NONNULL;
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, characteristics), false)
+                .onClose(executor::shutdownNow);
+    }
+
+    private Stream<ByteBuffer> mappedFileBlockStream(File file) {
+        try {
+            Iterator<ByteBuffer> iterator = new MappedBlockFileIterator(file);
+            int characteristics = Spliterator.DISTINCT | Spliterator.ORDERED;
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, characteristics), false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Unlike stream(), this deserializes the transactions right away, as doing that on the parser threads is the
+    // point of streamInChainOrder().
+    private Block parse(ByteBuffer buffer) {
+        Block block = serializer.makeBlock(buffer);
+        block.getHash();
+        if (block.transactions() != null)
+            for (Transaction tx : block.transactions())
+                tx.getTxId();
+        return block;
+    }
+
+    /**
+     * Parses blocks ahead of the consumer on an executor, and holds back blocks until their parent has been
+     * returned.
+     */
+    private class ChainOrderIterator implements Iterator<Block> {
+        private final Iterator<ByteBuffer> buffers;
+        private final ExecutorService executor;
+        private final int parseAhead;
+        private final Predicate<Sha256Hash> isKnown;
+        private final long maxWaitingSize;
+        private final Deque<Future<Block>> parsing = new ArrayDeque<>();
+        // blocks waiting for their parent, keyed by the parent hash, the longest waiting first
+        private final LinkedHashMap<Sha256Hash, List<Block>> waiting = new LinkedHashMap<>();
+        // total size of the waiting blocks, in bytes
+        private long waitingSize = 0;
+        // number of waiting blocks dropped because of the size limit
+        private int dropped = 0;
+        // blocks whose parent has been returned
+        private final Deque<Block> ready = new ArrayDeque<>();
+        private final Set<Sha256Hash> connected = Collections.newSetFromMap(
+                new LinkedHashMap<Sha256Hash, Boolean>() {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<Sha256Hash, Boolean> eldest) {
+                        return size() > CONNECTED_BLOCKS_REMEMBERED;
+                    }
+                });
+
+        private ChainOrderIterator(Iterator<ByteBuffer> buffers, ExecutorService executor, int parseAhead,
+                                   Sha256Hash startHash, Predicate<Sha256Hash> isKnown, long maxWaitingSize) {
+            this.buffers = buffers;
+            this.executor = executor;
+            this.parseAhead = parseAhead;
+            this.isKnown = isKnown;
+            this.maxWaitingSize = maxWaitingSize;
+            connected.add(startHash);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (ready.isEmpty()) {
+                while (parsing.size() < parseAhead && buffers.hasNext()) {
+                    ByteBuffer buffer = buffers.next();
+                    parsing.add(executor.submit(() -> parse(buffer)));
+                }
+                if (parsing.isEmpty()) {
+                    executor.shutdown();
+                    if (!waiting.isEmpty() || dropped > 0) {
+                        int count = waiting.values().stream().mapToInt(List::size).sum();
+                        log.warn("Dropping {} blocks that never connected, building on {} unknown blocks, " +
+                                "and dropped {} blocks that waited too long", count, waiting.size(), dropped);
+                        if (log.isDebugEnabled())
+                            waiting.forEach((prevHash, blocks) -> blocks.forEach(block ->
+                                    log.debug("  block {} building on {}", block.getHash(), prevHash)));
+                        waiting.clear();
+                        waitingSize = 0;
+                    }
+                    return false;
+                }
+                Block block = take(parsing.poll());
+                if (block == null || connected.contains(block.getHash()) || isKnown.test(block.getHash()))
+                    continue; // unparseable, duplicate or known
+                if (connected.contains(block.prevHash()) || isKnown.test(block.prevHash()))
+                    ready.add(block);
+                else
+                    addWaiting(block);
+            }
+            return true;
+        }
+
+        private void addWaiting(Block block) {
+            waiting.computeIfAbsent(block.prevHash(), k -> new ArrayList<>(1)).add(block);
+            waitingSize += block.messageSize();
+            while (waitingSize > maxWaitingSize) {
+                Iterator<Map.Entry<Sha256Hash, List<Block>>> eldest = waiting.entrySet().iterator();
+                Map.Entry<Sha256Hash, List<Block>> entry = eldest.next();
+                eldest.remove();
+                for (Block eldestBlock : entry.getValue()) {
+                    log.debug("Dropping block {} building on {}, waited too long", eldestBlock.getHash(),
+                            entry.getKey());
+                    waitingSize -= eldestBlock.messageSize();
+                    dropped++;
+                }
+            }
+        }
+
+        @Override
+        public Block next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Block block = ready.poll();
+            Sha256Hash hash = block.getHash();
+            connected.add(hash);
+            List<Block> children = waiting.remove(hash);
+            if (children != null) {
+                for (Block child : children)
+                    waitingSize -= child.messageSize();
+                ready.addAll(children);
+            }
+            return block;
+        }
+
+        @Nullable
+        private Block take(Future<Block> future) {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof ProtocolException)
+                    return null;
+                throw new RuntimeException("unexpected problem with block", e.getCause());
+            }
+        }
+    }
+
     @Override
     public Iterator<Block> iterator() {
         return stream().iterator();
     }
 
+    /**
+     * Returns the blocks from all files, in the order they are stored. The transactions of each block are only
+     * deserialized when they are accessed, see {@link Block#readLazily(ByteBuffer)}, so scanning the files for
+     * headers, transaction ids or a few matching transactions doesn't pay for deserializing all of them.
+     *
+     * @return stream of blocks
+     */
     public Stream<Block> stream() {
         return streamBuffers()
-                .map(serializer::makeBlock);
+                .map(Block::readLazily);
     }
 
     public Stream<ByteBuffer> streamBuffers() {
@@ -717,6 +717,16 @@ public class DeterministicKeyChain implements EncryptableKeyChain {
 
     }
 
+    // Like numKeys(), but without deriving the lookahead zone first.
+    int numKeysDerived() {
+        lock.lock();
+        try {
+            return basicKeyChain.numKeys();
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * Returns number of leaf keys used including both internal and external paths. This may be fewer than the number
      * that have been deserialized or held in memory, because of the lookahead zone.
@@ -700,6 +700,15 @@ public class KeyChainGroup implements KeyBag {
         return result;
     }
 
+    // Like numKeys(), but without deriving the lookahead zones of the deterministic chains first.
+    int numKeysDerived() {
+        int result = basic.numKeys();
+        if (chains != null)
+            for (DeterministicKeyChain chain : chains)
+                result += chain.numKeysDerived();
+        return result;
+    }
+
     /**
      * Removes a key that was imported into the basic key chain. You cannot remove deterministic keys.
      * @throws java.lang.IllegalArgumentException if the key is deterministic.
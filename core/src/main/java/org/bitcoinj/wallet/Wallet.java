@@ -26,6 +26,7 @@ import org.bitcoinj.base.exceptions.AddressFormatException;
 import org.bitcoinj.base.internal.ByteUtils;
 import org.bitcoinj.base.internal.PlatformUtils;
 import org.bitcoinj.base.internal.TimeUtils;
+import org.bitcoinj.base.internal.PooledWriter;
 import org.bitcoinj.base.internal.StreamUtils;
 import org.bitcoinj.crypto.AesKey;
 import org.bitcoinj.core.AbstractBlockChain;
@@ -85,6 +86,7 @@ import org.bitcoinj.signers.MissingSigResolutionSigner;
 import org.bitcoinj.signers.TransactionSigner;
 import org.bitcoinj.utils.BaseTaggableObject;
 import org.bitcoinj.base.internal.FutureUtils;
+import org.bitcoinj.base.internal.OpenHashMap;
 import org.bitcoinj.utils.ListenerRegistration;
 import org.bitcoinj.utils.Threading;
 import org.bitcoinj.protobuf.wallet.Protos;
@@ -113,6 +115,7 @@ import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -221,6 +224,14 @@ public class Wallet extends BaseTaggableObject
     // Used to speed up various calculations.
     protected final Set<TransactionOutput> myUnspents = new HashSet<>();
 
+    // For the transactions in myUnspents, which of their outputs we can sign for, by output index. This saves looking
+    // up keys for each unspent output every time spend candidates are calculated. The bits only stay valid as long as
+    // no keys are added or removed, see ownedOutputs().
+    @GuardedBy("lock") private final Map<Sha256Hash, BitSet> ownedOutputs = new OpenHashMap<>();
+    @GuardedBy("lock") private long ownedOutputsKeyState = -1;
+    // Counts removals of imported keys, which can leave the number of keys unchanged if combined with an import.
+    private volatile int keyRemovals;
+
     // Transactions that were dropped by the risk analysis system. These are not in any pools and not serialized
     // to disk. We have to keep them around because if we ignore a tx because we think it will never confirm, but
     // then it actually does confirm and does so within the same network session, remote peers will not resend us
@@ -505,11 +516,11 @@ public class Wallet extends BaseTaggableObject
         this.coinSelector = DefaultCoinSelector.get(network);
         this.keyChainGroup = Objects.requireNonNull(keyChainGroup);
         watchedScripts = new HashSet<>();
-        unspent = new HashMap<>();
-        spent = new HashMap<>();
-        pending = new HashMap<>();
-        dead = new HashMap<>();
-        transactions = new HashMap<>();
+        unspent = new OpenHashMap<>();
+        spent = new OpenHashMap<>();
+        pending = new OpenHashMap<>();
+        dead = new OpenHashMap<>();
+        transactions = new OpenHashMap<>();
         extensions = new HashMap<>();
         // Use a linked hash map to ensure ordering of event listeners is correct.
         confidenceChanged = new LinkedHashMap<>();
@@ -843,7 +854,10 @@ public class Wallet extends BaseTaggableObject
     public boolean removeKey(ECKey key) {
         keyChainGroupLock.lock();
         try {
-            return keyChainGroup.removeImportedKey(key);
+            boolean removed = keyChainGroup.removeImportedKey(key);
+            if (removed)
+                keyRemovals++;
+            return removed;
         } finally {
             keyChainGroupLock.unlock();
         }
@@ -1981,7 +1995,8 @@ public class Wallet extends BaseTaggableObject
 
                 // Clone transaction to avoid multiple wallets pointing to the same transaction. This can happen when
                 // two wallets depend on the same transaction.
-                Transaction cloneTx = params.getDefaultSerializer().makeTransaction(ByteBuffer.wrap(tx.serialize()));
+                Transaction cloneTx = PooledWriter.write(tx::write, tx::messageSize,
+                        params.getDefaultSerializer()::makeTransaction);
                 cloneTx.setPurpose(tx.getPurpose());
                 Optional<Instant> updateTime = tx.updateTime();
                 if (updateTime.isPresent())
@@ -2004,7 +2019,8 @@ public class Wallet extends BaseTaggableObject
 
             // Clone transaction to avoid multiple wallets pointing to the same transaction. This can happen when
             // two wallets depend on the same transaction.
-            Transaction cloneTx = params.getDefaultSerializer().makeTransaction(ByteBuffer.wrap(tx.serialize()));
+            Transaction cloneTx = PooledWriter.write(tx::write, tx::messageSize,
+                    params.getDefaultSerializer()::makeTransaction);
             cloneTx.setPurpose(tx.getPurpose());
             Optional<Instant> updateTime = tx.updateTime();
             if (updateTime.isPresent())
@@ -4583,10 +4599,18 @@ public class Wallet extends BaseTaggableObject
         try {
             List<TransactionOutput> candidates;
             if (vUTXOProvider == null) {
+                Map<Sha256Hash, BitSet> ownedOutputs = ownedOutputs();
                 candidates = myUnspents.stream()
-                    .filter(output ->   (!excludeUnsignable || canSignFor(output.getScriptPubKey())) &&
+                    .filter(output ->   (!excludeUnsignable || canSignFor(output, ownedOutputs)) &&
                                         (!excludeImmatureCoinbases || isTransactionMature(output.getParentTransaction())))
                     .collect(StreamUtils.toUnmodifiableList());
+                if (ownedOutputs.size() > myUnspents.size()) {
+                    // Forget about transactions we no longer have unspent outputs of.
+                    Set<Sha256Hash> unspentTxIds = myUnspents.stream()
+                            .map(output -> output.getParentTransaction().getTxId())
+                            .collect(Collectors.toSet());
+                    ownedOutputs.keySet().retainAll(unspentTxIds);
+                }
             } else {
                 candidates = calculateAllSpendCandidatesFromUTXOProviderInternal(excludeImmatureCoinbases);
             }
@@ -4626,6 +4650,57 @@ public class Wallet extends BaseTaggableObject
         return false;
     }
 
+    // Returns the cache of outputs we can sign for, emptied first if keys have been added or removed since it was filled.
+    private Map<Sha256Hash, BitSet> ownedOutputs() {
+        checkState(lock.isHeldByCurrentThread());
+        long keyState;
+        keyChainGroupLock.lock();
+        try {
+            keyState = ((long) keyRemovals << 32) | keyChainGroup.numKeysDerived();
+        } finally {
+            keyChainGroupLock.unlock();
+        }
+        if (keyState != ownedOutputsKeyState) {
+            ownedOutputs.clear();
+            ownedOutputsKeyState = keyState;
+        }
+        return ownedOutputs;
+    }
+
+    // Like canSignFor(Script), but the result for all outputs of the parent transaction is computed once and remembered.
+    private boolean canSignFor(TransactionOutput output, Map<Sha256Hash, BitSet> ownedOutputs) {
+        Transaction parent = output.getParentTransaction();
+        if (parent == null)
+            return canSignFor(output);
+        BitSet owned = ownedOutputs.computeIfAbsent(parent.getTxId(), txId -> {
+            List<TransactionOutput> outputs = parent.getOutputs();
+            BitSet bits = new BitSet(outputs.size());
+            for (int i = 0; i < outputs.size(); i++)
+                bits.set(i, canSignFor(outputs.get(i)));
+            return bits;
+        });
+        return owned.get(output.getIndex());
+    }
+
+    // Like canSignFor(Script), but using the script type and key or hash the output remembers.
+    private boolean canSignFor(TransactionOutput output) {
+        ScriptType type = output.getScriptType();
+        if (type == ScriptType.P2PK) {
+            ECKey key = findKeyFromPubKey(output.getScriptKeyOrHash());
+            return key != null && (key.isEncrypted() || key.hasPrivKey());
+        } else if (type == ScriptType.P2PKH || type == ScriptType.P2WPKH) {
+            ECKey key = findKeyFromPubKeyHash(output.getScriptKeyOrHash(), type);
+            return key != null && (key.isEncrypted() || key.hasPrivKey()) &&
+                    (type != ScriptType.P2WPKH || key.isCompressed());
+        } else {
+            try {
+                return canSignFor(output.getScriptPubKey());
+            } catch (ScriptException e) {
+                return false;
+            }
+        }
+    }
+
     /**
      * Returns the spendable candidates from the {@link UTXOProvider} based on keys that the wallet contains.
      * @return The list of candidates.
@@ -5095,10 +5170,10 @@ public class Wallet extends BaseTaggableObject
 
     // Returns true if the output is one that won't be selected by a data element matching in the scriptSig.
     private boolean isTxOutputBloomFilterable(TransactionOutput out) {
-        Script script = out.getScriptPubKey();
-        boolean isScriptTypeSupported = ScriptPattern.isP2PK(script) || ScriptPattern.isP2SH(script)
-                || ScriptPattern.isP2WPKH(script) || ScriptPattern.isP2WSH(script);
-        return (isScriptTypeSupported && out.isMine(this)) || watchedScripts.contains(script);
+        ScriptType type = out.getScriptType();
+        boolean isScriptTypeSupported = type == ScriptType.P2PK || type == ScriptType.P2SH
+                || type == ScriptType.P2WPKH || type == ScriptType.P2WSH;
+        return (isScriptTypeSupported && out.isMine(this)) || watchedScripts.contains(out.getScriptPubKey());
     }
 
     /**
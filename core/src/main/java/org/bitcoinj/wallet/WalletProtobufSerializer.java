@@ -20,6 +20,7 @@ package org.bitcoinj.wallet;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.UnsafeByteOperations;
 import com.google.protobuf.WireFormat;
 import org.bitcoinj.base.BitcoinNetwork;
 import org.bitcoinj.base.Coin;
@@ -427,7 +428,7 @@ public class WalletProtobufSerializer {
     }
 
     public static ByteString hashToByteString(Sha256Hash hash) {
-        return ByteString.copyFrom(hash.getBytes());
+        return UnsafeByteOperations.unsafeWrap(hash.getBytes()); // getBytes() returns a new array
     }
 
     public static Sha256Hash byteStringToHash(ByteString bs) {
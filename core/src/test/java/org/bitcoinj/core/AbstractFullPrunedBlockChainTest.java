@@ -22,6 +22,7 @@ import org.bitcoinj.base.Address;
 import org.bitcoinj.base.BitcoinNetwork;
 import org.bitcoinj.base.Coin;
 import org.bitcoinj.base.ScriptType;
+import org.bitcoinj.base.Sha256Hash;
 import org.bitcoinj.base.internal.TimeUtils;
 import org.bitcoinj.crypto.ECKey;
 import org.bitcoinj.params.BitcoinNetworkParams;
@@ -44,6 +45,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -51,6 +53,7 @@ import static org.bitcoinj.base.Coin.FIFTY_COINS;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -178,6 +181,82 @@ public abstract class AbstractFullPrunedBlockChainTest {
         } catch (Exception e) {}
     }
 
+    @Test
+    public void assumeValid() throws Exception {
+        FullPrunedBlockStore store = createStore(PARAMS, 10);
+        FullPrunedBlockChain chain = new FullPrunedBlockChain(PARAMS, store);
+        ECKey outKey = ECKey.random();
+        int height = 1;
+
+        // Build some blocks on genesis block to create two spendable outputs
+        Block rollingBlock = PARAMS.getGenesisBlock();
+        List<TransactionOutput> spendableOutputs = new ArrayList<>();
+        for (int i = 0; i < PARAMS.getSpendableCoinbaseDepth() + 1; i++) {
+            rollingBlock = TestBlocks.createNextBlockWithCoinbase(rollingBlock, Block.BLOCK_VERSION_GENESIS, outKey.getPubKey(), height++);
+            TestBlocks.solve(rollingBlock);
+            chain.add(rollingBlock);
+            spendableOutputs.add(rollingBlock.transaction(0).getOutput(0));
+        }
+
+        // A block spending with an invalid script, but below the assume-valid block
+        Block assumedValid = createBlockWithInvalidSpend(rollingBlock, spendableOutputs.get(0));
+        Block tip = TestBlocks.createNextBlock(assumedValid, null);
+        TestBlocks.solve(tip);
+        chain.setAssumeValidBlock(tip.getHash(), height + 1);
+        assertTrue(chain.add(assumedValid));
+        assertTrue(chain.add(tip));
+        assertEquals(1, chain.getInputsSkipped());
+        assertEquals(0, chain.getInputsVerified());
+
+        // Past the assume-valid block, scripts are verified again.
+        Block invalid = createBlockWithInvalidSpend(tip, spendableOutputs.get(1));
+        try {
+            chain.add(invalid);
+            fail();
+        } catch (VerificationException e) {
+            // expected
+        }
+        assertEquals(tip.getHash(), chain.getChainHead().getHeader().getHash());
+        Block valid = TestBlocks.createNextBlock(tip, null);
+        Transaction t = new Transaction();
+        t.addOutput(new TransactionOutput(t, FIFTY_COINS, new byte[] {}));
+        TransactionOutput spendableOutput = spendableOutputs.get(1);
+        t.addSignedInput(spendableOutput.getOutPointFor(), spendableOutput.getScriptPubKey(), spendableOutput.getValue(),
+                outKey);
+        valid.addTransaction(t);
+        TestBlocks.solve(valid);
+        assertTrue(chain.add(valid));
+        assertEquals(1, chain.getInputsSkipped());
+        assertEquals(1, chain.getInputsVerified());
+        try {
+            store.close();
+        } catch (Exception e) {}
+    }
+
+    @Test
+    public void assumeValid_lockin() throws Exception {
+        FullPrunedBlockStore store = createStore(PARAMS, 10);
+        FullPrunedBlockChain chain = new FullPrunedBlockChain(PARAMS, store);
+        chain.setAssumeValidBlock(Sha256Hash.ZERO_HASH, 1);
+        Block block = TestBlocks.createNextBlockWithCoinbase(PARAMS.getGenesisBlock(), Block.BLOCK_VERSION_GENESIS,
+                ECKey.random().getPubKey(), 1);
+        TestBlocks.solve(block);
+        thrown.expect(VerificationException.class);
+        chain.add(block);
+    }
+
+    private static Block createBlockWithInvalidSpend(Block prev, TransactionOutput spendableOutput) {
+        Block block = TestBlocks.createNextBlock(prev, null);
+        Transaction t = new Transaction();
+        t.addOutput(new TransactionOutput(t, FIFTY_COINS, new byte[] {}));
+        TransactionInput input = t.addInput(spendableOutput);
+        // Invalid script.
+        t.replaceInput(t.getInputs().size() - 1, input.withoutScriptBytes());
+        block.addTransaction(t);
+        TestBlocks.solve(block);
+        return block;
+    }
+
     @Test
     public void testFinalizedBlocks() throws Exception {
         final int UNDOABLE_BLOCKS_STORED = 10;
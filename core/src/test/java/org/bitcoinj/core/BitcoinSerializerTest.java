@@ -17,6 +17,7 @@
 
 package org.bitcoinj.core;
 
+import org.bitcoinj.base.VarInt;
 import org.bitcoinj.base.internal.ByteUtils;
 import org.bitcoinj.base.internal.TimeUtils;
 import org.bitcoinj.params.MainNetParams;
@@ -30,13 +31,16 @@ import java.nio.BufferOverflowException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class BitcoinSerializerTest {
     private static final NetworkParameters MAINNET = MainNetParams.get();
@@ -136,6 +140,15 @@ public class BitcoinSerializerTest {
         assertArrayEquals(TRANSACTION_MESSAGE_BYTES, bos.toByteArray());
     }
 
+    @Test
+    public void testTransactionView() throws Exception {
+        MessageSerializer serializer = MAINNET.getSerializer();
+        Transaction transaction = (Transaction) serializer.deserialize(ByteBuffer.wrap(TRANSACTION_MESSAGE_BYTES));
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        serializer.serialize(TransactionView.of(transaction), bos);
+        assertArrayEquals(TRANSACTION_MESSAGE_BYTES, bos.toByteArray());
+    }
+
     /**
      * Get 1 header of the block number 1 (the first one is 0) in the chain
      */
@@ -226,6 +239,143 @@ public class BitcoinSerializerTest {
         MAINNET.getDefaultSerializer().seekPastMagicBytes(ByteBuffer.wrap(brokenMessage));
     }
 
+    @Test
+    public void testDecoder() throws Exception {
+        MessageSerializer serializer = MAINNET.getDefaultSerializer();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(ADDRESS_MESSAGE_BYTES);
+        stream.write(ByteUtils.parseHex("f9beb4")); // garbage, including part of the magic bytes
+        serializer.serialize(new VersionAck(), stream);
+        stream.write(TRANSACTION_MESSAGE_BYTES);
+        stream.write(ADDRESS_MESSAGE_BYTES);
+        byte[] bytes = stream.toByteArray();
+
+        // Feed the stream in chunks of every size, the result must be the same.
+        for (int chunkSize = 1; chunkSize <= bytes.length; chunkSize++) {
+            for (MessageSerializer.Decoder decoder : newDecoders(serializer)) {
+                List<Message> messages = new ArrayList<>();
+                for (int i = 0; i < bytes.length; i += chunkSize) {
+                    ByteBuffer chunk = ByteBuffer.wrap(bytes, i, Math.min(chunkSize, bytes.length - i));
+                    decoder.decode(chunk, messages::add);
+                    assertFalse(chunk.hasRemaining());
+                }
+                assertEquals(4, messages.size());
+                assertTrue(messages.get(0) instanceof AddressV1Message);
+                assertTrue(messages.get(1) instanceof VersionAck);
+                assertTrue(messages.get(2) instanceof Transaction);
+                assertArrayEquals(TRANSACTION_MESSAGE_BYTES, serialize(serializer, messages.get(2)));
+                assertArrayEquals(ADDRESS_MESSAGE_BYTES, serialize(serializer, messages.get(3)));
+            }
+        }
+    }
+
+    @Test
+    public void testDecoderSkipsPayload() throws Exception {
+        MessageSerializer serializer = MAINNET.getDefaultSerializer();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(TRANSACTION_MESSAGE_BYTES);
+        stream.write(ADDRESS_MESSAGE_BYTES);
+        for (MessageSerializer.Decoder decoder : newDecoders(serializer)) {
+            List<String> headers = new ArrayList<>();
+            List<Message> messages = new ArrayList<>();
+            decoder.decode(ByteBuffer.wrap(stream.toByteArray()), new MessageSerializer.Decoder.Listener() {
+                @Override
+                public boolean onHeader(BitcoinSerializer.BitcoinPacketHeader header) {
+                    headers.add(header.command);
+                    return !header.command.equals("tx");
+                }
+
+                @Override
+                public void onMessage(Message message) {
+                    messages.add(message);
+                }
+            });
+            assertEquals(Arrays.asList("tx", "addr"), headers);
+            assertEquals(1, messages.size());
+            assertTrue(messages.get(0) instanceof AddressV1Message);
+        }
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void testDecoderChecksumMismatch() {
+        byte[] bytes = Arrays.copyOf(TRANSACTION_MESSAGE_BYTES, TRANSACTION_MESSAGE_BYTES.length);
+        bytes[bytes.length - 1]++;
+        MAINNET.getDefaultSerializer().newDecoder().decode(ByteBuffer.wrap(bytes), message -> fail());
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void testDecoderNoMagicBytes() {
+        byte[] garbage = new byte[MessageSerializer.Decoder.MAX_GARBAGE_LENGTH + 1];
+        MAINNET.getDefaultSerializer().newDecoder().decode(ByteBuffer.wrap(garbage), message -> fail());
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void testBufferingDecoderChecksumMismatch() {
+        byte[] bytes = Arrays.copyOf(TRANSACTION_MESSAGE_BYTES, TRANSACTION_MESSAGE_BYTES.length);
+        bytes[bytes.length - 1]++;
+        new MessageSerializer.BufferingDecoder(MAINNET.getDefaultSerializer()).decode(ByteBuffer.wrap(bytes),
+                message -> fail());
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void testBufferingDecoderNoMagicBytes() {
+        // Garbage may be followed by the magic bytes and part of a header, which are only known after more bytes.
+        byte[] garbage = new byte[MessageSerializer.Decoder.MAX_GARBAGE_LENGTH + 4
+                + BitcoinSerializer.BitcoinPacketHeader.HEADER_LENGTH + 1];
+        new MessageSerializer.BufferingDecoder(MAINNET.getDefaultSerializer()).decode(ByteBuffer.wrap(garbage),
+                message -> fail());
+    }
+
+    @Test
+    public void testDecoderDeferredChecksum() throws Exception {
+        MessageSerializer serializer = MAINNET.getDefaultSerializer();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        // An inv message that is just large enough for its checksum to be deferred
+        int count = MessageSerializer.Decoder.MIN_DEFERRED_CHECKSUM_SIZE / 36 + 1;
+        ByteBuffer largePayload = ByteBuffer.allocate(VarInt.sizeOf(count) + count * 36);
+        VarInt.of(count).write(largePayload);
+        while (largePayload.hasRemaining())
+            ByteUtils.writeInt32LE(InventoryItem.Type.TRANSACTION.code, largePayload).put(new byte[32]);
+        serializer.serialize("inv", largePayload.array(), stream);
+        serializer.serialize("inv", largePayload.array(), stream);
+        stream.write(ADDRESS_MESSAGE_BYTES);
+        byte[] bytes = stream.toByteArray();
+        bytes[bytes.length - ADDRESS_MESSAGE_BYTES.length - 1]++; // break the second payload
+
+        List<Runnable> checks = new ArrayList<>();
+        List<ProtocolException> failures = new ArrayList<>();
+        List<Message> messages = new ArrayList<>();
+        MessageSerializer.Decoder decoder = serializer.newDecoder();
+        decoder.deferChecksums(checks::add, failures::add);
+        decoder.decode(ByteBuffer.wrap(bytes), messages::add);
+        // All messages are passed on, the checksums of the large ones are verified later.
+        assertEquals(3, messages.size());
+        assertEquals(2, checks.size());
+        checks.forEach(Runnable::run);
+        assertEquals(1, failures.size());
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void testDecoderDeferredChecksumSmallPayload() {
+        byte[] bytes = Arrays.copyOf(TRANSACTION_MESSAGE_BYTES, TRANSACTION_MESSAGE_BYTES.length);
+        bytes[bytes.length - 1]++;
+        MessageSerializer.Decoder decoder = MAINNET.getDefaultSerializer().newDecoder();
+        decoder.deferChecksums(check -> fail(), failure -> fail());
+        // Small payloads are still verified while decoding.
+        decoder.decode(ByteBuffer.wrap(bytes), message -> fail());
+    }
+
+    // The decoder of the serializer, and the default one that only uses its header and payload methods
+    private static List<MessageSerializer.Decoder> newDecoders(MessageSerializer serializer) {
+        return Arrays.asList(serializer.newDecoder(), new MessageSerializer.BufferingDecoder(serializer));
+    }
+
+    private static byte[] serialize(MessageSerializer serializer, Message message) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        serializer.serialize(message, bos);
+        return bos.toByteArray();
+    }
+
     /**
      * Tests serialization of an unknown message.
      */
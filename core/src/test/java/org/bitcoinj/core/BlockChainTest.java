@@ -44,7 +44,13 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.bitcoinj.base.Coin.COIN;
 import static org.bitcoinj.base.Coin.FIFTY_COINS;
@@ -140,6 +146,86 @@ public class BlockChainTest {
         assertEquals(testNetChain.getChainHead().getHeader(), b3.asHeader());
     }
 
+    @Test
+    public void unconnectedBlocks_shuffled() throws Exception {
+        Context.propagate(new Context(100, Coin.ZERO, false, true));
+        List<Block> blocks = new ArrayList<>();
+        Block prev = TESTNET.getGenesisBlock();
+        for (int i = 0; i < 50; i++) {
+            prev = TestBlocks.createNextBlock(prev, coinbaseTo);
+            blocks.add(prev);
+        }
+        List<Block> shuffled = new ArrayList<>(blocks.subList(1, blocks.size()));
+        Collections.shuffle(shuffled, new Random(1));
+        for (Block block : shuffled)
+            assertFalse(testNetChain.add(block));
+        assertTrue(testNetChain.isOrphan(blocks.get(49).getHash()));
+        assertEquals(blocks.get(1), testNetChain.getOrphanRoot(blocks.get(49).getHash()));
+        // The missing block connects all the others.
+        assertTrue(testNetChain.add(blocks.get(0)));
+        assertEquals(blocks.get(49).asHeader(), testNetChain.getChainHead().getHeader());
+        assertEquals(50, testNetChain.getBestChainHeight());
+        assertFalse(testNetChain.isOrphan(blocks.get(49).getHash()));
+    }
+
+    @Test
+    public void unconnectedBlocks_evictEldest() throws Exception {
+        Context.propagate(new Context(100, Coin.ZERO, false, true));
+        Block b1 = TestBlocks.createNextBlock(TESTNET.getGenesisBlock(), coinbaseTo);
+        Block b2 = TestBlocks.createNextBlock(b1, coinbaseTo);
+        Block b3 = TestBlocks.createNextBlock(b2, coinbaseTo);
+        Block b4 = TestBlocks.createNextBlock(b3, coinbaseTo);
+        testNetChain.setMaxOrphanBlocksSize(b3.messageSize() + b4.messageSize());
+        assertFalse(testNetChain.add(b2));
+        assertFalse(testNetChain.add(b3));
+        assertFalse(testNetChain.add(b4));
+        assertFalse(testNetChain.isOrphan(b2.getHash()));
+        assertTrue(testNetChain.isOrphan(b3.getHash()));
+        assertTrue(testNetChain.isOrphan(b4.getHash()));
+        // b2 is gone, so b3 and b4 can't be connected yet
+        assertTrue(testNetChain.add(b1));
+        assertEquals(b1.asHeader(), testNetChain.getChainHead().getHeader());
+        assertTrue(testNetChain.add(b2));
+        assertEquals(b4.asHeader(), testNetChain.getChainHead().getHeader());
+    }
+
+    @Test
+    public void addHeaders() throws Exception {
+        Context.propagate(new Context(100, Coin.ZERO, false, true));
+        List<Block> headers = new ArrayList<>();
+        Block prev = TESTNET.getGenesisBlock();
+        for (int i = 0; i < 50; i++) {
+            prev = TestBlocks.createNextBlock(prev, coinbaseTo);
+            headers.add(prev.asHeader());
+        }
+        assertEquals(30, testNetChain.addHeaders(headers.subList(0, 30)));
+        assertEquals(30, testNetChain.getBestChainHeight());
+        assertEquals(headers.get(29), testNetStore.getChainHead().getHeader());
+        // Headers that are already known are fine. These are hashed on the pool.
+        testNetChain.setVerificationPool(ForkJoinPool.commonPool());
+        assertEquals(30, testNetChain.addHeaders(headers.subList(20, 50)));
+        assertEquals(50, testNetChain.getBestChainHeight());
+        assertEquals(headers.get(49), testNetStore.getChainHead().getHeader());
+    }
+
+    @Test
+    public void addHeaders_unconnected() throws Exception {
+        Context.propagate(new Context(100, Coin.ZERO, false, true));
+        Block b1 = TestBlocks.createNextBlock(TESTNET.getGenesisBlock(), coinbaseTo).asHeader();
+        Block b2 = TestBlocks.createNextBlock(b1, coinbaseTo).asHeader();
+        Block b3 = TestBlocks.createNextBlock(b2, coinbaseTo).asHeader();
+        assertEquals(0, testNetChain.addHeaders(Collections.singletonList(b2)));
+        assertFalse(testNetChain.isOrphan(b2.getHash()));
+        // Headers that don't build on each other are rejected as a whole.
+        try {
+            testNetChain.addHeaders(Arrays.asList(b1, b3));
+            fail();
+        } catch (VerificationException e) {
+            // expected
+        }
+        assertEquals(0, testNetChain.getBestChainHeight());
+    }
+
     // adds 2015 (interval-1) intermediate blocks between the transition points
     private static void addIntermediteBlocks(BlockChain chain, int epoch, Duration spacing) throws PrunedException {
         int interval = chain.params.interval;
@@ -46,6 +46,7 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.bitcoinj.base.internal.Preconditions.checkState;
 import static org.junit.Assert.assertArrayEquals;
@@ -85,6 +86,72 @@ public class BlockTest {
         Block.verify(TESTNET, block700000, Block.BLOCK_HEIGHT_GENESIS, EnumSet.noneOf(Block.VerifyFlag.class));
     }
     
+    @Test
+    public void testBlockVerificationParallel() throws Exception {
+        Block block = MAINNET.getDefaultSerializer().makeBlock(ByteBuffer.wrap(
+                ByteStreams.toByteArray(getClass().getResourceAsStream("block481829.dat"))));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Block.verify(MAINNET, block, 481829, EnumSet.of(Block.VerifyFlag.HEIGHT_IN_COINBASE), pool);
+            // Again, with all transactions deserialized.
+            Block.verify(MAINNET, block, 481829, EnumSet.of(Block.VerifyFlag.HEIGHT_IN_COINBASE), pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testBlockVerificationParallelReportsFirstFailure() throws Exception {
+        Block block = MAINNET.getDefaultSerializer().makeBlock(ByteBuffer.wrap(
+                ByteStreams.toByteArray(getClass().getResourceAsStream("block481829.dat"))));
+        // Break two transactions in different ways.
+        List<Transaction> transactions = new ArrayList<>(block.transactions());
+        Transaction duplicatedOutPoint = Transaction.read(ByteBuffer.wrap(transactions.get(1500).serialize()));
+        TransactionInput input = duplicatedOutPoint.getInput(0);
+        duplicatedOutPoint.addInput(new TransactionInput(null, input.getScriptBytes(), input.getOutpoint()));
+        Transaction noOutputs = Transaction.read(ByteBuffer.wrap(transactions.get(1600).serialize()));
+        noOutputs.clearOutputs();
+        transactions.set(1500, duplicatedOutPoint);
+        transactions.set(1600, noOutputs);
+        block.replaceTransactions(transactions);
+        block.getMerkleRoot(); // update for the new transactions
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int i = 0; i < 10; i++) {
+                try {
+                    Block.verifyTransactions(MAINNET, block, 481829, EnumSet.noneOf(Block.VerifyFlag.class), pool);
+                    fail();
+                } catch (VerificationException.DuplicatedOutPoint e) {
+                    // The transaction with the lowest index.
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        try {
+            Block.verifyTransactions(MAINNET, block, 481829, EnumSet.noneOf(Block.VerifyFlag.class));
+            fail();
+        } catch (VerificationException.DuplicatedOutPoint e) {
+            // Same as in parallel.
+        }
+    }
+
+    @Test
+    public void testBadTransactionsParallel() {
+        // Re-arrange so the coinbase transaction is not first.
+        List<Transaction> transactions = new ArrayList<>(block700000.transactions());
+        transactions.set(0, transactions.get(1));
+        block700000.replaceTransactions(transactions);
+        try {
+            Block.verifyTransactions(TESTNET, block700000, Block.BLOCK_HEIGHT_GENESIS,
+                    EnumSet.noneOf(Block.VerifyFlag.class), ForkJoinPool.commonPool());
+            fail();
+        } catch (VerificationException e) {
+            assertEquals("First tx is not coinbase", e.getMessage());
+        }
+    }
+
     @Test
     public void testDate() {
         assertEquals("2016-02-13T22:59:39Z", TimeUtils.dateTimeFormat(block700000.time()));
@@ -144,6 +211,24 @@ public class BlockTest {
         }
     }
 
+    @Test
+    public void testMutatedMerkleTree() {
+        // Repeating the last transaction of an odd number of them doesn't change the merkle root (CVE-2012-2459).
+        List<Transaction> transactions = new ArrayList<>(block700000.transactions().subList(0, 3));
+        block700000.replaceTransactions(transactions);
+        Sha256Hash merkleRoot = block700000.getMerkleRoot();
+        transactions.add(transactions.get(2));
+        block700000.replaceTransactions(transactions);
+        assertEquals(merkleRoot, block700000.getMerkleRoot());
+        try {
+            Block.verifyTransactions(TESTNET, block700000, Block.BLOCK_HEIGHT_GENESIS,
+                    EnumSet.noneOf(Block.VerifyFlag.class));
+            fail();
+        } catch (VerificationException e) {
+            assertTrue(e.getMessage().contains("mutated"));
+        }
+    }
+
     @Test
     public void testHeaderParse() {
         Block header = block700000.asHeader();
@@ -266,6 +351,60 @@ public class BlockTest {
         block481829.checkWitnessRoot();
     }
 
+    @Test
+    public void readLazily() throws Exception {
+        byte[] bytes = ByteStreams.toByteArray(getClass().getResourceAsStream("block481829.dat"));
+        Block block = Block.read(ByteBuffer.wrap(bytes));
+        Block lazy = Block.readLazily(ByteBuffer.wrap(bytes));
+        assertEquals(block.getHash(), lazy.getHash());
+        assertEquals(block.transactionCount(), lazy.transactionCount());
+        // without deserializing the transactions
+        assertEquals(bytes.length, lazy.messageSize());
+        assertArrayEquals(bytes, lazy.serialize());
+        assertEquals(block.getWitnessRoot(), lazy.getWitnessRoot());
+        lazy.checkWitnessRoot();
+
+        Transaction tx = lazy.transaction(5);
+        assertTrue(tx == lazy.transaction(5));
+        assertEquals(block.transaction(5), tx);
+        assertEquals(block.transaction(5).getWTxId(), tx.getWTxId());
+        Transaction found = lazy.findTransactions(t -> t.getTxId().equals(block.transaction(7).getTxId()))
+                .findFirst().get();
+        assertTrue(found == lazy.transaction(7));
+        List<Transaction> all = new ArrayList<>();
+        lazy.forEachTransaction(all::add);
+        assertEquals(block.transactions(), all);
+        assertArrayEquals(bytes, lazy.serialize());
+        Block.verify(MAINNET, lazy, 481829, EnumSet.noneOf(Block.VerifyFlag.class));
+    }
+
+    @Test
+    public void readLazily_modify() throws Exception {
+        Block lazy = Block.readLazily(ByteBuffer.wrap(block700000Bytes));
+        Transaction tx = lazy.transaction(1);
+        List<Transaction> transactions = new ArrayList<>(lazy.transactions().subList(0, 2));
+        lazy.replaceTransactions(transactions);
+        assertEquals(2, lazy.transactionCount());
+        assertTrue(tx == lazy.transaction(1));
+        assertEquals(block700000.transaction(1).getTxId(), lazy.transaction(1).getTxId());
+        Block block = Block.read(ByteBuffer.wrap(lazy.serialize()));
+        assertEquals(transactions, block.transactions());
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void readLazily_unknownFlags() {
+        Transaction tx = block700000.transaction(1);
+        ByteBuffer buf = ByteBuffer.allocate(Block.HEADER_SIZE + 1 + tx.messageSize() + 2);
+        buf.put(block700000.asHeader().serialize());
+        VarInt.of(1).write(buf);
+        byte[] txBytes = tx.serialize();
+        buf.put(txBytes, 0, 4); // version
+        buf.put((byte) 0).put((byte) 2); // marker and unknown flags
+        buf.put(txBytes, 4, txBytes.length - 4);
+        ((Buffer) buf).rewind();
+        Block.readLazily(buf);
+    }
+
     @Test
     public void isBIPs() throws Exception {
         final Block genesis = MAINNET.getGenesisBlock();
@@ -325,6 +464,12 @@ public class BlockTest {
         Block.read(buf);
     }
 
+    @Test(expected = BufferUnderflowException.class)
+    public void readLazilyBlockWithTruncatedTransaction() {
+        ByteBuffer buf = ByteBuffer.wrap(block700000Bytes, 0, block700000Bytes.length - 1).slice();
+        Block.readLazily(buf);
+    }
+
     @Test
     public void testGenesisBlock() {
         Block genesisBlock = Block.createGenesis(Instant.ofEpochSecond(1231006505L),
@@ -16,22 +16,41 @@
 
 package org.bitcoinj.core;
 
+import org.bitcoinj.params.MainNetParams;
 import org.easymock.EasyMockRunner;
 import org.easymock.Mock;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
 
 @RunWith(EasyMockRunner.class)
 public class CheckpointManagerTest {
 
+    private static final NetworkParameters MAINNET = MainNetParams.get();
+
     @Mock
     NetworkParameters params;
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test(expected = NullPointerException.class)
     public void shouldThrowNullPointerExceptionWhenCheckpointsNotFound() throws IOException {
         expect(params.getId()).andReturn("org/bitcoinj/core/checkpointmanagertest/notFound");
@@ -59,4 +78,66 @@ public class CheckpointManagerTest {
         replay(params);
         new CheckpointManager(params, null);
     }
+
+    @Test
+    public void binaryFormatSameAsTextual() throws IOException {
+        CheckpointManager textual = new CheckpointManager(MAINNET, null);
+        List<StoredBlock> checkpoints = new ArrayList<>(textual.checkpoints.values());
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        CheckpointManager.writeBinary(checkpoints, binary);
+        File file = folder.newFile("checkpoints.bin");
+        Files.write(file.toPath(), binary.toByteArray());
+
+        CheckpointManager mapped = CheckpointManager.fromFile(MAINNET, file);
+        CheckpointManager read = new CheckpointManager(MAINNET, new ByteArrayInputStream(binary.toByteArray()));
+        for (CheckpointManager manager : Arrays.asList(mapped, read)) {
+            assertEquals(textual.numCheckpoints(), manager.numCheckpoints());
+            for (StoredBlock checkpoint : checkpoints) {
+                Instant time = checkpoint.getHeader().time();
+                int height = checkpoint.getHeight();
+                assertEquals(textual.getCheckpointBefore(time), manager.getCheckpointBefore(time));
+                assertEquals(textual.getCheckpointBefore(time.minusSeconds(1)),
+                        manager.getCheckpointBefore(time.minusSeconds(1)));
+                assertEquals(checkpoint, manager.getCheckpointBeforeHeight(height));
+                assertEquals(textual.getCheckpointBeforeHeight(height - 1), manager.getCheckpointBeforeHeight(height - 1));
+            }
+            assertEquals(0, manager.getCheckpointBeforeHeight(0).getHeight());
+        }
+    }
+
+    @Test
+    public void textualFile() throws IOException {
+        File file = new File(getClass().getResource("/org.bitcoin.production.checkpoints.txt").getFile());
+        CheckpointManager manager = CheckpointManager.fromFile(MAINNET, file);
+        assertEquals(new CheckpointManager(MAINNET, null).getDataHash(), manager.getDataHash());
+    }
+
+    @Test(expected = IOException.class)
+    public void binaryFormatOutOfOrder() throws IOException {
+        List<StoredBlock> checkpoints = new ArrayList<>(new CheckpointManager(MAINNET, null).checkpoints.values());
+        checkpoints.add(checkpoints.get(0));
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        CheckpointManager.writeBinary(checkpoints, binary);
+        new CheckpointManager(MAINNET, new ByteArrayInputStream(binary.toByteArray()));
+    }
+
+    @Test(expected = IOException.class)
+    public void binaryFormatNoCheckpoints() throws IOException {
+        StoredBlock checkpoint = new CheckpointManager(MAINNET, null).checkpoints.firstEntry().getValue();
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        CheckpointManager.writeBinary(Collections.singletonList(checkpoint), binary);
+        // Keep the header only, with a count of zero.
+        byte[] bytes = Arrays.copyOf(binary.toByteArray(), binary.size() - StoredBlock.COMPACT_SERIALIZED_SIZE_V2);
+        ByteBuffer.wrap(bytes).putInt(bytes.length - 4, 0);
+        new CheckpointManager(MAINNET, new ByteArrayInputStream(bytes));
+    }
+
+    @Test(expected = IOException.class)
+    public void binaryFormatTruncated() throws IOException {
+        List<StoredBlock> checkpoints = new ArrayList<>(new CheckpointManager(MAINNET, null).checkpoints.values());
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        CheckpointManager.writeBinary(checkpoints, binary);
+        byte[] bytes = binary.toByteArray();
+        new CheckpointManager(MAINNET, new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 1)));
+    }
 }
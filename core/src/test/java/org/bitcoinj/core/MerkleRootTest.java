@@ -0,0 +1,95 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import org.bitcoinj.base.Sha256Hash;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MerkleRootTest {
+    private final Random random = new Random(1);
+
+    @Test
+    public void sameAsReference() {
+        int[] counts = { 1, 2, 3, 4, 5, 6, 7, 8, 9, 15, 16, 17, 100, 511, 512, 513,
+                MerkleRoot.SUBTREE_LEAVES * 4 - 1, MerkleRoot.SUBTREE_LEAVES * 4, MerkleRoot.SUBTREE_LEAVES * 4 + 1,
+                5000 };
+        for (int count : counts) {
+            byte[] leaves = randomLeaves(count);
+            Sha256Hash expected = referenceRoot(leaves, count);
+            MerkleRoot root = MerkleRoot.of(leaves.clone(), count);
+            assertEquals("count " + count, expected, root.hash());
+            assertFalse("count " + count, root.isMutated());
+        }
+    }
+
+    @Test
+    public void mutated() {
+        // [a, b, c] and [a, b, c, c] have the same root
+        byte[] leaves = randomLeaves(4);
+        System.arraycopy(leaves, 64, leaves, 96, 32);
+        MerkleRoot root = MerkleRoot.of(Arrays.copyOf(leaves, 96), 3);
+        MerkleRoot mutatedRoot = MerkleRoot.of(leaves, 4);
+        assertEquals(root.hash(), mutatedRoot.hash());
+        assertFalse(root.isMutated());
+        assertTrue(mutatedRoot.isMutated());
+    }
+
+    @Test
+    public void mutatedInSubtree() {
+        int count = MerkleRoot.SUBTREE_LEAVES * 5 + 3;
+        byte[] leaves = randomLeaves(count);
+        System.arraycopy(leaves, 1000 * 32, leaves, 1001 * 32, 32);
+        assertTrue(MerkleRoot.of(leaves, count).isMutated());
+    }
+
+    @Test
+    public void mutatedAboveSubtrees() {
+        // two identical subtrees are identical siblings further up
+        int count = MerkleRoot.SUBTREE_LEAVES * 6;
+        byte[] leaves = randomLeaves(count);
+        System.arraycopy(leaves, 0, leaves, MerkleRoot.SUBTREE_LEAVES * 32, MerkleRoot.SUBTREE_LEAVES * 32);
+        assertTrue(MerkleRoot.of(leaves, count).isMutated());
+    }
+
+    private byte[] randomLeaves(int count) {
+        byte[] leaves = new byte[count * 32];
+        random.nextBytes(leaves);
+        return leaves;
+    }
+
+    private static Sha256Hash referenceRoot(byte[] leaves, int count) {
+        List<byte[]> level = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+            level.add(Arrays.copyOfRange(leaves, i * 32, i * 32 + 32));
+        while (level.size() > 1) {
+            List<byte[]> next = new ArrayList<>();
+            for (int i = 0; i < level.size(); i += 2)
+                next.add(Sha256Hash.hashTwice(level.get(i), level.get(Math.min(i + 1, level.size() - 1))));
+            level = next;
+        }
+        return Sha256Hash.wrapReversed(level.get(0));
+    }
+}
@@ -41,8 +41,10 @@ import java.util.List;
 import java.util.Random;
 import java.util.stream.Stream;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -94,6 +96,24 @@ public class TransactionOutputTest extends TestWithWallet {
         assertFalse(ScriptPattern.isP2PKH(tx.getOutput(0).getScriptPubKey()));
     }
 
+    @Test
+    public void getScriptType() {
+        TransactionOutput p2pk = new TransactionOutput(null, Coin.COIN, myKey);
+        assertEquals(ScriptType.P2PK, p2pk.getScriptType());
+        assertArrayEquals(myKey.getPubKey(), p2pk.getScriptKeyOrHash());
+        TransactionOutput p2wpkh = new TransactionOutput(null, Coin.COIN,
+                myKey.toAddress(ScriptType.P2WPKH, BitcoinNetwork.MAINNET));
+        assertEquals(ScriptType.P2WPKH, p2wpkh.getScriptType());
+        assertArrayEquals(myKey.getPubKeyHash(), p2wpkh.getScriptKeyOrHash());
+        TransactionOutput opReturn = new TransactionOutput(null, Coin.ZERO,
+                ScriptBuilder.createOpReturnScript("hello".getBytes()).program());
+        assertNull(opReturn.getScriptType());
+        assertNull(opReturn.getScriptKeyOrHash());
+        TransactionOutput unparseable = new TransactionOutput(null, Coin.COIN, new byte[] { 0x4c });
+        assertNull(unparseable.getScriptType());
+        assertFalse(unparseable.isMine(wallet));
+    }
+
     @Test
     public void getMinNonDustValue() {
         TransactionOutput p2pk = new TransactionOutput(null, Coin.COIN, myKey);
@@ -285,6 +285,35 @@ public class TransactionTest {
         assertEquals(hex.length() / 2, tx.messageSize());
     }
 
+    @Test
+    public void txIdsFromWireBytes() {
+        // witness transaction from witnessTransaction()
+        byte[] bytes = ByteUtils.parseHex("0100000000010213206299feb17742091c3cb2ab45faa3aa87922d3c030cafb3f798850a2722bf0000000000feffffffa12f2424b9599898a1d30f06e1ce55eba7fabfeee82ae9356f07375806632ff3010000006b483045022100fcc8cf3014248e1a0d6dcddf03e80f7e591605ad0dbace27d2c0d87274f8cd66022053fcfff64f35f22a14deb657ac57f110084fb07bb917c3b42e7d033c54c7717b012102b9e4dcc33c9cc9cb5f42b96dddb3b475b067f3e21125f79e10c853e5ca8fba31feffffff02206f9800000000001976a9144841b9874d913c430048c78a7b18baebdbea440588ac8096980000000000160014e4873ef43eac347471dd94bc899c51b395a509a502483045022100dd8250f8b5c2035d8feefae530b10862a63030590a851183cb61b3672eb4f26e022057fe7bc8593f05416c185d829b574290fb8706423451ebd0a0ae50c276b87b43012102179862f40b85fa43487500f1d6b13c864b5eb0a83999738db0f7a6b91b2ec64f00db080000");
+        Transaction tx = Transaction.read(ByteBuffer.wrap(bytes));
+        assertEquals("99e7484eafb6e01622c395c8cae7cb9f8822aab6ba993696b39df8b60b0f4b11", tx.getTxId().toString());
+        assertEquals(Sha256Hash.wrapReversed(Sha256Hash.hashTwice(bytes)), tx.getWTxId());
+
+        // at an offset within a larger heap buffer, and within a direct buffer
+        byte[] padded = new byte[bytes.length + 10];
+        System.arraycopy(bytes, 0, padded, 7, bytes.length);
+        ByteBuffer heap = ByteBuffer.wrap(padded, 2, padded.length - 2).slice();
+        ((Buffer) heap).position(5);
+        ByteBuffer direct = ByteBuffer.allocateDirect(padded.length).put(padded);
+        ((Buffer) direct).position(7);
+        for (ByteBuffer buf : new ByteBuffer[] { heap, direct }) {
+            Transaction read = Transaction.read(buf);
+            assertEquals(tx.getTxId(), read.getTxId());
+            assertEquals(tx.getWTxId(), read.getWTxId());
+            assertEquals(3, buf.remaining());
+        }
+
+        // the ids change along with the transaction
+        tx.addOutput(Coin.COIN, ECKey.random());
+        Transaction copy = Transaction.read(ByteBuffer.wrap(tx.serialize()));
+        assertEquals(copy.getTxId(), tx.getTxId());
+        assertEquals(copy.getWTxId(), tx.getWTxId());
+    }
+
     @Test
     public void testWitnessSignatureP2WPKH() {
         // test vector P2WPKH from:
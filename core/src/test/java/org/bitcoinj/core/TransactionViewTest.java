@@ -0,0 +1,117 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.core;
+
+import org.bitcoinj.base.Coin;
+import org.bitcoinj.base.internal.ByteUtils;
+import org.bitcoinj.crypto.ECKey;
+import org.bitcoinj.params.TestNet3Params;
+import org.bitcoinj.testing.FakeTxBuilder;
+import org.junit.Test;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TransactionViewTest {
+    // witness transaction from TransactionTest.witnessTransaction()
+    private static final byte[] WITNESS_TX = ByteUtils.parseHex("0100000000010213206299feb17742091c3cb2ab45faa3aa87922d3c030cafb3f798850a2722bf0000000000feffffffa12f2424b9599898a1d30f06e1ce55eba7fabfeee82ae9356f07375806632ff3010000006b483045022100fcc8cf3014248e1a0d6dcddf03e80f7e591605ad0dbace27d2c0d87274f8cd66022053fcfff64f35f22a14deb657ac57f110084fb07bb917c3b42e7d033c54c7717b012102b9e4dcc33c9cc9cb5f42b96dddb3b475b067f3e21125f79e10c853e5ca8fba31feffffff02206f9800000000001976a9144841b9874d913c430048c78a7b18baebdbea440588ac8096980000000000160014e4873ef43eac347471dd94bc899c51b395a509a502483045022100dd8250f8b5c2035d8feefae530b10862a63030590a851183cb61b3672eb4f26e022057fe7bc8593f05416c185d829b574290fb8706423451ebd0a0ae50c276b87b43012102179862f40b85fa43487500f1d6b13c864b5eb0a83999738db0f7a6b91b2ec64f00db080000");
+
+    @Test
+    public void witnessTransaction() {
+        ByteBuffer payload = ByteBuffer.allocate(WITNESS_TX.length + 3).put(WITNESS_TX);
+        payload.flip();
+        TransactionView view = TransactionView.read(payload);
+        assertFalse(payload.hasRemaining());
+        assertEqualsTransaction(Transaction.read(ByteBuffer.wrap(WITNESS_TX)), view);
+        assertTrue(view.hasWitnesses());
+        assertArrayEquals(WITNESS_TX, view.serialize());
+        assertArrayEquals(WITNESS_TX, view.write(ByteBuffer.allocate(view.messageSize())).array());
+        assertEquals(view, TransactionView.read(ByteBuffer.wrap(WITNESS_TX)));
+    }
+
+    @Test
+    public void legacyTransaction() {
+        Transaction tx = FakeTxBuilder.createFakeTx(TestNet3Params.get().network());
+        TransactionView view = TransactionView.of(tx);
+        assertEqualsTransaction(tx, view);
+        assertFalse(view.hasWitnesses());
+        assertArrayEquals(tx.serialize(), view.serialize());
+        assertEquals(tx, view.toTransaction());
+    }
+
+    @Test
+    public void coinbase() {
+        Transaction tx = Transaction.coinbase(new byte[] { 1, 2, 3 });
+        tx.addOutput(Coin.COIN, ECKey.random());
+        TransactionView view = TransactionView.of(tx);
+        assertEqualsTransaction(tx, view);
+        assertTrue(view.isCoinBase());
+    }
+
+    @Test
+    public void empty() {
+        Transaction tx = new Transaction();
+        TransactionView view = TransactionView.of(tx);
+        assertEqualsTransaction(tx, view);
+        assertArrayEquals(tx.serialize(), view.serialize());
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void unknownFlags() {
+        byte[] bytes = WITNESS_TX.clone();
+        bytes[5] = 3;
+        TransactionView.read(ByteBuffer.wrap(bytes));
+    }
+
+    @Test(expected = BufferUnderflowException.class)
+    public void truncated() {
+        TransactionView.read(ByteBuffer.wrap(WITNESS_TX, 0, WITNESS_TX.length - 1));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void indexOutOfBounds() {
+        TransactionView.read(ByteBuffer.wrap(WITNESS_TX)).getValue(2);
+    }
+
+    private static void assertEqualsTransaction(Transaction tx, TransactionView view) {
+        assertEquals(tx.getTxId(), view.getTxId());
+        assertEquals(tx.getWTxId(), view.getWTxId());
+        assertEquals(tx.getVersion(), view.getVersion());
+        assertEquals(tx.lockTime(), view.lockTime());
+        assertEquals(tx.isCoinBase(), view.isCoinBase());
+        assertEquals(tx.getInputs().size(), view.getInputCount());
+        for (int i = 0; i < view.getInputCount(); i++) {
+            TransactionInput input = tx.getInput(i);
+            assertEquals(input.getOutpoint(), view.getOutpoint(i));
+            assertArrayEquals(input.getScriptBytes(), view.getScriptSigBytes(i));
+            assertEquals(input.getSequenceNumber(), view.getSequenceNumber(i));
+            assertEquals(input.getWitness(), view.getWitness(i));
+        }
+        assertEquals(tx.getOutputs().size(), view.getOutputCount());
+        for (int i = 0; i < view.getOutputCount(); i++) {
+            TransactionOutput output = tx.getOutput(i);
+            assertEquals(output.getValue(), view.getValue(i));
+            assertArrayEquals(output.getScriptBytes(), view.getScriptPubKeyBytes(i));
+        }
+        assertEquals(tx.messageSize(), view.messageSize());
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.crypto;
+
+import org.bitcoinj.base.Sha256Hash;
+import org.bitcoinj.base.internal.ByteUtils;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SchnorrSignatureTest {
+    private static final byte[] NO_AUX = new byte[32];
+
+    // test vectors from https://github.com/bitcoin/bips/blob/master/bip-0340/test-vectors.csv
+
+    @Test
+    public void bip340Vectors() throws Exception {
+        checkVector("0000000000000000000000000000000000000000000000000000000000000003",
+                "F9308A019258C31049344F85F89D5229B531C845836F99B08601F113BCE036F9",
+                "0000000000000000000000000000000000000000000000000000000000000000",
+                "0000000000000000000000000000000000000000000000000000000000000000",
+                "E907831F80848D1069A5371B402410364BDF1C5F8307B0084C55F1CE2DCA821525F66A4A85EA8B71E482A74F382D2CE5EBEEE8FDB2172F477DF4900D310536C0");
+        checkVector("B7E151628AED2A6ABF7158809CF4F3C762E7160F38B4DA56A784D9045190CFEF",
+                "DFF1D77F2A671C5F36183726DB2341BE58FEAE1DA2DECED843240F7B502BA659",
+                "0000000000000000000000000000000000000000000000000000000000000001",
+                "243F6A8885A308D313198A2E03707344A4093822299F31D0082EFA98EC4E6C89",
+                "6896BD60EEAE296DB48A229FF71DFE071BDE413E6D43F917DC8DCF8C78DE33418906D11AC976ABCCB20B091292BFF4EA897EFCB639EA871CFA95F6DE339E4B0A");
+        checkVector("C90FDAA22168C234C4C6628B80DC1CD129024E088A67CC74020BBEA63B14E5C9",
+                "DD308AFEC5777E13121FA72B9CC1B7CC0139715309B086C960E18FD969774EB8",
+                "C87AA53824B4D7AE2EB035A2B5BBBCCC080E76CDC6D1692C4B0B62D798E6D906",
+                "7E2D58D8B3BCDF1ABADEC7829054F90DDA9805AAB56C77333024B9D0A508B75C",
+                "5831AAEED7B44BB74E5EAB94BA9D4294C49BCF2A60728D8B4C200F50DD313C1BAB745879A5AD954A72C45A91C3A51D3C7ADEA98D82F8481E0E1E03674A6F3FB7");
+    }
+
+    private static void checkVector(String privKeyHex, String pubKeyHex, String auxHex, String messageHex,
+                                    String signatureHex) throws Exception {
+        BigInteger privKey = new BigInteger(privKeyHex, 16);
+        byte[] pubKey = ByteUtils.parseHex(pubKeyHex.toLowerCase());
+        byte[] aux = ByteUtils.parseHex(auxHex.toLowerCase());
+        byte[] message = ByteUtils.parseHex(messageHex.toLowerCase());
+        byte[] signature = ByteUtils.parseHex(signatureHex.toLowerCase());
+        assertArrayEquals(pubKey, SchnorrSignature.publicKey(privKey));
+        assertArrayEquals(signature, SchnorrSignature.sign(message, privKey, aux).encode());
+        assertTrue(SchnorrSignature.decode(signature).verify(message, pubKey));
+    }
+
+    @Test
+    public void publicKeyNotOnCurve() throws Exception {
+        byte[] pubKey = ByteUtils.parseHex("eefdea4cdb677750a420fee807eacf21eb9898ae79b9768766e4faa04a2d4a34");
+        byte[] message = ByteUtils.parseHex("243f6a8885a308d313198a2e03707344a4093822299f31d0082efa98ec4e6c89");
+        SchnorrSignature signature = SchnorrSignature.decode(ByteUtils.parseHex(
+                "6cff5c3ba86c69ea4b7376f31a9bcb4f74c1976089b2d9963da2e5543e17776969e89b4c5564d00349106b8497785dd7d1d713a8ae82b32fa79d5f7fc407d39b"));
+        assertFalse(signature.verify(message, pubKey));
+    }
+
+    @Test
+    public void signAndVerify() throws Exception {
+        BigInteger privKey = ECKey.random().getPrivKey();
+        byte[] pubKey = SchnorrSignature.publicKey(privKey);
+        byte[] message = Sha256Hash.hash("hello".getBytes());
+        SchnorrSignature signature = SchnorrSignature.sign(message, privKey, NO_AUX);
+        assertEquals(SchnorrSignature.LENGTH, signature.encode().length);
+        assertEquals(signature, SchnorrSignature.decode(signature.encode()));
+        assertTrue(signature.verify(message, pubKey));
+        assertFalse(signature.verify(Sha256Hash.hash("bye".getBytes()), pubKey));
+        assertFalse(signature.verify(message, SchnorrSignature.publicKey(ECKey.random().getPrivKey())));
+    }
+
+    @Test(expected = SignatureDecodeException.class)
+    public void decode_wrongLength() throws Exception {
+        SchnorrSignature.decode(new byte[63]);
+    }
+
+    @Test(expected = SignatureDecodeException.class)
+    public void decode_sNotBelowOrder() throws Exception {
+        byte[] bytes = new byte[64];
+        Arrays.fill(bytes, 32, 64, (byte) 0xff);
+        SchnorrSignature.decode(bytes);
+    }
+
+    @Test
+    public void tweak() {
+        BigInteger privKey = ECKey.random().getPrivKey();
+        byte[] tweak = Sha256Hash.hash("tweak".getBytes());
+        byte[] tweakedPubKey = SchnorrSignature.tweakPublicKey(SchnorrSignature.publicKey(privKey), tweak);
+        BigInteger tweakedPrivKey = SchnorrSignature.tweakPrivateKey(privKey, tweak);
+        assertArrayEquals(ECKey.fromPrivate(tweakedPrivKey).getPubKey(), tweakedPubKey);
+    }
+
+    @Test
+    public void batchVerify() {
+        SchnorrSignature.BatchVerifier batch = new SchnorrSignature.BatchVerifier();
+        assertTrue(batch.verify());
+        for (int i = 0; i < 10; i++) {
+            BigInteger privKey = ECKey.random().getPrivKey();
+            byte[] message = Sha256Hash.hash(new byte[] { (byte) i });
+            batch.add(SchnorrSignature.sign(message, privKey, NO_AUX), message, SchnorrSignature.publicKey(privKey));
+        }
+        assertEquals(10, batch.size());
+        assertTrue(batch.verify());
+
+        BigInteger privKey = ECKey.random().getPrivKey();
+        byte[] message = Sha256Hash.hash("signed".getBytes());
+        batch.add(SchnorrSignature.sign(message, privKey, NO_AUX), Sha256Hash.hash("other".getBytes()),
+                SchnorrSignature.publicKey(privKey));
+        assertFalse(batch.verify());
+    }
+}
@@ -18,6 +18,7 @@
 
 package org.bitcoinj.script;
 
+import org.bitcoinj.base.ScriptType;
 import org.bitcoinj.base.Sha256Hash;
 import org.bitcoinj.base.internal.ByteUtils;
 import org.bitcoinj.crypto.DumpedPrivateKey;
@@ -30,7 +31,9 @@ import java.util.List;
 import static org.bitcoinj.base.BitcoinNetwork.MAINNET;
 import static org.bitcoinj.script.ScriptOpCodes.OP_CHECKMULTISIG;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class ScriptPatternTest {
@@ -163,4 +166,53 @@ public class ScriptPatternTest {
         assertEquals("0000000000000000000000000000000000000000000000000000000000000000",
                 ByteUtils.formatHex(hash.getBytes()));
     }
+
+    @Test
+    public void matchTemplate() {
+        ECKey key = keys.get(0);
+        assertEquals(ScriptType.P2PKH, ScriptPattern.matchTemplate(ScriptBuilder.createP2PKHOutputScript(key).program()));
+        assertEquals(ScriptType.P2PK, ScriptPattern.matchTemplate(ScriptBuilder.createP2PKOutputScript(key).program()));
+        assertEquals(ScriptType.P2SH, ScriptPattern.matchTemplate(ScriptBuilder.createP2SHOutputScript(2, keys).program()));
+        assertEquals(ScriptType.P2WPKH, ScriptPattern.matchTemplate(ScriptBuilder.createP2WPKHOutputScript(key).program()));
+        assertEquals(ScriptType.P2WSH, ScriptPattern.matchTemplate(ScriptBuilder.createP2WSHOutputScript(new ScriptBuilder().build()).program()));
+        assertEquals(ScriptType.P2TR, ScriptPattern.matchTemplate(ByteUtils.parseHex("51200000000000000000000000000000000000000000000000000000000000000000")));
+        assertNull(ScriptPattern.matchTemplate(ScriptBuilder.createMultiSigOutputScript(2, keys).program()));
+        assertNull(ScriptPattern.matchTemplate(ScriptBuilder.createOpReturnScript(new byte[10]).program()));
+        assertNull(ScriptPattern.matchTemplate(new byte[0]));
+    }
+
+    @Test
+    public void extractFromProgram() {
+        ECKey key = keys.get(0);
+        byte[] p2pkh = ScriptBuilder.createP2PKHOutputScript(key).program();
+        assertArrayEquals(key.getPubKeyHash(), ScriptPattern.extractHashFromP2PKH(p2pkh));
+        byte[] p2pk = ScriptBuilder.createP2PKOutputScript(key).program();
+        assertArrayEquals(key.getPubKey(), ScriptPattern.extractKeyFromP2PK(p2pk));
+        byte[] p2wpkh = ScriptBuilder.createP2WPKHOutputScript(key).program();
+        assertArrayEquals(key.getPubKeyHash(), ScriptPattern.extractHashFromP2WH(p2wpkh));
+    }
+
+    @Test
+    public void nonMinimalPushFallsBackToChunks() {
+        // DUP HASH160 PUSHDATA1 <20 bytes> EQUALVERIFY CHECKSIG isn't the standard serialization, but it is P2PKH
+        // according to its chunks
+        byte[] hash = new byte[20];
+        byte[] program = ByteUtils.parseHex("76a94c14" + ByteUtils.formatHex(hash) + "88ac");
+        assertFalse(ScriptPattern.isP2PKH(program));
+        Script script = Script.parse(program);
+        assertTrue(ScriptPattern.isP2PKH(script));
+        assertArrayEquals(hash, ScriptPattern.extractHashFromP2PKH(script));
+        assertEquals(ScriptType.P2PKH, script.getScriptType());
+    }
+
+    @Test
+    public void templateScriptParsesChunksOnDemand() {
+        byte[] program = ScriptBuilder.createP2WPKHOutputScript(keys.get(0)).program();
+        Script p2wpkh = Script.parse(program);
+        assertEquals(2, p2wpkh.chunks().size());
+        assertArrayEquals(program, Script.of(p2wpkh.chunks()).program());
+        assertFalse(ScriptPattern.isP2PK(p2wpkh));
+        assertFalse(ScriptPattern.isSentToMultisig(p2wpkh));
+        assertFalse(ScriptPattern.isOpReturn(p2wpkh));
+    }
 }
@@ -263,6 +263,47 @@ public class ScriptTest {
         assertEquals("OP_0 push length", 0, stack.get(0).length);
     }
 
+    @Test
+    public void scriptNumberEncoding() {
+        long[] values = { 0, 1, -1, 16, 127, -127, 128, -128, 255, -255, 256, 32767, -32768, 65535, 8388607,
+                -8388608, Integer.MAX_VALUE, -Integer.MAX_VALUE, 1L << 32, (1L << 39) - 1, -(1L << 39) + 1 };
+        for (long value : values) {
+            byte[] expected = ByteUtils.reverseBytes(ByteUtils.encodeMPI(BigInteger.valueOf(value), false));
+            byte[] encoded = ScriptExecution.encodeNumber(value);
+            assertArrayEquals("encoding " + value, expected, encoded);
+            assertEquals("decoding " + value, value, ScriptExecution.castToLong(encoded, 5, true));
+        }
+    }
+
+    @Test
+    public void scriptNumberDecoding_negativeZero() {
+        assertEquals(0, ScriptExecution.castToLong(new byte[] { (byte) 0x80 }, 4, false));
+        assertEquals(0, ScriptExecution.castToLong(new byte[] { 0x00, (byte) 0x80 }, 4, false));
+    }
+
+    @Test(expected = ScriptException.class)
+    public void scriptNumberDecoding_nonMinimal() {
+        ScriptExecution.castToLong(new byte[] { 0x01, 0x00 }, 4, true);
+    }
+
+    @Test(expected = ScriptException.class)
+    public void scriptNumberDecoding_tooLong() {
+        ScriptExecution.castToLong(new byte[] { 0x01, 0x02, 0x03, 0x04, 0x05 }, 4, false);
+    }
+
+    @Test
+    public void executeScript_stackOperations() {
+        // 1 2 3 4 5 6 2ROT -> 3 4 5 6 1 2; SWAP -> 3 4 5 6 2 1; 3 ROLL -> 3 4 6 2 1 5; 2 PICK -> 3 4 6 2 1 5 2
+        Script script = new ScriptBuilder().number(1).number(2).number(3).number(4).number(5).number(6)
+                .op(ScriptOpCodes.OP_2ROT).op(ScriptOpCodes.OP_SWAP).number(3).op(ScriptOpCodes.OP_ROLL)
+                .number(2).op(ScriptOpCodes.OP_PICK).build();
+        LinkedList<byte[]> stack = new LinkedList<>();
+        ScriptExecution.executeScript(null, 0, script, stack, ScriptExecution.ALL_VERIFY_FLAGS);
+        List<Long> numbers = stack.stream().map(e -> ScriptExecution.castToLong(e, 4, true))
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList(3L, 4L, 6L, 2L, 1L, 5L, 2L), numbers);
+    }
+
     private Script parseScriptString(String string) throws IOException {
         String[] words = string.split("[ \\t\\n]");
         
@@ -0,0 +1,127 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.script;
+
+import org.bitcoinj.base.Coin;
+import org.bitcoinj.base.Sha256Hash;
+import org.bitcoinj.core.PrecomputedTransactionData;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.crypto.ECKey;
+import org.bitcoinj.crypto.TransactionSignature;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ScriptVerificationCacheTest {
+    private static final Set<ScriptExecution.VerifyFlag> FLAGS = EnumSet.of(ScriptExecution.VerifyFlag.P2SH,
+            ScriptExecution.VerifyFlag.DERSIG);
+
+    private ECKey key;
+    private Script scriptPubKey;
+
+    @Before
+    public void setUp() {
+        key = ECKey.random();
+        scriptPubKey = ScriptBuilder.createP2PKHOutputScript(key);
+    }
+
+    private Transaction spendingTx(ECKey signingKey) {
+        Transaction tx = new Transaction();
+        tx.addInput(new TransactionInput(tx, new byte[0], TransactionOutPoint.of(Sha256Hash.of(new byte[] { 1 }), 0)));
+        tx.addOutput(Coin.COIN, ECKey.random());
+        TransactionSignature sig = tx.calculateSignature(0, signingKey, scriptPubKey, Transaction.SigHash.ALL, false);
+        tx.replaceInput(0, tx.getInput(0).withScriptSig(ScriptBuilder.createInputScript(sig, signingKey)));
+        return tx;
+    }
+
+    private static PrecomputedTransactionData txData(Transaction tx, Script spentScript) {
+        return new PrecomputedTransactionData(tx, Collections.singletonList(Coin.COIN),
+                Collections.singletonList(spentScript));
+    }
+
+    @Test
+    public void verifyRemembersSuccess() {
+        ScriptVerificationCache cache = new ScriptVerificationCache();
+        Transaction tx = spendingTx(key);
+        PrecomputedTransactionData txData = txData(tx, scriptPubKey);
+        assertFalse(cache.contains(txData, 0, FLAGS));
+        cache.verify(tx, 0, txData, FLAGS);
+        assertTrue(cache.contains(txData, 0, FLAGS));
+        assertTrue(cache.contains(txData(tx, scriptPubKey), 0, FLAGS));
+        assertFalse(cache.contains(txData, 0, ScriptExecution.ALL_VERIFY_FLAGS));
+        assertFalse(cache.contains(txData, 1, FLAGS));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void verifyDoesNotTrustOtherSpentOutputs() {
+        ScriptVerificationCache cache = new ScriptVerificationCache();
+        Transaction tx = spendingTx(key);
+        cache.verify(tx, 0, txData(tx, scriptPubKey), FLAGS);
+        // the same input spending another output isn't remembered, and is executed again
+        PrecomputedTransactionData otherTxData = txData(tx, ScriptBuilder.createP2PKHOutputScript(ECKey.random()));
+        assertFalse(cache.contains(otherTxData, 0, FLAGS));
+        assertFalse(cache.contains(new PrecomputedTransactionData(tx, Collections.singletonList(Coin.CENT),
+                Collections.singletonList(scriptPubKey)), 0, FLAGS));
+        try {
+            cache.verify(tx, 0, otherTxData, FLAGS);
+            fail();
+        } catch (ScriptException x) {
+            // expected
+        }
+    }
+
+    @Test
+    public void verifyDoesNotRememberFailure() {
+        ScriptVerificationCache cache = new ScriptVerificationCache();
+        Transaction tx = spendingTx(ECKey.random());
+        try {
+            cache.verify(tx, 0, txData(tx, scriptPubKey), FLAGS);
+            fail();
+        } catch (ScriptException x) {
+            // expected
+        }
+        assertFalse(cache.contains(txData(tx, scriptPubKey), 0, FLAGS));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void evictsOldest() {
+        ScriptVerificationCache cache = new ScriptVerificationCache(2);
+        Transaction tx = spendingTx(key);
+        PrecomputedTransactionData txData = txData(tx, scriptPubKey);
+        cache.add(txData, 0, FLAGS);
+        cache.add(txData, 1, FLAGS);
+        cache.add(txData, 2, FLAGS);
+        assertEquals(2, cache.size());
+        assertFalse(cache.contains(txData, 0, FLAGS));
+        assertTrue(cache.contains(txData, 1, FLAGS));
+        assertTrue(cache.contains(txData, 2, FLAGS));
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.script;
+
+import org.bitcoinj.base.Coin;
+import org.bitcoinj.base.Sha256Hash;
+import org.bitcoinj.base.VarInt;
+import org.bitcoinj.base.internal.ByteUtils;
+import org.bitcoinj.core.PrecomputedTransactionData;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.core.TransactionWitness;
+import org.bitcoinj.crypto.ECKey;
+import org.bitcoinj.crypto.SchnorrSignature;
+import org.bitcoinj.crypto.internal.CryptoUtils;
+import org.jspecify.annotations.Nullable;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.bitcoinj.script.ScriptOpCodes.OP_1;
+import static org.bitcoinj.script.ScriptOpCodes.OP_CHECKMULTISIG;
+import static org.bitcoinj.script.ScriptOpCodes.OP_CHECKSIG;
+import static org.bitcoinj.script.ScriptOpCodes.OP_CHECKSIGADD;
+import static org.bitcoinj.script.ScriptOpCodes.OP_NUMEQUAL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TaprootTest {
+    private static final Set<ScriptExecution.VerifyFlag> FLAGS = EnumSet.of(ScriptExecution.VerifyFlag.P2SH,
+            ScriptExecution.VerifyFlag.TAPROOT);
+    private static final byte[] NO_AUX = new byte[32];
+    private static final long NO_CODESEPARATOR = 0xffffffffL;
+
+    private BigInteger internalPrivKey;
+    private byte[] internalKey;
+
+    @Before
+    public void setUp() {
+        internalPrivKey = ECKey.random().getPrivKey();
+        internalKey = SchnorrSignature.publicKey(internalPrivKey);
+    }
+
+    // test vectors from https://github.com/bitcoin/bips/blob/master/bip-0341/wallet-test-vectors.json (keyPathSpending)
+
+    @Test
+    public void bip341KeyPathSigHashVectors() {
+        Transaction tx = Transaction.read(ByteBuffer.wrap(ByteUtils.parseHex(
+                "02000000097de20cbff686da83a54981d2b9bab3586f4ca7e48f57f5b55963115f3b334e9c010000000000000000d7b7cab5" +
+                "7b1393ace2d064f4d4a2cb8af6def61273e127517d44759b6dafdd990000000000fffffffff8e1f583384333689228c5d2" +
+                "8eac13366be082dc57441760d957275419a418420000000000fffffffff0689180aa63b30cb162a73c6d2a38b7eeda2a83" +
+                "ece74310fda0843ad604853b0100000000feffffffaa5202bdf6d8ccd2ee0f0202afbbb7461d9264a25e5bfd3c5a52ee12" +
+                "39e0ba6c0000000000feffffff956149bdc66faa968eb2be2d2faa29718acbfe3941215893a2a3446d32acd05000000000" +
+                "0000000000e664b9773b88c09c32cb70a2a3e4da0ced63b7ba3b22f848531bbb1d5d5f4c94010000000000000000e9aa6b" +
+                "8e6c9de67619e6a3924ae25696bb7b694bb677a632a74ef7eadfd4eabf0000000000ffffffffa778eb6a263dc090464cd1" +
+                "25c466b5a99667720b1c110468831d058aa1b82af10100000000ffffffff0200ca9a3b000000001976a91406afd46bcdfd" +
+                "22ef94ac122aa11f241244a37ecc88ac807840cb0000000020ac9a87f5594be208f8532db38cff670c450ed2fea8fcdefc" +
+                "c9a663f78bab962b0065cd1d")));
+        String[] spentScripts = {
+                "512053a1f6e454df1aa2776a2814a721372d6258050de330b3c6d10ee8f4e0dda343",
+                "5120147c9c57132f6e7ecddba9800bb0c4449251c92a1e60371ee77557b6620f3ea3",
+                "76a914751e76e8199196d454941c45d1b3a323f1433bd688ac",
+                "5120e4d810fd50586274face62b8a807eb9719cef49c04177cc6b76a9a4251d5450e",
+                "512091b64d5324723a985170e4dc5a0f84c041804f2cd12660fa5dec09fc21783605",
+                "00147dd65592d0ab2fe0d0257d571abf032cd9db93dc",
+                "512075169f4001aa68f15bbed28b218df1d0a62cbbcf1188c6665110c293c907b831",
+                "5120712447206d7a5238acc7ff53fbe94a3b64539ad291c7cdbc490b7577e4b17df5",
+                "512077e30a5522dd9f894c3f8b8bd4c4b2cf82ca7da8a3ea6a239655c39c050ab220" };
+        long[] spentAmounts = { 420000000, 462000000, 294000000, 504000000, 630000000, 378000000, 672000000,
+                546000000, 588000000 };
+        List<Coin> amounts = new ArrayList<>();
+        List<Script> scripts = new ArrayList<>();
+        for (int i = 0; i < spentScripts.length; i++) {
+            amounts.add(Coin.valueOf(spentAmounts[i]));
+            scripts.add(Script.parse(ByteUtils.parseHex(spentScripts[i])));
+        }
+        PrecomputedTransactionData txData = new PrecomputedTransactionData(tx, amounts, scripts);
+
+        // inputs 2 and 5 don't spend Taproot outputs
+        checkSigHash(tx, txData, 0, 0x03, "2514a6272f85cfa0f45eb907fcb0d121b808ed37c6ea160a5a9046ed5526d555");
+        checkSigHash(tx, txData, 1, 0x83, "325a644af47e8a5a2591cda0ab0723978537318f10e6a63d4eed783b96a71a4d");
+        checkSigHash(tx, txData, 3, 0x01, "bf013ea93474aa67815b1b6cc441d23b64fa310911d991e713cd34c7f5d46669");
+        checkSigHash(tx, txData, 4, 0x00, "4f900a0bae3f1446fd48490c2958b5a023228f01661cda3496a11da502a7f7ef");
+        checkSigHash(tx, txData, 6, 0x02, "15f25c298eb5cdc7eb1d638dd2d45c97c4c59dcaec6679cfc16ad84f30876b85");
+        checkSigHash(tx, txData, 7, 0x82, "cd292de50313804dabe4685e83f923d2969577191a3e1d2882220dca88cbeb10");
+        checkSigHash(tx, txData, 8, 0x81, "cccb739eca6c13a8a89e6e5cd317ffe55669bbda23f2fd37b0f18755e008edd2");
+    }
+
+    private static void checkSigHash(Transaction tx, PrecomputedTransactionData txData, int inputIndex, int hashType,
+                                     String sigHashHex) {
+        assertEquals(Sha256Hash.wrap(sigHashHex),
+                tx.hashForTaprootSignature(inputIndex, txData, (byte) hashType, null, null, NO_CODESEPARATOR));
+    }
+
+    @Test
+    public void keyPath() {
+        Transaction tx = spendingTx();
+        byte[] tweak = CryptoUtils.taggedHash("TapTweak", internalKey);
+        Script scriptPubKey = p2tr(outputKey(tweak));
+        byte[] sig = sign(tx, scriptPubKey, SchnorrSignature.tweakPrivateKey(internalPrivKey, tweak), null, null);
+        setWitness(tx, sig);
+        verify(tx, scriptPubKey);
+
+        // explicit SIGHASH_ALL commits to a different message
+        setWitness(tx, append(sig, (byte) 0x01));
+        assertError(ScriptError.SCRIPT_ERR_SCHNORR_SIG, tx, scriptPubKey);
+
+        // the default hash type must not be explicit
+        setWitness(tx, append(sig, (byte) 0x00));
+        assertError(ScriptError.SCRIPT_ERR_SCHNORR_SIG_HASHTYPE, tx, scriptPubKey);
+
+        // signed by the untweaked key
+        setWitness(tx, sign(tx, scriptPubKey, internalPrivKey, null, null));
+        assertError(ScriptError.SCRIPT_ERR_SCHNORR_SIG, tx, scriptPubKey);
+
+        setWitness(tx, new byte[SchnorrSignature.LENGTH - 1]);
+        assertError(ScriptError.SCRIPT_ERR_SCHNORR_SIG_SIZE, tx, scriptPubKey);
+    }
+
+    @Test
+    public void keyPath_annex() {
+        Transaction tx = spendingTx();
+        byte[] tweak = CryptoUtils.taggedHash("TapTweak", internalKey);
+        Script scriptPubKey = p2tr(outputKey(tweak));
+        BigInteger privKey = SchnorrSignature.tweakPrivateKey(internalPrivKey, tweak);
+        byte[] annex = { 0x50, 1, 2, 3 };
+        setWitness(tx, sign(tx, scriptPubKey, privKey, annex, null), annex);
+        verify(tx, scriptPubKey);
+
+        // signature doesn't commit to the annex
+        setWitness(tx, sign(tx, scriptPubKey, privKey, null, null), annex);
+        assertError(ScriptError.SCRIPT_ERR_SCHNORR_SIG, tx, scriptPubKey);
+    }
+
+    @Test
+    public void keyPath_batch() {
+        Transaction tx = spendingTx();
+        byte[] tweak = CryptoUtils.taggedHash("TapTweak", internalKey);
+        Script scriptPubKey = p2tr(outputKey(tweak));
+        setWitness(tx, sign(tx, scriptPubKey, SchnorrSignature.tweakPrivateKey(internalPrivKey, tweak), null, null));
+        SchnorrSignature.BatchVerifier batch = new SchnorrSignature.BatchVerifier();
+        ScriptExecution.correctlySpends(tx, 0, txData(tx, scriptPubKey), FLAGS, batch);
+        assertEquals(1, batch.size());
+        assertTrue(batch.verify());
+
+        // an invalid signature doesn't fail the input, but the batch
+        setWitness(tx, sign(tx, scriptPubKey, internalPrivKey, null, null));
+        ScriptExecution.correctlySpends(tx, 0, txData(tx, scriptPubKey), FLAGS, batch);
+        assertEquals(2, batch.size());
+        assertFalse(batch.verify());
+    }
+
+    @Test
+    public void scriptPath_checkSig() {
+        BigInteger privKey = ECKey.random().getPrivKey();
+        byte[] leafScript = new ScriptBuilder().data(SchnorrSignature.publicKey(privKey)).op(OP_CHECKSIG).build()
+                .program();
+        byte[] leafHash = tapleafHash(leafScript);
+        byte[] tweak = CryptoUtils.taggedHash("TapTweak", internalKey, leafHash);
+        byte[] outputKey = outputKey(tweak);
+        Script scriptPubKey = p2tr(outputKey);
+        Transaction tx = spendingTx();
+        byte[] sig = sign(tx, scriptPubKey, privKey, null, leafHash);
+        setWitness(tx, sig, leafScript, controlBlock(tweak));
+        verify(tx, scriptPubKey);
+
+        // a key path signature isn't valid for the script path
+        setWitness(tx, sign(tx, scriptPubKey, privKey, null, null), leafScript, controlBlock(tweak));
+        assertError(ScriptError.SCRIPT_ERR_SCHNORR_SIG, tx, scriptPubKey);
+
+        // an empty signature makes OP_CHECKSIG fail
+        setWitness(tx, new byte[0], leafScript, controlBlock(tweak));
+        assertError(ScriptError.SCRIPT_ERR_EVAL_FALSE, tx, scriptPubKey);
+    }
+
+    @Test
+    public void scriptPath_checkSigAdd() {
+        BigInteger privKey1 = ECKey.random().getPrivKey();
+        BigInteger privKey2 = ECKey.random().getPrivKey();
+        byte[] leafScript = new ScriptBuilder()
+                .data(SchnorrSignature.publicKey(privKey1)).op(OP_CHECKSIG)
+                .data(SchnorrSignature.publicKey(privKey2)).op(OP_CHECKSIGADD)
+                .number(2).op(OP_NUMEQUAL).build().program();
+        byte[] leafHash = tapleafHash(leafScript);
+        byte[] tweak = CryptoUtils.taggedHash("TapTweak", internalKey, leafHash);
+        Script scriptPubKey = p2tr(outputKey(tweak));
+        Transaction tx = spendingTx();
+        byte[] sig1 = sign(tx, scriptPubKey, privKey1, null, leafHash);
+        byte[] sig2 = sign(tx, scriptPubKey, privKey2, null, leafHash);
+        setWitness(tx, sig2, sig1, leafScript, controlBlock(tweak));
+        verify(tx, scriptPubKey);
+
+        // 1-of-2
+        setWitness(tx, new byte[0], sig1, leafScript, controlBlock(tweak));
+        assertError(ScriptError.SCRIPT_ERR_EVAL_FALSE, tx, scriptPubKey);
+    }
+
+    @Test
+    public void scriptPath_notCommitted() {
+        byte[] leafScript = new ScriptBuilder().op(OP_1).build().program();
+        byte[] tweak = CryptoUtils.taggedHash("TapTweak", internalKey, tapleafHash(leafScript));
+        Script scriptPubKey = p2tr(outputKey(tweak));
+        Transaction tx = spendingTx();
+        setWitness(tx, leafScript, controlBlock(tweak));
+        verify(tx, scriptPubKey);
+
+        byte[] otherScript = new ScriptBuilder().op(OP_1).op(OP_1).build().program();
+        setWitness(tx, otherScript, controlBlock(tweak));
+        assertError(ScriptError.SCRIPT_ERR_WITNESS_PROGRAM_MISMATCH, tx, scriptPubKey);
+
+        setWitness(tx, leafScript, Arrays.copyOf(controlBlock(tweak), 34));
+        assertError(ScriptError.SCRIPT_ERR_TAPROOT_WRONG_CONTROL_SIZE, tx, scriptPubKey);
+    }
+
+    @Test
+    public void scriptPath_opSuccess() {
+        // OP_RESERVED (0x50) is OP_SUCCESS80 in tapscript
+        byte[] leafScript = { 0x50, 0x00 };
+        byte[] tweak = CryptoUtils.taggedHash("TapTweak", internalKey, tapleafHash(leafScript));
+        Script scriptPubKey = p2tr(outputKey(tweak));
+        Transaction tx = spendingTx();
+        setWitness(tx, leafScript, controlBlock(tweak));
+        verify(tx, scriptPubKey);
+    }
+
+    @Test
+    public void scriptPath_checkMultiSigDisabled() {
+        byte[] leafScript = new ScriptBuilder().smallNum(0).smallNum(0).smallNum(0).op(OP_CHECKMULTISIG).build().program();
+        byte[] tweak = CryptoUtils.taggedHash("TapTweak", internalKey, tapleafHash(leafScript));
+        Script scriptPubKey = p2tr(outputKey(tweak));
+        Transaction tx = spendingTx();
+        setWitness(tx, leafScript, controlBlock(tweak));
+        assertError(ScriptError.SCRIPT_ERR_TAPSCRIPT_CHECKMULTISIG, tx, scriptPubKey);
+    }
+
+    private static Transaction spendingTx() {
+        Transaction tx = new Transaction();
+        tx.addInput(new TransactionInput(tx, new byte[0], TransactionOutPoint.of(Sha256Hash.of(new byte[] { 1 }), 0)));
+        tx.addOutput(Coin.COIN, ECKey.random());
+        return tx;
+    }
+
+    private static PrecomputedTransactionData txData(Transaction tx, Script spentScript) {
+        return new PrecomputedTransactionData(tx, Collections.singletonList(Coin.COIN),
+                Collections.singletonList(spentScript));
+    }
+
+    private static void setWitness(Transaction tx, byte[]... pushes) {
+        tx.replaceInput(0, tx.getInput(0).withWitness(TransactionWitness.of(pushes)));
+    }
+
+    private static void verify(Transaction tx, Script scriptPubKey) {
+        ScriptExecution.correctlySpends(tx, 0, txData(tx, scriptPubKey), FLAGS, null);
+    }
+
+    private static void assertError(ScriptError expected, Transaction tx, Script scriptPubKey) {
+        try {
+            verify(tx, scriptPubKey);
+            fail();
+        } catch (ScriptException e) {
+            assertEquals(expected, e.getError());
+        }
+    }
+
+    private static byte[] sign(Transaction tx, Script scriptPubKey, BigInteger privKey, byte @Nullable [] annex,
+                               byte @Nullable [] tapleafHash) {
+        Sha256Hash sigHash = tx.hashForTaprootSignature(0, txData(tx, scriptPubKey), (byte) 0, annex, tapleafHash,
+                NO_CODESEPARATOR);
+        return SchnorrSignature.sign(sigHash.getBytes(), privKey, NO_AUX).encode();
+    }
+
+    private byte[] outputKey(byte[] tweak) {
+        return Arrays.copyOfRange(SchnorrSignature.tweakPublicKey(internalKey, tweak), 1, 33);
+    }
+
+    private byte[] controlBlock(byte[] tweak) {
+        byte[] tweaked = SchnorrSignature.tweakPublicKey(internalKey, tweak);
+        byte[] control = new byte[33];
+        control[0] = (byte) (0xc0 | (tweaked[0] == 0x03 ? 1 : 0));
+        System.arraycopy(internalKey, 0, control, 1, 32);
+        return control;
+    }
+
+    private static byte[] tapleafHash(byte[] leafScript) {
+        return CryptoUtils.taggedHash("TapLeaf", new byte[] { (byte) 0xc0 }, VarInt.of(leafScript.length).serialize(),
+                leafScript);
+    }
+
+    private static Script p2tr(byte[] outputKey) {
+        return new ScriptBuilder().op(OP_1).data(outputKey).build();
+    }
+
+    private static byte[] append(byte[] bytes, byte b) {
+        byte[] result = Arrays.copyOf(bytes, bytes.length + 1);
+        result[bytes.length] = b;
+        return result;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.store;
+
+import org.bitcoinj.base.Coin;
+import org.bitcoinj.base.Sha256Hash;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.core.TestBlocks;
+import org.bitcoinj.core.UTXO;
+import org.bitcoinj.params.UnitTestParams;
+import org.bitcoinj.script.ScriptBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CachingFullPrunedBlockStoreTest {
+    private static final UnitTestParams UNITTEST = UnitTestParams.get();
+
+    private MemoryFullPrunedBlockStore backing;
+    private CachingFullPrunedBlockStore store;
+
+    @Before
+    public void setUp() {
+        Context.propagate(new Context());
+        backing = new MemoryFullPrunedBlockStore(UNITTEST, 10);
+        store = new CachingFullPrunedBlockStore(backing, 100);
+    }
+
+    @Test
+    public void createdAndSpent() throws Exception {
+        UTXO out = output(1);
+        store.beginDatabaseBatchWrite();
+        store.addUnspentTransactionOutput(out);
+        store.removeUnspentTransactionOutput(out);
+        store.commitDatabaseBatchWrite();
+        store.flush();
+        assertNull(store.getTransactionOutput(out.getHash(), out.getIndex()));
+        assertEquals(0, store.getWriteCount());
+        assertEquals(1, store.getSkippedWriteCount());
+    }
+
+    @Test
+    public void writeBack() throws Exception {
+        UTXO out = output(1);
+        store.addUnspentTransactionOutput(out);
+        assertNull(backing.getTransactionOutput(out.getHash(), out.getIndex()));
+        store.flush();
+        assertEquals(out, backing.getTransactionOutput(out.getHash(), out.getIndex()));
+        assertEquals(1, store.getWriteCount());
+
+        store.removeUnspentTransactionOutput(out);
+        assertNull(store.getTransactionOutput(out.getHash(), out.getIndex()));
+        assertFalse(store.hasUnspentOutputs(out.getHash(), 1));
+        assertNotNull(backing.getTransactionOutput(out.getHash(), out.getIndex()));
+        store.flush();
+        assertNull(backing.getTransactionOutput(out.getHash(), out.getIndex()));
+        assertEquals(2, store.getFlushCount());
+    }
+
+    @Test
+    public void verifiedChainHeadWrittenWithOutputs() throws Exception {
+        StoredBlock genesis = backing.getVerifiedChainHead();
+        StoredBlock next = genesis.build(TestBlocks.createNextBlock(UNITTEST.getGenesisBlock(), null).asHeader());
+        store.put(next);
+        store.addUnspentTransactionOutput(output(1));
+        store.setVerifiedChainHead(next);
+        assertEquals(next, store.getVerifiedChainHead());
+        assertEquals(next, store.getChainHead());
+        assertEquals(genesis, backing.getVerifiedChainHead());
+        store.flush();
+        assertEquals(next, backing.getVerifiedChainHead());
+    }
+
+    @Test
+    public void abort() throws Exception {
+        UTXO spent = output(1);
+        store.addUnspentTransactionOutput(spent);
+        store.flush();
+        UTXO created = output(2);
+        store.beginDatabaseBatchWrite();
+        store.addUnspentTransactionOutput(created);
+        store.removeUnspentTransactionOutput(spent);
+        store.abortDatabaseBatchWrite();
+        assertNull(store.getTransactionOutput(created.getHash(), created.getIndex()));
+        assertEquals(spent, store.getTransactionOutput(spent.getHash(), spent.getIndex()));
+        store.flush();
+        assertEquals(1, store.getWriteCount());
+    }
+
+    @Test
+    public void hitRate() throws Exception {
+        UTXO out = output(1);
+        backing.addUnspentTransactionOutput(out);
+        assertEquals(out, store.getTransactionOutput(out.getHash(), out.getIndex()));
+        assertEquals(out, store.getTransactionOutput(out.getHash(), out.getIndex()));
+        assertEquals(1, store.getMissCount());
+        assertEquals(1, store.getHitCount());
+        assertEquals(0.5, store.getHitRate(), 0);
+    }
+
+    @Test
+    public void evict() throws Exception {
+        store = new CachingFullPrunedBlockStore(backing, 10);
+        for (int i = 0; i < 25; i++) {
+            store.beginDatabaseBatchWrite();
+            store.addUnspentTransactionOutput(output(i));
+            store.commitDatabaseBatchWrite();
+            assertTrue(store.size() <= 10);
+        }
+        store.flush();
+        for (int i = 0; i < 25; i++)
+            assertNotNull(backing.getTransactionOutput(output(i).getHash(), 0));
+    }
+
+    private static UTXO output(int i) {
+        Sha256Hash hash = Sha256Hash.of(new byte[] { (byte) i });
+        return new UTXO(hash, 0, Coin.COIN, 1, false, ScriptBuilder.createOpReturnScript(new byte[0]));
+    }
+}
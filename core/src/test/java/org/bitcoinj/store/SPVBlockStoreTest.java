@@ -45,7 +45,9 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -97,6 +99,51 @@ public class SPVBlockStoreTest {
         store.close();
     }
 
+    @Test
+    public void getAncestor() throws Exception {
+        Context.propagate(new Context(100, Coin.ZERO, false, true));
+        SPVBlockStore store = new SPVBlockStore(TESTNET, blockStoreFile, 50, false);
+        Address to = ECKey.random().toAddress(ScriptType.P2PKH, BitcoinNetwork.TESTNET);
+        List<StoredBlock> chain = new ArrayList<>();
+        chain.add(store.getChainHead());
+        for (int i = 1; i <= 30; i++) {
+            StoredBlock prev = chain.get(i - 1);
+            StoredBlock block = prev.build(TestBlocks.createNextBlock(prev.getHeader(), to).asHeader());
+            store.put(block);
+            store.setChainHead(block);
+            chain.add(block);
+        }
+        // a side chain forking off after height 20
+        Address otherTo = ECKey.random().toAddress(ScriptType.P2PKH, BitcoinNetwork.TESTNET);
+        List<StoredBlock> fork = new ArrayList<>(chain.subList(0, 21));
+        for (int i = 21; i <= 25; i++) {
+            StoredBlock prev = fork.get(i - 1);
+            StoredBlock block = prev.build(TestBlocks.createNextBlock(prev.getHeader(), otherTo).asHeader());
+            store.put(block);
+            fork.add(block);
+        }
+        StoredBlock head = chain.get(30);
+        StoredBlock forkHead = fork.get(25);
+        for (int height = 0; height <= 30; height++)
+            assertEquals(chain.get(height), store.getAncestor(head, height));
+        for (int height = 0; height <= 25; height++)
+            assertEquals(fork.get(height), store.getAncestor(forkHead, height));
+
+        // reorganize to the side chain
+        store.setChainHead(forkHead);
+        for (int height = 0; height <= 25; height++)
+            assertEquals(fork.get(height), store.getAncestor(forkHead, height));
+        for (int height = 0; height <= 30; height++)
+            assertEquals(chain.get(height), store.getAncestor(head, height));
+        store.close();
+
+        // the index is rebuilt when the store is opened again
+        store = new SPVBlockStore(TESTNET, blockStoreFile, 50, false);
+        assertEquals(fork.get(3), store.getAncestor(store.getChainHead(), 3));
+        assertEquals(chain.get(22), store.getAncestor(head, 22));
+        store.close();
+    }
+
     @Test
     public void get_zeroHash() throws Exception {
         SPVBlockStore store = new SPVBlockStore(TESTNET, blockStoreFile);
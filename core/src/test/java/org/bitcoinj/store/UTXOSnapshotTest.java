@@ -0,0 +1,145 @@
+/*
+ * Copyright by the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitcoinj.store;
+
+import org.bitcoinj.base.Coin;
+import org.bitcoinj.base.Sha256Hash;
+import org.bitcoinj.base.internal.TimeUtils;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.FullPrunedBlockChain;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.core.TestBlocks;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.core.UTXO;
+import org.bitcoinj.crypto.ECKey;
+import org.bitcoinj.params.UnitTestParams;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.bitcoinj.base.Coin.FIFTY_COINS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UTXOSnapshotTest {
+    private static final UnitTestParams UNITTEST = UnitTestParams.get();
+
+    private ECKey outKey;
+    private MemoryFullPrunedBlockStore store;
+    private FullPrunedBlockChain chain;
+    private Block tip;
+    private List<TransactionOutput> coinbaseOutputs;
+
+    @BeforeClass
+    public static void setUpClass() {
+        TimeUtils.clearMockClock();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Context.propagate(new Context(100, Coin.ZERO, false, false));
+        outKey = ECKey.random();
+        store = new MemoryFullPrunedBlockStore(UNITTEST, 10);
+        chain = new FullPrunedBlockChain(UNITTEST, store);
+        tip = UNITTEST.getGenesisBlock();
+        coinbaseOutputs = new ArrayList<>();
+        for (int height = 1; height <= UNITTEST.getSpendableCoinbaseDepth() + 1; height++) {
+            tip = TestBlocks.createNextBlockWithCoinbase(tip, Block.BLOCK_VERSION_GENESIS, outKey.getPubKey(),
+                    FIFTY_COINS, height);
+            TestBlocks.solve(tip);
+            assertTrue(chain.add(tip));
+            coinbaseOutputs.add(tip.transaction(0).getOutput(0));
+        }
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        Sha256Hash hash = UTXOSnapshot.write(store, os);
+
+        MemoryFullPrunedBlockStore loaded = new MemoryFullPrunedBlockStore(UNITTEST, 10);
+        StoredBlock base = UTXOSnapshot.load(new ByteArrayInputStream(os.toByteArray()), loaded, hash);
+        assertEquals(store.getVerifiedChainHead(), base);
+        assertEquals(base, loaded.getVerifiedChainHead());
+        Iterator<UTXO> expected = store.getUnspentTransactionOutputs();
+        Iterator<UTXO> actual = loaded.getUnspentTransactionOutputs();
+        int count = 0;
+        while (expected.hasNext()) {
+            UTXO expectedOutput = expected.next();
+            UTXO actualOutput = actual.next();
+            assertEquals(expectedOutput, actualOutput);
+            assertEquals(expectedOutput.getHeight(), actualOutput.getHeight());
+            assertEquals(expectedOutput.isCoinbase(), actualOutput.isCoinbase());
+            assertEquals(expectedOutput.getScript(), actualOutput.getScript());
+            count++;
+        }
+        assertTrue(!actual.hasNext());
+        assertEquals(UNITTEST.getSpendableCoinbaseDepth() + 1, count);
+
+        // A chain on the loaded store carries on from the snapshot block.
+        FullPrunedBlockChain loadedChain = new FullPrunedBlockChain(UNITTEST, loaded);
+        assertEquals(base, loadedChain.getChainHead());
+        Block next = TestBlocks.createNextBlock(tip, null);
+        Transaction t = new Transaction();
+        t.addOutput(new TransactionOutput(t, FIFTY_COINS, new byte[] {}));
+        TransactionOutput spent = coinbaseOutputs.get(0);
+        t.addSignedInput(spent.getOutPointFor(), spent.getScriptPubKey(), spent.getValue(), outKey);
+        next.addTransaction(t);
+        TestBlocks.solve(next);
+        assertTrue(loadedChain.add(next));
+        assertEquals(next.getHash(), loaded.getVerifiedChainHead().getHeader().getHash());
+    }
+
+    @Test
+    public void corrupted() throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        UTXOSnapshot.write(store, os);
+        byte[] snapshot = os.toByteArray();
+        // flip a bit in the last chunk
+        snapshot[snapshot.length - 200] ^= 1;
+        try {
+            UTXOSnapshot.load(new ByteArrayInputStream(snapshot), new MemoryFullPrunedBlockStore(UNITTEST, 10), null);
+            fail();
+        } catch (BlockStoreException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = BlockStoreException.class)
+    public void unexpectedHash() throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        UTXOSnapshot.write(store, os);
+        UTXOSnapshot.load(new ByteArrayInputStream(os.toByteArray()), new MemoryFullPrunedBlockStore(UNITTEST, 10),
+                Sha256Hash.ZERO_HASH);
+    }
+
+    @Test(expected = BlockStoreException.class)
+    public void notEmpty() throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        UTXOSnapshot.write(store, os);
+        UTXOSnapshot.load(new ByteArrayInputStream(os.toByteArray()), store, null);
+    }
+}
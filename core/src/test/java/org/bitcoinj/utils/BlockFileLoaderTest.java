@@ -17,19 +17,36 @@
 package org.bitcoinj.utils;
 
 import org.bitcoinj.base.BitcoinNetwork;
+import org.bitcoinj.base.Sha256Hash;
+import org.bitcoinj.base.internal.ByteUtils;
 import org.bitcoinj.core.Block;
 import org.bitcoinj.core.Context;
+import org.bitcoinj.core.NetworkParameters;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.assertEquals;
 
 public class BlockFileLoaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Before
     public void setUp() throws Exception {
         Context.propagate(new Context());
@@ -104,4 +121,100 @@ public class BlockFileLoaderTest {
 
         assertEquals(446, transactionCount);
     }
+
+    @Test
+    public void streamFirst100kSameAsEager() {
+        File blockFile = new File(getClass().getResource("../core/first-100k-blocks.dat").getFile());
+        BlockFileLoader loader = new BlockFileLoader(BitcoinNetwork.MAINNET, Collections.singletonList(blockFile));
+
+        List<Block> eager = loader.streamBuffers().map(Block::read).collect(Collectors.toList());
+        List<Block> lazy = loader.stream().collect(Collectors.toList());
+
+        assertEquals(eager.size(), lazy.size());
+        for (int i = 0; i < eager.size(); i++) {
+            assertEquals(eager.get(i), lazy.get(i));
+            assertEquals(eager.get(i).transactions(), lazy.get(i).transactions());
+        }
+    }
+
+    @Test
+    public void streamInChainOrderFirst100k() {
+        File blockFile = new File(getClass().getResource("../core/first-100k-blocks.dat").getFile());
+        BlockFileLoader loader = new BlockFileLoader(BitcoinNetwork.MAINNET, Collections.singletonList(blockFile));
+        List<Block> expected = loader.stream().collect(Collectors.toList());
+        Sha256Hash startHash = expected.get(0).prevHash();
+
+        List<Block> blocks;
+        try (Stream<Block> stream = loader.streamInChainOrder(startHash, 2)) {
+            blocks = stream.collect(Collectors.toList());
+        }
+
+        assertEquals(expected, blocks);
+    }
+
+    @Test
+    public void streamInChainOrderSkipsKnown() {
+        File blockFile = new File(getClass().getResource("../core/first-100k-blocks.dat").getFile());
+        BlockFileLoader loader = new BlockFileLoader(BitcoinNetwork.MAINNET, Collections.singletonList(blockFile));
+        List<Block> expected = loader.stream().collect(Collectors.toList());
+        // the first blocks are known, e.g. because they are in the block store already
+        Set<Sha256Hash> known = expected.subList(0, 201).stream().map(Block::getHash).collect(Collectors.toSet());
+        // nothing may be held back
+        loader.setMaxWaitingBlocksSize(1);
+
+        // the known blocks are skipped, and the block building on the last of them connects even though the start is
+        // somewhere else
+        List<Block> blocks;
+        try (Stream<Block> stream = loader.streamInChainOrder(Sha256Hash.of(new byte[] { 1 }), 2, known::contains)) {
+            blocks = stream.collect(Collectors.toList());
+        }
+
+        assertEquals(expected.subList(201, expected.size()), blocks);
+    }
+
+    @Test
+    public void streamInChainOrderDropsWaiting() {
+        File blockFile = new File(getClass().getResource("../core/first-100k-blocks.dat").getFile());
+        BlockFileLoader loader = new BlockFileLoader(BitcoinNetwork.MAINNET, Collections.singletonList(blockFile));
+        List<Block> expected = loader.stream().collect(Collectors.toList());
+        loader.setMaxWaitingBlocksSize(1_000);
+
+        // the blocks up to the start never connect, they are dropped as the limit is exceeded
+        List<Block> blocks;
+        try (Stream<Block> stream = loader.streamInChainOrder(expected.get(100).getHash(), 2)) {
+            blocks = stream.collect(Collectors.toList());
+        }
+
+        assertEquals(expected.subList(101, expected.size()), blocks);
+    }
+
+    @Test
+    public void streamInChainOrderShuffled() throws Exception {
+        File blockFile = new File(getClass().getResource("../core/first-100k-blocks.dat").getFile());
+        BlockFileLoader loader = new BlockFileLoader(BitcoinNetwork.MAINNET, Collections.singletonList(blockFile));
+        List<Block> expected = loader.stream().collect(Collectors.toList());
+        List<ByteBuffer> buffers = loader.streamBuffers().collect(Collectors.toList());
+        Collections.shuffle(buffers, new Random(1));
+        // split over two files, with some zeros in between blocks
+        long packetMagic = NetworkParameters.of(BitcoinNetwork.MAINNET).getPacketMagic();
+        File[] files = { folder.newFile("blk00000.dat"), folder.newFile("blk00001.dat") };
+        for (int i = 0; i < files.length; i++) {
+            try (OutputStream os = new FileOutputStream(files[i])) {
+                for (ByteBuffer buffer : buffers.subList(i * buffers.size() / 2, (i + 1) * buffers.size() / 2)) {
+                    os.write(new byte[3]);
+                    ByteUtils.writeInt32BE((int) packetMagic, os);
+                    ByteUtils.writeInt32LE(buffer.remaining(), os);
+                    os.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                }
+            }
+        }
+        BlockFileLoader shuffledLoader = new BlockFileLoader(BitcoinNetwork.MAINNET, Arrays.asList(files));
+
+        List<Block> blocks;
+        try (Stream<Block> stream = shuffledLoader.streamInChainOrder(expected.get(0).prevHash(), 3)) {
+            blocks = stream.collect(Collectors.toList());
+        }
+
+        assertEquals(expected, blocks);
+    }
 }
@@ -1605,6 +1605,22 @@ public class WalletTest extends TestWithWallet {
         wallet.createSend(OTHER_ADDRESS, CENT);
     }
 
+    @Test
+    public void spendCandidatesFollowKeyChanges() {
+        ECKey key = ECKey.random();
+        Address watchedAddress = key.toAddress(ScriptType.P2PKH, TESTNET);
+        wallet.addWatchedAddress(watchedAddress);
+        sendMoneyToWallet(BlockChain.NewBlockType.BEST_CHAIN, CENT, watchedAddress);
+        assertEquals(0, wallet.calculateAllSpendCandidates().size());
+        assertEquals(1, wallet.calculateAllSpendCandidates(true, false).size());
+
+        wallet.importKey(key);
+        assertEquals(1, wallet.calculateAllSpendCandidates().size());
+
+        wallet.removeKey(key);
+        assertEquals(0, wallet.calculateAllSpendCandidates().size());
+    }
+
     @Test
     public void watchingScriptsSentFrom() {
         int baseElements = wallet.getBloomFilterElementCount();
@@ -43,6 +43,7 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
 import java.nio.channels.CancelledKeyException;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
@@ -814,6 +815,16 @@ public class PeerTest extends TestWithNetworkConnections {
         Threading.uncaughtExceptionHandler = null;
     }
 
+    @Test(expected = ProtocolException.class)
+    public void messageBeforeHandshakeRejectedByHeader() throws Exception {
+        InventoryMessage inv = new InventoryMessage(Collections.singletonList(
+                new InventoryItem(InventoryItem.Type.TRANSACTION, Sha256Hash.of(new byte[] { 1 }))));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TESTNET.getDefaultSerializer().serialize(inv, out);
+        // Only the magic bytes and the header have arrived, which is enough to reject the message.
+        peer.receiveBytes(ByteBuffer.wrap(out.toByteArray(), 0, 4 + BitcoinSerializer.BitcoinPacketHeader.HEADER_LENGTH));
+    }
+
     @Test
     public void badMessage() throws Exception {
         // Bring up an actual network connection and feed it bogus data.
@@ -17,6 +17,7 @@
 package org.bitcoinj.tools;
 
 import org.bitcoinj.base.BitcoinNetwork;
+import org.bitcoinj.base.Sha256Hash;
 import org.bitcoinj.core.AbstractBlockChain;
 import org.bitcoinj.core.Block;
 import org.bitcoinj.core.BlockChain;
@@ -33,6 +34,9 @@ import org.bitcoinj.store.SPVBlockStore;
 import org.bitcoinj.utils.BlockFileLoader;
 
 import java.io.File;
+import java.util.Iterator;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 import static org.bitcoinj.base.internal.Preconditions.checkArgument;
 
@@ -73,7 +77,20 @@ public class BlockImporter {
         
         BlockFileLoader loader = new BlockFileLoader(network, BlockFileLoader.getReferenceClientBlockFileList());
         
-        for (Block block : loader)
-            chain.add(block);
+        // Skip the blocks the store already has, rather than holding them back until the end of the files.
+        BlockStore knownBlocks = store;
+        Predicate<Sha256Hash> isKnown = hash -> {
+            try {
+                return knownBlocks.get(hash) != null;
+            } catch (BlockStoreException e) {
+                throw new RuntimeException(e);
+            }
+        };
+        try (Stream<Block> blocks = loader.streamInChainOrder(chain.getChainHead().getHeader().getHash(),
+                Runtime.getRuntime().availableProcessors(), isKnown)) {
+            Iterator<Block> iterator = blocks.iterator();
+            while (iterator.hasNext())
+                chain.add(iterator.next());
+        }
     }
 }
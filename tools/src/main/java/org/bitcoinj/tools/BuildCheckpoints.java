@@ -36,7 +36,6 @@ import org.jspecify.annotations.Nullable;
 import picocli.CommandLine;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
@@ -174,15 +173,18 @@ public class BuildCheckpoints implements Callable<Integer> {
         checkState(checkpoints.size() > 0);
 
         final File textFile = new File("checkpoints" + suffix + ".txt");
+        final File binaryFile = new File("checkpoints" + suffix + ".bin");
 
         // Write checkpoint data out.
         writeTextualCheckpoints(checkpoints, textFile);
+        writeBinaryCheckpoints(checkpoints, binaryFile);
 
         peerGroup.stop();
         store.close();
 
         // Sanity check the created files.
         sanityCheck(textFile, checkpoints.size());
+        sanityCheck(binaryFile, checkpoints.size());
 
         return 0;
     }
@@ -214,15 +216,17 @@ public class BuildCheckpoints implements Callable<Integer> {
         }
     }
 
+    private static void writeBinaryCheckpoints(TreeMap<Integer, StoredBlock> checkpoints, File file)
+            throws IOException {
+        try (FileOutputStream stream = new FileOutputStream(file)) {
+            CheckpointManager.writeBinary(checkpoints.values(), stream);
+            System.out.println("Checkpoints written to '" + file.getCanonicalPath() + "'.");
+        }
+    }
+
     private static void sanityCheck(File file, int expectedSize) throws IOException {
         Objects.requireNonNull(params);
-        FileInputStream fis = new FileInputStream(file);
-        CheckpointManager manager;
-        try {
-            manager = new CheckpointManager(params, fis);
-        } finally {
-            fis.close();
-        }
+        CheckpointManager manager = CheckpointManager.fromFile(params, file);
 
         checkState(manager.numCheckpoints() == expectedSize);
 